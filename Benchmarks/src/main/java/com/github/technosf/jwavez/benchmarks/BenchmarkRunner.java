@@ -0,0 +1,72 @@
+/*
+ * Copyright 2016 technosf [https://github.com/technosf]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.github.technosf.jwavez.benchmarks;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks, writing the results as JSON
+ * <p>
+ * Takes the standard JMH command line. Unless given with {@code -rf} and
+ * {@code -rff}, results are written to {@code jmh-result.json} for
+ * comparison between runs.
+ * 
+ * @author technosf
+ * @since 0.0.1
+ * @version 0.0.1
+ */
+public final class BenchmarkRunner
+{
+
+    /**
+     * The default results file
+     */
+    public static final String RESULT_FILE = "jmh-result.json";
+
+
+    private BenchmarkRunner()
+    {
+    }
+
+
+    /**
+     * @param args
+     *            JMH command line options
+     * @throws RunnerException
+     * @throws CommandLineOptionException
+     */
+    public static void main(String[] args)
+            throws RunnerException, CommandLineOptionException
+    {
+        CommandLineOptions cli = new CommandLineOptions(args);
+        OptionsBuilder builder = new OptionsBuilder();
+        if (!cli.getResultFormat().hasValue())
+        {
+            builder.resultFormat(ResultFormatType.JSON);
+        }
+        if (!cli.getResult().hasValue())
+        {
+            builder.result(RESULT_FILE);
+        }
+        Options options = builder.parent(cli).build();
+        new Runner(options).run();
+    }
+
+}
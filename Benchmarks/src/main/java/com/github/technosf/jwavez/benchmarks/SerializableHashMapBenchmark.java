@@ -0,0 +1,179 @@
+/*
+ * Copyright 2016 technosf [https://github.com/technosf]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.github.technosf.jwavez.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.github.technosf.jwavez.hardware.SerializableMap;
+import com.github.technosf.jwavez.hardware.impl.Codecs;
+import com.github.technosf.jwavez.hardware.impl.SerializableHashMap;
+
+/**
+ * Benchmarks the persistence of {@code SerializableHashMap}
+ * <p>
+ * Each operation is measured at several map sizes, in both the Java
+ * serialized and the codec binary formats. A restore is the construction of
+ * a map over an already stored file.
+ * 
+ * @author technosf
+ * @since 0.0.1
+ * @version 0.0.1
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SerializableHashMapBenchmark
+{
+
+    /**
+     * The number of entries in the map
+     */
+    @Param({ "100", "10000", "100000" })
+    public int size;
+
+    /**
+     * Store with codecs in the binary format, or by Java serialization
+     */
+    @Param({ "true", "false" })
+    public boolean binary;
+
+    private File file;
+
+    private SerializableHashMap<String, String> map;
+
+
+    /**
+     * Fills and stores the map to a temp file
+     * 
+     * @throws IOException
+     * @throws ClassNotFoundException
+     */
+    @Setup(Level.Trial)
+    public void setup() throws IOException, ClassNotFoundException
+    {
+        file = File.createTempFile("SerializableHashMapBenchmark", ".map");
+        map = open();
+        for (int i = 0; i < size; i++)
+        {
+            map.put("key" + i, "value" + i);
+        }
+        map.store();
+    }
+
+
+    /**
+     * Removes the temp file
+     */
+    @TearDown(Level.Trial)
+    public void tearDown()
+    {
+        file.delete();
+    }
+
+
+    /**
+     * Stores the map to its file
+     * 
+     * @return the map stored
+     * @throws IOException
+     */
+    @Benchmark
+    public SerializableHashMap<String, String> store() throws IOException
+    {
+        map.setDirty(true);
+        map.store();
+        return map;
+    }
+
+
+    /**
+     * Restores a map from the stored file
+     * 
+     * @return the restored map
+     * @throws IOException
+     * @throws ClassNotFoundException
+     */
+    @Benchmark
+    public SerializableHashMap<String, String> restore()
+            throws IOException, ClassNotFoundException
+    {
+        return open();
+    }
+
+
+    /**
+     * Gets the digest of the map, cached from its last store
+     * 
+     * @return the digest
+     * @throws Exception
+     */
+    @Benchmark
+    public byte[] digest() throws Exception
+    {
+        return map.digest();
+    }
+
+
+    /**
+     * Digests the stored file afresh from the disk
+     * 
+     * @return the digest
+     * @throws Exception
+     */
+    @Benchmark
+    public byte[] digestFile() throws Exception
+    {
+        return SerializableMap.generateDigest(
+                SerializableMap.getDigester(map.getDigestFunction()), file);
+    }
+
+
+    /**
+     * Opens a map over the benchmark file
+     * 
+     * @return the map
+     * @throws IOException
+     * @throws ClassNotFoundException
+     */
+    private SerializableHashMap<String, String> open()
+            throws IOException, ClassNotFoundException
+    {
+        if (binary)
+        {
+            return new SerializableHashMap<>(file, Codecs.STRING,
+                    Codecs.STRING);
+        }
+        return new SerializableHashMap<>(file);
+    }
+
+}
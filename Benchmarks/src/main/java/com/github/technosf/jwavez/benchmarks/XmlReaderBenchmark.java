@@ -0,0 +1,167 @@
+/*
+ * Copyright 2016 technosf [https://github.com/technosf]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.github.technosf.jwavez.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.stream.XMLStreamException;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.github.technosf.jwavez.hardware.ozw.DeviceClassesXmlReader;
+import com.github.technosf.jwavez.hardware.ozw.ManufacturerSpecificIndex;
+import com.github.technosf.jwavez.hardware.ozw.ManufacturerSpecificXmlReader;
+
+/**
+ * Benchmarks the parsing of the OZW configuration XML
+ * <p>
+ * The files are those of the Hardware tests, bundled as resources of this
+ * module.
+ * 
+ * @author technosf
+ * @since 0.0.1
+ * @version 0.0.1
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class XmlReaderBenchmark
+{
+
+    private static final String DEVICE_CLASSES = "/ozw/device_classes.xml";
+
+    private static final String MANUFACTURER_SPECIFIC =
+            "/ozw/manufacturer_specific.xml";
+
+    /**
+     * Aeotec Smart Dimmer 6
+     */
+    private static final long SMART_DIMMER_6 =
+            ManufacturerSpecificIndex.key(0x0086, 0x0003, 0x0063);
+
+    private File deviceClassesFile;
+
+    private ManufacturerSpecificIndex index;
+
+
+    /**
+     * Copies {@code device_classes.xml} to a temp file and caches it, and
+     * indexes {@code manufacturer_specific.xml}
+     * 
+     * @throws IOException
+     * @throws XMLStreamException
+     */
+    @Setup(Level.Trial)
+    public void setup() throws IOException, XMLStreamException
+    {
+        deviceClassesFile = File.createTempFile("device_classes", ".xml");
+        try (InputStream is = getClass().getResourceAsStream(DEVICE_CLASSES))
+        {
+            Files.copy(is, deviceClassesFile.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING);
+        }
+        DeviceClassesXmlReader.cached(deviceClassesFile);
+        index = new ManufacturerSpecificXmlReader(MANUFACTURER_SPECIFIC)
+                .getIndex();
+    }
+
+
+    /**
+     * Removes the temp file and its cache
+     */
+    @TearDown(Level.Trial)
+    public void tearDown()
+    {
+        DeviceClassesXmlReader.cacheFile(deviceClassesFile).delete();
+        deviceClassesFile.delete();
+    }
+
+
+    /**
+     * Parses {@code device_classes.xml} into its beans
+     * 
+     * @return the reader
+     * @throws XMLStreamException
+     * @throws IOException
+     */
+    @Benchmark
+    public DeviceClassesXmlReader deviceClasses()
+            throws XMLStreamException, IOException
+    {
+        return new DeviceClassesXmlReader(DEVICE_CLASSES);
+    }
+
+
+    /**
+     * Reads the {@code device_classes.xml} beans from their binary cache
+     * 
+     * @return the reader
+     * @throws XMLStreamException
+     * @throws IOException
+     */
+    @Benchmark
+    public DeviceClassesXmlReader deviceClassesCached()
+            throws XMLStreamException, IOException
+    {
+        return DeviceClassesXmlReader.cached(deviceClassesFile);
+    }
+
+
+    /**
+     * Parses {@code manufacturer_specific.xml} into its product index
+     * 
+     * @return the index
+     * @throws XMLStreamException
+     * @throws IOException
+     */
+    @Benchmark
+    public ManufacturerSpecificIndex manufacturerSpecific()
+            throws XMLStreamException, IOException
+    {
+        return new ManufacturerSpecificXmlReader(MANUFACTURER_SPECIFIC)
+                .getIndex();
+    }
+
+
+    /**
+     * Resolves the config of a product by its packed key
+     * 
+     * @return the config path
+     */
+    @Benchmark
+    public String manufacturerSpecificLookup()
+    {
+        return index.getConfig(SMART_DIMMER_6);
+    }
+
+}
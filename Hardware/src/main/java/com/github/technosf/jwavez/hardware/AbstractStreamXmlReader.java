@@ -0,0 +1,249 @@
+/*
+ * Copyright 2016 technosf [https://github.com/technosf]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.github.technosf.jwavez.hardware;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.eclipse.jdt.annotation.Nullable;
+
+/**
+ * Reads XML through the {@code XMLStreamReader} cursor
+ * <p>
+ * An alternative to {@code AbstractXmlReader} that builds no event objects.
+ * Subclasses are called back with the local name of each element, to be
+ * dispatched on by {@code switch}, and read the attributes of the current
+ * element straight from the cursor.
+ * 
+ * @author technosf
+ * @since 0.0.1
+ * @version 0.0.1
+ */
+public abstract class AbstractStreamXmlReader
+{
+
+    /**
+     * XML Stream factory for each thread, as factories are not guaranteed to
+     * be thread safe and readers may be run in parallel
+     */
+    @SuppressWarnings("null")
+    private static final ThreadLocal<XMLInputFactory> XML_INPUT_FACTORY =
+            ThreadLocal.withInitial(XMLInputFactory::newInstance);
+
+    /**
+     * The cursor, set while the XML is being read
+     */
+    private @Nullable XMLStreamReader cursor;
+
+
+    /**
+     * Constructs the object data from the XML input file
+     * 
+     * @param inputFile
+     *            input file providing the XML
+     * @throws XMLStreamException
+     * @throws IOException
+     */
+    protected final void initialize(File inputFile)
+            throws XMLStreamException, IOException
+    {
+        try (InputStream inputstream = Files.newInputStream(
+                inputFile.toPath(), StandardOpenOption.READ))
+        {
+            initialize(inputstream);
+        }
+    }
+
+
+    /**
+     * Constructs the object data from the XML input stream
+     * <p>
+     * The stream is not closed.
+     * 
+     * @param inputStream
+     *            input stream providing the XML
+     * @throws XMLStreamException
+     */
+    @SuppressWarnings("null")
+    protected final void initialize(InputStream inputStream)
+            throws XMLStreamException
+    {
+        XMLStreamReader reader =
+                XML_INPUT_FACTORY.get().createXMLStreamReader(inputStream);
+        cursor = reader;
+
+        try
+        {
+            while (reader.hasNext())
+            /*
+             * Move the cursor through the XML, calling back on each node
+             */
+            {
+                switch (reader.next()) {
+                    case XMLStreamConstants.START_ELEMENT:
+                        startElement(reader.getLocalName());
+                        break;
+                    case XMLStreamConstants.END_ELEMENT:
+                        endElement(reader.getLocalName());
+                        break;
+                    case XMLStreamConstants.CHARACTERS:
+                    case XMLStreamConstants.CDATA:
+                        characters();
+                        break;
+                }
+            }
+        }
+        finally
+        {
+            cursor = null;
+            reader.close();
+        }
+    }
+
+
+    /* ----------------------------------------------------------------
+     * 
+     * Cursor access
+     * 
+     * ----------------------------------------------------------------
+     */
+
+    /**
+     * Gets the cursor
+     * 
+     * @return the cursor
+     * @throws IllegalStateException
+     *             if called outside of a callback
+     */
+    protected final XMLStreamReader cursor()
+    {
+        XMLStreamReader reader = cursor;
+        if (reader == null)
+        {
+            throw new IllegalStateException("Not reading");
+        }
+        return reader;
+    }
+
+
+    /**
+     * Gets an attribute of the current element
+     * 
+     * @param localName
+     *            the attribute local name
+     * @return the attribute value, or null if the element does not have it
+     */
+    protected final @Nullable String attribute(String localName)
+    {
+        return cursor().getAttributeValue(null, localName);
+    }
+
+
+    /**
+     * Gets the number of attributes of the current element
+     * 
+     * @return the attribute count
+     */
+    protected final int attributeCount()
+    {
+        return cursor().getAttributeCount();
+    }
+
+
+    /**
+     * Gets the local name of an attribute of the current element
+     * 
+     * @param index
+     *            the attribute index
+     * @return the attribute local name
+     */
+    @SuppressWarnings("null")
+    protected final String attributeName(int index)
+    {
+        return cursor().getAttributeLocalName(index);
+    }
+
+
+    /**
+     * Gets the value of an attribute of the current element
+     * 
+     * @param index
+     *            the attribute index
+     * @return the attribute value
+     */
+    @SuppressWarnings("null")
+    protected final String attributeValue(int index)
+    {
+        return cursor().getAttributeValue(index);
+    }
+
+
+    /**
+     * Gets the text of the current character data
+     * 
+     * @return the text
+     */
+    @SuppressWarnings("null")
+    protected final String text()
+    {
+        return cursor().getText();
+    }
+
+
+    /* ----------------------------------------------------------------
+     * 
+     * XMLStreamReader callbacks
+     * 
+     * ----------------------------------------------------------------
+     */
+
+    /**
+     * Process a start element
+     * <p>
+     * Its attributes can be read until the next callback.
+     * 
+     * @param name
+     *            the local name of the element
+     */
+    protected abstract void startElement(final String name);
+
+
+    /**
+     * Process an end element
+     * 
+     * @param name
+     *            the local name of the element
+     */
+    protected abstract void endElement(final String name);
+
+
+    /**
+     * Process character data
+     * <p>
+     * Default is to ignore character data. The data can be read through
+     * {@code text()}, or from the cursor without copying.
+     */
+    protected void characters()
+    {
+    }
+
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright 2016 technosf [https://github.com/technosf]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.github.technosf.jwavez.hardware;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.zip.CRC32;
+import java.util.zip.Checksum;
+
+/**
+ * A {@code MessageDigest} over a non-cryptographic {@code Checksum}
+ * <p>
+ * Lets a fast checksum stand in for a cryptographic digest where the digest
+ * is only used to detect change. The digest is the 32-bit checksum value,
+ * big-endian.
+ *
+ * @author technosf
+ * @since 0.0.1
+ * @version 0.0.1
+ */
+public final class ChecksumDigest extends MessageDigest
+{
+
+    /**
+     * The JDK 9+ CRC32C class, loaded reflectively as we build for 1.8
+     */
+    private static final String CRC32C_CLASS = "java.util.zip.CRC32C";
+
+    /**
+     * The checksum
+     */
+    private final Checksum checksum;
+
+
+    /**
+     * @param algorithm
+     *            the name of the checksum
+     * @param checksum
+     *            the checksum
+     */
+    private ChecksumDigest(String algorithm, Checksum checksum)
+    {
+        super(algorithm);
+        this.checksum = checksum;
+    }
+
+
+    /**
+     * Gets a checksum digest
+     *
+     * @param algorithm
+     *            {@code SerializableMap.CRC32_FUNCTION} or
+     *            {@code SerializableMap.CRC32C_FUNCTION}
+     * @return the digest
+     * @throws NoSuchAlgorithmException
+     *             the algorithm is unknown, or is CRC32C on a pre-9 JRE
+     */
+    public static ChecksumDigest getInstance(String algorithm)
+            throws NoSuchAlgorithmException
+    {
+        switch (algorithm) {
+            case SerializableMap.CRC32_FUNCTION:
+                return new ChecksumDigest(algorithm, new CRC32());
+            case SerializableMap.CRC32C_FUNCTION:
+                try
+                {
+                    return new ChecksumDigest(algorithm,
+                            (Checksum) Class.forName(CRC32C_CLASS)
+                                    .getDeclaredConstructor().newInstance());
+                }
+                catch (ReflectiveOperationException e)
+                {
+                    throw new NoSuchAlgorithmException(
+                            "CRC32C requires Java 9 or later", e);
+                }
+            default:
+                throw new NoSuchAlgorithmException(algorithm);
+        }
+    }
+
+
+    /**
+     * Is the algorithm one served by a checksum?
+     *
+     * @param algorithm
+     *            the algorithm name
+     * @return true if this class provides the algorithm
+     */
+    public static boolean isChecksum(String algorithm)
+    {
+        return SerializableMap.CRC32_FUNCTION.equals(algorithm)
+                || SerializableMap.CRC32C_FUNCTION.equals(algorithm);
+    }
+
+
+    @Override
+    protected int engineGetDigestLength()
+    {
+        return 4;
+    }
+
+
+    @Override
+    protected void engineUpdate(byte input)
+    {
+        checksum.update(input);
+    }
+
+
+    @Override
+    protected void engineUpdate(byte[] input, int offset, int len)
+    {
+        checksum.update(input, offset, len);
+    }
+
+
+    @Override
+    protected byte[] engineDigest()
+    {
+        long value = checksum.getValue();
+        checksum.reset();
+        return new byte[] { (byte) (value >>> 24), (byte) (value >>> 16),
+                (byte) (value >>> 8), (byte) value };
+    }
+
+
+    @Override
+    protected void engineReset()
+    {
+        checksum.reset();
+    }
+
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright 2016 technosf [https://github.com/technosf]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.github.technosf.jwavez.hardware;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Encodes and decodes the keys or values of a {@code SerializableMap}
+ * <p>
+ * Codecs write a compact binary form that, unlike Java serialization, does
+ * not depend on the layout of the classes being stored. Values handed to a
+ * codec are never null; the map format records nulls itself.
+ *
+ * @author technosf
+ * @since 0.0.1
+ * @version 0.0.1
+ * @param <T>
+ *            the class encoded
+ */
+public interface Codec<T>
+{
+
+    /**
+     * Writes a value
+     *
+     * @param out
+     *            the output to write to
+     * @param value
+     *            the value to write
+     * @throws IOException
+     */
+    void write(DataOutput out, T value) throws IOException;
+
+
+    /**
+     * Reads a value
+     *
+     * @param in
+     *            the input to read from
+     * @return the value read
+     * @throws IOException
+     */
+    T read(DataInput in) throws IOException;
+
+}
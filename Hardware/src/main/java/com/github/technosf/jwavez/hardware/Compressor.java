@@ -0,0 +1,66 @@
+/*
+ * Copyright 2016 technosf [https://github.com/technosf]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.github.technosf.jwavez.hardware;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Compresses the stored form of a {@code SerializableMap}
+ * <p>
+ * The id of the compressor is recorded in the file, so restore can find the
+ * compressor to decompress it with. Ids 1 to 127 are reserved for the
+ * built-in compressors.
+ *
+ * @author technosf
+ * @since 0.0.1
+ * @version 0.0.1
+ */
+public interface Compressor
+{
+
+    /**
+     * Gets the id recorded in compressed files
+     *
+     * @return the id, 1 to 255
+     */
+    int getId();
+
+
+    /**
+     * Wraps a stream in one that compresses
+     * <p>
+     * Closing the returned stream finishes the compressed data and closes
+     * the underlying stream.
+     *
+     * @param out
+     *            the stream to write the compressed data to
+     * @return the compressing stream
+     * @throws IOException
+     */
+    OutputStream compress(OutputStream out) throws IOException;
+
+
+    /**
+     * Wraps a stream in one that decompresses
+     *
+     * @param in
+     *            the stream to read the compressed data from
+     * @return the decompressing stream
+     * @throws IOException
+     */
+    InputStream decompress(InputStream in) throws IOException;
+
+}
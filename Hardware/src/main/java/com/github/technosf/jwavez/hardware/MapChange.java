@@ -0,0 +1,121 @@
+/*
+ * Copyright 2016 technosf [https://github.com/technosf]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.github.technosf.jwavez.hardware;
+
+import org.eclipse.jdt.annotation.Nullable;
+
+/**
+ * A change to one key of a {@code SerializableMap}, as given to a
+ * {@code MapChangeListener}
+ *
+ * @author technosf
+ * @since 0.0.1
+ * @version 0.0.1
+ * @param <K>
+ *            Key class
+ * @param <V>
+ *            Value class
+ */
+public final class MapChange<K, V>
+{
+
+    private final SerializableMap<K, V> map;
+
+    private final K key;
+
+    @Nullable
+    private final V oldValue;
+
+    @Nullable
+    private final V newValue;
+
+    private final boolean removed;
+
+
+    /**
+     * @param map
+     *            the map changed
+     * @param key
+     *            the key changed
+     * @param oldValue
+     *            the value before the change, null if there was none
+     * @param newValue
+     *            the value after the change, null if removed
+     * @param removed
+     *            true if the key was removed
+     */
+    public MapChange(SerializableMap<K, V> map, K key, @Nullable V oldValue,
+            @Nullable V newValue, boolean removed)
+    {
+        this.map = map;
+        this.key = key;
+        this.oldValue = oldValue;
+        this.newValue = newValue;
+        this.removed = removed;
+    }
+
+
+    /**
+     * @return the map changed
+     */
+    public SerializableMap<K, V> getMap()
+    {
+        return map;
+    }
+
+
+    /**
+     * @return the key changed
+     */
+    public K getKey()
+    {
+        return key;
+    }
+
+
+    /**
+     * @return the value before the change, null if the key was not mapped
+     */
+    public @Nullable V getOldValue()
+    {
+        return oldValue;
+    }
+
+
+    /**
+     * @return the value after the change, null if the key was removed
+     */
+    public @Nullable V getNewValue()
+    {
+        return newValue;
+    }
+
+
+    /**
+     * @return true if the key was removed
+     */
+    public boolean isRemoved()
+    {
+        return removed;
+    }
+
+
+    @Override
+    public String toString()
+    {
+        return (removed ? "remove " : "put ") + key + ": " + oldValue + " -> "
+                + newValue;
+    }
+
+}
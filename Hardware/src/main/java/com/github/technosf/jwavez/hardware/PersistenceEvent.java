@@ -0,0 +1,168 @@
+/*
+ * Copyright 2016 technosf [https://github.com/technosf]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.github.technosf.jwavez.hardware;
+
+import org.eclipse.jdt.annotation.Nullable;
+
+/**
+ * A store, restore or digest of a {@code SerializableMap}, as given to a
+ * {@code PersistenceListener}
+ *
+ * @author technosf
+ * @since 0.0.1
+ * @version 0.0.1
+ */
+public final class PersistenceEvent
+{
+
+    /**
+     * The persistence operations
+     */
+    public enum Operation
+    {
+        STORE, RESTORE, DIGEST
+    }
+
+    private final SerializableMap<?, ?> map;
+
+    private final Operation operation;
+
+    private final long nanos;
+
+    private final long bytes;
+
+    private final int entries;
+
+    private final long dirtyNanos;
+
+    @Nullable
+    private final Exception failure;
+
+
+    /**
+     * @param map
+     *            the map
+     * @param operation
+     *            the operation
+     * @param nanos
+     *            the time the operation took
+     * @param bytes
+     *            the bytes read or written, or -1 if not known
+     * @param entries
+     *            the entries in the map after the operation, or -1 if not
+     *            known
+     * @param dirtyNanos
+     *            the time a stored map had been dirty, or -1 if not known
+     * @param failure
+     *            the exception the operation failed with, or null
+     */
+    public PersistenceEvent(SerializableMap<?, ?> map, Operation operation,
+            long nanos, long bytes, int entries, long dirtyNanos,
+            @Nullable Exception failure)
+    {
+        this.map = map;
+        this.operation = operation;
+        this.nanos = nanos;
+        this.bytes = bytes;
+        this.entries = entries;
+        this.dirtyNanos = dirtyNanos;
+        this.failure = failure;
+    }
+
+
+    /**
+     * @return the map
+     */
+    public SerializableMap<?, ?> getMap()
+    {
+        return map;
+    }
+
+
+    /**
+     * @return the operation
+     */
+    public Operation getOperation()
+    {
+        return operation;
+    }
+
+
+    /**
+     * @return the time the operation took, in nanoseconds
+     */
+    public long getNanos()
+    {
+        return nanos;
+    }
+
+
+    /**
+     * @return the bytes read or written, or -1 if not known
+     */
+    public long getBytes()
+    {
+        return bytes;
+    }
+
+
+    /**
+     * @return the entries in the map after the operation, or -1 if not
+     *         known
+     */
+    public int getEntries()
+    {
+        return entries;
+    }
+
+
+    /**
+     * Gets the time from the map becoming dirty to it being stored
+     *
+     * @return the time in nanoseconds, or -1 if not known or not a store
+     */
+    public long getDirtyNanos()
+    {
+        return dirtyNanos;
+    }
+
+
+    /**
+     * @return the exception the operation failed with, or null if it
+     *         succeeded
+     */
+    public @Nullable Exception getFailure()
+    {
+        return failure;
+    }
+
+
+    /**
+     * @return true if the operation failed
+     */
+    public boolean isFailed()
+    {
+        return failure != null;
+    }
+
+
+    @Override
+    public String toString()
+    {
+        return operation + " " + map.getFile() + " " + nanos + "ns "
+                + bytes + "B " + entries + " entries"
+                + (failure == null ? "" : " failed: " + failure);
+    }
+
+}
@@ -0,0 +1,38 @@
+/*
+ * Copyright 2016 technosf [https://github.com/technosf]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.github.technosf.jwavez.hardware;
+
+/**
+ * Listens for the stores, restores and digests of {@code SerializableMap}s
+ * <p>
+ * Listeners are called on the thread that did the work, once it has
+ * completed or failed, so should return quickly.
+ *
+ * @author technosf
+ * @since 0.0.1
+ * @version 0.0.1
+ */
+@FunctionalInterface
+public interface PersistenceListener
+{
+
+    /**
+     * A map has been stored, restored or digested
+     *
+     * @param event
+     *            the event
+     */
+    void persisted(PersistenceEvent event);
+
+}
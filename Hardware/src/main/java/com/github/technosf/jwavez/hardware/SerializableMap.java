@@ -13,17 +13,27 @@
  */
 package com.github.technosf.jwavez.hardware;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.io.ObjectStreamConstants;
+import java.io.OutputStream;
 import java.io.Serializable;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+import org.eclipse.jdt.annotation.Nullable;
 
 /**
  * A self-serializing {@code Map} that maintains state
@@ -55,6 +65,17 @@ public interface SerializableMap<K, V>
      */
     static final String DIGEST_FUNCTION = "SHA";
 
+    /**
+     * A fast, non-cryptographic CRC32 checksum, for when the digest is only
+     * used to detect change.
+     */
+    static final String CRC32_FUNCTION = "CRC32";
+
+    /**
+     * The CRC32C checksum. Requires a Java 9 or later runtime.
+     */
+    static final String CRC32C_FUNCTION = "CRC32C";
+
 
     /**
      * Gets the file the {@code SerializableMap} is serialized to.
@@ -116,6 +137,53 @@ public interface SerializableMap<K, V>
     void setStoreTimestamp(long timestamp);
 
 
+    /**
+     * Gets the keys changed since the map was last stored or restored
+     * <p>
+     * Optional operation.
+     * 
+     * @return a copy of the changed keys
+     * @throws UnsupportedOperationException
+     *             the map does not track changed keys
+     */
+    default Set<K> getChangedKeys()
+    {
+        throw new UnsupportedOperationException();
+    }
+
+
+    /**
+     * Registers a listener for the changes made to the map
+     * <p>
+     * Optional operation.
+     * 
+     * @param listener
+     *            the listener
+     * @throws UnsupportedOperationException
+     *             the map does not notify listeners
+     */
+    default void addChangeListener(MapChangeListener<K, V> listener)
+    {
+        throw new UnsupportedOperationException();
+    }
+
+
+    /**
+     * Unregisters a change listener
+     * <p>
+     * Optional operation.
+     * 
+     * @param listener
+     *            the listener
+     * @throws UnsupportedOperationException
+     *             the map does not notify listeners
+     */
+    default void removeChangeListener(MapChangeListener<K, V> listener)
+    {
+        throw new UnsupportedOperationException();
+    }
+
+
     /*  ---------------------------------------------------------------
      * 
      * Static functions
@@ -123,6 +191,30 @@ public interface SerializableMap<K, V>
      *  ---------------------------------------------------------------
      */
 
+    /**
+     * Gets a digester for a digest function
+     * <p>
+     * Serves the checksum functions as well as those of the
+     * {@code MessageDigest} providers.
+     * 
+     * @param function
+     *            the digest function, such as {@code DIGEST_FUNCTION} or
+     *            {@code CRC32_FUNCTION}
+     * @return the digester
+     * @throws NoSuchAlgorithmException
+     */
+    @SuppressWarnings("null")
+    static MessageDigest getDigester(String function)
+            throws NoSuchAlgorithmException
+    {
+        if (ChecksumDigest.isChecksum(function))
+        {
+            return ChecksumDigest.getInstance(function);
+        }
+        return MessageDigest.getInstance(function);
+    }
+
+
     /**
      * Generate a digest of a file
      * <p>
@@ -159,6 +251,9 @@ public interface SerializableMap<K, V>
 
     /**
      * A {@code put} that sets the dirty flag
+     * <p>
+     * The map is marked dirty if the key was not mapped, or was mapped to a
+     * value not equal to the one put. An unchanged map is left as it was.
      * 
      * @param map
      *            the {@code SerializableMap} to put the value in
@@ -170,15 +265,15 @@ public interface SerializableMap<K, V>
      */
     static <K, V> V putWithCheck(SerializableMap<K, V> map, K key, V value)
     {
+        int size = map.size();
         V v = map.put(key, value);
 
-        if (v != null)
-        {
-            map.setDirty(v.equals(value));
-        }
-        else if (value != null)
+        if (map.size() != size || !Objects.equals(v, value))
+        /*
+         * Key added or value changed
+         */
         {
-            map.setDirty(value.equals(v));
+            map.setDirty(true);
         }
 
         return v;
@@ -186,7 +281,7 @@ public interface SerializableMap<K, V>
 
 
     /**
-     * Restores a {@code SerializableMap}
+     * Restores a {@code SerializableMap} from its file
      * 
      * @param serializableMap
      *            the {@code SerializableMap} to restore
@@ -197,24 +292,72 @@ public interface SerializableMap<K, V>
      * @throws ClassNotFoundException
      *             The implementation of {@code SerializableMap} was not found
      */
-    @SuppressWarnings("unchecked")
     static <K, V> void restore(
             SerializableMap<K, V> serializableMap)
                     throws FileNotFoundException, IOException,
                     ClassNotFoundException
     {
-        SerializableMap<K, V> map;
-        try (FileInputStream fis =
-                new FileInputStream(serializableMap.getFile()))
+        try (InputStream is = new BufferedInputStream(
+                new FileInputStream(serializableMap.getFile())))
         {
-            try (ObjectInputStream ois = new ObjectInputStream(fis))
+            restore(serializableMap, is);
+        }
+    }
+
+
+    /**
+     * Restores a {@code SerializableMap} from a stream
+     * <p>
+     * Entries are streamed straight into the map, so only one copy of the
+     * map is ever held. Streams holding a whole serialized map, as written by
+     * earlier versions, are restored through a temporary copy.
+     * 
+     * @param serializableMap
+     *            the {@code SerializableMap} to restore
+     * @param inputStream
+     *            the stream to restore from
+     * @throws IOException
+     *             The serialized stream was corrupt
+     * @throws ClassNotFoundException
+     *             A serialized class was not found
+     */
+    @SuppressWarnings("unchecked")
+    static <K, V> void restore(SerializableMap<K, V> serializableMap,
+            InputStream inputStream)
+                    throws IOException, ClassNotFoundException
+    {
+        InputStream is = inputStream.markSupported() ? inputStream
+                : new BufferedInputStream(inputStream);
+        boolean whole = streamType(is) == ObjectStreamConstants.TC_OBJECT;
+        ObjectInputStream ois = new ObjectInputStream(is);
+        long timestamp;
+
+        if (whole)
+        /*
+         * Whole map serialized as one object
+         */
+        {
+            SerializableMap<K, V> map =
+                    (SerializableMap<K, V>) ois.readObject();
+            serializableMap.putAll(map);
+            timestamp = map.getStoreTimestamp();
+        }
+        else
+        /*
+         * Entry stream
+         */
+        {
+            timestamp = ois.readLong();
+            int size = ois.readInt();
+            for (int i = 0; i < size; i++)
             {
-                map = (SerializableMap<K, V>) ois.readObject();
-                serializableMap.putAll(map);
-                serializableMap.setStoreTimestamp(map.getStoreTimestamp());
-                serializableMap.setDirty(false);
+                serializableMap.put((K) ois.readObject(),
+                        (V) ois.readObject());
             }
         }
+
+        serializableMap.setStoreTimestamp(timestamp);
+        serializableMap.setDirty(false);
     }
 
 
@@ -235,12 +378,148 @@ public interface SerializableMap<K, V>
 
         try (FileOutputStream fos =
                 new FileOutputStream(map.getFile());
-                ObjectOutputStream oos = new ObjectOutputStream(fos))
+                BufferedOutputStream bos = new BufferedOutputStream(fos))
         {
-            oos.writeObject(map);
+            writeEntries(bos, map.getStoreTimestamp(), map.entrySet());
         }
 
         map.setDirty(false);
     }
 
+
+    /**
+     * Writes map entries as a Java serialized entry stream
+     * <p>
+     * The stream holds the store timestamp and the entry count, followed by
+     * each key and value. It is read back by {@code restore}.
+     * 
+     * @param outputStream
+     *            the stream to write to
+     * @param timestamp
+     *            the store timestamp
+     * @param entries
+     *            the entries to write
+     * @throws IOException
+     */
+    static <K, V> void writeEntries(OutputStream outputStream,
+            long timestamp, Collection<? extends Map.Entry<K, V>> entries)
+                    throws IOException
+    {
+        ObjectOutputStream oos = new ObjectOutputStream(outputStream);
+        oos.writeLong(timestamp);
+        oos.writeInt(entries.size());
+        for (Map.Entry<K, V> entry : entries)
+        {
+            oos.writeObject(entry.getKey());
+            oos.writeObject(entry.getValue());
+        }
+        oos.flush();
+    }
+
+
+    /**
+     * Reads the entry count of a stored entry stream without restoring it
+     * <p>
+     * Lets implementations pre-size themselves before restoring.
+     * 
+     * @param file
+     *            the file
+     * @return the number of entries, or -1 if not known
+     */
+    static int storedSize(@Nullable File file)
+    {
+        if (file == null || !file.isFile() || file.length() == 0)
+        {
+            return -1;
+        }
+
+        try (InputStream is =
+                new BufferedInputStream(new FileInputStream(file)))
+        {
+            if (streamType(is) != ObjectStreamConstants.TC_BLOCKDATA)
+            /*
+             * Not an entry stream
+             */
+            {
+                return -1;
+            }
+            ObjectInputStream ois = new ObjectInputStream(is);
+            ois.readLong();
+            return ois.readInt();
+        }
+        catch (IOException e)
+        {
+            return -1;
+        }
+    }
+
+
+    /**
+     * Reads the store timestamp of a stored entry stream without restoring it
+     * <p>
+     * Lets a file be checked for change without restoring it.
+     * 
+     * @param file
+     *            the file
+     * @return the timestamp, or -1 if not known
+     */
+    static long storedTimestamp(@Nullable File file)
+    {
+        if (file == null || !file.isFile() || file.length() == 0)
+        {
+            return -1;
+        }
+
+        try (InputStream is =
+                new BufferedInputStream(new FileInputStream(file)))
+        {
+            if (streamType(is) != ObjectStreamConstants.TC_BLOCKDATA)
+            /*
+             * Not an entry stream
+             */
+            {
+                return -1;
+            }
+            return new ObjectInputStream(is).readLong();
+        }
+        catch (IOException e)
+        {
+            return -1;
+        }
+    }
+
+
+    /**
+     * Peeks at the type code of the first element of a Java serialization
+     * stream
+     * 
+     * @param inputStream
+     *            a stream supporting mark
+     * @return the type code, or -1 if not a Java serialization stream
+     * @throws IOException
+     */
+    static int streamType(InputStream inputStream) throws IOException
+    {
+        byte[] header = new byte[5];
+        inputStream.mark(header.length);
+
+        int read = 0, count;
+        while (read < header.length && (count = inputStream.read(header,
+                read, header.length - read)) > 0)
+        {
+            read += count;
+        }
+
+        inputStream.reset();
+
+        int magic = ((header[0] & 0xFF) << 8) | (header[1] & 0xFF);
+        if (read < header.length
+                || magic != (ObjectStreamConstants.STREAM_MAGIC & 0xFFFF))
+        {
+            return -1;
+        }
+
+        return header[4] & 0xFF;
+    }
+
 }
@@ -13,8 +13,6 @@
  */
 package com.github.technosf.jwavez.hardware.beans.base;
 
-import java.util.Set;
-
 import org.eclipse.jdt.annotation.Nullable;
 
 /**
@@ -25,23 +23,47 @@ import org.eclipse.jdt.annotation.Nullable;
 public abstract class AbstractCommandBean extends AbstractNominalBean
 {
 
-    @Nullable
-    private final Set<CommandClass> commandClasses;
+    /*
+     * The command classes either side of any MARK
+     */
+    private final CommandClassSet supportedCommandClasses;
+
+    private final CommandClassSet controlledCommandClasses;
+
+    /*
+     * Both sides of the MARK, the union of the above
+     */
+    private final CommandClassSet allCommandClasses;
 
     @Nullable
     private final CommandClass basic;
 
+    /*
+     * The attributes the command classes were parsed from
+     */
+    @Nullable
+    private final String commandClassesAttribute;
+
+    @Nullable
+    private final String basicAttribute;
+
 
     public AbstractCommandBean(String key, String label,
             @Nullable String commandClasses,
             @Nullable String basic)
     {
         super(key, label);
-        this.commandClasses =
-                CommandClass.extractCommandClasses(commandClasses);
+        this.commandClassesAttribute = commandClasses;
+        this.basicAttribute = basic;
+        this.supportedCommandClasses =
+                CommandClassSet.parseSupported(commandClasses);
+        this.controlledCommandClasses =
+                CommandClassSet.parseControlled(commandClasses);
+        this.allCommandClasses =
+                supportedCommandClasses.union(controlledCommandClasses);
         if (basic != null)
         {
-            this.basic = CommandClass.valueOf(basic);
+            this.basic = CommandClass.parse(basic);
         }
         else
         {
@@ -51,21 +73,62 @@ public abstract class AbstractCommandBean extends AbstractNominalBean
 
 
     /**
-     * @return the commandClasses
+     * @return the supported and controlled command classes, without the
+     *         MARK separating them, empty if the bean has none
      */
-    @Nullable
-    public final Set<CommandClass> getCommandClasses()
+    public final CommandClassSet getCommandClasses()
+    {
+        return allCommandClasses;
+    }
+
+
+    /**
+     * @return the supported command classes, those before any MARK, empty if
+     *         the bean has none
+     */
+    public final CommandClassSet getSupportedCommandClasses()
+    {
+        return supportedCommandClasses;
+    }
+
+
+    /**
+     * @return the controlled command classes, those after a MARK, empty if
+     *         the bean has none
+     */
+    public final CommandClassSet getControlledCommandClasses()
     {
-        return commandClasses;
+        return controlledCommandClasses;
     }
 
 
     /**
-     * @return the basic
+     * @return the basic, or null if the bean has none or its id is
+     *         unassigned
      */
     @Nullable
     public final CommandClass getBasic()
     {
         return basic;
     }
+
+
+    /**
+     * @return the command classes attribute this bean was built from
+     */
+    @Nullable
+    public final String getCommandClassesAttribute()
+    {
+        return commandClassesAttribute;
+    }
+
+
+    /**
+     * @return the basic attribute this bean was built from
+     */
+    @Nullable
+    public final String getBasicAttribute()
+    {
+        return basicAttribute;
+    }
 }
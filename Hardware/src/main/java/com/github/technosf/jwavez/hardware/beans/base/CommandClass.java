@@ -1,11 +1,11 @@
 /*
  * Copyright 2016 technosf [https://github.com/technosf]
- * 
+ *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
  * in compliance with the License. You may obtain a copy of the License at
- * 
+ *
  * http://www.apache.org/licenses/LICENSE-2.0
- * 
+ *
  * Unless required by applicable law or agreed to in writing, software distributed under the License
  * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
  * or implied. See the License for the specific language governing permissions and limitations under
@@ -13,25 +13,223 @@
  */
 package com.github.technosf.jwavez.hardware.beans.base;
 
-import java.util.HashSet;
-import java.util.Set;
-
 import org.eclipse.jdt.annotation.Nullable;
 
 /**
+ * The Z-Wave command classes, by their one byte id
+ * <p>
+ * {@code MARK} separates the command classes a node supports from those it
+ * controls in a node information frame.
+ * 
  * @author technosf
  * @since 0.0.1
  * @version 0.0.1
  */
 public enum CommandClass
 {
-    X5a;
+    NO_OPERATION(0x00),
+    BASIC(0x20),
+    CONTROLLER_REPLICATION(0x21),
+    APPLICATION_STATUS(0x22),
+    ZIP(0x23),
+    SECURITY_PANEL_MODE(0x24),
+    SWITCH_BINARY(0x25),
+    SWITCH_MULTILEVEL(0x26),
+    SWITCH_ALL(0x27),
+    SWITCH_TOGGLE_BINARY(0x28),
+    SWITCH_TOGGLE_MULTILEVEL(0x29),
+    CHIMNEY_FAN(0x2A),
+    SCENE_ACTIVATION(0x2B),
+    SCENE_ACTUATOR_CONF(0x2C),
+    SCENE_CONTROLLER_CONF(0x2D),
+    SECURITY_PANEL_ZONE(0x2E),
+    SECURITY_PANEL_ZONE_SENSOR(0x2F),
+    SENSOR_BINARY(0x30),
+    SENSOR_MULTILEVEL(0x31),
+    METER(0x32),
+    SWITCH_COLOR(0x33),
+    NETWORK_MANAGEMENT_INCLUSION(0x34),
+    METER_PULSE(0x35),
+    BASIC_TARIFF_INFO(0x36),
+    HRV_STATUS(0x37),
+    THERMOSTAT_HEATING(0x38),
+    HRV_CONTROL(0x39),
+    DCP_CONFIG(0x3A),
+    DCP_MONITOR(0x3B),
+    METER_TBL_CONFIG(0x3C),
+    METER_TBL_MONITOR(0x3D),
+    METER_TBL_PUSH(0x3E),
+    PREPAYMENT(0x3F),
+    THERMOSTAT_MODE(0x40),
+    PREPAYMENT_ENCAPSULATION(0x41),
+    THERMOSTAT_OPERATING_STATE(0x42),
+    THERMOSTAT_SETPOINT(0x43),
+    THERMOSTAT_FAN_MODE(0x44),
+    THERMOSTAT_FAN_STATE(0x45),
+    CLIMATE_CONTROL_SCHEDULE(0x46),
+    THERMOSTAT_SETBACK(0x47),
+    RATE_TBL_CONFIG(0x48),
+    RATE_TBL_MONITOR(0x49),
+    TARIFF_CONFIG(0x4A),
+    TARIFF_TBL_MONITOR(0x4B),
+    DOOR_LOCK_LOGGING(0x4C),
+    NETWORK_MANAGEMENT_BASIC(0x4D),
+    SCHEDULE_ENTRY_LOCK(0x4E),
+    ZIP_6LOWPAN(0x4F),
+    BASIC_WINDOW_COVERING(0x50),
+    MTP_WINDOW_COVERING(0x51),
+    NETWORK_MANAGEMENT_PROXY(0x52),
+    SCHEDULE(0x53),
+    NETWORK_MANAGEMENT_PRIMARY(0x54),
+    TRANSPORT_SERVICE(0x55),
+    CRC_16_ENCAP(0x56),
+    APPLICATION_CAPABILITY(0x57),
+    ZIP_ND(0x58),
+    ASSOCIATION_GRP_INFO(0x59),
+    DEVICE_RESET_LOCALLY(0x5A),
+    CENTRAL_SCENE(0x5B),
+    IP_ASSOCIATION(0x5C),
+    ANTITHEFT(0x5D),
+    ZWAVEPLUS_INFO(0x5E),
+    ZIP_GATEWAY(0x5F),
+    MULTI_CHANNEL(0x60),
+    ZIP_PORTAL(0x61),
+    DOOR_LOCK(0x62),
+    USER_CODE(0x63),
+    HUMIDITY_CONTROL_SETPOINT(0x64),
+    DMX(0x65),
+    BARRIER_OPERATOR(0x66),
+    NETWORK_MANAGEMENT_INSTALLATION_MAINTENANCE(0x67),
+    ZIP_NAMING(0x68),
+    MAILBOX(0x69),
+    WINDOW_COVERING(0x6A),
+    IRRIGATION(0x6B),
+    SUPERVISION(0x6C),
+    HUMIDITY_CONTROL_MODE(0x6D),
+    HUMIDITY_CONTROL_OPERATING_STATE(0x6E),
+    ENTRY_CONTROL(0x6F),
+    CONFIGURATION(0x70),
+    NOTIFICATION(0x71),
+    MANUFACTURER_SPECIFIC(0x72),
+    POWERLEVEL(0x73),
+    INCLUSION_CONTROLLER(0x74),
+    PROTECTION(0x75),
+    LOCK(0x76),
+    NODE_NAMING(0x77),
+    NODE_PROVISIONING(0x78),
+    SOUND_SWITCH(0x79),
+    FIRMWARE_UPDATE_MD(0x7A),
+    GROUPING_NAME(0x7B),
+    REMOTE_ASSOCIATION_ACTIVATE(0x7C),
+    REMOTE_ASSOCIATION(0x7D),
+    ANTITHEFT_UNLOCK(0x7E),
+    BATTERY(0x80),
+    CLOCK(0x81),
+    HAIL(0x82),
+    WAKE_UP(0x84),
+    ASSOCIATION(0x85),
+    VERSION(0x86),
+    INDICATOR(0x87),
+    PROPRIETARY(0x88),
+    LANGUAGE(0x89),
+    TIME(0x8A),
+    TIME_PARAMETERS(0x8B),
+    GEOGRAPHIC_LOCATION(0x8C),
+    COMPOSITE(0x8D),
+    MULTI_CHANNEL_ASSOCIATION(0x8E),
+    MULTI_CMD(0x8F),
+    ENERGY_PRODUCTION(0x90),
+    MANUFACTURER_PROPRIETARY(0x91),
+    SCREEN_MD(0x92),
+    SCREEN_ATTRIBUTES(0x93),
+    SIMPLE_AV_CONTROL(0x94),
+    AV_CONTENT_DIRECTORY_MD(0x95),
+    AV_RENDERER_STATUS(0x96),
+    AV_CONTENT_SEARCH_MD(0x97),
+    SECURITY(0x98),
+    AV_TAGGING_MD(0x99),
+    IP_CONFIGURATION(0x9A),
+    ASSOCIATION_COMMAND_CONFIGURATION(0x9B),
+    SENSOR_ALARM(0x9C),
+    SILENCE_ALARM(0x9D),
+    SENSOR_CONFIGURATION(0x9E),
+    SECURITY_2(0x9F),
+    MARK(0xEF),
+    NON_INTEROPERABLE(0xF0);
+
+    /**
+     * The command classes indexed by id, null where an id is unassigned
+     */
+    private static final @Nullable CommandClass[] BY_ID =
+            new CommandClass[256];
+
+    static
+    {
+        for (CommandClass cc : values())
+        {
+            BY_ID[cc.id] = cc;
+        }
+    }
+
+    private final int id;
+
+
+    private CommandClass(int id)
+    {
+        this.id = id;
+    }
+
+
+    /**
+     * @return the command class id, 0 to 255
+     */
+    public int getId()
+    {
+        return id;
+    }
+
+
+    /**
+     * Gets the command class of an id
+     * 
+     * @param id
+     *            the id, of which only the low byte is used
+     * @return the command class, or null if the id is unassigned
+     */
+    public static @Nullable CommandClass byId(int id)
+    {
+        return BY_ID[id & 0xFF];
+    }
+
+
+    /**
+     * Parses a command class attribute, such as {@code 0x25}
+     * 
+     * @param commandClass
+     *            the attribute, a hex id prefixed by {@code 0x} or a decimal
+     *            id
+     * @return the command class, or null if the id is unassigned
+     * @throws IllegalArgumentException
+     *             if the attribute is not a command class id
+     */
+    public static @Nullable CommandClass parse(String commandClass)
+    {
+        return byId(CommandClassSet.parseId(commandClass, 0,
+                commandClass.length()));
+    }
+
 
-    public static Set<CommandClass> extractCommandClasses(
+    /**
+     * Parses a command classes attribute, such as {@code 0x2d,0x72,0x85}
+     * 
+     * @param commandClasses
+     *            the attribute, or null
+     * @return the set of command classes, empty if the attribute is null
+     * @see CommandClassSet#parse(CharSequence)
+     */
+    public static CommandClassSet extractCommandClasses(
             @Nullable String commandClasses)
     {
-        Set<CommandClass> commandClassSet = new HashSet<>();
-        // Handle nulls
-        return commandClassSet;
+        return CommandClassSet.parse(commandClasses);
     }
 }
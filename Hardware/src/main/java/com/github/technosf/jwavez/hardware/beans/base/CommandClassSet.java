@@ -0,0 +1,580 @@
+/*
+ * Copyright 2016 technosf [https://github.com/technosf]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.github.technosf.jwavez.hardware.beans.base;
+
+import java.util.function.IntConsumer;
+
+import org.eclipse.jdt.annotation.Nullable;
+
+/**
+ * An immutable set of command class ids, held as a 256 bit map in four
+ * {@code long}s
+ * <p>
+ * Any id from 0 to 255 may be held, whether or not it has a
+ * {@code CommandClass}. Membership, union and intersection are a few
+ * bitwise operations, and attributes such as {@code 0x2d,0x72,0x85} are
+ * parsed straight into the bits.
+ * 
+ * @author technosf
+ * @since 0.0.1
+ * @version 0.0.1
+ */
+public final class CommandClassSet
+{
+
+    /**
+     * The empty set
+     */
+    public static final CommandClassSet EMPTY =
+            new CommandClassSet(0, 0, 0, 0);
+
+    /**
+     * The id of {@code CommandClass.MARK}
+     */
+    private static final int MARK = 0xEF;
+
+    /*
+     * Ids 0-63, 64-127, 128-191 and 192-255
+     */
+    private final long w0;
+    private final long w1;
+    private final long w2;
+    private final long w3;
+
+
+    private CommandClassSet(long w0, long w1, long w2, long w3)
+    {
+        this.w0 = w0;
+        this.w1 = w1;
+        this.w2 = w2;
+        this.w3 = w3;
+    }
+
+
+    /**
+     * Gets the set of the given bits, sharing the empty set
+     */
+    private static CommandClassSet of(long w0, long w1, long w2, long w3)
+    {
+        if ((w0 | w1 | w2 | w3) == 0)
+        {
+            return EMPTY;
+        }
+        return new CommandClassSet(w0, w1, w2, w3);
+    }
+
+
+    /* ----------------------------------------------------------------
+     * 
+     * Construction
+     * 
+     * ----------------------------------------------------------------
+     */
+
+    /**
+     * Gets the set of the given ids
+     * 
+     * @param ids
+     *            the command class ids, 0 to 255
+     * @return the set
+     * @throws IllegalArgumentException
+     *             if an id is out of range
+     */
+    public static CommandClassSet of(int... ids)
+    {
+        long[] w = new long[4];
+        for (int id : ids)
+        {
+            checkId(id);
+            w[id >>> 6] |= 1L << id;
+        }
+        return of(w[0], w[1], w[2], w[3]);
+    }
+
+
+    /**
+     * Gets the set of the given command classes
+     * 
+     * @param commandClasses
+     *            the command classes
+     * @return the set
+     */
+    public static CommandClassSet of(CommandClass... commandClasses)
+    {
+        long[] w = new long[4];
+        for (CommandClass cc : commandClasses)
+        {
+            w[cc.getId() >>> 6] |= 1L << cc.getId();
+        }
+        return of(w[0], w[1], w[2], w[3]);
+    }
+
+
+    /**
+     * Parses a command classes attribute, such as {@code 0x2d,0x72,0x85}
+     * <p>
+     * Ids are hex, prefixed by {@code 0x}, or decimal, separated by commas
+     * and optional white space.
+     * 
+     * @param commandClasses
+     *            the attribute, or null
+     * @return the set, empty if the attribute is null or blank
+     * @throws IllegalArgumentException
+     *             if an id is malformed or out of range
+     */
+    public static CommandClassSet parse(@Nullable CharSequence commandClasses)
+    {
+        return parse(commandClasses, ALL);
+    }
+
+
+    /**
+     * Parses the supported command classes of an attribute, those before
+     * any {@code MARK}
+     * 
+     * @param commandClasses
+     *            the attribute, or null
+     * @return the set, empty if the attribute is null or blank
+     * @throws IllegalArgumentException
+     *             if an id is malformed or out of range
+     * @see #parse(CharSequence)
+     */
+    public static CommandClassSet parseSupported(
+            @Nullable CharSequence commandClasses)
+    {
+        return parse(commandClasses, SUPPORTED);
+    }
+
+
+    /**
+     * Parses the controlled command classes of an attribute, those after a
+     * {@code MARK}
+     * 
+     * @param commandClasses
+     *            the attribute, or null
+     * @return the set, empty if the attribute is null or has no mark
+     * @throws IllegalArgumentException
+     *             if an id is malformed or out of range
+     * @see #parse(CharSequence)
+     */
+    public static CommandClassSet parseControlled(
+            @Nullable CharSequence commandClasses)
+    {
+        return parse(commandClasses, CONTROLLED);
+    }
+
+    /*
+     * The ids of an attribute to parse
+     */
+    private static final int ALL = 0;
+    private static final int SUPPORTED = 1;
+    private static final int CONTROLLED = 2;
+
+
+    /**
+     * Parses the ids of an attribute
+     */
+    private static CommandClassSet parse(
+            @Nullable CharSequence commandClasses, int part)
+    {
+        if (commandClasses == null)
+        {
+            return EMPTY;
+        }
+
+        long w0 = 0, w1 = 0, w2 = 0, w3 = 0;
+        boolean marked = false;
+        int length = commandClasses.length();
+        int start = 0;
+        while (start < length)
+        {
+            int end = start;
+            while (end < length && commandClasses.charAt(end) != ',')
+            {
+                end++;
+            }
+
+            int id = parseId(commandClasses, start, end);
+            start = end + 1;
+            if (id < 0)
+            {
+                continue;
+            }
+            if (part != ALL)
+            {
+                if (id == MARK)
+                {
+                    marked = true;
+                    continue;
+                }
+                if (marked != (part == CONTROLLED))
+                {
+                    continue;
+                }
+            }
+
+            long bit = 1L << id;
+            switch (id >>> 6) {
+                case 0:
+                    w0 |= bit;
+                    break;
+                case 1:
+                    w1 |= bit;
+                    break;
+                case 2:
+                    w2 |= bit;
+                    break;
+                default:
+                    w3 |= bit;
+                    break;
+            }
+        }
+        return of(w0, w1, w2, w3);
+    }
+
+
+    /**
+     * Parses one id of an attribute, trimming white space
+     * 
+     * @param chars
+     *            the attribute
+     * @param start
+     *            the start of the id
+     * @param end
+     *            the end of the id, exclusive
+     * @return the id, or -1 if the id is blank
+     * @throws IllegalArgumentException
+     *             if the id is malformed or out of range
+     */
+    static int parseId(CharSequence chars, int start, int end)
+    {
+        while (start < end && Character.isWhitespace(chars.charAt(start)))
+        {
+            start++;
+        }
+        while (end > start && Character.isWhitespace(chars.charAt(end - 1)))
+        {
+            end--;
+        }
+        if (start == end)
+        {
+            return -1;
+        }
+
+        int radix = 10;
+        int i = start;
+        if (end - start > 2 && chars.charAt(start) == '0'
+                && (chars.charAt(start + 1) == 'x'
+                        || chars.charAt(start + 1) == 'X'))
+        {
+            radix = 16;
+            i += 2;
+        }
+
+        int id = 0;
+        for (; i < end; i++)
+        {
+            int digit = Character.digit(chars.charAt(i), radix);
+            if (digit < 0)
+            {
+                throw new IllegalArgumentException("Malformed command class: "
+                        + chars.subSequence(start, end));
+            }
+            id = id * radix + digit;
+            if (id > 0xFF)
+            {
+                throw new IllegalArgumentException(
+                        "Command class out of range: "
+                                + chars.subSequence(start, end));
+            }
+        }
+        return id;
+    }
+
+
+    /**
+     * @throws IllegalArgumentException
+     *             if the id is out of range
+     */
+    private static void checkId(int id)
+    {
+        if (id < 0 || id > 0xFF)
+        {
+            throw new IllegalArgumentException(
+                    "Command class out of range: " + id);
+        }
+    }
+
+
+    /* ----------------------------------------------------------------
+     * 
+     * Set operations
+     * 
+     * ----------------------------------------------------------------
+     */
+
+    /**
+     * @param id
+     *            a command class id
+     * @return true if the set holds the id
+     */
+    public boolean contains(int id)
+    {
+        if (id < 0 || id > 0xFF)
+        {
+            return false;
+        }
+        return (word(id >>> 6) & (1L << id)) != 0;
+    }
+
+
+    /**
+     * @param commandClass
+     *            a command class
+     * @return true if the set holds the command class
+     */
+    public boolean contains(CommandClass commandClass)
+    {
+        return contains(commandClass.getId());
+    }
+
+
+    /**
+     * @param other
+     *            another set
+     * @return true if this set holds every id of the other
+     */
+    public boolean containsAll(CommandClassSet other)
+    {
+        return (other.w0 & ~w0) == 0 && (other.w1 & ~w1) == 0
+                && (other.w2 & ~w2) == 0 && (other.w3 & ~w3) == 0;
+    }
+
+
+    /**
+     * @param other
+     *            another set
+     * @return true if the sets share an id
+     */
+    public boolean intersects(CommandClassSet other)
+    {
+        return ((w0 & other.w0) | (w1 & other.w1) | (w2 & other.w2)
+                | (w3 & other.w3)) != 0;
+    }
+
+
+    /**
+     * @param other
+     *            another set
+     * @return the ids of either set
+     */
+    public CommandClassSet union(CommandClassSet other)
+    {
+        if (containsAll(other))
+        {
+            return this;
+        }
+        return of(w0 | other.w0, w1 | other.w1, w2 | other.w2,
+                w3 | other.w3);
+    }
+
+
+    /**
+     * @param other
+     *            another set
+     * @return the ids of both sets
+     */
+    public CommandClassSet intersection(CommandClassSet other)
+    {
+        return of(w0 & other.w0, w1 & other.w1, w2 & other.w2,
+                w3 & other.w3);
+    }
+
+
+    /**
+     * @param other
+     *            another set
+     * @return the ids of this set that are not in the other
+     */
+    public CommandClassSet difference(CommandClassSet other)
+    {
+        return of(w0 & ~other.w0, w1 & ~other.w1, w2 & ~other.w2,
+                w3 & ~other.w3);
+    }
+
+
+    /**
+     * @param id
+     *            a command class id
+     * @return the set with the id added
+     * @throws IllegalArgumentException
+     *             if the id is out of range
+     */
+    public CommandClassSet with(int id)
+    {
+        checkId(id);
+        if (contains(id))
+        {
+            return this;
+        }
+        long bit = 1L << id;
+        switch (id >>> 6) {
+            case 0:
+                return of(w0 | bit, w1, w2, w3);
+            case 1:
+                return of(w0, w1 | bit, w2, w3);
+            case 2:
+                return of(w0, w1, w2 | bit, w3);
+            default:
+                return of(w0, w1, w2, w3 | bit);
+        }
+    }
+
+
+    /**
+     * @return the number of ids in the set
+     */
+    public int size()
+    {
+        return Long.bitCount(w0) + Long.bitCount(w1) + Long.bitCount(w2)
+                + Long.bitCount(w3);
+    }
+
+
+    /**
+     * @return true if the set holds no ids
+     */
+    public boolean isEmpty()
+    {
+        return (w0 | w1 | w2 | w3) == 0;
+    }
+
+
+    /**
+     * Finds the next id in the set, for iterating without allocation
+     * 
+     * @param from
+     *            the id to search from, inclusive
+     * @return the least id of the set at or after {@code from}, or -1 if
+     *         there is none
+     */
+    public int nextId(int from)
+    {
+        if (from < 0)
+        {
+            from = 0;
+        }
+        for (int w = from >>> 6; w < 4; w++)
+        {
+            long bits = word(w);
+            if (w == from >>> 6)
+            {
+                bits &= -1L << from;
+            }
+            if (bits != 0)
+            {
+                return (w << 6) + Long.numberOfTrailingZeros(bits);
+            }
+        }
+        return -1;
+    }
+
+
+    /**
+     * Calls back with each id of the set, in order
+     * 
+     * @param action
+     *            the callback
+     */
+    public void forEach(IntConsumer action)
+    {
+        for (int id = nextId(0); id >= 0; id = nextId(id + 1))
+        {
+            action.accept(id);
+        }
+    }
+
+
+    /**
+     * Gets a word of the bit map
+     */
+    private long word(int index)
+    {
+        switch (index) {
+            case 0:
+                return w0;
+            case 1:
+                return w1;
+            case 2:
+                return w2;
+            default:
+                return w3;
+        }
+    }
+
+
+    /* ----------------------------------------------------------------
+     * 
+     * Object
+     * 
+     * ----------------------------------------------------------------
+     */
+
+    @Override
+    public boolean equals(@Nullable Object obj)
+    {
+        if (this == obj)
+        {
+            return true;
+        }
+        if (!(obj instanceof CommandClassSet))
+        {
+            return false;
+        }
+        CommandClassSet other = (CommandClassSet) obj;
+        return w0 == other.w0 && w1 == other.w1 && w2 == other.w2
+                && w3 == other.w3;
+    }
+
+
+    @Override
+    public int hashCode()
+    {
+        long h = w0 * 31 + w1;
+        h = h * 31 + w2;
+        h = h * 31 + w3;
+        return (int) (h ^ (h >>> 32));
+    }
+
+
+    /**
+     * @return the ids as an attribute, such as {@code 0x2d,0x72,0x85}
+     */
+    @SuppressWarnings("null")
+    @Override
+    public String toString()
+    {
+        StringBuilder sb = new StringBuilder();
+        for (int id = nextId(0); id >= 0; id = nextId(id + 1))
+        {
+            if (sb.length() > 0)
+            {
+                sb.append(',');
+            }
+            sb.append(String.format("0x%02x", id));
+        }
+        return sb.toString();
+    }
+
+}
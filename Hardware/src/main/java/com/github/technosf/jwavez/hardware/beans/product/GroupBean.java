@@ -0,0 +1,58 @@
+/*
+ * Copyright 2016 technosf [https://github.com/technosf]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.github.technosf.jwavez.hardware.beans.product;
+
+import com.github.technosf.jwavez.hardware.beans.base.AbstractNominalBean;
+
+/**
+ * An association group of a product
+ * <p>
+ * The key is the group index.
+ * 
+ * @author technosf
+ * @since 0.0.1
+ * @version 0.0.1
+ */
+public class GroupBean extends AbstractNominalBean
+{
+    private final int index;
+    private final int maxAssociations;
+
+
+    public GroupBean(int index, String label, int maxAssociations)
+    {
+        super(Integer.toString(index), label);
+        this.index = index;
+        this.maxAssociations = maxAssociations;
+    }
+
+
+    /**
+     * @return the group index
+     */
+    public final int getIndex()
+    {
+        return index;
+    }
+
+
+    /**
+     * @return the maximum number of associations in the group
+     */
+    public final int getMaxAssociations()
+    {
+        return maxAssociations;
+    }
+
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright 2016 technosf [https://github.com/technosf]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.github.technosf.jwavez.hardware.beans.product;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A product config file, such as {@code aeotec/sd6.xml}
+ * 
+ * @author technosf
+ * @since 0.0.1
+ * @version 0.0.1
+ */
+public class ProductBean
+{
+    private final String config;
+    private final List<ValueBean> values = new ArrayList<>();
+    private final List<GroupBean> groups = new ArrayList<>();
+
+
+    /**
+     * @param config
+     *            the config path, relative to the config directory
+     */
+    public ProductBean(String config)
+    {
+        this.config = config;
+    }
+
+
+    /**
+     * @return the config path, relative to the config directory
+     */
+    public final String getConfig()
+    {
+        return config;
+    }
+
+
+    /**
+     * @return the values, in file order
+     */
+    @SuppressWarnings("null")
+    public final List<ValueBean> getValues()
+    {
+        return Collections.unmodifiableList(values);
+    }
+
+
+    /**
+     * Gets the values of a command class
+     * 
+     * @param commandClass
+     *            the command class id
+     * @return the values of the command class, in file order
+     */
+    public final List<ValueBean> getValues(int commandClass)
+    {
+        List<ValueBean> ccvalues = new ArrayList<>();
+        for (ValueBean vb : values)
+        {
+            if (vb.getCommandClass() == commandClass)
+            {
+                ccvalues.add(vb);
+            }
+        }
+        return ccvalues;
+    }
+
+
+    /**
+     * @return the association groups, in file order
+     */
+    @SuppressWarnings("null")
+    public final List<GroupBean> getGroups()
+    {
+        return Collections.unmodifiableList(groups);
+    }
+
+
+    public final void add(ValueBean value)
+    {
+        values.add(value);
+    }
+
+
+    public final void add(GroupBean group)
+    {
+        groups.add(group);
+    }
+
+}
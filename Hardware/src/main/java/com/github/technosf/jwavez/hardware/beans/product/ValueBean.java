@@ -0,0 +1,185 @@
+/*
+ * Copyright 2016 technosf [https://github.com/technosf]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.github.technosf.jwavez.hardware.beans.product;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.eclipse.jdt.annotation.Nullable;
+
+import com.github.technosf.jwavez.hardware.beans.base.AbstractNominalBean;
+
+/**
+ * A configurable value of a product, from the {@code Value} element of its
+ * config file
+ * <p>
+ * The key is the value index within its command class.
+ * 
+ * @author technosf
+ * @since 0.0.1
+ * @version 0.0.1
+ */
+public class ValueBean extends AbstractNominalBean
+{
+    private final int commandClass;
+    private final int index;
+    private final String type;
+    private final @Nullable String genre;
+    private final @Nullable String units;
+    private final @Nullable String min;
+    private final @Nullable String max;
+    private final @Nullable String size;
+    private final @Nullable String value;
+    private @Nullable String help;
+    private final Map<String, String> items = new LinkedHashMap<>();
+
+
+    public ValueBean(int commandClass, int index, String type,
+            String label, @Nullable String genre, @Nullable String units,
+            @Nullable String min, @Nullable String max, @Nullable String size,
+            @Nullable String value)
+    {
+        super(Integer.toString(index), label);
+        this.commandClass = commandClass;
+        this.index = index;
+        this.type = type;
+        this.genre = genre;
+        this.units = units;
+        this.min = min;
+        this.max = max;
+        this.size = size;
+        this.value = value;
+    }
+
+
+    /**
+     * @return the command class id
+     */
+    public final int getCommandClass()
+    {
+        return commandClass;
+    }
+
+
+    /**
+     * @return the index
+     */
+    public final int getIndex()
+    {
+        return index;
+    }
+
+
+    /**
+     * @return the type, such as {@code byte} or {@code list}
+     */
+    public final String getType()
+    {
+        return type;
+    }
+
+
+    /**
+     * @return the genre
+     */
+    @Nullable
+    public final String getGenre()
+    {
+        return genre;
+    }
+
+
+    /**
+     * @return the units
+     */
+    @Nullable
+    public final String getUnits()
+    {
+        return units;
+    }
+
+
+    /**
+     * @return the minimum
+     */
+    @Nullable
+    public final String getMin()
+    {
+        return min;
+    }
+
+
+    /**
+     * @return the maximum
+     */
+    @Nullable
+    public final String getMax()
+    {
+        return max;
+    }
+
+
+    /**
+     * @return the size in bytes
+     */
+    @Nullable
+    public final String getSize()
+    {
+        return size;
+    }
+
+
+    /**
+     * @return the default value
+     */
+    @Nullable
+    public final String getValue()
+    {
+        return value;
+    }
+
+
+    /**
+     * @return the help text
+     */
+    @Nullable
+    public final String getHelp()
+    {
+        return help;
+    }
+
+
+    public final void setHelp(@Nullable String help)
+    {
+        this.help = help;
+    }
+
+
+    /**
+     * @return the list items, labels by value, in file order
+     */
+    @SuppressWarnings("null")
+    public final Map<String, String> getItems()
+    {
+        return Collections.unmodifiableMap(items);
+    }
+
+
+    public final void addItem(String value, String label)
+    {
+        items.put(value, label);
+    }
+
+}
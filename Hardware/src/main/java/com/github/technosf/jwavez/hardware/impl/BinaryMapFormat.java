@@ -0,0 +1,356 @@
+/*
+ * Copyright 2016 technosf [https://github.com/technosf]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.github.technosf.jwavez.hardware.impl;
+
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+
+import org.eclipse.jdt.annotation.Nullable;
+
+import com.github.technosf.jwavez.hardware.Codec;
+
+/**
+ * The compact binary format of a {@code SerializableMap} file
+ * <p>
+ * A header of the magic number, the format version, the store timestamp and
+ * the entry count, followed by the entries. Each entry is a flag byte marking
+ * null keys and values, then the key and value as written by their
+ * {@code Codec}s.
+ *
+ * @author technosf
+ * @since 0.0.1
+ * @version 0.0.1
+ */
+public final class BinaryMapFormat
+{
+
+    /**
+     * Magic number, "JWZM"
+     */
+    public static final int MAGIC = 0x4A575A4D;
+
+    /**
+     * Format version
+     */
+    public static final byte VERSION = 1;
+
+    /*
+     * Entry flags
+     */
+    private static final int NULL_KEY = 0x01;
+    private static final int NULL_VALUE = 0x02;
+
+
+    private BinaryMapFormat()
+    {
+    }
+
+
+    /**
+     * The header of a binary map file
+     */
+    public static final class Header
+    {
+        private final int version;
+        private final long timestamp;
+        private final int size;
+
+
+        Header(int version, long timestamp, int size)
+        {
+            this.version = version;
+            this.timestamp = timestamp;
+            this.size = size;
+        }
+
+
+        /**
+         * @return the format version
+         */
+        public int getVersion()
+        {
+            return version;
+        }
+
+
+        /**
+         * @return the store timestamp
+         */
+        public long getTimestamp()
+        {
+            return timestamp;
+        }
+
+
+        /**
+         * @return the number of entries
+         */
+        public int getSize()
+        {
+            return size;
+        }
+    }
+
+
+    /**
+     * Writes a map
+     *
+     * @param out
+     *            the output
+     * @param timestamp
+     *            the store timestamp
+     * @param map
+     *            the map
+     * @param keyCodec
+     *            the key codec
+     * @param valueCodec
+     *            the value codec
+     * @throws IOException
+     */
+    public static <K, V> void write(DataOutput out, long timestamp,
+            Map<K, V> map, Codec<K> keyCodec, Codec<V> valueCodec)
+                    throws IOException
+    {
+        writeHeader(out, timestamp, map.size());
+        for (Map.Entry<K, V> entry : map.entrySet())
+        {
+            writeEntry(out, entry.getKey(), entry.getValue(), keyCodec,
+                    valueCodec);
+        }
+    }
+
+
+    /**
+     * Writes the header
+     *
+     * @param out
+     *            the output
+     * @param timestamp
+     *            the store timestamp
+     * @param size
+     *            the number of entries to follow
+     * @throws IOException
+     */
+    public static void writeHeader(DataOutput out, long timestamp, int size)
+            throws IOException
+    {
+        out.writeInt(MAGIC);
+        out.writeByte(VERSION);
+        out.writeLong(timestamp);
+        out.writeInt(size);
+    }
+
+
+    /**
+     * Writes an entry
+     *
+     * @param out
+     *            the output
+     * @param key
+     *            the key
+     * @param value
+     *            the value
+     * @param keyCodec
+     *            the key codec
+     * @param valueCodec
+     *            the value codec
+     * @throws IOException
+     */
+    public static <K, V> void writeEntry(DataOutput out, @Nullable K key,
+            @Nullable V value, Codec<K> keyCodec, Codec<V> valueCodec)
+                    throws IOException
+    {
+        out.writeByte((key == null ? NULL_KEY : 0)
+                | (value == null ? NULL_VALUE : 0));
+        if (key != null)
+        {
+            keyCodec.write(out, key);
+        }
+        if (value != null)
+        {
+            valueCodec.write(out, value);
+        }
+    }
+
+
+    /**
+     * Reads and checks the header
+     *
+     * @param in
+     *            the input
+     * @return the header
+     * @throws IOException
+     *             not a binary map, or of an unknown version
+     */
+    public static Header readHeader(DataInput in) throws IOException
+    {
+        if (in.readInt() != MAGIC)
+        {
+            throw new IOException("Not a binary map");
+        }
+
+        int version = in.readUnsignedByte();
+        if (version != VERSION)
+        {
+            throw new IOException("Unknown binary map version: " + version);
+        }
+
+        long timestamp = in.readLong();
+        int size = in.readInt();
+        if (size < 0)
+        {
+            throw new IOException("Malformed binary map size: " + size);
+        }
+
+        return new Header(version, timestamp, size);
+    }
+
+
+    /**
+     * Reads entries into a map
+     *
+     * @param in
+     *            the input
+     * @param size
+     *            the number of entries, from the header
+     * @param map
+     *            the map to put the entries in
+     * @param keyCodec
+     *            the key codec
+     * @param valueCodec
+     *            the value codec
+     * @throws IOException
+     */
+    @SuppressWarnings("null")
+    public static <K, V> void readEntries(DataInput in, int size,
+            Map<K, V> map, Codec<K> keyCodec, Codec<V> valueCodec)
+                    throws IOException
+    {
+        for (int i = 0; i < size; i++)
+        {
+            int flags = in.readUnsignedByte();
+            K key = (flags & NULL_KEY) != 0 ? null : keyCodec.read(in);
+            V value = (flags & NULL_VALUE) != 0 ? null : valueCodec.read(in);
+            map.put(key, value);
+        }
+    }
+
+
+    /**
+     * Is the file a binary map?
+     *
+     * @param file
+     *            the file
+     * @return true if the file starts with the binary map magic number
+     * @throws IOException
+     */
+    public static boolean isBinary(File file) throws IOException
+    {
+        try (DataInputStream dis =
+                new DataInputStream(new FileInputStream(file)))
+        {
+            return dis.readInt() == MAGIC;
+        }
+        catch (EOFException e)
+        {
+            return false;
+        }
+    }
+
+
+    /**
+     * Is the stream a binary map?
+     *
+     * @param in
+     *            a stream supporting mark, left unmoved
+     * @return true if the stream starts with the binary map magic number
+     * @throws IOException
+     */
+    public static boolean isBinary(InputStream in) throws IOException
+    {
+        in.mark(4);
+        try
+        {
+            return new DataInputStream(in).readInt() == MAGIC;
+        }
+        catch (EOFException e)
+        {
+            return false;
+        }
+        finally
+        {
+            in.reset();
+        }
+    }
+
+
+    /**
+     * Reads the entry count of a binary map file without restoring it
+     *
+     * @param file
+     *            the file
+     * @return the number of entries, or -1 if not a binary map
+     */
+    public static int storedSize(@Nullable File file)
+    {
+        if (file == null || !file.isFile())
+        {
+            return -1;
+        }
+
+        try (DataInputStream dis =
+                new DataInputStream(new FileInputStream(file)))
+        {
+            return readHeader(dis).getSize();
+        }
+        catch (IOException e)
+        {
+            return -1;
+        }
+    }
+
+
+    /**
+     * Reads the store timestamp of a binary map file without restoring it
+     *
+     * @param file
+     *            the file
+     * @return the timestamp, or -1 if not a binary map
+     */
+    public static long storedTimestamp(@Nullable File file)
+    {
+        if (file == null || !file.isFile())
+        {
+            return -1;
+        }
+
+        try (DataInputStream dis =
+                new DataInputStream(new FileInputStream(file)))
+        {
+            return readHeader(dis).getTimestamp();
+        }
+        catch (IOException e)
+        {
+            return -1;
+        }
+    }
+
+}
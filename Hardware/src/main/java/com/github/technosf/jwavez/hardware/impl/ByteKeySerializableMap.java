@@ -0,0 +1,739 @@
+/*
+ * Copyright 2016 technosf [https://github.com/technosf]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.github.technosf.jwavez.hardware.impl;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.security.NoSuchAlgorithmException;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+
+import org.eclipse.jdt.annotation.Nullable;
+
+import com.github.technosf.jwavez.hardware.MapChangeListener;
+import com.github.technosf.jwavez.hardware.PersistenceEvent.Operation;
+import com.github.technosf.jwavez.hardware.SerializableMap;
+
+/**
+ * A self-serializing map keyed by a byte, such as a Z-Wave node id
+ * <p>
+ * Values are held in an array indexed by the unsigned key, so lookups
+ * neither hash nor allocate. {@code get(int)} and {@code put(int, V)} take
+ * the key as an {@code int} without boxing it, and the {@code Map} methods
+ * take a {@code Byte}. Either way the key is read as an unsigned byte, so
+ * {@code (byte) 0xFF}, -1 and 255 are the same key.
+ * <p>
+ * The keys changed since the last store are kept in a bitmap, so mutations
+ * do not allocate either; changes are only built while there are
+ * {@code MapChangeListener}s to receive them.
+ * <p>
+ * The map is stored as a Java serialized entry stream, like
+ * {@code SerializableHashMap}, and is not thread safe.
+ *
+ * @author technosf
+ * @since 0.0.1
+ * @version 0.0.1
+ * @param <V>
+ *            Value class
+ */
+public class ByteKeySerializableMap<V>
+        extends AbstractMap<Byte, V>
+        implements SerializableMap<Byte, V>
+{
+
+    /**
+     * Version Id
+     */
+    private static final long serialVersionUID = 201601191634L;
+
+    /**
+     * The number of keys
+     */
+    public static final int KEYS = 256;
+
+    /**
+     * The values, indexed by unsigned key
+     */
+    private final Object[] values = new Object[KEYS];
+
+    /**
+     * Bitmap of the keys present
+     */
+    private final long[] present = new long[KEYS / 64];
+
+    private int size;
+
+    /**
+     * The digest of the file, computed as it is stored
+     */
+    @Nullable
+    private transient DigestCache digestCache;
+
+    /**
+     * The {@code File} this map is serialized to.
+     */
+    private File file;
+
+    /**
+     * Keep a time stamp of the last update
+     */
+    private long lastModified = 0l;
+
+    /**
+     * Has the map changed since it was stored?
+     */
+    private transient boolean dirty;
+
+    /**
+     * The {@code System.nanoTime()} the map last became dirty
+     */
+    private transient long dirtySince;
+
+    /**
+     * Bitmap of the keys changed since the last store. Not serialized;
+     * recreated as needed.
+     */
+    @Nullable
+    private transient long[] changed;
+
+    /**
+     * Notifies listeners of changes. Not serialized; created as a listener
+     * is added.
+     */
+    @Nullable
+    private transient ChangeTracker<Byte, V> tracker;
+
+
+    /**
+     * Instantiate a {@code ByteKeySerializableMap} and its file
+     *
+     * @param file
+     *            the file to serialize this map to
+     * @throws ClassNotFoundException
+     * @throws IOException
+     */
+    public ByteKeySerializableMap(@Nullable File file)
+            throws ClassNotFoundException, IOException
+    {
+        super();
+
+        if (file == null || file.getPath().isEmpty() || file.isDirectory()
+                || !file.canWrite())
+        /*
+         * File is not a writable file and is unusable
+         */
+        {
+            throw new IOException("Cannot use file");
+        }
+        else if (!file.exists())
+        /*
+         * File does not exist, so touch it
+         */
+        {
+            file.createNewFile();
+        }
+
+        this.file = file;
+
+        if (file.length() > 0)
+        /*
+         * Non-empty file, so attempt restore
+         */
+        {
+            long start = System.nanoTime();
+            try
+            {
+                SerializableMap.restore(this);
+            }
+            catch (IOException | ClassNotFoundException | RuntimeException e)
+            {
+                PersistenceMetrics.failed(this, Operation.RESTORE, start, e);
+                throw e;
+            }
+            PersistenceMetrics.completed(this, Operation.RESTORE, start,
+                    file.length(), size);
+        }
+    }
+
+
+    /**
+     * Stores the map, digesting the file as it is written
+     *
+     * @throws IOException
+     */
+    @Override
+    public void store() throws IOException
+    {
+        long start = System.nanoTime();
+        long since = isDirty() ? dirtySince : 0;
+        try
+        {
+            storeFile();
+        }
+        catch (IOException | RuntimeException e)
+        {
+            PersistenceMetrics.failed(this, Operation.STORE, start, e);
+            throw e;
+        }
+        PersistenceMetrics.completed(this, Operation.STORE, start,
+                file.length(), size, since);
+    }
+
+
+    /**
+     * Writes the map to its file
+     *
+     * @throws IOException
+     */
+    private void storeFile() throws IOException
+    {
+        lastModified = System.currentTimeMillis();
+        DigestCache cache = digestCache();
+
+        try (FileOutputStream fos = new FileOutputStream(file);
+                BufferedOutputStream bos = new BufferedOutputStream(
+                        cache.digesting(fos)))
+        {
+            SerializableMap.writeEntries(bos, lastModified, entrySet());
+        }
+
+        cache.stored(file);
+        setDirty(false);
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see com.github.technosf.jwavez.hardware.SerializableMap#digest()
+     */
+    @Override
+    public byte[] digest()
+            throws NoSuchAlgorithmException, IOException
+    {
+        return digestCache().digest(this, file, size);
+    }
+
+
+    /* ----------------------------------------------------------------
+     * Primitive accessors
+     * ----------------------------------------------------------------
+     */
+
+    /**
+     * Gets the value of a key
+     *
+     * @param key
+     *            the key, a signed or unsigned byte
+     * @return the value, or null if none
+     */
+    @SuppressWarnings("unchecked")
+    public @Nullable V get(int key)
+    {
+        return (V) values[index(key)];
+    }
+
+
+    /**
+     * Is the key in the map?
+     *
+     * @param key
+     *            the key, a signed or unsigned byte
+     * @return true if the key is present
+     */
+    public boolean containsKey(int key)
+    {
+        int index = index(key);
+        return (present[index >>> 6] & (1l << index)) != 0;
+    }
+
+
+    /**
+     * Puts the value of a key
+     *
+     * @param key
+     *            the key, a signed or unsigned byte
+     * @param value
+     *            the value
+     * @return the prior value, or null if none
+     */
+    @SuppressWarnings("unchecked")
+    public @Nullable V put(int key, @Nullable V value)
+    {
+        int index = index(key);
+        V old = (V) values[index];
+        boolean mapped = (present[index >>> 6] & (1l << index)) != 0;
+
+        if (!mapped)
+        {
+            present[index >>> 6] |= 1l << index;
+            size++;
+        }
+
+        values[index] = value;
+        if (!mapped || !Objects.equals(old, value))
+        {
+            changed(index, mapped, old, true, value);
+        }
+        return old;
+    }
+
+
+    /**
+     * Removes a key
+     *
+     * @param key
+     *            the key, a signed or unsigned byte
+     * @return the prior value, or null if none
+     */
+    @SuppressWarnings("unchecked")
+    public @Nullable V remove(int key)
+    {
+        int index = index(key);
+
+        if ((present[index >>> 6] & (1l << index)) == 0)
+        {
+            return null;
+        }
+
+        V old = (V) values[index];
+        present[index >>> 6] &= ~(1l << index);
+        values[index] = null;
+        size--;
+        changed(index, true, old, false, null);
+        return old;
+    }
+
+
+    /* ----------------------------------------------------------------
+     * Map
+     * ----------------------------------------------------------------
+     */
+
+    @Override
+    public int size()
+    {
+        return size;
+    }
+
+
+    @Override
+    public boolean containsKey(@Nullable Object key)
+    {
+        return key instanceof Byte && containsKey(((Byte) key).intValue());
+    }
+
+
+    @Override
+    public @Nullable V get(@Nullable Object key)
+    {
+        return key instanceof Byte ? get(((Byte) key).intValue()) : null;
+    }
+
+
+    @Override
+    public @Nullable V put(Byte key, @Nullable V value)
+    {
+        return put(key.intValue(), value);
+    }
+
+
+    @Override
+    public @Nullable V remove(@Nullable Object key)
+    {
+        return key instanceof Byte ? remove(((Byte) key).intValue()) : null;
+    }
+
+
+    @Override
+    public void clear()
+    {
+        if (size == 0)
+        {
+            return;
+        }
+
+        /*
+         * Listeners are notified once the map is cleared, so read the
+         * removed entries only if there are any
+         */
+        ChangeTracker<Byte, V> t = tracker;
+        List<Map.Entry<Byte, V>> removed =
+                t != null && t.hasListeners() ? new ArrayList<>(entrySet())
+                        : Collections.emptyList();
+
+        long[] keys = changed();
+        for (int i = 0; i < keys.length; i++)
+        {
+            keys[i] |= present[i];
+        }
+        Arrays.fill(values, null);
+        Arrays.fill(present, 0l);
+        size = 0;
+        setDirty(true);
+
+        for (Map.Entry<Byte, V> entry : removed)
+        {
+            t.notify(entry.getKey(), true, entry.getValue(), false, null);
+        }
+    }
+
+
+    @Override
+    public Set<Map.Entry<Byte, V>> entrySet()
+    {
+        return new AbstractSet<Map.Entry<Byte, V>>()
+        {
+
+            @Override
+            public int size()
+            {
+                return size;
+            }
+
+
+            @Override
+            public void clear()
+            {
+                ByteKeySerializableMap.this.clear();
+            }
+
+
+            @Override
+            public Iterator<Map.Entry<Byte, V>> iterator()
+            {
+                return new EntryIterator();
+            }
+        };
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see com.github.technosf.jwavez.hardware.SerializableMap#getChangedKeys()
+     */
+    @Override
+    public Set<Byte> getChangedKeys()
+    {
+        Set<Byte> keys = new HashSet<>();
+        long[] bits = changed;
+        if (bits != null)
+        {
+            for (int key = 0; key < KEYS; key++)
+            {
+                if ((bits[key >>> 6] & (1l << key)) != 0)
+                {
+                    keys.add((byte) key);
+                }
+            }
+        }
+        return keys;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see com.github.technosf.jwavez.hardware.SerializableMap#addChangeListener(com.github.technosf.jwavez.hardware.MapChangeListener)
+     */
+    @Override
+    public void addChangeListener(MapChangeListener<Byte, V> listener)
+    {
+        tracker().addListener(listener);
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see com.github.technosf.jwavez.hardware.SerializableMap#removeChangeListener(com.github.technosf.jwavez.hardware.MapChangeListener)
+     */
+    @Override
+    public void removeChangeListener(MapChangeListener<Byte, V> listener)
+    {
+        tracker().removeListener(listener);
+    }
+
+
+    /* ----------------------------------------------------------------
+     * Getters and Setters
+     * ----------------------------------------------------------------
+     */
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see com.github.technosf.jwavez.hardware.SerializableMap#isDirty()
+     */
+    @Override
+    public boolean isDirty()
+    {
+        return dirty;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see com.github.technosf.jwavez.hardware.SerializableMap#setDirty(boolean)
+     */
+    @Override
+    public void setDirty(boolean dirty)
+    {
+        if (dirty && !this.dirty)
+        {
+            dirtySince = System.nanoTime();
+        }
+        this.dirty = dirty;
+        long[] bits = changed;
+        if (!dirty && bits != null)
+        /*
+         * In step with the file, so nothing has changed
+         */
+        {
+            Arrays.fill(bits, 0l);
+        }
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see com.github.technosf.jwavez.hardware.SerializableMap#getFile()
+     */
+    @Override
+    public File getFile()
+    {
+        return file;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see com.github.technosf.jwavez.hardware.SerializableMap#getStoreTimestamp()
+     */
+    @Override
+    public long getStoreTimestamp()
+    {
+        return lastModified;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see com.github.technosf.jwavez.hardware.SerializableMap#setStoreTimestamp(long)
+     */
+    @Override
+    public void setStoreTimestamp(long lastModified)
+    {
+        this.lastModified = lastModified;
+    }
+
+
+    /* ----------------------------------------------------------------
+     * Internals
+     * ----------------------------------------------------------------
+     */
+
+    /**
+     * @param key
+     *            the key
+     * @return the array index of the key
+     * @throws IllegalArgumentException
+     *             the key is not a signed or unsigned byte
+     */
+    private static int index(int key)
+    {
+        if (key < Byte.MIN_VALUE || key >= KEYS)
+        {
+            throw new IllegalArgumentException("Key out of range: " + key);
+        }
+        return key & 0xFF;
+    }
+
+
+    /**
+     * Records a change to a key, marks the map dirty and notifies any
+     * listeners
+     *
+     * @param index
+     *            the array index of the key
+     * @param wasMapped
+     *            was the key mapped before the change?
+     * @param oldValue
+     *            the value before the change
+     * @param isMapped
+     *            is the key mapped after the change?
+     * @param newValue
+     *            the value after the change
+     */
+    private void changed(int index, boolean wasMapped, @Nullable V oldValue,
+            boolean isMapped, @Nullable V newValue)
+    {
+        changed()[index >>> 6] |= 1l << index;
+        setDirty(true);
+
+        ChangeTracker<Byte, V> t = tracker;
+        if (t != null)
+        {
+            t.notify(Byte.valueOf((byte) index), wasMapped, oldValue,
+                    isMapped, newValue);
+        }
+    }
+
+
+    /**
+     * @return the bitmap of changed keys, created as we need
+     */
+    private long[] changed()
+    {
+        long[] bits = changed;
+        if (bits == null)
+        {
+            bits = new long[KEYS / 64];
+            changed = bits;
+        }
+        return bits;
+    }
+
+
+    /**
+     * @return the change tracker, created as we need
+     */
+    private ChangeTracker<Byte, V> tracker()
+    {
+        ChangeTracker<Byte, V> t = tracker;
+        if (t == null)
+        {
+            t = new ChangeTracker<>(this);
+            tracker = t;
+        }
+        return t;
+    }
+
+
+    /**
+     * @return the digest cache, created as we need
+     */
+    @SuppressWarnings("null")
+    private DigestCache digestCache()
+    {
+        DigestCache cache = digestCache;
+        if (cache == null)
+        {
+            try
+            {
+                cache = new DigestCache(DIGEST_FUNCTION);
+            }
+            catch (NoSuchAlgorithmException e)
+            {
+                throw new IllegalStateException(e);
+            }
+            digestCache = cache;
+        }
+        return cache;
+    }
+
+
+    /**
+     * Iterates the entries in key order
+     */
+    private final class EntryIterator implements Iterator<Map.Entry<Byte, V>>
+    {
+        private int next = advance(0);
+        private int last = -1;
+
+
+        @Override
+        public boolean hasNext()
+        {
+            return next < KEYS;
+        }
+
+
+        @SuppressWarnings("unchecked")
+        @Override
+        public Map.Entry<Byte, V> next()
+        {
+            if (!hasNext())
+            {
+                throw new NoSuchElementException();
+            }
+
+            final int key = next;
+            last = key;
+            next = advance(key + 1);
+
+            return new AbstractMap.SimpleEntry<Byte, V>((byte) key,
+                    (V) values[key])
+            {
+                private static final long serialVersionUID =
+                        201601191634L;
+
+
+                @Override
+                public V setValue(V value)
+                {
+                    put(key, value);
+                    return super.setValue(value);
+                }
+            };
+        }
+
+
+        @Override
+        public void remove()
+        {
+            if (last < 0)
+            {
+                throw new IllegalStateException();
+            }
+            ByteKeySerializableMap.this.remove(last);
+            last = -1;
+        }
+
+
+        /**
+         * @param from
+         *            the key to start from
+         * @return the next key present
+         */
+        private int advance(int from)
+        {
+            int key = from;
+            while (key < KEYS
+                    && (present[key >>> 6] & (1l << key)) == 0)
+            {
+                key++;
+            }
+            return key;
+        }
+    }
+
+}
@@ -0,0 +1,274 @@
+/*
+ * Copyright 2016 technosf [https://github.com/technosf]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.github.technosf.jwavez.hardware.impl;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclipse.jdt.annotation.Nullable;
+
+import com.github.technosf.jwavez.hardware.MapChange;
+import com.github.technosf.jwavez.hardware.MapChangeListener;
+import com.github.technosf.jwavez.hardware.SerializableMap;
+
+/**
+ * Tracks the keys of a {@code SerializableMap} changed since it was last
+ * stored, and notifies its {@code MapChangeListener}s
+ * <p>
+ * The map reports the state of a key before and after each mutation, and the
+ * tracker decides if it changed. The tracker may be shared by concurrent
+ * writers; listeners are notified on the thread that made the change.
+ * <p>
+ * Each change is stamped with a sequence number, so a map that is written
+ * while it is stored can {@code mark()} the changes its store includes and
+ * forget only those once it is done.
+ *
+ * @author technosf
+ * @since 0.0.1
+ * @version 0.0.1
+ * @param <K>
+ *            Key class
+ * @param <V>
+ *            Value class
+ */
+public final class ChangeTracker<K, V>
+{
+
+    /**
+     * The map tracked
+     */
+    private final SerializableMap<K, V> map;
+
+    /**
+     * Stands in for the null key, which the changed keys cannot hold
+     */
+    private static final Object NULL_KEY = new Object();
+
+    /**
+     * Keys changed since the last store, masked, and the sequence of their
+     * last change
+     */
+    private final Map<Object, Long> changed = new ConcurrentHashMap<>();
+
+    /**
+     * Sequence of the last change
+     */
+    private final AtomicLong sequence = new AtomicLong();
+
+    /**
+     * Listeners, which may be added and removed as they are notified
+     */
+    private final List<MapChangeListener<K, V>> listeners =
+            new CopyOnWriteArrayList<>();
+
+
+    /**
+     * @param map
+     *            the map to track
+     */
+    public ChangeTracker(SerializableMap<K, V> map)
+    {
+        this.map = map;
+    }
+
+
+    /**
+     * Records the mutation of a key, if it changed the key
+     *
+     * @param key
+     *            the key
+     * @param wasMapped
+     *            was the key mapped before the mutation?
+     * @param oldValue
+     *            the value before the mutation
+     * @param isMapped
+     *            is the key mapped after the mutation?
+     * @param newValue
+     *            the value after the mutation
+     * @return true if the key changed
+     */
+    public boolean changed(K key, boolean wasMapped, @Nullable V oldValue,
+            boolean isMapped, @Nullable V newValue)
+    {
+        if (wasMapped ? isMapped && Objects.equals(oldValue, newValue)
+                : !isMapped)
+        /*
+         * Mapped to an equal value, or still not mapped
+         */
+        {
+            return false;
+        }
+
+        changed.put(key == null ? NULL_KEY : key, sequence.incrementAndGet());
+        notify(key, wasMapped, oldValue, isMapped, newValue);
+        return true;
+    }
+
+
+    /**
+     * Notifies the listeners of a change to a key, without recording it
+     * <p>
+     * For maps that record their changed keys themselves. Nothing is
+     * allocated while there are no listeners.
+     *
+     * @param key
+     *            the key
+     * @param wasMapped
+     *            was the key mapped before the mutation?
+     * @param oldValue
+     *            the value before the mutation
+     * @param isMapped
+     *            is the key mapped after the mutation?
+     * @param newValue
+     *            the value after the mutation
+     */
+    public void notify(K key, boolean wasMapped, @Nullable V oldValue,
+            boolean isMapped, @Nullable V newValue)
+    {
+        if (!listeners.isEmpty())
+        {
+            MapChange<K, V> change = new MapChange<>(map, key,
+                    wasMapped ? oldValue : null, isMapped ? newValue : null,
+                    !isMapped);
+            for (MapChangeListener<K, V> listener : listeners)
+            {
+                listener.changed(change);
+            }
+        }
+    }
+
+
+    /**
+     * Records the mutation of a key, reading its state after the mutation
+     * from the map
+     *
+     * @param key
+     *            the key
+     * @param wasMapped
+     *            was the key mapped before the mutation?
+     * @param oldValue
+     *            the value before the mutation
+     * @return true if the key changed
+     */
+    public boolean changed(K key, boolean wasMapped, @Nullable V oldValue)
+    {
+        boolean mapped = map.containsKey(key);
+        return changed(key, wasMapped, oldValue, mapped,
+                mapped ? map.get(key) : null);
+    }
+
+
+    /**
+     * Records the removal of a key
+     *
+     * @param key
+     *            the key
+     * @param oldValue
+     *            the value removed
+     */
+    public void removed(K key, @Nullable V oldValue)
+    {
+        changed(key, true, oldValue, false, null);
+    }
+
+
+    /**
+     * Forgets the changed keys, once the map is in step with its file
+     */
+    public void clear()
+    {
+        changed.clear();
+    }
+
+
+    /**
+     * Marks the changes made so far, ahead of a store
+     *
+     * @return the mark
+     */
+    public long mark()
+    {
+        return sequence.get();
+    }
+
+
+    /**
+     * Forgets the keys changed up to a mark, once they are stored
+     * <p>
+     * Keys changed again since the mark are kept.
+     *
+     * @param mark
+     *            the mark
+     */
+    public void clear(long mark)
+    {
+        changed.values().removeIf(s -> s.longValue() <= mark);
+    }
+
+
+    /**
+     * @return a copy of the keys changed since the last {@code clear()}
+     */
+    @SuppressWarnings("unchecked")
+    public Set<K> getChangedKeys()
+    {
+        Set<K> keys = new HashSet<>();
+        for (Object key : changed.keySet())
+        {
+            keys.add(key == NULL_KEY ? null : (K) key);
+        }
+        return keys;
+    }
+
+
+    /**
+     * Are there listeners to notify?
+     * <p>
+     * Lets a map skip reading the old values of keys it removes in bulk
+     * when no one will see them.
+     *
+     * @return true if there are listeners
+     */
+    public boolean hasListeners()
+    {
+        return !listeners.isEmpty();
+    }
+
+
+    /**
+     * @param listener
+     *            the listener to add
+     */
+    public void addListener(MapChangeListener<K, V> listener)
+    {
+        listeners.add(listener);
+    }
+
+
+    /**
+     * @param listener
+     *            the listener to remove
+     */
+    public void removeListener(MapChangeListener<K, V> listener)
+    {
+        listeners.remove(listener);
+    }
+
+}
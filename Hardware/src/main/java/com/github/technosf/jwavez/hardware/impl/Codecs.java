@@ -0,0 +1,592 @@
+/*
+ * Copyright 2016 technosf [https://github.com/technosf]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.github.technosf.jwavez.hardware.impl;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+
+import org.eclipse.jdt.annotation.Nullable;
+
+import com.github.technosf.jwavez.hardware.Codec;
+import com.github.technosf.jwavez.hardware.beans.device.BasicBean;
+import com.github.technosf.jwavez.hardware.beans.device.DeviceTypeBean;
+import com.github.technosf.jwavez.hardware.beans.device.GenericBean;
+import com.github.technosf.jwavez.hardware.beans.device.NodeTypeBean;
+import com.github.technosf.jwavez.hardware.beans.device.RoleBean;
+import com.github.technosf.jwavez.hardware.beans.device.SpecificBean;
+
+/**
+ * Built-in {@code Codec}s
+ * <p>
+ * Codecs for the boxed primitives, {@code String}s, byte arrays and the
+ * hardware beans, plus the variable-length integer helpers they share.
+ * {@link #serializable()} falls back to Java serialization for classes with
+ * no codec of their own.
+ *
+ * @author technosf
+ * @since 0.0.1
+ * @version 0.0.1
+ */
+public final class Codecs
+{
+
+    private Codecs()
+    {
+    }
+
+    /* ----------------------------------------------------------------
+     * Primitives
+     * ----------------------------------------------------------------
+     */
+
+    public static final Codec<Boolean> BOOLEAN = new Codec<Boolean>()
+    {
+        @Override
+        public void write(DataOutput out, Boolean value) throws IOException
+        {
+            out.writeBoolean(value);
+        }
+
+
+        @SuppressWarnings("null")
+        @Override
+        public Boolean read(DataInput in) throws IOException
+        {
+            return in.readBoolean();
+        }
+    };
+
+    public static final Codec<Byte> BYTE = new Codec<Byte>()
+    {
+        @Override
+        public void write(DataOutput out, Byte value) throws IOException
+        {
+            out.writeByte(value);
+        }
+
+
+        @SuppressWarnings("null")
+        @Override
+        public Byte read(DataInput in) throws IOException
+        {
+            return in.readByte();
+        }
+    };
+
+    public static final Codec<Short> SHORT = new Codec<Short>()
+    {
+        @Override
+        public void write(DataOutput out, Short value) throws IOException
+        {
+            out.writeShort(value);
+        }
+
+
+        @SuppressWarnings("null")
+        @Override
+        public Short read(DataInput in) throws IOException
+        {
+            return in.readShort();
+        }
+    };
+
+    public static final Codec<Character> CHARACTER = new Codec<Character>()
+    {
+        @Override
+        public void write(DataOutput out, Character value) throws IOException
+        {
+            out.writeChar(value);
+        }
+
+
+        @SuppressWarnings("null")
+        @Override
+        public Character read(DataInput in) throws IOException
+        {
+            return in.readChar();
+        }
+    };
+
+    /**
+     * Zig-zag variable-length integers, so small magnitudes take one byte
+     */
+    public static final Codec<Integer> INTEGER = new Codec<Integer>()
+    {
+        @Override
+        public void write(DataOutput out, Integer value) throws IOException
+        {
+            writeVarLong(out, zigzag(value));
+        }
+
+
+        @SuppressWarnings("null")
+        @Override
+        public Integer read(DataInput in) throws IOException
+        {
+            return (int) unzigzag(readVarLong(in));
+        }
+    };
+
+    /**
+     * Zig-zag variable-length longs, so small magnitudes take one byte
+     */
+    public static final Codec<Long> LONG = new Codec<Long>()
+    {
+        @Override
+        public void write(DataOutput out, Long value) throws IOException
+        {
+            writeVarLong(out, zigzag(value));
+        }
+
+
+        @SuppressWarnings("null")
+        @Override
+        public Long read(DataInput in) throws IOException
+        {
+            return unzigzag(readVarLong(in));
+        }
+    };
+
+    public static final Codec<Float> FLOAT = new Codec<Float>()
+    {
+        @Override
+        public void write(DataOutput out, Float value) throws IOException
+        {
+            out.writeFloat(value);
+        }
+
+
+        @SuppressWarnings("null")
+        @Override
+        public Float read(DataInput in) throws IOException
+        {
+            return in.readFloat();
+        }
+    };
+
+    public static final Codec<Double> DOUBLE = new Codec<Double>()
+    {
+        @Override
+        public void write(DataOutput out, Double value) throws IOException
+        {
+            out.writeDouble(value);
+        }
+
+
+        @SuppressWarnings("null")
+        @Override
+        public Double read(DataInput in) throws IOException
+        {
+            return in.readDouble();
+        }
+    };
+
+    /**
+     * UTF-8 strings of any length, prefixed by their byte count
+     */
+    public static final Codec<String> STRING = new Codec<String>()
+    {
+        @Override
+        public void write(DataOutput out, String value) throws IOException
+        {
+            writeString(out, value);
+        }
+
+
+        @SuppressWarnings("null")
+        @Override
+        public String read(DataInput in) throws IOException
+        {
+            return readString(in);
+        }
+    };
+
+    public static final Codec<byte[]> BYTES = new Codec<byte[]>()
+    {
+        @Override
+        public void write(DataOutput out, byte[] value) throws IOException
+        {
+            writeVarLong(out, value.length);
+            out.write(value);
+        }
+
+
+        @Override
+        public byte[] read(DataInput in) throws IOException
+        {
+            byte[] value = new byte[length(in)];
+            in.readFully(value);
+            return value;
+        }
+    };
+
+    /* ----------------------------------------------------------------
+     * Hardware beans
+     * ----------------------------------------------------------------
+     */
+
+    public static final Codec<BasicBean> BASIC_BEAN = new Codec<BasicBean>()
+    {
+        @Override
+        public void write(DataOutput out, BasicBean value) throws IOException
+        {
+            writeString(out, value.getKey());
+            writeString(out, value.getLabel());
+        }
+
+
+        @Override
+        public BasicBean read(DataInput in) throws IOException
+        {
+            return new BasicBean(readString(in), readString(in));
+        }
+    };
+
+    public static final Codec<NodeTypeBean> NODE_TYPE_BEAN =
+            new Codec<NodeTypeBean>()
+            {
+                @Override
+                public void write(DataOutput out, NodeTypeBean value)
+                        throws IOException
+                {
+                    writeString(out, value.getKey());
+                    writeString(out, value.getLabel());
+                }
+
+
+                @Override
+                public NodeTypeBean read(DataInput in) throws IOException
+                {
+                    return new NodeTypeBean(readString(in), readString(in));
+                }
+            };
+
+    public static final Codec<RoleBean> ROLE_BEAN = new Codec<RoleBean>()
+    {
+        @Override
+        public void write(DataOutput out, RoleBean value) throws IOException
+        {
+            writeString(out, value.getKey());
+            writeString(out, value.getLabel());
+            writeNullableString(out, value.getCommandClassesAttribute());
+        }
+
+
+        @SuppressWarnings("null")
+        @Override
+        public RoleBean read(DataInput in) throws IOException
+        {
+            return new RoleBean(readString(in), readString(in),
+                    readNullableString(in));
+        }
+    };
+
+    public static final Codec<DeviceTypeBean> DEVICE_TYPE_BEAN =
+            new Codec<DeviceTypeBean>()
+            {
+                @Override
+                public void write(DataOutput out, DeviceTypeBean value)
+                        throws IOException
+                {
+                    writeString(out, value.getKey());
+                    writeString(out, value.getLabel());
+                    writeNullableString(out,
+                            value.getCommandClassesAttribute());
+                }
+
+
+                @Override
+                public DeviceTypeBean read(DataInput in) throws IOException
+                {
+                    return new DeviceTypeBean(readString(in), readString(in),
+                            readNullableString(in));
+                }
+            };
+
+    public static final Codec<SpecificBean> SPECIFIC_BEAN =
+            new Codec<SpecificBean>()
+            {
+                @Override
+                public void write(DataOutput out, SpecificBean value)
+                        throws IOException
+                {
+                    writeString(out, value.getKey());
+                    writeString(out, value.getLabel());
+                    writeNullableString(out,
+                            value.getCommandClassesAttribute());
+                    writeNullableString(out, value.getBasicAttribute());
+                }
+
+
+                @Override
+                public SpecificBean read(DataInput in) throws IOException
+                {
+                    return new SpecificBean(readString(in), readString(in),
+                            readNullableString(in), readNullableString(in));
+                }
+            };
+
+    /**
+     * Generic beans, along with their specific beans
+     */
+    public static final Codec<GenericBean> GENERIC_BEAN =
+            new Codec<GenericBean>()
+            {
+                @SuppressWarnings("null")
+                @Override
+                public void write(DataOutput out, GenericBean value)
+                        throws IOException
+                {
+                    writeString(out, value.getKey());
+                    writeString(out, value.getLabel());
+                    writeNullableString(out,
+                            value.getCommandClassesAttribute());
+                    writeNullableString(out, value.getBasicAttribute());
+                    writeVarLong(out, value.getElements().size());
+                    for (SpecificBean specific : value.getElements())
+                    {
+                        SPECIFIC_BEAN.write(out, specific);
+                    }
+                }
+
+
+                @Override
+                public GenericBean read(DataInput in) throws IOException
+                {
+                    GenericBean generic = new GenericBean(readString(in),
+                            readString(in), readNullableString(in),
+                            readNullableString(in));
+                    for (int i = length(in); i > 0; i--)
+                    {
+                        generic.add(SPECIFIC_BEAN.read(in));
+                    }
+                    return generic;
+                }
+            };
+
+
+    /* ----------------------------------------------------------------
+     * Fallback
+     * ----------------------------------------------------------------
+     */
+
+    /**
+     * Gets a codec that uses Java serialization for each value
+     * <p>
+     * Use for classes that have no codec of their own. The output is neither
+     * compact nor independent of the class layout.
+     *
+     * @return the codec
+     */
+    public static <T extends Serializable> Codec<T> serializable()
+    {
+        return new Codec<T>()
+        {
+            @Override
+            public void write(DataOutput out, T value) throws IOException
+            {
+                ByteArrayOutputStream baos = new ByteArrayOutputStream();
+                try (ObjectOutputStream oos = new ObjectOutputStream(baos))
+                {
+                    oos.writeObject(value);
+                }
+                BYTES.write(out, baos.toByteArray());
+            }
+
+
+            @SuppressWarnings({ "unchecked", "null" })
+            @Override
+            public T read(DataInput in) throws IOException
+            {
+                try (ObjectInputStream ois = new ObjectInputStream(
+                        new ByteArrayInputStream(BYTES.read(in))))
+                {
+                    return (T) ois.readObject();
+                }
+                catch (ClassNotFoundException e)
+                {
+                    throw new IOException(e);
+                }
+            }
+        };
+    }
+
+
+    /* ----------------------------------------------------------------
+     * Helpers
+     * ----------------------------------------------------------------
+     */
+
+    /**
+     * Writes an unsigned variable-length long, seven bits per byte
+     *
+     * @param out
+     *            the output
+     * @param value
+     *            the value, treated as unsigned
+     * @throws IOException
+     */
+    public static void writeVarLong(DataOutput out, long value)
+            throws IOException
+    {
+        while ((value & ~0x7FL) != 0)
+        {
+            out.writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+
+    /**
+     * Reads an unsigned variable-length long
+     *
+     * @param in
+     *            the input
+     * @return the value
+     * @throws IOException
+     */
+    public static long readVarLong(DataInput in) throws IOException
+    {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7)
+        {
+            byte b = in.readByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0)
+            {
+                return value;
+            }
+        }
+        throw new IOException("Malformed variable-length integer");
+    }
+
+
+    /**
+     * Reads a length, checking it is sane
+     *
+     * @param in
+     *            the input
+     * @return the length
+     * @throws IOException
+     */
+    public static int length(DataInput in) throws IOException
+    {
+        long length = readVarLong(in);
+        if (length < 0 || length > Integer.MAX_VALUE)
+        {
+            throw new IOException("Malformed length: " + length);
+        }
+        return (int) length;
+    }
+
+
+    /**
+     * Writes a string as length-prefixed UTF-8
+     *
+     * @param out
+     *            the output
+     * @param value
+     *            the string
+     * @throws IOException
+     */
+    public static void writeString(DataOutput out, String value)
+            throws IOException
+    {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarLong(out, bytes.length);
+        out.write(bytes);
+    }
+
+
+    /**
+     * Reads a length-prefixed UTF-8 string
+     *
+     * @param in
+     *            the input
+     * @return the string
+     * @throws IOException
+     */
+    public static String readString(DataInput in) throws IOException
+    {
+        byte[] bytes = new byte[length(in)];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+
+    /**
+     * Writes a string that may be null
+     *
+     * @param out
+     *            the output
+     * @param value
+     *            the string, or null
+     * @throws IOException
+     */
+    public static void writeNullableString(DataOutput out,
+            @Nullable String value) throws IOException
+    {
+        out.writeBoolean(value != null);
+        if (value != null)
+        {
+            writeString(out, value);
+        }
+    }
+
+
+    /**
+     * Reads a string that may be null
+     *
+     * @param in
+     *            the input
+     * @return the string, or null
+     * @throws IOException
+     */
+    @Nullable
+    public static String readNullableString(DataInput in) throws IOException
+    {
+        return in.readBoolean() ? readString(in) : null;
+    }
+
+
+    /**
+     * @param value
+     *            a signed value
+     * @return the value zig-zag encoded, so small magnitudes are small
+     */
+    private static long zigzag(long value)
+    {
+        return (value << 1) ^ (value >> 63);
+    }
+
+
+    /**
+     * @param value
+     *            a zig-zag encoded value
+     * @return the signed value
+     */
+    private static long unzigzag(long value)
+    {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+}
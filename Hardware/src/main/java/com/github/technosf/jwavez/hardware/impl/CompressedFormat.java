@@ -0,0 +1,167 @@
+/*
+ * Copyright 2016 technosf [https://github.com/technosf]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.github.technosf.jwavez.hardware.impl;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import org.eclipse.jdt.annotation.Nullable;
+
+import com.github.technosf.jwavez.hardware.Compressor;
+
+/**
+ * The compressed envelope of a {@code SerializableMap} file
+ * <p>
+ * A header of the magic number and the id of the {@code Compressor}, followed
+ * by the compressed map in any of the uncompressed formats.
+ *
+ * @author technosf
+ * @since 0.0.1
+ * @version 0.0.1
+ */
+public final class CompressedFormat
+{
+
+    /**
+     * Magic number, "JWZC"
+     */
+    public static final int MAGIC = 0x4A575A43;
+
+    /**
+     * Header of the magic number and compressor id
+     */
+    private static final int HEADER = 5;
+
+
+    private CompressedFormat()
+    {
+    }
+
+
+    /**
+     * Writes the header and wraps the stream in a compressing one
+     *
+     * @param out
+     *            the stream to the file
+     * @param compressor
+     *            the compressor, or null to leave the stream uncompressed
+     * @return the stream to write the map to
+     * @throws IOException
+     */
+    public static OutputStream compressing(OutputStream out,
+            @Nullable Compressor compressor) throws IOException
+    {
+        if (compressor == null)
+        {
+            return out;
+        }
+
+        out.write(MAGIC >>> 24);
+        out.write(MAGIC >>> 16);
+        out.write(MAGIC >>> 8);
+        out.write(MAGIC);
+        out.write(compressor.getId());
+
+        /*
+         * Compressors work best on large writes
+         */
+        return new BufferedOutputStream(compressor.compress(out));
+    }
+
+
+    /**
+     * Reads the header, if there is one
+     * <p>
+     * The stream is left after the header of a compressed stream, and
+     * unmoved otherwise.
+     *
+     * @param in
+     *            a stream supporting mark
+     * @return the compressor of a compressed stream, or null if the stream is
+     *         not compressed
+     * @throws IOException
+     *             the compressor is not registered
+     */
+    public static @Nullable Compressor readHeader(InputStream in)
+            throws IOException
+    {
+        byte[] header = new byte[HEADER];
+        in.mark(HEADER);
+        int read = 0;
+        while (read < HEADER)
+        {
+            int n = in.read(header, read, HEADER - read);
+            if (n < 0)
+            {
+                break;
+            }
+            read += n;
+        }
+
+        if (read < HEADER || magic(header) != MAGIC)
+        {
+            in.reset();
+            return null;
+        }
+
+        int id = header[4] & 0xFF;
+        Compressor compressor = Compressors.forId(id);
+        if (compressor == null)
+        {
+            throw new IOException("Unknown compressor id: " + id);
+        }
+        return compressor;
+    }
+
+
+    /**
+     * Is the file compressed?
+     *
+     * @param file
+     *            the file
+     * @return true if the file starts with the compressed magic number
+     * @throws IOException
+     */
+    public static boolean isCompressed(File file) throws IOException
+    {
+        try (DataInputStream dis =
+                new DataInputStream(new FileInputStream(file)))
+        {
+            return dis.readInt() == MAGIC;
+        }
+        catch (EOFException e)
+        {
+            return false;
+        }
+    }
+
+
+    /**
+     * @param header
+     *            the header bytes
+     * @return the magic number of the header
+     */
+    private static int magic(byte[] header)
+    {
+        return ((header[0] & 0xFF) << 24) | ((header[1] & 0xFF) << 16)
+                | ((header[2] & 0xFF) << 8) | (header[3] & 0xFF);
+    }
+
+}
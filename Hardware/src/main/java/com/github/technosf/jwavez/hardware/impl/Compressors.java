@@ -0,0 +1,170 @@
+/*
+ * Copyright 2016 technosf [https://github.com/technosf]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.github.technosf.jwavez.hardware.impl;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+import org.eclipse.jdt.annotation.Nullable;
+
+import com.github.technosf.jwavez.hardware.Compressor;
+
+/**
+ * Built-in {@code Compressor}s, and the registry restore finds compressors
+ * in by id
+ *
+ * @author technosf
+ * @since 0.0.1
+ * @version 0.0.1
+ */
+public final class Compressors
+{
+
+    /**
+     * Id of the deflate compressors
+     */
+    public static final int DEFLATE_ID = 1;
+
+    /**
+     * Deflate, favouring speed over size
+     */
+    public static final Compressor DEFLATE = deflate(Deflater.BEST_SPEED);
+
+    /**
+     * Compressors by id
+     */
+    private static final Map<Integer, Compressor> REGISTRY =
+            new ConcurrentHashMap<>();
+
+    static
+    {
+        register(DEFLATE);
+    }
+
+
+    private Compressors()
+    {
+    }
+
+
+    /**
+     * Gets a deflate compressor
+     * <p>
+     * All levels share the deflate id, as the level does not matter to
+     * decompression.
+     *
+     * @param level
+     *            the {@code Deflater} compression level
+     * @return the compressor
+     */
+    public static Compressor deflate(final int level)
+    {
+        return new Compressor()
+        {
+            @Override
+            public int getId()
+            {
+                return DEFLATE_ID;
+            }
+
+
+            @Override
+            public OutputStream compress(OutputStream out)
+            {
+                final Deflater deflater = new Deflater(level);
+                return new DeflaterOutputStream(out, deflater)
+                {
+                    @Override
+                    public void close() throws IOException
+                    {
+                        try
+                        {
+                            super.close();
+                        }
+                        finally
+                        /*
+                         * We supplied the deflater, so must end it
+                         */
+                        {
+                            deflater.end();
+                        }
+                    }
+                };
+            }
+
+
+            @Override
+            public InputStream decompress(InputStream in)
+            {
+                final Inflater inflater = new Inflater();
+                return new InflaterInputStream(in, inflater)
+                {
+                    @Override
+                    public void close() throws IOException
+                    {
+                        try
+                        {
+                            super.close();
+                        }
+                        finally
+                        {
+                            inflater.end();
+                        }
+                    }
+                };
+            }
+        };
+    }
+
+
+    /**
+     * Registers a compressor, so files it compressed can be restored
+     *
+     * @param compressor
+     *            the compressor
+     * @throws IllegalArgumentException
+     *             the id is out of range
+     */
+    public static void register(Compressor compressor)
+    {
+        int id = compressor.getId();
+        if (id < 1 || id > 255)
+        {
+            throw new IllegalArgumentException("Compressor id out of range: "
+                    + id);
+        }
+        REGISTRY.put(id, compressor);
+    }
+
+
+    /**
+     * Gets a registered compressor
+     *
+     * @param id
+     *            the compressor id
+     * @return the compressor, or null if none is registered with the id
+     */
+    public static @Nullable Compressor forId(int id)
+    {
+        return REGISTRY.get(id);
+    }
+
+}
@@ -0,0 +1,685 @@
+/*
+ * Copyright 2016 technosf [https://github.com/technosf]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.github.technosf.jwavez.hardware.impl;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+import org.eclipse.jdt.annotation.Nullable;
+
+import com.github.technosf.jwavez.hardware.MapChangeListener;
+import com.github.technosf.jwavez.hardware.PersistenceEvent.Operation;
+import com.github.technosf.jwavez.hardware.SerializableMap;
+
+/**
+ * A self-serializing {@code ConcurrentHashMap} that maintains state
+ * <p>
+ * Reads are lock-free and writes lock only their own bin, as for
+ * {@code ConcurrentHashMap}; {@code store()} takes no lock that writers
+ * contend on. It copies a weakly consistent snapshot of the entries, in which
+ * each entry is as it was at some point during the copy, and writes that to
+ * the file while writers carry on.
+ * <p>
+ * The map is dirty while there are modifications that have not been stored.
+ * Modifications are counted once made, and {@code store()} reads the count
+ * before it copies the entries, so a modification that may have been missed
+ * by the snapshot leaves the map dirty.
+ * <p>
+ * Removals through the iterators of the {@code keySet()}, {@code values()}
+ * and {@code entrySet()} views are not tracked; call {@code setDirty(true)}
+ * after removing entries that way.
+ *
+ * @author technosf
+ * @since 0.0.1
+ * @version 0.0.1
+ * @param <K>
+ *            Key class
+ * @param <V>
+ *            Value class
+ */
+public class ConcurrentSerializableMap<K, V>
+        extends ConcurrentHashMap<K, V>
+        implements SerializableMap<K, V>
+{
+
+    /**
+     * Version Id
+     */
+    private static final long serialVersionUID = 201601191634L;
+
+    /**
+     * Count of modifications. Also the monitor that serializes stores, which
+     * share the file and its digest; a plain {@code Object} lock would stop
+     * the map being serialized.
+     */
+    private final AtomicLong modifications = new AtomicLong();
+
+    /**
+     * The {@code File} this Map serialize to.
+     */
+    private final File file;
+
+    /**
+     * Count of modifications at the last store
+     */
+    private volatile long storedModifications;
+
+    /**
+     * The {@code System.nanoTime()} the map last became dirty
+     */
+    private transient volatile long dirtySince;
+
+    /**
+     * Keep a time stamp of the last update
+     */
+    private volatile long lastModified = 0l;
+
+    /**
+     * Tracks the keys changed since the last store, and notifies listeners
+     */
+    @Nullable
+    private transient volatile ChangeTracker<K, V> tracker;
+
+    /**
+     * The digest of the file, computed as the map is stored
+     */
+    @Nullable
+    private transient volatile DigestCache digestCache;
+
+
+    /**
+     * Instantiate a {@code ConcurrentSerializableMap} and it file
+     *
+     * @param file
+     *            the file to serialize this map to
+     * @throws ClassNotFoundException
+     * @throws IOException
+     */
+    public ConcurrentSerializableMap(@Nullable File file)
+            throws ClassNotFoundException, IOException
+    {
+        this(file, RestoreStream.open(file));
+    }
+
+
+    /**
+     * Instantiate a {@code ConcurrentSerializableMap} sized for and restored
+     * from its opened file
+     *
+     * @param file
+     *            the file to serialize this map to
+     * @param stored
+     *            the file opened for restore
+     * @throws ClassNotFoundException
+     * @throws IOException
+     */
+    private ConcurrentSerializableMap(@Nullable File file,
+            RestoreStream stored) throws ClassNotFoundException, IOException
+    {
+        super(Math.max(16, stored.getSizeHint()));
+
+        try (RestoreStream s = stored)
+        {
+            if (file == null || file.getPath().isEmpty()
+                    || file.isDirectory() || !file.canWrite())
+            /*
+             * File is not a writable file and is unusable
+             */
+            {
+                throw new IOException("Cannot use file");
+            }
+            else if (!file.exists())
+            /*
+             * File does not exist, so touch it
+             */
+            {
+                file.createNewFile();
+            }
+
+            /*
+             * The file exists, so set it in place and read it
+             */
+            this.file = file;
+            if (file.length() > 0)
+            /*
+             * Non-empty file, so attempt restore
+             */
+            {
+                long start = System.nanoTime();
+                try
+                {
+                    SerializableMap.restore(this, s.getStream());
+                }
+                catch (IOException | ClassNotFoundException
+                        | RuntimeException e)
+                {
+                    PersistenceMetrics.failed(this, Operation.RESTORE, start,
+                            e);
+                    throw e;
+                }
+                PersistenceMetrics.completed(this, Operation.RESTORE, start,
+                        file.length(), size());
+            }
+        }
+    }
+
+
+    /**
+     * Stores a weakly consistent snapshot of the map
+     * <p>
+     * Writers are not held off. The file is digested as it is written.
+     *
+     * @throws IOException
+     */
+    @Override
+    public void store() throws IOException
+    {
+        synchronized (modifications)
+        {
+            long start = System.nanoTime();
+            long since = isDirty() ? dirtySince : 0;
+            int entries;
+            try
+            {
+                entries = storeSnapshot();
+            }
+            catch (IOException | RuntimeException e)
+            {
+                PersistenceMetrics.failed(this, Operation.STORE, start, e);
+                throw e;
+            }
+            PersistenceMetrics.completed(this, Operation.STORE, start,
+                    file.length(), entries, since);
+        }
+    }
+
+
+    /**
+     * Snapshots the map and writes the snapshot to the file
+     *
+     * @return the number of entries written
+     * @throws IOException
+     */
+    private int storeSnapshot() throws IOException
+    {
+        /*
+         * Count first: every modification counted by now is complete, and so
+         * is in the snapshot copied after
+         */
+        long mark = tracker().mark();
+        long snapshotModifications = modifications.get();
+        List<Map.Entry<K, V>> snapshot = new ArrayList<>(entrySet());
+
+        long timestamp = System.currentTimeMillis();
+        DigestCache cache = digestCache();
+
+        try (FileOutputStream fos = new FileOutputStream(file);
+                BufferedOutputStream bos = new BufferedOutputStream(
+                        cache.digesting(fos)))
+        {
+            SerializableMap.writeEntries(bos, timestamp, snapshot);
+        }
+
+        cache.stored(file);
+        lastModified = timestamp;
+        storedModifications = snapshotModifications;
+        tracker().clear(mark);
+        return snapshot.size();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The digest made by the last {@code store()} is returned unless the file
+     * has since changed on disk.
+     *
+     * @see com.github.technosf.jwavez.hardware.SerializableMap#digest()
+     */
+    @Override
+    public byte[] digest()
+            throws NoSuchAlgorithmException, IOException
+    {
+        synchronized (modifications)
+        {
+            return digestCache().digest(this, file, size());
+        }
+    }
+
+
+    /**
+     * Sets the digest function
+     * <p>
+     * A checksum such as {@code CRC32_FUNCTION} is much cheaper than the
+     * default {@code DIGEST_FUNCTION} where the digest is only used to detect
+     * change.
+     *
+     * @param digestFunction
+     *            the digest function
+     * @throws NoSuchAlgorithmException
+     *             the function is not available
+     */
+    public void setDigestFunction(String digestFunction)
+            throws NoSuchAlgorithmException
+    {
+        digestCache = new DigestCache(digestFunction);
+    }
+
+
+    /* ----------------------------------------------------------------
+     * Mutators - track the keys they change, and count modifications once
+     * made
+     * ----------------------------------------------------------------
+     */
+
+    @Override
+    public V put(K key, V value)
+    {
+        V old = super.put(key, value);
+        changed(key, old, value);
+        return old;
+    }
+
+
+    @Override
+    public void putAll(Map<? extends K, ? extends V> m)
+    {
+        for (Map.Entry<? extends K, ? extends V> entry : m.entrySet())
+        {
+            put(entry.getKey(), entry.getValue());
+        }
+    }
+
+
+    @Override
+    public V putIfAbsent(K key, V value)
+    {
+        V old = super.putIfAbsent(key, value);
+        if (old == null)
+        {
+            changed(key, null, value);
+        }
+        return old;
+    }
+
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public V remove(Object key)
+    {
+        V old = super.remove(key);
+        if (old != null)
+        {
+            changed((K) key, old, null);
+        }
+        return old;
+    }
+
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public boolean remove(Object key, Object value)
+    {
+        if (super.remove(key, value))
+        {
+            changed((K) key, (V) value, null);
+            return true;
+        }
+        return false;
+    }
+
+
+    @Override
+    public boolean replace(K key, V oldValue, V newValue)
+    {
+        if (super.replace(key, oldValue, newValue))
+        {
+            changed(key, oldValue, newValue);
+            return true;
+        }
+        return false;
+    }
+
+
+    @Override
+    public V replace(K key, V value)
+    {
+        V old = super.replace(key, value);
+        if (old != null)
+        {
+            changed(key, old, value);
+        }
+        return old;
+    }
+
+
+    @Override
+    public V computeIfAbsent(K key,
+            Function<? super K, ? extends V> mappingFunction)
+    {
+        Previous<V> previous = new Previous<>();
+        V value = super.computeIfAbsent(key, k -> {
+            previous.called = true;
+            return mappingFunction.apply(k);
+        });
+        if (previous.called)
+        {
+            changed(key, null, value);
+        }
+        return value;
+    }
+
+
+    @Override
+    public V computeIfPresent(K key,
+            BiFunction<? super K, ? super V, ? extends V> remappingFunction)
+    {
+        Previous<V> previous = new Previous<>();
+        V value = super.computeIfPresent(key,
+                (k, v) -> remappingFunction.apply(k, previous.record(v)));
+        if (previous.called)
+        {
+            changed(key, previous.value, value);
+        }
+        return value;
+    }
+
+
+    @Override
+    public V compute(K key,
+            BiFunction<? super K, ? super V, ? extends V> remappingFunction)
+    {
+        Previous<V> previous = new Previous<>();
+        V value = super.compute(key,
+                (k, v) -> remappingFunction.apply(k, previous.record(v)));
+        changed(key, previous.value, value);
+        return value;
+    }
+
+
+    @Override
+    public V merge(K key, V value,
+            BiFunction<? super V, ? super V, ? extends V> remappingFunction)
+    {
+        Previous<V> previous = new Previous<>();
+        V merged = super.merge(key, value,
+                (o, v) -> remappingFunction.apply(previous.record(o), v));
+        changed(key, previous.value, merged);
+        return merged;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Each entry is replaced atomically, as by {@code computeIfPresent}.
+     */
+    @Override
+    public void replaceAll(
+            BiFunction<? super K, ? super V, ? extends V> function)
+    {
+        for (K key : keySet())
+        {
+            computeIfPresent(key, (k, v) -> Objects
+                    .requireNonNull(function.apply(k, v)));
+        }
+    }
+
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Each entry is removed atomically, as by {@code remove}.
+     */
+    @Override
+    public void clear()
+    {
+        for (K key : keySet())
+        {
+            remove(key);
+        }
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see com.github.technosf.jwavez.hardware.SerializableMap#getChangedKeys()
+     */
+    @Override
+    public Set<K> getChangedKeys()
+    {
+        return tracker().getChangedKeys();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see com.github.technosf.jwavez.hardware.SerializableMap#addChangeListener(com.github.technosf.jwavez.hardware.MapChangeListener)
+     */
+    @Override
+    public void addChangeListener(MapChangeListener<K, V> listener)
+    {
+        tracker().addListener(listener);
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see com.github.technosf.jwavez.hardware.SerializableMap#removeChangeListener(com.github.technosf.jwavez.hardware.MapChangeListener)
+     */
+    @Override
+    public void removeChangeListener(MapChangeListener<K, V> listener)
+    {
+        tracker().removeListener(listener);
+    }
+
+
+    /* ----------------------------------------------------------------
+     * Getters and Setters
+     * ----------------------------------------------------------------
+     */
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see com.github.technosf.jwavez.hardware.SerializableMap#isDirty()
+     */
+    @Override
+    public boolean isDirty()
+    {
+        return modifications.get() != storedModifications;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see com.github.technosf.jwavez.hardware.SerializableMap#setDirty(boolean)
+     */
+    @Override
+    public void setDirty(boolean dirty)
+    {
+        if (dirty)
+        {
+            modified();
+        }
+        else
+        {
+            storedModifications = modifications.get();
+            tracker().clear();
+        }
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see com.github.technosf.jwavez.hardware.SerializableMap#getFile()
+     */
+    @Override
+    public File getFile()
+    {
+        return file;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see com.github.technosf.jwavez.hardware.SerializableMap#getStoreTimestamp()
+     */
+    @Override
+    public long getStoreTimestamp()
+    {
+        return lastModified;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see com.github.technosf.jwavez.hardware.SerializableMap#setStoreTimestamp(long)
+     */
+    @Override
+    public void setStoreTimestamp(long lastModified)
+    {
+        this.lastModified = lastModified;
+    }
+
+
+    /* ----------------------------------------------------------------
+     * Internals
+     * ----------------------------------------------------------------
+     */
+
+    /**
+     * Records the mutation of a key, counting a modification if it changed
+     * the key. The map holds no nulls, so null is unmapped.
+     *
+     * @param key
+     *            the key
+     * @param oldValue
+     *            the value before the mutation
+     * @param newValue
+     *            the value after the mutation
+     */
+    private void changed(K key, @Nullable V oldValue, @Nullable V newValue)
+    {
+        if (tracker().changed(key, oldValue != null, oldValue,
+                newValue != null, newValue))
+        {
+            modified();
+        }
+    }
+
+
+    /**
+     * @return the change tracker, created as we need
+     */
+    @SuppressWarnings("null")
+    private ChangeTracker<K, V> tracker()
+    {
+        ChangeTracker<K, V> t = tracker;
+        if (t == null)
+        /*
+         * Transient, so may not exist after deserialization
+         */
+        {
+            synchronized (modifications)
+            {
+                t = tracker;
+                if (t == null)
+                {
+                    t = new ChangeTracker<>(this);
+                    tracker = t;
+                }
+            }
+        }
+        return t;
+    }
+
+
+    /**
+     * Counts a modification, once made, noting when the map became dirty
+     */
+    private void modified()
+    {
+        if (modifications.incrementAndGet() == storedModifications + 1)
+        {
+            dirtySince = System.nanoTime();
+        }
+    }
+
+
+    /**
+     * @return the digest cache, created as we need
+     */
+    @SuppressWarnings("null")
+    private DigestCache digestCache()
+    {
+        DigestCache cache = digestCache;
+        if (cache == null)
+        {
+            try
+            {
+                cache = new DigestCache(DIGEST_FUNCTION);
+            }
+            catch (NoSuchAlgorithmException e)
+            {
+                throw new IllegalStateException(e);
+            }
+            digestCache = cache;
+        }
+        return cache;
+    }
+
+
+
+    /**
+     * Records the value a remapping function was called with, which is the
+     * value the key had before the mutation
+     */
+    private static final class Previous<V>
+    {
+        @Nullable
+        V value;
+
+        boolean called;
+
+
+        @Nullable
+        V record(@Nullable V previous)
+        {
+            value = previous;
+            called = true;
+            return previous;
+        }
+    }
+
+}
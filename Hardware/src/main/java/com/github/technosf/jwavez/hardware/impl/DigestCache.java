@@ -0,0 +1,217 @@
+/*
+ * Copyright 2016 technosf [https://github.com/technosf]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.github.technosf.jwavez.hardware.impl;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Objects;
+
+import org.eclipse.jdt.annotation.Nullable;
+
+import com.github.technosf.jwavez.hardware.PersistenceEvent.Operation;
+import com.github.technosf.jwavez.hardware.SerializableMap;
+
+/**
+ * Caches the digest of a {@code SerializableMap} file
+ * <p>
+ * The digest is computed inline as the map is stored, and kept along with the
+ * file's size, modification time and identity as of that store. It is only
+ * recomputed from the file when those show the file changed on disk.
+ *
+ * @author technosf
+ * @since 0.0.1
+ * @version 0.0.1
+ */
+final class DigestCache
+{
+
+    /**
+     * The digest function
+     */
+    private final String function;
+
+    /**
+     * The digester
+     */
+    private final MessageDigest md;
+
+    /**
+     * The cached digest
+     */
+    @Nullable
+    private byte[] digest;
+
+    /**
+     * The file attributes when the digest was cached
+     */
+    @Nullable
+    private Object fileKey;
+    @Nullable
+    private FileTime fileModified;
+    private long fileSize = -1;
+
+
+    /**
+     * @param function
+     *            the digest function
+     * @throws NoSuchAlgorithmException
+     */
+    DigestCache(String function) throws NoSuchAlgorithmException
+    {
+        this.function = function;
+        this.md = SerializableMap.getDigester(function);
+    }
+
+
+    /**
+     * @return the digest function
+     */
+    String getFunction()
+    {
+        return function;
+    }
+
+
+    /**
+     * Wraps the stream a map is being stored through, digesting as it goes
+     *
+     * @param out
+     *            the stream to the map file
+     * @return the digesting stream
+     */
+    synchronized OutputStream digesting(OutputStream out)
+    {
+        md.reset();
+        digest = null;
+        return new DigestOutputStream(out, md);
+    }
+
+
+    /**
+     * Caches the digest made while storing
+     *
+     * @param file
+     *            the file stored to
+     * @throws IOException
+     */
+    synchronized void stored(File file) throws IOException
+    {
+        digest = md.digest();
+        attributes(file);
+    }
+
+
+    /**
+     * Gets the digest of the file, from the cache if the file is unchanged
+     * <p>
+     * The digest is reported to {@code PersistenceMetrics}, with the bytes
+     * read if it was not cached.
+     *
+     * @param map
+     *            the map the file is of
+     * @param file
+     *            the file
+     * @param entries
+     *            the entries in the map, as counted by the map
+     * @return the digest
+     * @throws IOException
+     */
+    @SuppressWarnings("null")
+    synchronized byte[] digest(SerializableMap<?, ?> map, File file,
+            int entries) throws IOException
+    {
+        long start = System.nanoTime();
+        long bytes = 0;
+        byte[] cached = digest;
+
+        try
+        {
+            if (cached == null || changed(file))
+            /*
+             * Not cached, or the file was changed behind our back
+             */
+            {
+                bytes = file.length();
+                digest = null;
+                /*
+                 * Drop any state left in the digester by a failed store or
+                 * digest
+                 */
+                md.reset();
+                cached = SerializableMap.generateDigest(md, file);
+                digest = cached;
+                attributes(file);
+            }
+        }
+        catch (IOException | RuntimeException e)
+        {
+            PersistenceMetrics.failed(map, Operation.DIGEST, start, e);
+            throw e;
+        }
+
+        PersistenceMetrics.completed(map, Operation.DIGEST, start, bytes,
+                entries);
+        return cached.clone();
+    }
+
+
+    /**
+     * Has the file changed since the digest was cached?
+     *
+     * @param file
+     *            the file
+     * @return true if the file changed
+     * @throws IOException
+     */
+    private boolean changed(File file) throws IOException
+    {
+        if (!file.exists())
+        {
+            return true;
+        }
+
+        BasicFileAttributes attributes = Files.readAttributes(file.toPath(),
+                BasicFileAttributes.class);
+
+        return attributes.size() != fileSize
+                || !attributes.lastModifiedTime().equals(fileModified)
+                || !Objects.equals(attributes.fileKey(), fileKey);
+    }
+
+
+    /**
+     * Records the attributes of the digested file
+     *
+     * @param file
+     *            the file
+     * @throws IOException
+     */
+    private void attributes(File file) throws IOException
+    {
+        BasicFileAttributes attributes = Files.readAttributes(file.toPath(),
+                BasicFileAttributes.class);
+
+        fileSize = attributes.size();
+        fileModified = attributes.lastModifiedTime();
+        fileKey = attributes.fileKey();
+    }
+
+}
@@ -0,0 +1,661 @@
+/*
+ * Copyright 2016 technosf [https://github.com/technosf]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.github.technosf.jwavez.hardware.impl;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.NoSuchAlgorithmException;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+import org.eclipse.jdt.annotation.Nullable;
+
+import com.github.technosf.jwavez.hardware.PersistenceEvent.Operation;
+import com.github.technosf.jwavez.hardware.SerializableMap;
+
+/**
+ * A self-serializing {@code HashMap} that keeps its last few stores as
+ * checksummed generations
+ * <p>
+ * {@code store()} never overwrites the map file in place. It writes a new
+ * generation to a sibling <em>.new</em> file, shifts the current file to
+ * <em>.1</em>, <em>.1</em> to <em>.2</em> and so on, and renames the new
+ * generation over the map file. Each generation ends with a trailer holding
+ * the CRC of its entries. Restore takes the newest generation whose CRC
+ * checks out, so a crash mid-store falls back a generation rather than
+ * leaving an unreadable map; older generations are only read if the newer
+ * ones are damaged. {@code rollback()} drops the current generation for
+ * the one before it.
+ * <p>
+ * The {@code SyncPolicy} trades durability for store latency: each store
+ * can be forced to disk, or stores can be group committed, forcing at most
+ * one per interval, or left to the operating system.
+ *
+ * @author technosf
+ * @since 0.0.1
+ * @version 0.0.1
+ * @param <K>
+ *            Key class
+ * @param <V>
+ *            Value class
+ */
+public class GenerationalHashMap<K, V>
+        extends TrackedHashMap<K, V>
+{
+
+    /**
+     * Version Id
+     */
+    private static final long serialVersionUID = 201601191634L;
+
+    /**
+     * Magic number ending each generation, "JWZG"
+     */
+    public static final int MAGIC = 0x4A575A47;
+
+    /**
+     * Suffix of the generation being written
+     */
+    public static final String NEW_SUFFIX = ".new";
+
+    /**
+     * Default number of generations kept, including the current one
+     */
+    public static final int DEFAULT_GENERATIONS = 3;
+
+    /**
+     * Trailer of the CRC and magic number
+     */
+    private static final int TRAILER = 8;
+
+    /**
+     * When stores are forced to disk
+     */
+    public enum SyncPolicy
+    {
+        /**
+         * Force every store, and the directory entries it renames
+         */
+        ALWAYS,
+
+        /**
+         * Force a store only if none was forced within the group commit
+         * interval
+         */
+        GROUP,
+
+        /**
+         * Never force; the generations and their CRCs still protect against
+         * torn writes
+         */
+        NONE
+    }
+
+    /**
+     * The {@code File} the current generation is stored to.
+     */
+    private final File file;
+
+    /**
+     * The number of generations kept
+     */
+    private final int generations;
+
+    private final SyncPolicy syncPolicy;
+
+    /**
+     * The least interval between forced stores under {@code GROUP}
+     */
+    private final long groupCommitMillis;
+
+    /**
+     * When a store was last forced
+     */
+    private transient long lastSync;
+
+    /**
+     * The digest of the file, computed as it is stored
+     */
+    @Nullable
+    private transient DigestCache digestCache;
+
+    /**
+     * Keep a time stamp of the last update
+     */
+    private long lastModified = 0l;
+
+    /**
+     * Has the map changed in memory?
+     */
+    private boolean dirty;
+
+    /**
+     * The {@code System.nanoTime()} the map last became dirty
+     */
+    private transient long dirtySince;
+
+
+    /**
+     * Instantiate a {@code GenerationalHashMap} keeping the default number of
+     * generations, and forcing every store
+     *
+     * @param file
+     *            the file to store the current generation to
+     * @throws ClassNotFoundException
+     * @throws IOException
+     */
+    public GenerationalHashMap(@Nullable File file)
+            throws ClassNotFoundException, IOException
+    {
+        this(file, DEFAULT_GENERATIONS, SyncPolicy.ALWAYS, 0);
+    }
+
+
+    /**
+     * Instantiate a {@code GenerationalHashMap}, restoring its newest valid
+     * generation
+     *
+     * @param file
+     *            the file to store the current generation to
+     * @param generations
+     *            the number of generations to keep, including the current one
+     * @param syncPolicy
+     *            when stores are forced to disk
+     * @param groupCommitMillis
+     *            the least interval between forced stores under
+     *            {@code GROUP}
+     * @throws ClassNotFoundException
+     * @throws IOException
+     *             the file is unusable, or no generation is valid
+     */
+    public GenerationalHashMap(@Nullable File file, int generations,
+            SyncPolicy syncPolicy, long groupCommitMillis)
+                    throws ClassNotFoundException, IOException
+    {
+        super();
+
+        if (generations < 1)
+        {
+            throw new IllegalArgumentException(
+                    "Generations must be positive: " + generations);
+        }
+        else if (file == null || file.getPath().isEmpty()
+                || file.isDirectory() || !file.canWrite())
+        /*
+         * File is not a writable file and is unusable
+         */
+        {
+            throw new IOException("Cannot use file");
+        }
+        else if (!file.exists())
+        /*
+         * File does not exist, so touch it
+         */
+        {
+            file.createNewFile();
+        }
+
+        this.file = file;
+        this.generations = generations;
+        this.syncPolicy = syncPolicy;
+        this.groupCommitMillis = groupCommitMillis;
+
+        boolean stored = false;
+        File newGeneration = new File(file.getPath() + NEW_SUFFIX);
+
+        /*
+         * A new generation left by a crash before its rename is the newest
+         */
+        for (int g = -1; g < generations; g++)
+        {
+            File generation = g < 0 ? newGeneration : generation(g);
+            stored |= generation.length() > 0;
+            if (valid(generation))
+            {
+                restore(generation);
+                return;
+            }
+        }
+
+        if (stored)
+        {
+            throw new IOException("No valid generation of " + file);
+        }
+    }
+
+
+    /**
+     * Stores the map as a new generation, rotating the older ones
+     *
+     * @throws IOException
+     */
+    @Override
+    public void store() throws IOException
+    {
+        long start = System.nanoTime();
+        long since = isDirty() ? dirtySince : 0;
+        try
+        {
+            storeFile();
+        }
+        catch (IOException | RuntimeException e)
+        {
+            PersistenceMetrics.failed(this, Operation.STORE, start, e);
+            throw e;
+        }
+        PersistenceMetrics.completed(this, Operation.STORE, start,
+                file.length(), size(), since);
+    }
+
+
+    /**
+     * Writes a new generation and rotates the older ones
+     *
+     * @throws IOException
+     */
+    private void storeFile() throws IOException
+    {
+        lastModified = System.currentTimeMillis();
+        DigestCache cache = digestCache();
+        File newGeneration = new File(file.getPath() + NEW_SUFFIX);
+        boolean sync = sync();
+
+        try (FileOutputStream fos = new FileOutputStream(newGeneration))
+        {
+            OutputStream digesting =
+                    new BufferedOutputStream(cache.digesting(fos));
+            CheckedOutputStream checked =
+                    new CheckedOutputStream(digesting, new CRC32());
+
+            SerializableMap.writeEntries(checked, lastModified, entrySet());
+
+            DataOutputStream trailer = new DataOutputStream(digesting);
+            trailer.writeInt((int) checked.getChecksum().getValue());
+            trailer.writeInt(MAGIC);
+            trailer.flush();
+
+            if (sync)
+            {
+                fos.getFD().sync();
+            }
+        }
+
+        if (generations > 1)
+        /*
+         * Age the generations, dropping the oldest
+         */
+        {
+            Files.deleteIfExists(generation(generations - 1).toPath());
+            for (int g = generations - 2; g >= 0; g--)
+            {
+                if (generation(g).exists())
+                {
+                    Files.move(generation(g).toPath(),
+                            generation(g + 1).toPath(),
+                            StandardCopyOption.ATOMIC_MOVE);
+                }
+            }
+        }
+
+        Files.move(newGeneration.toPath(), file.toPath(),
+                StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+
+        if (sync)
+        {
+            syncDirectory();
+            lastSync = System.currentTimeMillis();
+        }
+
+        cache.stored(file);
+        setDirty(false);
+    }
+
+
+    /**
+     * Rolls the map back to the newest valid generation before the current
+     * one, which is dropped along with any newer invalid generations
+     *
+     * @return true if rolled back, false if there is no older valid
+     *         generation, in which case nothing is changed
+     * @throws IOException
+     * @throws ClassNotFoundException
+     */
+    public boolean rollback() throws IOException, ClassNotFoundException
+    {
+        for (int g = 1; g < generations; g++)
+        {
+            if (valid(generation(g)))
+            /*
+             * Drop the newer generations, then shift this one and older up
+             */
+            {
+                Files.deleteIfExists(
+                        new File(file.getPath() + NEW_SUFFIX).toPath());
+                for (int d = 0; d < g; d++)
+                {
+                    Files.deleteIfExists(generation(d).toPath());
+                }
+                for (int s = g; s < generations; s++)
+                {
+                    if (generation(s).exists())
+                    {
+                        Files.move(generation(s).toPath(),
+                                generation(s - g).toPath(),
+                                StandardCopyOption.ATOMIC_MOVE);
+                    }
+                }
+
+                if (syncPolicy != SyncPolicy.NONE)
+                {
+                    syncDirectory();
+                }
+
+                setRestoring(true);
+                try
+                {
+                    clear();
+                }
+                finally
+                {
+                    setRestoring(false);
+                }
+                restore(file);
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The digest is of the current generation.
+     *
+     * @see com.github.technosf.jwavez.hardware.SerializableMap#digest()
+     */
+    @Override
+    public byte[] digest()
+            throws NoSuchAlgorithmException, IOException
+    {
+        return digestCache().digest(this, file, size());
+    }
+
+
+    /**
+     * Gets a generation file
+     *
+     * @param generation
+     *            the generation, 0 being the current one
+     * @return the file of the generation
+     */
+    public File generation(int generation)
+    {
+        return generation == 0 ? file
+                : new File(file.getPath() + "." + generation);
+    }
+
+
+    /* ----------------------------------------------------------------
+     * Getters and Setters
+     * ----------------------------------------------------------------
+     */
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see com.github.technosf.jwavez.hardware.SerializableMap#isDirty()
+     */
+    @Override
+    public boolean isDirty()
+    {
+        return dirty;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see com.github.technosf.jwavez.hardware.SerializableMap#setDirty(boolean)
+     */
+    @Override
+    public void setDirty(boolean dirty)
+    {
+        if (dirty && !this.dirty)
+        {
+            dirtySince = System.nanoTime();
+        }
+        this.dirty = dirty;
+        if (!dirty)
+        /*
+         * In step with the file, so nothing has changed
+         */
+        {
+            tracker().clear();
+        }
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see com.github.technosf.jwavez.hardware.SerializableMap#getFile()
+     */
+    @Override
+    public File getFile()
+    {
+        return file;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see com.github.technosf.jwavez.hardware.SerializableMap#getStoreTimestamp()
+     */
+    @Override
+    public long getStoreTimestamp()
+    {
+        return lastModified;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see com.github.technosf.jwavez.hardware.SerializableMap#setStoreTimestamp(long)
+     */
+    @Override
+    public void setStoreTimestamp(long lastModified)
+    {
+        this.lastModified = lastModified;
+    }
+
+
+    /* ----------------------------------------------------------------
+     * Generations
+     * ----------------------------------------------------------------
+     */
+
+    /**
+     * Checks a generation against its trailer
+     * <p>
+     * The generation is streamed through its CRC rather than read whole, so
+     * checking holds no more than a buffer of it.
+     *
+     * @param generation
+     *            the generation file
+     * @return true if the generation is present and its CRC checks out
+     * @throws IOException
+     */
+    private static boolean valid(File generation) throws IOException
+    {
+        if (!generation.isFile() || generation.length() < TRAILER)
+        {
+            return false;
+        }
+
+        long remaining = generation.length() - TRAILER;
+        byte[] buffer = new byte[8192];
+
+        try (InputStream in = new BufferedInputStream(
+                new FileInputStream(generation)))
+        {
+            CheckedInputStream checked = new CheckedInputStream(in,
+                    new CRC32());
+            while (remaining > 0)
+            {
+                int read = checked.read(buffer, 0,
+                        (int) Math.min(buffer.length, remaining));
+                if (read < 0)
+                /*
+                 * Truncated under us
+                 */
+                {
+                    return false;
+                }
+                remaining -= read;
+            }
+
+            DataInputStream trailer = new DataInputStream(in);
+            int crc = trailer.readInt();
+            return trailer.readInt() == MAGIC
+                    && crc == (int) checked.getChecksum().getValue();
+        }
+        catch (EOFException e)
+        /*
+         * Torn trailer
+         */
+        {
+            return false;
+        }
+    }
+
+
+    /**
+     * Restores the map from a valid generation, streaming its entries in
+     * <p>
+     * The entry stream ends before the trailer, so the trailer is not read.
+     *
+     * @param generation
+     *            the generation file, already checked
+     * @throws IOException
+     * @throws ClassNotFoundException
+     */
+    private void restore(File generation)
+            throws IOException, ClassNotFoundException
+    {
+        long start = System.nanoTime();
+        setRestoring(true);
+        try (InputStream in = new BufferedInputStream(
+                new FileInputStream(generation)))
+        {
+            SerializableMap.restore(this, in);
+        }
+        catch (IOException | ClassNotFoundException | RuntimeException e)
+        {
+            PersistenceMetrics.failed(this, Operation.RESTORE, start, e);
+            throw e;
+        }
+        finally
+        {
+            setRestoring(false);
+        }
+        PersistenceMetrics.completed(this, Operation.RESTORE, start,
+                generation.length(), size());
+    }
+
+
+    /**
+     * @return should this store be forced to disk?
+     */
+    private boolean sync()
+    {
+        switch (syncPolicy)
+        {
+            case ALWAYS:
+                return true;
+            case GROUP:
+                return System.currentTimeMillis()
+                        - lastSync >= groupCommitMillis;
+            default:
+                return false;
+        }
+    }
+
+
+    /**
+     * Forces the renames in the directory to disk, where the platform allows
+     */
+    private void syncDirectory()
+    {
+        File directory = file.getAbsoluteFile().getParentFile();
+        if (directory == null)
+        {
+            return;
+        }
+
+        try (FileChannel channel = FileChannel.open(directory.toPath(),
+                StandardOpenOption.READ))
+        {
+            channel.force(true);
+        }
+        catch (IOException e)
+        /*
+         * Not every platform can open a directory
+         */
+        {
+        }
+    }
+
+
+    /**
+     * @return the digest cache, created as we need
+     */
+    @SuppressWarnings("null")
+    private DigestCache digestCache()
+    {
+        DigestCache cache = digestCache;
+        if (cache == null)
+        {
+            try
+            {
+                cache = new DigestCache(DIGEST_FUNCTION);
+            }
+            catch (NoSuchAlgorithmException e)
+            {
+                throw new IllegalStateException(e);
+            }
+            digestCache = cache;
+        }
+        return cache;
+    }
+
+}
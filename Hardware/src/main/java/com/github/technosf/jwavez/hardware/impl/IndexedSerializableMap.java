@@ -0,0 +1,964 @@
+/*
+ * Copyright 2016 technosf [https://github.com/technosf]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.github.technosf.jwavez.hardware.impl;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.NotSerializableException;
+import java.io.ObjectOutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.NoSuchAlgorithmException;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+import org.eclipse.jdt.annotation.Nullable;
+
+import com.github.technosf.jwavez.hardware.Codec;
+import com.github.technosf.jwavez.hardware.MapChangeListener;
+import com.github.technosf.jwavez.hardware.PersistenceEvent.Operation;
+import com.github.technosf.jwavez.hardware.SerializableMap;
+
+/**
+ * A {@code SerializableMap} that restores its keys up front and its values
+ * on demand
+ * <p>
+ * The file holds the codec-encoded values, followed by an index of each key
+ * with the offset and length of its value, and a trailer pointing at the
+ * index. Construction reads only the index, so startup cost depends on the
+ * number of keys rather than the size of the file; each value is decoded
+ * the first time it is read. {@code store()} copies the bytes of values
+ * never read straight across to the new file, which is written alongside
+ * and renamed over the old one.
+ * <p>
+ * The file is held open to read values from; call {@code close()} to
+ * release it. The map itself is not serializable, and like {@code HashMap}
+ * it is not thread safe.
+ *
+ * @author technosf
+ * @since 0.0.1
+ * @version 0.0.1
+ * @param <K>
+ *            Key class
+ * @param <V>
+ *            Value class
+ */
+public class IndexedSerializableMap<K, V>
+        extends AbstractMap<K, V>
+        implements SerializableMap<K, V>, Closeable
+{
+
+    /**
+     * Version Id
+     */
+    private static final long serialVersionUID = 201601191634L;
+
+    /**
+     * Magic number, "JWZI"
+     */
+    public static final int MAGIC = 0x4A575A49;
+
+    /**
+     * Format version
+     */
+    public static final byte VERSION = 1;
+
+    /**
+     * Suffix of the file a store is written to before it replaces the map
+     * file
+     */
+    public static final String STORE_SUFFIX = ".new";
+
+    /*
+     * Header of magic, version, timestamp and size; trailer of the index
+     * offset
+     */
+    private static final int HEADER = 17;
+    private static final int TRAILER = 8;
+
+    /**
+     * Index flag of a null key
+     */
+    private static final int NULL_KEY = 0x01;
+
+    /**
+     * The {@code File} the map is stored to
+     */
+    private final File file;
+
+    private final transient Codec<K> keyCodec;
+    private final transient Codec<V> valueCodec;
+
+    /**
+     * The entries, each value either decoded or still {@code Stored}
+     */
+    private final transient HashMap<K, Object> entries = new HashMap<>();
+
+    @Nullable
+    private transient FileChannel channel;
+
+    /**
+     * The digest of the file, computed as it is stored
+     */
+    @Nullable
+    private transient DigestCache digestCache;
+
+    /**
+     * Keep a time stamp of the last update
+     */
+    private long lastModified = 0l;
+
+    /**
+     * Has the map changed since it was stored?
+     */
+    private transient boolean dirty;
+
+    /**
+     * The {@code System.nanoTime()} the map last became dirty
+     */
+    private transient long dirtySince;
+
+    /**
+     * Tracks the keys changed since the last store, and notifies listeners
+     */
+    private final transient ChangeTracker<K, V> tracker =
+            new ChangeTracker<>(this);
+
+
+    /**
+     * The location in the file of a value not yet decoded
+     */
+    private static final class Stored
+    {
+        final long offset;
+        final int length;
+
+
+        Stored(long offset, int length)
+        {
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+
+
+    /**
+     * Instantiate an {@code IndexedSerializableMap}, restoring the index of
+     * its file
+     *
+     * @param file
+     *            the file to store this map to
+     * @param keyCodec
+     *            the key codec
+     * @param valueCodec
+     *            the value codec
+     * @throws IOException
+     *             the file is unusable, or not an indexed map
+     */
+    public IndexedSerializableMap(@Nullable File file, Codec<K> keyCodec,
+            Codec<V> valueCodec) throws IOException
+    {
+        super();
+
+        if (file == null || file.getPath().isEmpty() || file.isDirectory()
+                || !file.canWrite())
+        /*
+         * File is not a writable file and is unusable
+         */
+        {
+            throw new IOException("Cannot use file");
+        }
+        else if (!file.exists())
+        /*
+         * File does not exist, so touch it
+         */
+        {
+            file.createNewFile();
+        }
+
+        this.file = file;
+        this.keyCodec = keyCodec;
+        this.valueCodec = valueCodec;
+
+        if (file.length() > 0)
+        /*
+         * Non-empty file, so attempt restore
+         */
+        {
+            long start = System.nanoTime();
+            FileChannel fc = FileChannel.open(file.toPath(),
+                    StandardOpenOption.READ);
+            try
+            {
+                restoreIndex(fc);
+            }
+            catch (IOException | RuntimeException e)
+            {
+                fc.close();
+                PersistenceMetrics.failed(this, Operation.RESTORE, start, e);
+                throw e;
+            }
+            channel = fc;
+
+            /*
+             * Only the index is read; values are read as they are used
+             */
+            PersistenceMetrics.completed(this, Operation.RESTORE, start, -1,
+                    entries.size());
+        }
+    }
+
+
+    /**
+     * Stores the map to a new file that then replaces the map file
+     * <p>
+     * Values not yet decoded are copied across as they are.
+     *
+     * @throws IOException
+     */
+    @Override
+    public void store() throws IOException
+    {
+        long start = System.nanoTime();
+        long since = isDirty() ? dirtySince : 0;
+        try
+        {
+            storeFile();
+        }
+        catch (IOException | RuntimeException e)
+        {
+            PersistenceMetrics.failed(this, Operation.STORE, start, e);
+            throw e;
+        }
+        PersistenceMetrics.completed(this, Operation.STORE, start,
+                file.length(), entries.size(), since);
+    }
+
+
+    /**
+     * Writes the map to a new file that replaces the map file
+     *
+     * @throws IOException
+     */
+    private void storeFile() throws IOException
+    {
+        long timestamp = System.currentTimeMillis();
+        File stored = new File(file.getPath() + STORE_SUFFIX);
+        DigestCache cache = digestCache();
+        Map<K, Stored> index = new HashMap<>(entries.size() * 4 / 3 + 1);
+
+        try (FileOutputStream fos = new FileOutputStream(stored))
+        {
+            DataOutputStream dos = new DataOutputStream(
+                    new BufferedOutputStream(cache.digesting(fos)));
+
+            dos.writeInt(MAGIC);
+            dos.writeByte(VERSION);
+            dos.writeLong(timestamp);
+            dos.writeInt(entries.size());
+
+            for (Map.Entry<K, Object> entry : entries.entrySet())
+            {
+                Object value = entry.getValue();
+                byte[] bytes = value instanceof Stored
+                        ? read((Stored) value) : encode(value);
+                long offset = dos.size();
+                if (bytes != null)
+                {
+                    dos.write(bytes);
+                }
+                index.put(entry.getKey(),
+                        new Stored(offset, bytes == null ? -1 : bytes.length));
+            }
+
+            long indexOffset = dos.size();
+            for (Map.Entry<K, Stored> entry : index.entrySet())
+            {
+                K key = entry.getKey();
+                dos.writeByte(key == null ? NULL_KEY : 0);
+                if (key != null)
+                {
+                    keyCodec.write(dos, key);
+                }
+                Codecs.writeVarLong(dos, entry.getValue().offset);
+                Codecs.writeVarLong(dos, entry.getValue().length + 1l);
+            }
+            dos.writeLong(indexOffset);
+
+            dos.flush();
+            fos.getFD().sync();
+        }
+
+        close();
+        try
+        {
+            Files.move(stored.toPath(), file.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        }
+        finally
+        /*
+         * Reopen whichever file is now in place
+         */
+        {
+            channel = FileChannel.open(file.toPath(),
+                    StandardOpenOption.READ);
+        }
+        cache.stored(file);
+
+        for (Map.Entry<K, Object> entry : entries.entrySet())
+        /*
+         * Values not yet decoded have moved
+         */
+        {
+            if (entry.getValue() instanceof Stored)
+            {
+                entry.setValue(index.get(entry.getKey()));
+            }
+        }
+
+        lastModified = timestamp;
+        setDirty(false);
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see com.github.technosf.jwavez.hardware.SerializableMap#digest()
+     */
+    @Override
+    public byte[] digest()
+            throws NoSuchAlgorithmException, IOException
+    {
+        return digestCache().digest(this, file, entries.size());
+    }
+
+
+    /**
+     * Releases the file. Values not yet decoded can no longer be read.
+     *
+     * @see java.io.Closeable#close()
+     */
+    @Override
+    public void close() throws IOException
+    {
+        FileChannel fc = channel;
+        channel = null;
+        if (fc != null)
+        {
+            fc.close();
+        }
+    }
+
+
+    /**
+     * Has the value of the key been decoded?
+     *
+     * @param key
+     *            the key
+     * @return true if the key is mapped to a decoded value
+     */
+    public boolean isLoaded(@Nullable Object key)
+    {
+        return entries.containsKey(key)
+                && !(entries.get(key) instanceof Stored);
+    }
+
+
+    /* ----------------------------------------------------------------
+     * Map
+     * ----------------------------------------------------------------
+     */
+
+    @Override
+    public int size()
+    {
+        return entries.size();
+    }
+
+
+    @Override
+    public boolean containsKey(@Nullable Object key)
+    {
+        return entries.containsKey(key);
+    }
+
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public @Nullable V get(@Nullable Object key)
+    {
+        Object value = entries.get(key);
+
+        if (value instanceof Stored)
+        /*
+         * First read, so decode and keep
+         */
+        {
+            V decoded = decode((Stored) value);
+            entries.put((K) key, decoded);
+            return decoded;
+        }
+
+        return (V) value;
+    }
+
+
+    @Override
+    public @Nullable V put(@Nullable K key, @Nullable V value)
+    {
+        boolean mapped = entries.containsKey(key);
+        V old = resolve(entries.put(key, value));
+        if (tracker.changed(key, mapped, old, true, value))
+        {
+            setDirty(true);
+        }
+        return old;
+    }
+
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public @Nullable V remove(@Nullable Object key)
+    {
+        if (!entries.containsKey(key))
+        {
+            return null;
+        }
+
+        V old = resolve(entries.remove(key));
+        setDirty(true);
+        tracker.removed((K) key, old);
+        return old;
+    }
+
+
+    @Override
+    public void clear()
+    {
+        if (entries.isEmpty())
+        {
+            return;
+        }
+
+        /*
+         * Values not yet decoded are only decoded for listeners, who are
+         * notified once the map is cleared
+         */
+        boolean values = tracker.hasListeners();
+        Map<K, V> removed = new HashMap<>(entries.size() * 4 / 3 + 1);
+        for (Map.Entry<K, Object> entry : entries.entrySet())
+        {
+            removed.put(entry.getKey(),
+                    values ? resolve(entry.getValue()) : null);
+        }
+        entries.clear();
+        setDirty(true);
+        for (Map.Entry<K, V> entry : removed.entrySet())
+        {
+            tracker.removed(entry.getKey(), entry.getValue());
+        }
+    }
+
+
+    @Override
+    public Set<Map.Entry<K, V>> entrySet()
+    {
+        return new AbstractSet<Map.Entry<K, V>>()
+        {
+
+            @Override
+            public int size()
+            {
+                return entries.size();
+            }
+
+
+            @Override
+            public void clear()
+            {
+                IndexedSerializableMap.this.clear();
+            }
+
+
+            @Override
+            public Iterator<Map.Entry<K, V>> iterator()
+            {
+                final Iterator<Map.Entry<K, Object>> iterator =
+                        entries.entrySet().iterator();
+
+                return new Iterator<Map.Entry<K, V>>()
+                {
+
+                    @Nullable
+                    private LazyEntry last;
+
+
+                    @Override
+                    public boolean hasNext()
+                    {
+                        return iterator.hasNext();
+                    }
+
+
+                    @Override
+                    public Map.Entry<K, V> next()
+                    {
+                        LazyEntry entry = new LazyEntry(iterator.next());
+                        last = entry;
+                        return entry;
+                    }
+
+
+                    @Override
+                    public void remove()
+                    {
+                        LazyEntry entry = last;
+                        if (entry == null)
+                        {
+                            throw new IllegalStateException();
+                        }
+                        K key = entry.getKey();
+                        V old = tracker.hasListeners() ? entry.getValue()
+                                : null;
+                        iterator.remove();
+                        last = null;
+                        setDirty(true);
+                        tracker.removed(key, old);
+                    }
+                };
+            }
+        };
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see com.github.technosf.jwavez.hardware.SerializableMap#getChangedKeys()
+     */
+    @Override
+    public Set<K> getChangedKeys()
+    {
+        return tracker.getChangedKeys();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see com.github.technosf.jwavez.hardware.SerializableMap#addChangeListener(com.github.technosf.jwavez.hardware.MapChangeListener)
+     */
+    @Override
+    public void addChangeListener(MapChangeListener<K, V> listener)
+    {
+        tracker.addListener(listener);
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see com.github.technosf.jwavez.hardware.SerializableMap#removeChangeListener(com.github.technosf.jwavez.hardware.MapChangeListener)
+     */
+    @Override
+    public void removeChangeListener(MapChangeListener<K, V> listener)
+    {
+        tracker.removeListener(listener);
+    }
+
+
+    /* ----------------------------------------------------------------
+     * Getters and Setters
+     * ----------------------------------------------------------------
+     */
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see com.github.technosf.jwavez.hardware.SerializableMap#isDirty()
+     */
+    @Override
+    public boolean isDirty()
+    {
+        return dirty;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see com.github.technosf.jwavez.hardware.SerializableMap#setDirty(boolean)
+     */
+    @Override
+    public void setDirty(boolean dirty)
+    {
+        if (dirty && !this.dirty)
+        {
+            dirtySince = System.nanoTime();
+        }
+        this.dirty = dirty;
+        if (!dirty)
+        /*
+         * In step with the file, so nothing has changed
+         */
+        {
+            tracker.clear();
+        }
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see com.github.technosf.jwavez.hardware.SerializableMap#getFile()
+     */
+    @Override
+    public File getFile()
+    {
+        return file;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see com.github.technosf.jwavez.hardware.SerializableMap#getStoreTimestamp()
+     */
+    @Override
+    public long getStoreTimestamp()
+    {
+        return lastModified;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see com.github.technosf.jwavez.hardware.SerializableMap#setStoreTimestamp(long)
+     */
+    @Override
+    public void setStoreTimestamp(long lastModified)
+    {
+        this.lastModified = lastModified;
+    }
+
+
+    /* ----------------------------------------------------------------
+     * Storage
+     * ----------------------------------------------------------------
+     */
+
+    /**
+     * Reads the header and the index
+     *
+     * @param fc
+     *            the channel to the file
+     * @throws IOException
+     *             not an indexed map
+     */
+    private void restoreIndex(FileChannel fc) throws IOException
+    {
+        long length = fc.size();
+        ByteBuffer header = ByteBuffer.allocate(HEADER);
+        ByteBuffer trailer = ByteBuffer.allocate(TRAILER);
+
+        if (length < HEADER + TRAILER
+                || readFully(fc, header, 0) != HEADER
+                || header.getInt(0) != MAGIC)
+        {
+            throw new IOException("Not an indexed map");
+        }
+        else if (header.get(4) != VERSION)
+        {
+            throw new IOException(
+                    "Unknown indexed map version: " + header.get(4));
+        }
+
+        readFully(fc, trailer, length - TRAILER);
+        long indexOffset = trailer.getLong(0);
+
+        if (indexOffset < HEADER || indexOffset > length - TRAILER)
+        {
+            throw new IOException(
+                    "Malformed indexed map index offset: " + indexOffset);
+        }
+
+        int size = header.getInt(13);
+        if (size < 0)
+        {
+            throw new IOException("Malformed indexed map size: " + size);
+        }
+
+        fc.position(indexOffset);
+        DataInputStream dis = new DataInputStream(
+                new BufferedInputStream(Channels.newInputStream(fc)));
+
+        for (int i = 0; i < size; i++)
+        {
+            int flags = dis.readUnsignedByte();
+            K key = (flags & NULL_KEY) != 0 ? null : keyCodec.read(dis);
+            long offset = Codecs.readVarLong(dis);
+            int valueLength = (int) Codecs.readVarLong(dis) - 1;
+
+            if (offset < HEADER || offset + valueLength > indexOffset)
+            {
+                throw new IOException(
+                        "Malformed indexed map value offset: " + offset);
+            }
+
+            entries.put(key, valueLength < 0 ? null
+                    : new Stored(offset, valueLength));
+        }
+
+        lastModified = header.getLong(5);
+    }
+
+
+    /**
+     * @param stored
+     *            the location of a value
+     * @return the bytes of the value, or null for a null value
+     * @throws IOException
+     */
+    private byte @Nullable [] read(Stored stored) throws IOException
+    {
+        if (stored.length < 0)
+        {
+            return null;
+        }
+
+        FileChannel fc = channel;
+        if (fc == null)
+        {
+            throw new IOException("Indexed map is closed");
+        }
+
+        ByteBuffer bytes = ByteBuffer.allocate(stored.length);
+        if (readFully(fc, bytes, stored.offset) != stored.length)
+        {
+            throw new EOFException("Indexed map value truncated");
+        }
+        return bytes.array();
+    }
+
+
+    /**
+     * @param value
+     *            the value
+     * @return the encoded value, or null for a null value
+     * @throws IOException
+     */
+    @SuppressWarnings("unchecked")
+    private byte @Nullable [] encode(@Nullable Object value)
+            throws IOException
+    {
+        if (value == null)
+        {
+            return null;
+        }
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        valueCodec.write(new DataOutputStream(baos), (V) value);
+        return baos.toByteArray();
+    }
+
+
+    /**
+     * @param stored
+     *            the location of a value
+     * @return the decoded value
+     */
+    private @Nullable V decode(Stored stored)
+    {
+        try
+        {
+            byte[] bytes = read(stored);
+            return bytes == null ? null
+                    : valueCodec.read(new DataInputStream(
+                            new ByteArrayInputStream(bytes)));
+        }
+        catch (IOException e)
+        {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+
+    /**
+     * @param value
+     *            a value from the entries
+     * @return the value, decoded if need be
+     */
+    @SuppressWarnings("unchecked")
+    private @Nullable V resolve(@Nullable Object value)
+    {
+        return value instanceof Stored ? decode((Stored) value) : (V) value;
+    }
+
+
+    /**
+     * Reads from a position until the buffer is full or the file ends
+     *
+     * @param fc
+     *            the channel
+     * @param buffer
+     *            the buffer
+     * @param position
+     *            the file position
+     * @return the number of bytes read
+     * @throws IOException
+     */
+    private static int readFully(FileChannel fc, ByteBuffer buffer,
+            long position) throws IOException
+    {
+        int total = 0;
+        while (buffer.hasRemaining())
+        {
+            int read = fc.read(buffer, position + total);
+            if (read < 0)
+            {
+                break;
+            }
+            total += read;
+        }
+        return total;
+    }
+
+
+    /**
+     * @return the digest cache, created as we need
+     */
+    @SuppressWarnings("null")
+    private DigestCache digestCache()
+    {
+        DigestCache cache = digestCache;
+        if (cache == null)
+        {
+            try
+            {
+                cache = new DigestCache(DIGEST_FUNCTION);
+            }
+            catch (NoSuchAlgorithmException e)
+            {
+                throw new IllegalStateException(e);
+            }
+            digestCache = cache;
+        }
+        return cache;
+    }
+
+
+    /**
+     * The map is in its file, not in a stream
+     *
+     * @param out
+     *            the stream
+     * @throws IOException
+     */
+    private void writeObject(ObjectOutputStream out) throws IOException
+    {
+        throw new NotSerializableException(getClass().getName());
+    }
+
+
+    /**
+     * An entry whose value is decoded when it is first read
+     */
+    private final class LazyEntry implements Map.Entry<K, V>
+    {
+        private final Map.Entry<K, Object> entry;
+
+
+        LazyEntry(Map.Entry<K, Object> entry)
+        {
+            this.entry = entry;
+        }
+
+
+        @Override
+        public K getKey()
+        {
+            return entry.getKey();
+        }
+
+
+        @Override
+        public V getValue()
+        {
+            Object value = entry.getValue();
+            if (value instanceof Stored)
+            {
+                V decoded = decode((Stored) value);
+                entry.setValue(decoded);
+                return decoded;
+            }
+            return resolve(value);
+        }
+
+
+        @Override
+        public V setValue(V value)
+        {
+            V old = resolve(entry.setValue(value));
+            if (tracker.changed(getKey(), true, old, true, value))
+            {
+                setDirty(true);
+            }
+            return old;
+        }
+
+
+        @Override
+        public boolean equals(@Nullable Object o)
+        {
+            if (!(o instanceof Map.Entry))
+            {
+                return false;
+            }
+            Map.Entry<?, ?> e = (Map.Entry<?, ?>) o;
+            return Objects.equals(getKey(), e.getKey())
+                    && Objects.equals(getValue(), e.getValue());
+        }
+
+
+        @Override
+        public int hashCode()
+        {
+            return Objects.hashCode(getKey())
+                    ^ Objects.hashCode(getValue());
+        }
+    }
+
+}
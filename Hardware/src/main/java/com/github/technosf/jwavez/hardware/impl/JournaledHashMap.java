@@ -0,0 +1,763 @@
+/*
+ * Copyright 2016 technosf [https://github.com/technosf]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.github.technosf.jwavez.hardware.impl;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Set;
+import java.util.zip.CRC32;
+
+import org.eclipse.jdt.annotation.Nullable;
+
+import com.github.technosf.jwavez.hardware.PersistenceEvent.Operation;
+import com.github.technosf.jwavez.hardware.SerializableMap;
+
+/**
+ * A self-serializing {@code HashMap} that journals its changes
+ * <p>
+ * The map is persisted as a base snapshot in {@code getFile()} plus an
+ * append-only journal of put/remove records in a sibling <em>.journal</em>
+ * file. {@code store()} only appends the keys changed since the last store,
+ * so its cost depends on the change rather than on the size of the map. When
+ * the journal grows past both the compaction threshold and the size of the
+ * snapshot itself, the map is compacted into a new snapshot and the journal
+ * is truncated; a large snapshot is thus not rewritten every time a small
+ * threshold is crossed. The new snapshot is written aside and moved over the
+ * old one, so a crash mid-compaction leaves the old snapshot and journal
+ * intact. Construction restores the snapshot and replays the journal.
+ * <p>
+ * The snapshot holds the sequence of the last frame folded into it followed
+ * by the map's entries, which restore streams straight into the map.
+ * <p>
+ * Each journal frame carries a sequence number and a CRC. Frames already
+ * folded into the snapshot are skipped on replay, and a torn frame at the
+ * tail of the journal, left by a crash mid-append, is discarded.
+ * <p>
+ * Changes made through the {@code keySet()}, {@code values()} and
+ * {@code entrySet()} views are not journaled; call {@code compact()} after
+ * mutating the map through its views.
+ *
+ * @author technosf
+ * @since 0.0.1
+ * @version 0.0.1
+ * @param <K>
+ *            Key class
+ * @param <V>
+ *            Value class
+ */
+public class JournaledHashMap<K, V>
+        extends TrackedHashMap<K, V>
+{
+
+    /**
+     * Version Id
+     */
+    private static final long serialVersionUID = 201601191634L;
+
+    /**
+     * Magic number starting each snapshot, "JWZJ"
+     */
+    public static final int MAGIC = 0x4A575A4A;
+
+    /**
+     * Suffix of the journal file
+     */
+    public static final String JOURNAL_SUFFIX = ".journal";
+
+    /**
+     * Suffix of the file a compacted snapshot is written to before it is moved
+     * over the base snapshot
+     */
+    public static final String COMPACT_SUFFIX = ".compact";
+
+    /**
+     * Default journal size, in bytes, past which a compaction may be made
+     */
+    public static final long DEFAULT_COMPACTION_BYTES = 64 * 1024;
+
+    /**
+     * The {@code MessageDisgest} in play. We don't serialize it, but create one
+     * as we need.
+     */
+    @Nullable
+    private transient MessageDigest md;
+
+    /**
+     * Has the map been cleared since the last store?
+     */
+    private transient boolean cleared;
+
+    /**
+     * Number of frames in the journal since the last compaction
+     */
+    private transient int frames;
+
+    /**
+     * The {@code File} the base snapshot is serialized to.
+     */
+    private File file;
+
+    /**
+     * The journal {@code File}
+     */
+    private File journal;
+
+    /**
+     * Journal size past which a compaction may be made
+     */
+    private long compactionBytes;
+
+    /**
+     * Sequence number of the last journal frame folded into the snapshot
+     */
+    private long sequence = 0l;
+
+    /**
+     * Keep a time stamp of the last update
+     */
+    private long lastModified = 0l;
+
+    /**
+     * Has the map changed in memory?
+     */
+    private boolean dirty;
+
+    /**
+     * The {@code System.nanoTime()} the map last became dirty
+     */
+    private transient long dirtySince;
+
+    /**
+     * The bytes written by the last store
+     */
+    private transient long storedBytes;
+
+
+    /**
+     * Instantiate a {@code JournaledHashMap} and its files using the default
+     * compaction threshold
+     *
+     * @param file
+     *            the file to serialize the base snapshot of this map to
+     * @throws ClassNotFoundException
+     * @throws IOException
+     */
+    public JournaledHashMap(@Nullable File file)
+            throws ClassNotFoundException, IOException
+    {
+        this(file, DEFAULT_COMPACTION_BYTES);
+    }
+
+
+    /**
+     * Instantiate a {@code JournaledHashMap} and its files
+     *
+     * @param file
+     *            the file to serialize the base snapshot of this map to
+     * @param compactionBytes
+     *            the journal size, in bytes, past which the map is compacted
+     *            once the journal has also outgrown the snapshot
+     * @throws ClassNotFoundException
+     * @throws IOException
+     */
+    public JournaledHashMap(@Nullable File file, long compactionBytes)
+            throws ClassNotFoundException, IOException
+    {
+        super();
+
+        if (file == null || file.getPath().isEmpty() || file.isDirectory()
+                || !file.canWrite())
+        /*
+         * File is not a writable file and is unusable
+         */
+        {
+            throw new IOException("Cannot use file");
+        }
+        else if (!file.exists())
+        /*
+         * File does not exist, so touch it
+         */
+        {
+            file.createNewFile();
+        }
+
+        this.file = file;
+        this.journal = new File(file.getPath() + JOURNAL_SUFFIX);
+        this.compactionBytes = compactionBytes;
+
+        long start = System.nanoTime();
+        setRestoring(true);
+        try
+        {
+            if (file.length() > 0)
+            /*
+             * Non-empty snapshot, so attempt restore
+             */
+            {
+                restoreSnapshot();
+            }
+
+            if (journal.length() > 0)
+            /*
+             * Replay the changes made since the snapshot
+             */
+            {
+                replay();
+            }
+        }
+        catch (IOException | ClassNotFoundException | RuntimeException e)
+        {
+            PersistenceMetrics.failed(this, Operation.RESTORE, start, e);
+            throw e;
+        }
+        finally
+        {
+            setRestoring(false);
+        }
+
+        clearChanges();
+        if (file.length() + journal.length() > 0)
+        {
+            PersistenceMetrics.completed(this, Operation.RESTORE, start,
+                    file.length() + journal.length(), size());
+        }
+    }
+
+
+    /**
+     * Stores the changes made since the last store
+     * <p>
+     * Appends a journal frame holding the changed keys, or compacts the map
+     * into a new snapshot if the journal has grown too large.
+     *
+     * @throws IOException
+     */
+    @Override
+    public void store() throws IOException
+    {
+        long start = System.nanoTime();
+        long since = isDirty() ? dirtySince : 0;
+        try
+        {
+            storeFile();
+        }
+        catch (IOException | RuntimeException e)
+        {
+            PersistenceMetrics.failed(this, Operation.STORE, start, e);
+            throw e;
+        }
+        PersistenceMetrics.completed(this, Operation.STORE, start,
+                storedBytes, size(), since);
+    }
+
+
+    /**
+     * Journals the changes, or compacts the map
+     *
+     * @throws IOException
+     */
+    private void storeFile() throws IOException
+    {
+        Set<K> keys = tracker().getChangedKeys();
+
+        if (keys.isEmpty() && !cleared && file.length() > 0)
+        /*
+         * Nothing to journal
+         */
+        {
+            storedBytes = 0;
+            setDirty(false);
+            return;
+        }
+
+        if (file.length() == 0 || cleared)
+        /*
+         * No snapshot to journal against, or everything changed
+         */
+        {
+            compact();
+            return;
+        }
+
+        long timestamp = System.currentTimeMillis();
+        byte[] frame = frame(sequence + frames + 1, timestamp, keys);
+
+        if (journal.length() + frame.length + 8 > Math.max(compactionBytes,
+                file.length()))
+        /*
+         * Replaying the journal would cost more than reading a snapshot
+         */
+        {
+            compact();
+            return;
+        }
+
+        try (FileOutputStream fos = new FileOutputStream(journal, true);
+                DataOutputStream dos = new DataOutputStream(fos))
+        {
+            dos.writeInt(frame.length);
+            dos.write(frame);
+            dos.writeInt(crc(frame));
+        }
+
+        storedBytes = frame.length + 8;
+
+        frames++;
+        lastModified = timestamp;
+        clearChanges();
+    }
+
+
+    /**
+     * Compacts the map into a new base snapshot and truncates the journal
+     * <p>
+     * The snapshot is written to a sibling <em>.compact</em> file and moved
+     * over the old one, so the old snapshot stays in place should the write
+     * fail.
+     *
+     * @throws IOException
+     */
+    public void compact() throws IOException
+    {
+        long folded = sequence;
+        long modified = lastModified;
+        File compacted = new File(file.getPath() + COMPACT_SUFFIX);
+
+        sequence += frames;
+        lastModified = System.currentTimeMillis();
+
+        try
+        {
+            try (FileOutputStream fos = new FileOutputStream(compacted);
+                    DataOutputStream dos = new DataOutputStream(
+                            new BufferedOutputStream(fos)))
+            {
+                dos.writeInt(MAGIC);
+                dos.writeLong(sequence);
+                SerializableMap.writeEntries(dos, lastModified, entrySet());
+                dos.flush();
+                fos.getFD().sync();
+            }
+
+            Files.move(compacted.toPath(), file.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        }
+        catch (IOException | RuntimeException e)
+        /*
+         * The old snapshot and journal are untouched, so keep their sequence
+         */
+        {
+            sequence = folded;
+            lastModified = modified;
+            Files.deleteIfExists(compacted.toPath());
+            throw e;
+        }
+
+        /*
+         * The snapshot records the sequence it folds in, so a crash before the
+         * journal is truncated just replays nothing.
+         */
+        new FileOutputStream(journal).close();
+        frames = 0;
+        storedBytes = file.length();
+
+        clearChanges();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The digest covers the snapshot and the journal.
+     *
+     * @see com.github.technosf.jwavez.hardware.SerializableMap#digest()
+     */
+    @SuppressWarnings("null")
+    @Override
+    public byte[] digest()
+            throws NoSuchAlgorithmException, IOException
+    {
+        if (md == null)
+        /*
+         * Need to generate a new message digest
+         */
+        {
+            md = MessageDigest.getInstance(DIGEST_FUNCTION);
+        }
+
+        long start = System.nanoTime();
+        MessageDigest digest = md;
+        digest.reset();
+        try
+        {
+            update(digest, file);
+            update(digest, journal);
+        }
+        catch (IOException | RuntimeException e)
+        {
+            PersistenceMetrics.failed(this, Operation.DIGEST, start, e);
+            throw e;
+        }
+        PersistenceMetrics.completed(this, Operation.DIGEST, start,
+                file.length() + journal.length(), size());
+        return digest.digest();
+    }
+
+
+    /* ----------------------------------------------------------------
+     * Getters and Setters
+     * ----------------------------------------------------------------
+     */
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see com.github.technosf.jwavez.hardware.SerializableMap#isDirty()
+     */
+    @Override
+    public boolean isDirty()
+    {
+        return dirty;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see com.github.technosf.jwavez.hardware.SerializableMap#setDirty(boolean)
+     */
+    @Override
+    public void setDirty(boolean dirty)
+    {
+        if (dirty && !this.dirty)
+        {
+            dirtySince = System.nanoTime();
+        }
+        this.dirty = dirty;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see com.github.technosf.jwavez.hardware.SerializableMap#getFile()
+     */
+    @Override
+    public File getFile()
+    {
+        return file;
+    }
+
+
+    /**
+     * Gets the journal file
+     *
+     * @return the journal file
+     */
+    public File getJournal()
+    {
+        return journal;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see com.github.technosf.jwavez.hardware.SerializableMap#getStoreTimestamp()
+     */
+    @Override
+    public long getStoreTimestamp()
+    {
+        return lastModified;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see com.github.technosf.jwavez.hardware.SerializableMap#setStoreTimestamp(long)
+     */
+    @Override
+    public void setStoreTimestamp(long lastModified)
+    {
+        this.lastModified = lastModified;
+    }
+
+
+    /* ----------------------------------------------------------------
+     * Journal
+     * ----------------------------------------------------------------
+     */
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * A clear is journaled as such, ahead of the keys it removed
+     */
+    @Override
+    void afterClear()
+    {
+        cleared = true;
+        setDirty(true);
+    }
+
+
+    /**
+     * Forget the changes, which are now persisted
+     */
+    private void clearChanges()
+    {
+        tracker().clear();
+        cleared = false;
+        dirty = false;
+    }
+
+
+    /**
+     * Serializes a journal frame
+     *
+     * @param frameSequence
+     *            the sequence of the frame
+     * @param timestamp
+     *            the store timestamp
+     * @param keys
+     *            the changed keys
+     * @return the frame
+     * @throws IOException
+     */
+    private byte[] frame(long frameSequence, long timestamp, Set<K> keys)
+            throws IOException
+    {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+
+        try (ObjectOutputStream oos = new ObjectOutputStream(baos))
+        {
+            oos.writeLong(frameSequence);
+            oos.writeLong(timestamp);
+            oos.writeInt(keys.size());
+            for (K key : keys)
+            {
+                boolean present = containsKey(key);
+                oos.writeBoolean(present);
+                oos.writeObject(key);
+                if (present)
+                {
+                    oos.writeObject(get(key));
+                }
+            }
+        }
+
+        return baos.toByteArray();
+    }
+
+
+    /**
+     * Restores the base snapshot
+     * <p>
+     * The entries are streamed straight into the map, so only one copy of the
+     * map is held. Snapshots serialized as a whole map, as written by earlier
+     * versions, are restored through a temporary copy.
+     *
+     * @throws IOException
+     * @throws ClassNotFoundException
+     */
+    @SuppressWarnings("unchecked")
+    private void restoreSnapshot() throws IOException, ClassNotFoundException
+    {
+        try (InputStream is = new BufferedInputStream(
+                new FileInputStream(file)))
+        {
+            DataInputStream dis = new DataInputStream(is);
+            is.mark(4);
+            if (dis.readInt() == MAGIC)
+            /*
+             * Sequence, then the entry stream
+             */
+            {
+                long folded = dis.readLong();
+                SerializableMap.restore(this, is);
+                sequence = folded;
+                return;
+            }
+
+            /*
+             * Whole map serialized as one object
+             */
+            is.reset();
+            ObjectInputStream ois = new ObjectInputStream(is);
+            JournaledHashMap<K, V> map =
+                    (JournaledHashMap<K, V>) ois.readObject();
+            putAll(map);
+            sequence = map.sequence;
+            lastModified = map.lastModified;
+        }
+    }
+
+
+    /**
+     * Replays the journal over the restored snapshot
+     * <p>
+     * Frames already in the snapshot are skipped. Replay stops at the first
+     * torn or corrupt frame, which is then truncated from the journal.
+     *
+     * @throws IOException
+     * @throws ClassNotFoundException
+     */
+    @SuppressWarnings("unchecked")
+    private void replay() throws IOException, ClassNotFoundException
+    {
+        long valid = 0;
+        frames = 0;
+
+        try (FileInputStream fis = new FileInputStream(journal);
+                DataInputStream dis = new DataInputStream(fis))
+        {
+            while (true)
+            {
+                byte[] frame;
+                try
+                {
+                    int length = dis.readInt();
+                    if (length <= 0 || valid + length + 8 > journal.length())
+                    /*
+                     * Torn length, so the tail is unusable
+                     */
+                    {
+                        break;
+                    }
+                    frame = new byte[length];
+                    dis.readFully(frame);
+                    if (dis.readInt() != crc(frame))
+                    /*
+                     * Torn or corrupt frame
+                     */
+                    {
+                        break;
+                    }
+                }
+                catch (EOFException e)
+                {
+                    break;
+                }
+
+                valid += frame.length + 8;
+
+                try (ObjectInputStream ois = new ObjectInputStream(
+                        new ByteArrayInputStream(frame)))
+                {
+                    long frameSequence = ois.readLong();
+                    long timestamp = ois.readLong();
+                    int count = ois.readInt();
+
+                    if (frameSequence <= sequence)
+                    /*
+                     * Already folded into the snapshot
+                     */
+                    {
+                        continue;
+                    }
+
+                    for (int i = 0; i < count; i++)
+                    {
+                        boolean present = ois.readBoolean();
+                        K key = (K) ois.readObject();
+                        if (present)
+                        {
+                            super.put(key, (V) ois.readObject());
+                        }
+                        else
+                        {
+                            super.remove(key);
+                        }
+                    }
+                    lastModified = timestamp;
+                    frames++;
+                }
+            }
+        }
+
+        if (valid < journal.length())
+        /*
+         * Drop the torn tail so new frames are appended after good data
+         */
+        {
+            try (RandomAccessFile raf = new RandomAccessFile(journal, "rw"))
+            {
+                raf.setLength(valid);
+            }
+        }
+    }
+
+
+    /**
+     * @param frame
+     *            the frame bytes
+     * @return the CRC of the frame
+     */
+    private static int crc(byte[] frame)
+    {
+        CRC32 crc = new CRC32();
+        crc.update(frame, 0, frame.length);
+        return (int) crc.getValue();
+    }
+
+
+    /**
+     * Updates a digest with the contents of a file
+     *
+     * @param digest
+     *            the digest
+     * @param file
+     *            the file
+     * @throws IOException
+     */
+    private static void update(MessageDigest digest, File file)
+            throws IOException
+    {
+        if (!file.exists())
+        {
+            return;
+        }
+
+        byte[] byteArray = new byte[1024];
+        int bytesCount = 0;
+
+        try (FileInputStream fis = new FileInputStream(file))
+        {
+            while ((bytesCount = fis.read(byteArray)) != -1)
+            {
+                digest.update(byteArray, 0, bytesCount);
+            }
+        }
+    }
+
+}
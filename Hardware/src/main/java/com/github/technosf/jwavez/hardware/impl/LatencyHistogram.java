@@ -0,0 +1,124 @@
+/*
+ * Copyright 2016 technosf [https://github.com/technosf]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.github.technosf.jwavez.hardware.impl;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A lock-free histogram of durations, in power of two nanosecond buckets
+ * <p>
+ * Percentiles are reported as the upper bound of their bucket, so are
+ * within a factor of two, which is plenty to tune persistence by.
+ *
+ * @author technosf
+ * @since 0.0.1
+ * @version 0.0.1
+ */
+final class LatencyHistogram
+{
+
+    /**
+     * Bucket {@code i} counts durations below 2^(i+1) nanoseconds
+     */
+    private final AtomicLongArray buckets = new AtomicLongArray(64);
+
+    private final LongAdder total = new LongAdder();
+
+    private final LongAccumulator max = new LongAccumulator(Long::max, 0);
+
+
+    /**
+     * Records a duration
+     *
+     * @param nanos
+     *            the duration in nanoseconds
+     */
+    void record(long nanos)
+    {
+        long n = Math.max(nanos, 0);
+        buckets.incrementAndGet(63 - Long.numberOfLeadingZeros(n | 1));
+        total.add(n);
+        max.accumulate(n);
+    }
+
+
+    /**
+     * Forgets the recorded durations
+     */
+    void reset()
+    {
+        for (int i = 0; i < buckets.length(); i++)
+        {
+            buckets.set(i, 0);
+        }
+        total.reset();
+        max.reset();
+    }
+
+
+    /**
+     * @return a snapshot of the histogram
+     */
+    LatencyStats snapshot()
+    {
+        long[] counts = new long[buckets.length()];
+        long count = 0;
+        for (int i = 0; i < counts.length; i++)
+        {
+            counts[i] = buckets.get(i);
+            count += counts[i];
+        }
+
+        return new LatencyStats(count,
+                count == 0 ? 0 : millis(total.sum()) / count,
+                millis(max.get()), millis(percentile(counts, count, 0.5)),
+                millis(percentile(counts, count, 0.99)));
+    }
+
+
+    /**
+     * @param counts
+     *            the bucket counts
+     * @param count
+     *            the total count
+     * @param quantile
+     *            the quantile, 0 to 1
+     * @return the upper bound of the bucket holding the quantile, in
+     *         nanoseconds
+     */
+    private static long percentile(long[] counts, long count,
+            double quantile)
+    {
+        long rank = (long) Math.ceil(count * quantile);
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++)
+        {
+            seen += counts[i];
+            if (seen >= rank && seen > 0)
+            {
+                return i == 62 ? Long.MAX_VALUE : 1L << (i + 1);
+            }
+        }
+        return 0;
+    }
+
+
+    private static double millis(long nanos)
+    {
+        return nanos / 1e6;
+    }
+
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright 2016 technosf [https://github.com/technosf]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.github.technosf.jwavez.hardware.impl;
+
+/**
+ * A snapshot of a {@code LatencyHistogram}
+ *
+ * @author technosf
+ * @since 0.0.1
+ * @version 0.0.1
+ */
+public final class LatencyStats
+{
+
+    private final long count;
+
+    private final double meanMillis;
+
+    private final double maxMillis;
+
+    private final double medianMillis;
+
+    private final double percentile99Millis;
+
+
+    LatencyStats(long count, double meanMillis, double maxMillis,
+            double medianMillis, double percentile99Millis)
+    {
+        this.count = count;
+        this.meanMillis = meanMillis;
+        this.maxMillis = maxMillis;
+        this.medianMillis = medianMillis;
+        this.percentile99Millis = percentile99Millis;
+    }
+
+
+    /**
+     * @return the number of durations recorded
+     */
+    public long getCount()
+    {
+        return count;
+    }
+
+
+    /**
+     * @return the mean duration in milliseconds
+     */
+    public double getMeanMillis()
+    {
+        return meanMillis;
+    }
+
+
+    /**
+     * @return the longest duration in milliseconds
+     */
+    public double getMaxMillis()
+    {
+        return maxMillis;
+    }
+
+
+    /**
+     * @return the median duration in milliseconds, to within a factor of two
+     */
+    public double getMedianMillis()
+    {
+        return medianMillis;
+    }
+
+
+    /**
+     * @return the 99th percentile duration in milliseconds, to within a
+     *         factor of two
+     */
+    public double getPercentile99Millis()
+    {
+        return percentile99Millis;
+    }
+
+
+    @Override
+    public String toString()
+    {
+        return count + " mean " + meanMillis + "ms median " + medianMillis
+                + "ms p99 " + percentile99Millis + "ms max " + maxMillis
+                + "ms";
+    }
+
+}
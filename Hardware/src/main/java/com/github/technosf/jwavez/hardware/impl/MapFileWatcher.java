@@ -0,0 +1,378 @@
+/*
+ * Copyright 2016 technosf [https://github.com/technosf]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.github.technosf.jwavez.hardware.impl;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+
+import org.eclipse.jdt.annotation.Nullable;
+
+import com.github.technosf.jwavez.hardware.SerializableMap;
+
+/**
+ * Reloads {@code ReloadableSerializableMap}s as their files are changed by
+ * other processes
+ * <p>
+ * The directories of the watched files are registered with a
+ * {@code WatchService}. Events are collected until none have arrived for the
+ * settle time, so a file written in several steps is checked once it is
+ * complete, and then each changed map is asked to
+ * {@code reloadIfChanged()}. Events caused by the maps' own stores are
+ * skipped by that check.
+ *
+ * @author technosf
+ * @since 0.0.1
+ * @version 0.0.1
+ */
+public class MapFileWatcher implements Closeable
+{
+
+    /**
+     * The default settle time
+     */
+    public static final long DEFAULT_SETTLE_MILLIS = 100;
+
+    /**
+     * The watch service
+     */
+    private final WatchService watchService;
+
+    /**
+     * The watched maps, by the absolute path of their file
+     */
+    private final Map<Path, List<ReloadableSerializableMap<?, ?>>> maps =
+            new HashMap<>();
+
+    /**
+     * The watch keys of the directories holding watched files
+     */
+    private final Map<Path, WatchKey> directories = new HashMap<>();
+
+    /**
+     * Quiet time before events are acted on
+     */
+    private final long settleMillis;
+
+    /**
+     * The watcher thread
+     */
+    private final Thread thread;
+
+    /**
+     * Receives reload failures
+     */
+    private volatile BiConsumer<SerializableMap<?, ?>, Exception> errorHandler =
+            (map, e) -> System.err.printf("Cannot reload [%1$s]: %2$s\n",
+                    map.getFile(), e.getMessage());
+
+
+    /**
+     * Instantiate a watcher with the default settle time
+     *
+     * @throws IOException
+     *             the watch service is not available
+     */
+    public MapFileWatcher() throws IOException
+    {
+        this(DEFAULT_SETTLE_MILLIS);
+    }
+
+
+    /**
+     * Instantiate a watcher
+     *
+     * @param settleMillis
+     *            the time without events to wait for before reloading
+     * @throws IOException
+     *             the watch service is not available
+     */
+    public MapFileWatcher(long settleMillis) throws IOException
+    {
+        if (settleMillis < 0)
+        {
+            throw new IllegalArgumentException(
+                    "Settle time must not be negative");
+        }
+
+        this.settleMillis = settleMillis;
+        this.watchService = FileSystems.getDefault().newWatchService();
+        this.thread = new Thread(this::watch, "SerializableMap file watcher");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+
+    /**
+     * Watches the file of a map, reloading the map when it changes
+     *
+     * @param map
+     *            the map
+     * @throws IOException
+     *             the directory of the file cannot be watched
+     */
+    public void watch(ReloadableSerializableMap<?, ?> map) throws IOException
+    {
+        Path path = map.getFile().toPath().toAbsolutePath();
+        Path directory = path.getParent();
+
+        synchronized (maps)
+        {
+            if (!directories.containsKey(directory))
+            {
+                directories.put(directory, directory.register(watchService,
+                        ENTRY_CREATE, ENTRY_MODIFY));
+            }
+
+            List<ReloadableSerializableMap<?, ?>> watched =
+                    maps.computeIfAbsent(path, p -> new ArrayList<>());
+            if (!watched.contains(map))
+            {
+                watched.add(map);
+            }
+        }
+    }
+
+
+    /**
+     * Stops watching the file of a map
+     *
+     * @param map
+     *            the map
+     */
+    public void unwatch(ReloadableSerializableMap<?, ?> map)
+    {
+        Path path = map.getFile().toPath().toAbsolutePath();
+        Path directory = path.getParent();
+
+        synchronized (maps)
+        {
+            List<ReloadableSerializableMap<?, ?>> watched = maps.get(path);
+            if (watched == null || !watched.remove(map) || !watched.isEmpty())
+            {
+                return;
+            }
+            maps.remove(path);
+
+            for (Path other : maps.keySet())
+            {
+                if (directory.equals(other.getParent()))
+                {
+                    return;
+                }
+            }
+
+            WatchKey key = directories.remove(directory);
+            if (key != null)
+            /*
+             * No more files watched in the directory
+             */
+            {
+                key.cancel();
+            }
+        }
+    }
+
+
+    /**
+     * Stops watching
+     *
+     * @throws IOException
+     */
+    @Override
+    public void close() throws IOException
+    {
+        watchService.close();
+    }
+
+
+    /**
+     * Sets the handler that receives reload failures
+     * <p>
+     * The default prints the failure to {@code System.err}. A map that fails
+     * to reload keeps its current content and is retried on the next change
+     * to its file.
+     *
+     * @param errorHandler
+     *            the error handler
+     */
+    public void setErrorHandler(
+            BiConsumer<SerializableMap<?, ?>, Exception> errorHandler)
+    {
+        this.errorHandler = errorHandler;
+    }
+
+
+    /* ----------------------------------------------------------------
+     * Watcher thread
+     * ----------------------------------------------------------------
+     */
+
+    /**
+     * Collects events until they settle, then reloads the changed maps
+     */
+    private void watch()
+    {
+        try
+        {
+            while (true)
+            {
+                Set<Path> changed = new LinkedHashSet<>();
+                WatchKey key = watchService.take();
+
+                while (key != null)
+                /*
+                 * Collect until quiet
+                 */
+                {
+                    collect(key, changed);
+                    key = watchService.poll(settleMillis,
+                            TimeUnit.MILLISECONDS);
+                }
+
+                for (Path path : changed)
+                {
+                    reload(path);
+                }
+            }
+        }
+        catch (ClosedWatchServiceException | InterruptedException e)
+        /*
+         * Closed
+         */
+        {
+            return;
+        }
+    }
+
+
+    /**
+     * Collects the watched files an event key reports changed
+     *
+     * @param key
+     *            the key
+     * @param changed
+     *            the changed files
+     */
+    private void collect(WatchKey key, Set<Path> changed)
+    {
+        Path directory = (Path) key.watchable();
+
+        for (WatchEvent<?> event : key.pollEvents())
+        {
+            if (event.kind() == OVERFLOW)
+            /*
+             * Events lost, so check every file in the directory
+             */
+            {
+                synchronized (maps)
+                {
+                    for (Path path : maps.keySet())
+                    {
+                        if (directory.equals(path.getParent()))
+                        {
+                            changed.add(path);
+                        }
+                    }
+                }
+            }
+            else
+            {
+                changed.add(directory.resolve((Path) event.context()));
+            }
+        }
+
+        key.reset();
+    }
+
+
+    /**
+     * Reloads the maps of a changed file, if its content changed
+     *
+     * @param path
+     *            the file
+     */
+    private void reload(Path path)
+    {
+        @Nullable
+        List<ReloadableSerializableMap<?, ?>> watched;
+
+        synchronized (maps)
+        {
+            List<ReloadableSerializableMap<?, ?>> list = maps.get(path);
+            watched = list == null ? null : new ArrayList<>(list);
+        }
+
+        if (watched == null)
+        {
+            return;
+        }
+
+        for (ReloadableSerializableMap<?, ?> map : watched)
+        {
+            try
+            {
+                map.reloadIfChanged();
+            }
+            catch (IOException | ClassNotFoundException | RuntimeException e)
+            {
+                report(map, e);
+            }
+        }
+    }
+
+
+    /**
+     * Passes a reload failure to the error handler, which must not stop the
+     * watcher thread
+     *
+     * @param map
+     *            the map that failed to reload
+     * @param e
+     *            the failure
+     */
+    private void report(SerializableMap<?, ?> map, Exception e)
+    {
+        try
+        {
+            errorHandler.accept(map, e);
+        }
+        catch (RuntimeException handlerException)
+        /*
+         * The failure has reached the handler, so there is nothing more to
+         * report it to; dropping the handler's own exception keeps the
+         * remaining maps and later changes reloading
+         */
+        {
+        }
+    }
+
+}
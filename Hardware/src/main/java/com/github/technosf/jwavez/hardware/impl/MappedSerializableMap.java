@@ -0,0 +1,1239 @@
+/*
+ * Copyright 2016 technosf [https://github.com/technosf]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.github.technosf.jwavez.hardware.impl;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.NotSerializableException;
+import java.io.ObjectOutputStream;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+
+import org.eclipse.jdt.annotation.Nullable;
+
+import com.github.technosf.jwavez.hardware.Codec;
+import com.github.technosf.jwavez.hardware.MapChangeListener;
+import com.github.technosf.jwavez.hardware.PersistenceEvent.Operation;
+import com.github.technosf.jwavez.hardware.SerializableMap;
+
+/**
+ * A {@code SerializableMap} whose entries live in a memory-mapped file
+ * rather than on the heap
+ * <p>
+ * The file is a header followed by an append-only log of records, each the
+ * codec-encoded key and value of a put, or a remove or clear marker. Only an
+ * index of record offsets, two {@code int}s per entry, is kept on the heap;
+ * values are decoded from the mapping as they are read, and the operating
+ * system pages the file in and out as needed.
+ * <p>
+ * {@code store()} forces the mapped records to disk and then publishes them
+ * by advancing the stored limit in the header, so a crash leaves the map as
+ * of its last store. Opening a map reads the keys of the log to rebuild the
+ * index; values are not touched. When superseded records outweigh the live
+ * ones, {@code store()} compacts the live records into a new file that
+ * replaces the old one.
+ * <p>
+ * The file is limited to 2GB by the mapping. The map itself is not
+ * serializable, and like {@code HashMap} it is not thread safe. Call
+ * {@code close()} to release the file.
+ *
+ * @author technosf
+ * @since 0.0.1
+ * @version 0.0.1
+ * @param <K>
+ *            Key class
+ * @param <V>
+ *            Value class
+ */
+public class MappedSerializableMap<K, V>
+        extends AbstractMap<K, V>
+        implements SerializableMap<K, V>, Closeable
+{
+
+    /**
+     * Version Id
+     */
+    private static final long serialVersionUID = 201601191634L;
+
+    /**
+     * Magic number, "JWZO"
+     */
+    public static final int MAGIC = 0x4A575A4F;
+
+    /**
+     * Format version
+     */
+    public static final int VERSION = 1;
+
+    /**
+     * Suffix of the file live records are compacted into
+     */
+    public static final String COMPACT_SUFFIX = ".compact";
+
+    /*
+     * Header layout: magic, version, store timestamp, stored limit, size
+     */
+    private static final int HEADER = 32;
+    private static final int HEADER_TIMESTAMP = 8;
+    private static final int HEADER_LIMIT = 16;
+    private static final int HEADER_SIZE = 24;
+
+    /**
+     * The smallest mapping, and the least log worth compacting
+     */
+    private static final int MIN_MAPPING = 64 * 1024;
+
+    /*
+     * Record lengths standing for a null, a removal or a clear
+     */
+    private static final int NULL = -1;
+    private static final int REMOVED = -2;
+    private static final int CLEARED = -3;
+
+    /*
+     * Index slots that are free, or whose entry was removed
+     */
+    private static final int FREE = 0;
+    private static final int DELETED = -1;
+
+    /**
+     * The {@code File} the map lives in
+     */
+    private final File file;
+
+    private final transient Codec<K> keyCodec;
+    private final transient Codec<V> valueCodec;
+
+    private transient RandomAccessFile raf;
+    private transient FileChannel channel;
+    private transient MappedByteBuffer buffer;
+
+    /**
+     * Offset of the end of the log, where the next record goes
+     */
+    private transient int end;
+
+    /**
+     * Offset of the end of the stored log
+     */
+    private transient int limit;
+
+    /**
+     * Bytes of the log holding the current entries
+     */
+    private transient long liveBytes;
+
+    /*
+     * Index: open addressed, holding the key hash and record offset of each
+     * entry
+     */
+    private transient int[] hashes;
+    private transient int[] offsets;
+    private transient int used;
+    private transient int size;
+
+    /**
+     * Keep a time stamp of the last update
+     */
+    private long lastModified = 0l;
+
+    /**
+     * Has the map changed since it was stored?
+     */
+    private transient boolean dirty;
+
+    /**
+     * The {@code System.nanoTime()} the map last became dirty
+     */
+    private transient long dirtySince;
+
+    /**
+     * Tracks the keys changed since the last store, and notifies listeners
+     */
+    private final transient ChangeTracker<K, V> tracker =
+            new ChangeTracker<>(this);
+
+
+    /**
+     * Instantiate a {@code MappedSerializableMap} over its file, restoring
+     * any entries in it
+     *
+     * @param file
+     *            the file the map lives in
+     * @param keyCodec
+     *            the key codec
+     * @param valueCodec
+     *            the value codec
+     * @throws IOException
+     *             the file is unusable, or not a mapped map
+     */
+    public MappedSerializableMap(@Nullable File file, Codec<K> keyCodec,
+            Codec<V> valueCodec) throws IOException
+    {
+        super();
+
+        if (file == null || file.getPath().isEmpty() || file.isDirectory()
+                || !file.canWrite())
+        /*
+         * File is not a writable file and is unusable
+         */
+        {
+            throw new IOException("Cannot use file");
+        }
+        else if (!file.exists())
+        /*
+         * File does not exist, so touch it
+         */
+        {
+            file.createNewFile();
+        }
+
+        this.file = file;
+        this.keyCodec = keyCodec;
+        this.valueCodec = valueCodec;
+        this.hashes = new int[16];
+        this.offsets = new int[16];
+
+        open();
+
+        try
+        {
+            if (channel.size() == 0)
+            /*
+             * New file
+             */
+            {
+                map(MIN_MAPPING);
+                end = HEADER;
+                writeHeader(0l);
+                buffer.force();
+            }
+            else
+            /*
+             * Existing file, so attempt restore
+             */
+            {
+                long start = System.nanoTime();
+                try
+                {
+                    restore();
+                }
+                catch (IOException | RuntimeException e)
+                {
+                    PersistenceMetrics.failed(this, Operation.RESTORE, start,
+                            e);
+                    throw e;
+                }
+                PersistenceMetrics.completed(this, Operation.RESTORE, start,
+                        channel.size(), size);
+            }
+        }
+        catch (IOException | RuntimeException e)
+        {
+            close();
+            throw e;
+        }
+    }
+
+
+    /**
+     * Forces the log to disk, then publishes it as the stored state
+     * <p>
+     * Compacts the log if superseded records outweigh the live ones.
+     *
+     * @throws IOException
+     */
+    @Override
+    public void store() throws IOException
+    {
+        long start = System.nanoTime();
+        long since = isDirty() ? dirtySince : 0;
+        int stored = limit;
+        try
+        {
+            storeFile();
+        }
+        catch (IOException | RuntimeException e)
+        {
+            PersistenceMetrics.failed(this, Operation.STORE, start, e);
+            throw e;
+        }
+        PersistenceMetrics.completed(this, Operation.STORE, start,
+                limit >= stored ? limit - stored : limit, size, since);
+    }
+
+
+    /**
+     * Forces the log, compacting it if need be, and publishes the header
+     *
+     * @throws IOException
+     */
+    private void storeFile() throws IOException
+    {
+        long timestamp = System.currentTimeMillis();
+
+        if (end > MIN_MAPPING && end - HEADER - liveBytes > liveBytes)
+        /*
+         * Mostly dead records
+         */
+        {
+            compact(timestamp);
+        }
+        else
+        /*
+         * Records reach the disk before the header that makes them visible
+         */
+        {
+            buffer.force();
+            writeHeader(timestamp);
+            buffer.force();
+        }
+
+        lastModified = timestamp;
+        setDirty(false);
+    }
+
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The digest covers the stored extent of the file.
+     *
+     * @see com.github.technosf.jwavez.hardware.SerializableMap#digest()
+     */
+    @SuppressWarnings("null")
+    @Override
+    public byte[] digest()
+            throws NoSuchAlgorithmException, IOException
+    {
+        long start = System.nanoTime();
+        MessageDigest md = SerializableMap.getDigester(DIGEST_FUNCTION);
+        ByteBuffer stored = buffer.duplicate();
+        stored.position(0);
+        stored.limit(limit);
+        md.update(stored);
+        PersistenceMetrics.completed(this, Operation.DIGEST, start, limit,
+                size);
+        return md.digest();
+    }
+
+
+    /**
+     * Releases the file. Changes not stored are lost.
+     *
+     * @see java.io.Closeable#close()
+     */
+    @Override
+    public void close() throws IOException
+    {
+        try
+        {
+            channel.close();
+        }
+        finally
+        {
+            raf.close();
+        }
+    }
+
+
+    /* ----------------------------------------------------------------
+     * Map
+     * ----------------------------------------------------------------
+     */
+
+    @Override
+    public int size()
+    {
+        return size;
+    }
+
+
+    @Override
+    public boolean containsKey(@Nullable Object key)
+    {
+        return find(key, hash(key)) >= 0;
+    }
+
+
+    @Override
+    public @Nullable V get(@Nullable Object key)
+    {
+        int slot = find(key, hash(key));
+        return slot < 0 ? null : value(offsets[slot]);
+    }
+
+
+    @Override
+    public @Nullable V put(@Nullable K key, @Nullable V value)
+    {
+        byte[] keyBytes = key == null ? null : encode(keyCodec, key);
+        byte[] valueBytes = value == null ? null : encode(valueCodec, value);
+
+        int hash = hash(key);
+        int slot = find(key, hash);
+        V old = null;
+
+        if (slot >= 0)
+        /*
+         * Supersede the current record
+         */
+        {
+            old = value(offsets[slot]);
+            liveBytes -= recordLength(offsets[slot]);
+        }
+
+        int position = append(keyBytes, valueBytes, NULL);
+        liveBytes += recordLength(position);
+
+        if (slot >= 0)
+        {
+            offsets[slot] = position;
+        }
+        else
+        {
+            insert(hash, position);
+        }
+
+        setDirty(true);
+        tracker.changed(key, slot >= 0, old, true, value);
+        return old;
+    }
+
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public @Nullable V remove(@Nullable Object key)
+    {
+        int slot = find(key, hash(key));
+
+        if (slot < 0)
+        {
+            return null;
+        }
+
+        int position = offsets[slot];
+        V old = value(position);
+        int keyLength = buffer.getInt(position);
+
+        append(keyLength == NULL ? null : bytes(position + 8, keyLength), null,
+                REMOVED);
+        liveBytes -= recordLength(position);
+        offsets[slot] = DELETED;
+        size--;
+        setDirty(true);
+        tracker.removed((K) key, old);
+        return old;
+    }
+
+
+    @Override
+    public void clear()
+    {
+        if (isEmpty())
+        {
+            return;
+        }
+
+        /*
+         * Values are only decoded for listeners, who are notified once the
+         * map is cleared
+         */
+        boolean values = tracker.hasListeners();
+        List<Map.Entry<K, V>> removed = new ArrayList<>(size);
+        for (int position : offsets)
+        {
+            if (position > FREE)
+            {
+                removed.add(new AbstractMap.SimpleImmutableEntry<>(
+                        key(position), values ? value(position) : null));
+            }
+        }
+        append(null, null, CLEARED);
+        clearIndex();
+        setDirty(true);
+        for (Map.Entry<K, V> entry : removed)
+        {
+            tracker.removed(entry.getKey(), entry.getValue());
+        }
+    }
+
+
+    @Override
+    public Set<Map.Entry<K, V>> entrySet()
+    {
+        return new AbstractSet<Map.Entry<K, V>>()
+        {
+
+            @Override
+            public int size()
+            {
+                return size;
+            }
+
+
+            @Override
+            public void clear()
+            {
+                MappedSerializableMap.this.clear();
+            }
+
+
+            @Override
+            public Iterator<Map.Entry<K, V>> iterator()
+            {
+                return new EntryIterator();
+            }
+        };
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see com.github.technosf.jwavez.hardware.SerializableMap#getChangedKeys()
+     */
+    @Override
+    public Set<K> getChangedKeys()
+    {
+        return tracker.getChangedKeys();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see com.github.technosf.jwavez.hardware.SerializableMap#addChangeListener(com.github.technosf.jwavez.hardware.MapChangeListener)
+     */
+    @Override
+    public void addChangeListener(MapChangeListener<K, V> listener)
+    {
+        tracker.addListener(listener);
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see com.github.technosf.jwavez.hardware.SerializableMap#removeChangeListener(com.github.technosf.jwavez.hardware.MapChangeListener)
+     */
+    @Override
+    public void removeChangeListener(MapChangeListener<K, V> listener)
+    {
+        tracker.removeListener(listener);
+    }
+
+
+    /* ----------------------------------------------------------------
+     * Getters and Setters
+     * ----------------------------------------------------------------
+     */
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see com.github.technosf.jwavez.hardware.SerializableMap#isDirty()
+     */
+    @Override
+    public boolean isDirty()
+    {
+        return dirty;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see com.github.technosf.jwavez.hardware.SerializableMap#setDirty(boolean)
+     */
+    @Override
+    public void setDirty(boolean dirty)
+    {
+        if (dirty && !this.dirty)
+        {
+            dirtySince = System.nanoTime();
+        }
+        this.dirty = dirty;
+        if (!dirty)
+        /*
+         * In step with the file, so nothing has changed
+         */
+        {
+            tracker.clear();
+        }
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see com.github.technosf.jwavez.hardware.SerializableMap#getFile()
+     */
+    @Override
+    public File getFile()
+    {
+        return file;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see com.github.technosf.jwavez.hardware.SerializableMap#getStoreTimestamp()
+     */
+    @Override
+    public long getStoreTimestamp()
+    {
+        return lastModified;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see com.github.technosf.jwavez.hardware.SerializableMap#setStoreTimestamp(long)
+     */
+    @Override
+    public void setStoreTimestamp(long lastModified)
+    {
+        this.lastModified = lastModified;
+    }
+
+
+    /* ----------------------------------------------------------------
+     * Log
+     * ----------------------------------------------------------------
+     */
+
+    /**
+     * Opens the file
+     *
+     * @throws IOException
+     */
+    private void open() throws IOException
+    {
+        raf = new RandomAccessFile(file, "rw");
+        channel = raf.getChannel();
+    }
+
+
+    /**
+     * Maps the file, growing it to the capacity if need be
+     *
+     * @param capacity
+     *            the capacity of the mapping
+     * @throws IOException
+     */
+    private void map(long capacity) throws IOException
+    {
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+    }
+
+
+    /**
+     * Checks the header and rebuilds the index from the stored log
+     *
+     * @throws IOException
+     *             not a mapped map
+     */
+    private void restore() throws IOException
+    {
+        long length = channel.size();
+
+        if (length < HEADER || length > Integer.MAX_VALUE)
+        {
+            throw new IOException("Not a mapped map");
+        }
+
+        map(Math.max(length, MIN_MAPPING));
+
+        if (buffer.getInt(0) != MAGIC)
+        {
+            throw new IOException("Not a mapped map");
+        }
+        else if (buffer.getInt(4) != VERSION)
+        {
+            throw new IOException(
+                    "Unknown mapped map version: " + buffer.getInt(4));
+        }
+
+        lastModified = buffer.getLong(HEADER_TIMESTAMP);
+        long stored = buffer.getLong(HEADER_LIMIT);
+
+        if (stored < HEADER || stored > length)
+        {
+            throw new IOException("Malformed mapped map limit: " + stored);
+        }
+
+        end = (int) stored;
+        limit = end;
+
+        for (int position = HEADER; position < end; position +=
+                recordLength(position))
+        {
+            int valueLength = buffer.getInt(position + 4);
+
+            if (valueLength == CLEARED)
+            {
+                clearIndex();
+                continue;
+            }
+
+            K key = key(position);
+            int hash = hash(key);
+            int slot = find(key, hash);
+
+            if (slot >= 0)
+            /*
+             * Superseded
+             */
+            {
+                liveBytes -= recordLength(offsets[slot]);
+                if (valueLength == REMOVED)
+                {
+                    offsets[slot] = DELETED;
+                    size--;
+                }
+                else
+                {
+                    offsets[slot] = position;
+                    liveBytes += recordLength(position);
+                }
+            }
+            else if (valueLength != REMOVED)
+            {
+                insert(hash, position);
+                liveBytes += recordLength(position);
+            }
+        }
+
+        if (size != buffer.getInt(HEADER_SIZE))
+        {
+            throw new IOException("Corrupt mapped map: size " + size
+                    + " expected " + buffer.getInt(HEADER_SIZE));
+        }
+    }
+
+
+    /**
+     * Writes the header, publishing the log up to its end
+     *
+     * @param timestamp
+     *            the store timestamp
+     */
+    private void writeHeader(long timestamp)
+    {
+        buffer.putInt(0, MAGIC);
+        buffer.putInt(4, VERSION);
+        buffer.putLong(HEADER_TIMESTAMP, timestamp);
+        buffer.putLong(HEADER_LIMIT, end);
+        buffer.putInt(HEADER_SIZE, size);
+        limit = end;
+    }
+
+
+    /**
+     * Appends a record to the log
+     *
+     * @param keyBytes
+     *            the encoded key, or null
+     * @param valueBytes
+     *            the encoded value, or null
+     * @param marker
+     *            the value length to record if there is no value
+     * @return the offset of the record
+     */
+    private int append(@Nullable byte[] keyBytes, @Nullable byte[] valueBytes,
+            int marker)
+    {
+        int keyLength = keyBytes == null ? 0 : keyBytes.length;
+        int valueLength = valueBytes == null ? 0 : valueBytes.length;
+        int position = end;
+
+        ensure((long) position + 8 + keyLength + valueLength);
+
+        buffer.putInt(position, keyBytes == null ? NULL : keyLength);
+        buffer.putInt(position + 4, valueBytes == null ? marker : valueLength);
+
+        ByteBuffer record = buffer.duplicate();
+        record.position(position + 8);
+        if (keyBytes != null)
+        {
+            record.put(keyBytes);
+        }
+        if (valueBytes != null)
+        {
+            record.put(valueBytes);
+        }
+
+        end = record.position();
+        return position;
+    }
+
+
+    /**
+     * Grows the mapping to hold the log
+     *
+     * @param required
+     *            the length the log needs
+     */
+    private void ensure(long required)
+    {
+        if (required <= buffer.capacity())
+        {
+            return;
+        }
+        else if (required > Integer.MAX_VALUE)
+        {
+            throw new IllegalStateException("Mapped map is full");
+        }
+
+        try
+        {
+            map(Math.min(Integer.MAX_VALUE,
+                    Math.max(required, 2l * buffer.capacity())));
+        }
+        catch (IOException e)
+        {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+
+    /**
+     * Writes the live records to a new file that replaces the current one,
+     * and maps it
+     *
+     * @param timestamp
+     *            the store timestamp
+     * @throws IOException
+     */
+    private void compact(long timestamp) throws IOException
+    {
+        File compacted = new File(file.getPath() + COMPACT_SUFFIX);
+        int[] newHashes = new int[capacity(size)];
+        int[] newOffsets = new int[newHashes.length];
+        int position = HEADER;
+
+        try (FileOutputStream fos = new FileOutputStream(compacted);
+                DataOutputStream dos = new DataOutputStream(
+                        new BufferedOutputStream(fos)))
+        {
+            dos.writeInt(MAGIC);
+            dos.writeInt(VERSION);
+            dos.writeLong(timestamp);
+            dos.writeLong(HEADER + liveBytes);
+            dos.writeInt(size);
+            dos.writeInt(0);
+
+            for (int slot = 0; slot < offsets.length; slot++)
+            {
+                if (offsets[slot] > FREE)
+                {
+                    int length = recordLength(offsets[slot]);
+                    dos.write(bytes(offsets[slot], length));
+                    place(newHashes, newOffsets, hashes[slot], position);
+                    position += length;
+                }
+            }
+
+            dos.flush();
+            fos.getFD().sync();
+        }
+
+        close();
+        try
+        {
+            Files.move(compacted.toPath(), file.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        }
+        finally
+        /*
+         * The old mapping stays valid should the move fail
+         */
+        {
+            open();
+        }
+        map(Math.max(MIN_MAPPING, 2l * position));
+
+        hashes = newHashes;
+        offsets = newOffsets;
+        used = size;
+        end = position;
+        limit = position;
+    }
+
+
+    /**
+     * @param position
+     *            the offset of a record
+     * @return the length of the record
+     */
+    private int recordLength(int position)
+    {
+        return 8 + Math.max(0, buffer.getInt(position))
+                + Math.max(0, buffer.getInt(position + 4));
+    }
+
+
+    /**
+     * Decodes the key of a record
+     *
+     * @param position
+     *            the offset of the record
+     * @return the key
+     */
+    private @Nullable K key(int position)
+    {
+        int keyLength = buffer.getInt(position);
+        return keyLength == NULL ? null
+                : decode(keyCodec, bytes(position + 8, keyLength));
+    }
+
+
+    /**
+     * Decodes the value of a record
+     *
+     * @param position
+     *            the offset of the record
+     * @return the value
+     */
+    private @Nullable V value(int position)
+    {
+        int valueLength = buffer.getInt(position + 4);
+        return valueLength < 0 ? null
+                : decode(valueCodec, bytes(
+                        position + 8 + Math.max(0, buffer.getInt(position)),
+                        valueLength));
+    }
+
+
+    /**
+     * Copies bytes out of the mapping
+     *
+     * @param position
+     *            the offset to copy from
+     * @param length
+     *            the number of bytes
+     * @return the bytes
+     */
+    private byte[] bytes(int position, int length)
+    {
+        byte[] bytes = new byte[length];
+        ByteBuffer source = buffer.duplicate();
+        source.position(position);
+        source.get(bytes);
+        return bytes;
+    }
+
+
+    /**
+     * @param codec
+     *            the codec
+     * @param value
+     *            the value to encode
+     * @return the encoded value
+     */
+    private static <T> byte[] encode(Codec<T> codec, T value)
+    {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try
+        {
+            codec.write(new DataOutputStream(baos), value);
+        }
+        catch (IOException e)
+        {
+            throw new UncheckedIOException(e);
+        }
+        return baos.toByteArray();
+    }
+
+
+    /**
+     * @param codec
+     *            the codec
+     * @param bytes
+     *            the encoded value
+     * @return the decoded value
+     */
+    private static <T> T decode(Codec<T> codec, byte[] bytes)
+    {
+        try
+        {
+            return codec.read(
+                    new DataInputStream(new ByteArrayInputStream(bytes)));
+        }
+        catch (IOException e)
+        {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+
+    /**
+     * The map is in its file, not in a stream
+     *
+     * @param out
+     *            the stream
+     * @throws IOException
+     */
+    private void writeObject(ObjectOutputStream out) throws IOException
+    {
+        throw new NotSerializableException(getClass().getName());
+    }
+
+
+    /* ----------------------------------------------------------------
+     * Index
+     * ----------------------------------------------------------------
+     */
+
+    /**
+     * @param key
+     *            the key
+     * @return the spread hash of the key
+     */
+    private static int hash(@Nullable Object key)
+    {
+        int h = key == null ? 0 : key.hashCode();
+        return h ^ (h >>> 16);
+    }
+
+
+    /**
+     * Finds the index slot of a key
+     *
+     * @param key
+     *            the key
+     * @param hash
+     *            the hash of the key
+     * @return the slot, or -1 if the key is not in the map
+     */
+    private int find(@Nullable Object key, int hash)
+    {
+        int mask = offsets.length - 1;
+
+        for (int slot = hash & mask;; slot = (slot + 1) & mask)
+        {
+            int offset = offsets[slot];
+
+            if (offset == FREE)
+            {
+                return -1;
+            }
+            else if (offset != DELETED && hashes[slot] == hash
+                    && Objects.equals(key(offset), key))
+            {
+                return slot;
+            }
+        }
+    }
+
+
+    /**
+     * Indexes a new entry, growing the index if need be
+     *
+     * @param hash
+     *            the hash of the key
+     * @param position
+     *            the offset of the record
+     */
+    private void insert(int hash, int position)
+    {
+        if (4 * (used + 1) > 3 * offsets.length)
+        /*
+         * Rehash, dropping deleted slots
+         */
+        {
+            int[] newHashes = new int[capacity(size + 1)];
+            int[] newOffsets = new int[newHashes.length];
+            for (int slot = 0; slot < offsets.length; slot++)
+            {
+                if (offsets[slot] > FREE)
+                {
+                    place(newHashes, newOffsets, hashes[slot], offsets[slot]);
+                }
+            }
+            hashes = newHashes;
+            offsets = newOffsets;
+            used = size;
+        }
+
+        if (place(hashes, offsets, hash, position))
+        {
+            used++;
+        }
+        size++;
+    }
+
+
+    /**
+     * Empties the index
+     */
+    private void clearIndex()
+    {
+        hashes = new int[16];
+        offsets = new int[16];
+        used = 0;
+        size = 0;
+        liveBytes = 0;
+    }
+
+
+    /**
+     * @param entries
+     *            the number of entries
+     * @return the index capacity that holds them at half load
+     */
+    private static int capacity(int entries)
+    {
+        return Math.max(16, Integer.highestOneBit(Math.max(1, entries)) * 4);
+    }
+
+
+    /**
+     * Places an entry in the first free or deleted slot for its hash
+     *
+     * @param hashes
+     *            the index hashes
+     * @param offsets
+     *            the index offsets
+     * @param hash
+     *            the hash of the key
+     * @param position
+     *            the offset of the record
+     * @return true if a free slot was used
+     */
+    private static boolean place(int[] hashes, int[] offsets, int hash,
+            int position)
+    {
+        int mask = offsets.length - 1;
+        int slot = hash & mask;
+
+        while (offsets[slot] > FREE)
+        {
+            slot = (slot + 1) & mask;
+        }
+
+        boolean free = offsets[slot] == FREE;
+        hashes[slot] = hash;
+        offsets[slot] = position;
+        return free;
+    }
+
+
+    /**
+     * Iterates the entries in index order
+     */
+    private final class EntryIterator implements Iterator<Map.Entry<K, V>>
+    {
+        private int next = advance(0);
+
+        @Nullable
+        private K lastKey;
+        private boolean removable;
+
+
+        @Override
+        public boolean hasNext()
+        {
+            return next < offsets.length;
+        }
+
+
+        @Override
+        public Map.Entry<K, V> next()
+        {
+            if (!hasNext())
+            {
+                throw new NoSuchElementException();
+            }
+
+            int position = offsets[next];
+            next = advance(next + 1);
+
+            Map.Entry<K, V> entry = new AbstractMap.SimpleEntry<K, V>(
+                    key(position), value(position))
+            {
+                private static final long serialVersionUID =
+                        201601191634L;
+
+
+                @Override
+                public V setValue(V value)
+                {
+                    MappedSerializableMap.this.put(getKey(), value);
+                    return super.setValue(value);
+                }
+            };
+
+            lastKey = entry.getKey();
+            removable = true;
+            return entry;
+        }
+
+
+        @Override
+        public void remove()
+        {
+            if (!removable)
+            {
+                throw new IllegalStateException();
+            }
+            MappedSerializableMap.this.remove(lastKey);
+            removable = false;
+        }
+
+
+        /**
+         * @param from
+         *            the slot to start from
+         * @return the next occupied slot
+         */
+        private int advance(int from)
+        {
+            int slot = from;
+            while (slot < offsets.length && offsets[slot] <= FREE)
+            {
+                slot++;
+            }
+            return slot;
+        }
+    }
+
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright 2016 technosf [https://github.com/technosf]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.github.technosf.jwavez.hardware.impl;
+
+/**
+ * A snapshot of the metrics of one persistence operation
+ *
+ * @author technosf
+ * @since 0.0.1
+ * @version 0.0.1
+ */
+public final class OperationStats
+{
+
+    private final long failures;
+
+    private final long bytes;
+
+    private final long entries;
+
+    private final LatencyStats latency;
+
+
+    OperationStats(long failures, long bytes, long entries,
+            LatencyStats latency)
+    {
+        this.failures = failures;
+        this.bytes = bytes;
+        this.entries = entries;
+        this.latency = latency;
+    }
+
+
+    /**
+     * @return the number of operations completed
+     */
+    public long getCount()
+    {
+        return latency.getCount();
+    }
+
+
+    /**
+     * @return the number of operations failed
+     */
+    public long getFailures()
+    {
+        return failures;
+    }
+
+
+    /**
+     * @return the bytes read or written by the operations completed
+     */
+    public long getBytes()
+    {
+        return bytes;
+    }
+
+
+    /**
+     * @return the entries stored or restored by the operations completed
+     */
+    public long getEntries()
+    {
+        return entries;
+    }
+
+
+    /**
+     * @return the latency of the operations completed
+     */
+    public LatencyStats getLatency()
+    {
+        return latency;
+    }
+
+
+    @Override
+    public String toString()
+    {
+        return "failures " + failures + " bytes " + bytes + " entries "
+                + entries + " latency " + latency;
+    }
+
+}
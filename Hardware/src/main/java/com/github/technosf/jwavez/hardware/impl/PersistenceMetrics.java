@@ -0,0 +1,382 @@
+/*
+ * Copyright 2016 technosf [https://github.com/technosf]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.github.technosf.jwavez.hardware.impl;
+
+import java.lang.management.ManagementFactory;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.eclipse.jdt.annotation.Nullable;
+
+import com.github.technosf.jwavez.hardware.PersistenceEvent;
+import com.github.technosf.jwavez.hardware.PersistenceEvent.Operation;
+import com.github.technosf.jwavez.hardware.PersistenceListener;
+import com.github.technosf.jwavez.hardware.SerializableMap;
+
+/**
+ * Metrics of the stores, restores and digests of every
+ * {@code SerializableMap}
+ * <p>
+ * The maps report to the single instance, which keeps latency histograms
+ * and byte, entry and failure counts for each operation, and the lag from a
+ * map becoming dirty to its being stored. The metrics can be read through
+ * the {@code PersistenceMetricsMXBean} once {@code registerMBean()} has been
+ * called, and each operation is passed on to the registered
+ * {@code PersistenceListener}s. A {@code ShardedSerializableMap} is reported
+ * shard by shard.
+ * <p>
+ * Recording is lock free, and events are only created while there are
+ * listeners.
+ *
+ * @author technosf
+ * @since 0.0.1
+ * @version 0.0.1
+ */
+public final class PersistenceMetrics
+        implements PersistenceMetricsMXBean
+{
+
+    /**
+     * The name the MBean is registered under
+     */
+    public static final String OBJECT_NAME =
+            "com.github.technosf.jwavez:type=PersistenceMetrics";
+
+    private static final PersistenceMetrics INSTANCE =
+            new PersistenceMetrics();
+
+    private final Map<Operation, Recorder> recorders =
+            new EnumMap<>(Operation.class);
+
+    private final LatencyHistogram dirtyLag = new LatencyHistogram();
+
+    private final List<PersistenceListener> listeners =
+            new CopyOnWriteArrayList<>();
+
+
+    private PersistenceMetrics()
+    {
+        for (Operation operation : Operation.values())
+        {
+            recorders.put(operation, new Recorder());
+        }
+    }
+
+
+    /**
+     * @return the metrics
+     */
+    public static PersistenceMetrics getInstance()
+    {
+        return INSTANCE;
+    }
+
+
+    /**
+     * Registers the metrics with the platform {@code MBeanServer}, if not
+     * already registered
+     *
+     * @return the name registered under
+     * @throws JMException
+     *             the MBean could not be registered
+     */
+    public ObjectName registerMBean() throws JMException
+    {
+        ObjectName name = new ObjectName(OBJECT_NAME);
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        synchronized (this)
+        {
+            if (!server.isRegistered(name))
+            {
+                server.registerMBean(this, name);
+            }
+        }
+        return name;
+    }
+
+
+    /**
+     * Unregisters the metrics from the platform {@code MBeanServer}, if
+     * registered
+     *
+     * @throws JMException
+     */
+    public void unregisterMBean() throws JMException
+    {
+        ObjectName name = new ObjectName(OBJECT_NAME);
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        synchronized (this)
+        {
+            if (server.isRegistered(name))
+            {
+                server.unregisterMBean(name);
+            }
+        }
+    }
+
+
+    /**
+     * Adds a listener. Listeners are called on the thread of the operation,
+     * and an exception one throws is dropped.
+     *
+     * @param listener
+     *            the listener to add
+     */
+    public void addListener(PersistenceListener listener)
+    {
+        listeners.add(listener);
+    }
+
+
+    /**
+     * @param listener
+     *            the listener to remove
+     */
+    public void removeListener(PersistenceListener listener)
+    {
+        listeners.remove(listener);
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see com.github.technosf.jwavez.hardware.impl.PersistenceMetricsMXBean#getStore()
+     */
+    @Override
+    public OperationStats getStore()
+    {
+        return recorders.get(Operation.STORE).snapshot();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see com.github.technosf.jwavez.hardware.impl.PersistenceMetricsMXBean#getRestore()
+     */
+    @Override
+    public OperationStats getRestore()
+    {
+        return recorders.get(Operation.RESTORE).snapshot();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see com.github.technosf.jwavez.hardware.impl.PersistenceMetricsMXBean#getDigest()
+     */
+    @Override
+    public OperationStats getDigest()
+    {
+        return recorders.get(Operation.DIGEST).snapshot();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see com.github.technosf.jwavez.hardware.impl.PersistenceMetricsMXBean#getDirtyToStoreLag()
+     */
+    @Override
+    public LatencyStats getDirtyToStoreLag()
+    {
+        return dirtyLag.snapshot();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see com.github.technosf.jwavez.hardware.impl.PersistenceMetricsMXBean#reset()
+     */
+    @Override
+    public void reset()
+    {
+        for (Recorder recorder : recorders.values())
+        {
+            recorder.reset();
+        }
+        dirtyLag.reset();
+    }
+
+
+    /* ----------------------------------------------------------------
+     * Reporting, by the maps
+     * ----------------------------------------------------------------
+     */
+
+    /**
+     * Reports a completed operation
+     *
+     * @param map
+     *            the map
+     * @param operation
+     *            the operation
+     * @param start
+     *            the {@code System.nanoTime()} the operation started at
+     * @param bytes
+     *            the bytes read or written, or -1 if not known
+     * @param entries
+     *            the entries in the map after the operation, as counted by
+     *            the map, or -1 if not known
+     * @param dirtySince
+     *            the {@code System.nanoTime()} a stored map became dirty
+     *            at, or 0 if not known
+     */
+    static void completed(SerializableMap<?, ?> map, Operation operation,
+            long start, long bytes, int entries, long dirtySince)
+    {
+        long end = System.nanoTime();
+        long dirtyNanos = dirtySince == 0 ? -1 : end - dirtySince;
+
+        INSTANCE.recorders.get(operation).completed(end - start, bytes,
+                entries);
+        if (dirtyNanos >= 0)
+        {
+            INSTANCE.dirtyLag.record(dirtyNanos);
+        }
+        INSTANCE.notify(map, operation, end - start, bytes, entries,
+                dirtyNanos, null);
+    }
+
+
+    /**
+     * Reports a completed operation of a map never dirty
+     *
+     * @param map
+     *            the map
+     * @param operation
+     *            the operation
+     * @param start
+     *            the {@code System.nanoTime()} the operation started at
+     * @param bytes
+     *            the bytes read or written, or -1 if not known
+     * @param entries
+     *            the entries in the map after the operation, as counted by
+     *            the map, or -1 if not known
+     */
+    static void completed(SerializableMap<?, ?> map, Operation operation,
+            long start, long bytes, int entries)
+    {
+        completed(map, operation, start, bytes, entries, 0);
+    }
+
+
+    /**
+     * Reports a failed operation
+     * <p>
+     * The entries of the map are not known, as counting them may cost as
+     * much as the operation.
+     *
+     * @param map
+     *            the map
+     * @param operation
+     *            the operation
+     * @param start
+     *            the {@code System.nanoTime()} the operation started at
+     * @param failure
+     *            the exception the operation failed with
+     */
+    static void failed(SerializableMap<?, ?> map, Operation operation,
+            long start, Exception failure)
+    {
+        INSTANCE.recorders.get(operation).failures.increment();
+        INSTANCE.notify(map, operation, System.nanoTime() - start, -1, -1,
+                -1, failure);
+    }
+
+
+    /**
+     * Passes an operation on to the listeners
+     */
+    private void notify(SerializableMap<?, ?> map, Operation operation,
+            long nanos, long bytes, int entries, long dirtyNanos,
+            @Nullable Exception failure)
+    {
+        if (!listeners.isEmpty())
+        {
+            PersistenceEvent event = new PersistenceEvent(map, operation,
+                    nanos, bytes, entries, dirtyNanos, failure);
+            for (PersistenceListener listener : listeners)
+            {
+                try
+                {
+                    listener.persisted(event);
+                }
+                catch (RuntimeException e)
+                /*
+                 * A listener must not fail the operation it observes, nor
+                 * keep the event from the other listeners
+                 */
+                {
+                }
+            }
+        }
+    }
+
+
+    /**
+     * The metrics of one operation
+     */
+    private static final class Recorder
+    {
+        private final LatencyHistogram latency = new LatencyHistogram();
+
+        private final LongAdder failures = new LongAdder();
+
+        private final LongAdder bytes = new LongAdder();
+
+        private final LongAdder entries = new LongAdder();
+
+
+        void completed(long nanos, long bytes, int entries)
+        {
+            latency.record(nanos);
+            if (bytes > 0)
+            {
+                this.bytes.add(bytes);
+            }
+            if (entries > 0)
+            {
+                this.entries.add(entries);
+            }
+        }
+
+
+        void reset()
+        {
+            latency.reset();
+            failures.reset();
+            bytes.reset();
+            entries.reset();
+        }
+
+
+        OperationStats snapshot()
+        {
+            return new OperationStats(failures.sum(), bytes.sum(),
+                    entries.sum(), latency.snapshot());
+        }
+    }
+
+}
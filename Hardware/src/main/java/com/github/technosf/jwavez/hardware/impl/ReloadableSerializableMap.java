@@ -0,0 +1,511 @@
+/*
+ * Copyright 2016 technosf [https://github.com/technosf]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.github.technosf.jwavez.hardware.impl;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.NotSerializableException;
+import java.io.ObjectOutputStream;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.eclipse.jdt.annotation.Nullable;
+
+import com.github.technosf.jwavez.hardware.MapChangeListener;
+import com.github.technosf.jwavez.hardware.SerializableMap;
+
+/**
+ * A {@code SerializableMap} that can be reloaded from its file when the file
+ * is changed by another process
+ * <p>
+ * The map delegates to a {@code SerializableMap} created by a
+ * {@code Loader}. A reload loads a new delegate from the file and then swaps
+ * it in with a single volatile write, so readers see either the old map or
+ * the new one, never one part loaded. Changes made to the old map that were
+ * not stored are lost by a reload.
+ * <p>
+ * {@code reloadIfChanged()} skips files that have not changed: it first
+ * compares the timestamp stored in the file and the file length with those
+ * as loaded, then the digest of the file with the digest as loaded. The digest is that of the
+ * delegate, so is cached until the file changes on disk. Register the map
+ * with a {@code MapFileWatcher} to reload it as the file changes.
+ * <p>
+ * Intended for delegates restored wholly into memory, such as
+ * {@code SerializableHashMap}.
+ *
+ * @author technosf
+ * @since 0.0.1
+ * @version 0.0.1
+ * @param <K>
+ *            Key class
+ * @param <V>
+ *            Value class
+ */
+public class ReloadableSerializableMap<K, V>
+        implements SerializableMap<K, V>
+{
+
+    /**
+     * Loads a map from its file
+     *
+     * @param <K>
+     *            Key class
+     * @param <V>
+     *            Value class
+     */
+    @FunctionalInterface
+    public interface Loader<K, V>
+    {
+        /**
+         * @param file
+         *            the file
+         * @return the map restored from the file
+         * @throws IOException
+         * @throws ClassNotFoundException
+         */
+        SerializableMap<K, V> load(File file)
+                throws IOException, ClassNotFoundException;
+    }
+
+    /**
+     * Version Id
+     */
+    private static final long serialVersionUID = 201601191634L;
+
+    /**
+     * The file
+     */
+    private final File file;
+
+    /**
+     * Loads the delegates
+     */
+    private final Loader<K, V> loader;
+
+    /**
+     * The current delegate, swapped by reloads
+     */
+    private volatile SerializableMap<K, V> map;
+
+    /**
+     * The digest of the file the delegate was loaded from, or last stored
+     */
+    private byte[] loadedDigest;
+
+    /**
+     * The length of the file the delegate was loaded from, or last stored
+     */
+    private long loadedLength;
+
+    /**
+     * Change listeners, carried over to each new delegate
+     */
+    private final List<MapChangeListener<K, V>> listeners =
+            new CopyOnWriteArrayList<>();
+
+
+    /**
+     * Instantiate a {@code ReloadableSerializableMap}, loading it from its
+     * file
+     *
+     * @param file
+     *            the file to serialize this map to
+     * @param loader
+     *            loads the map from the file, such as
+     *            {@code SerializableHashMap::new}
+     * @throws IOException
+     * @throws ClassNotFoundException
+     */
+    public ReloadableSerializableMap(File file, Loader<K, V> loader)
+            throws IOException, ClassNotFoundException
+    {
+        this.file = file;
+        this.loader = loader;
+        this.map = loader.load(file);
+        this.loadedDigest = digestOf(map);
+        this.loadedLength = file.length();
+    }
+
+
+    /**
+     * Reloads the map from its file if the file has changed since it was
+     * loaded or stored
+     *
+     * @return true if the map was reloaded
+     * @throws IOException
+     *             the file could not be loaded; the map is unchanged
+     * @throws ClassNotFoundException
+     */
+    public synchronized boolean reloadIfChanged()
+            throws IOException, ClassNotFoundException
+    {
+        SerializableMap<K, V> current = map;
+        long timestamp = storedTimestamp(file);
+
+        if (timestamp >= 0 && timestamp == current.getStoreTimestamp()
+                && file.length() == loadedLength)
+        /*
+         * Same store as loaded
+         */
+        {
+            return false;
+        }
+
+        if (Arrays.equals(digestOf(current), loadedDigest))
+        /*
+         * Touched, or rewritten with the same content
+         */
+        {
+            return false;
+        }
+
+        reload();
+        return true;
+    }
+
+
+    /**
+     * Reloads the map from its file, swapping the new map in once loaded
+     *
+     * @throws IOException
+     *             the file could not be loaded; the map is unchanged
+     * @throws ClassNotFoundException
+     */
+    public synchronized void reload()
+            throws IOException, ClassNotFoundException
+    {
+        SerializableMap<K, V> reloaded = loader.load(file);
+        for (MapChangeListener<K, V> listener : listeners)
+        {
+            reloaded.addChangeListener(listener);
+        }
+
+        loadedDigest = digestOf(reloaded);
+        loadedLength = file.length();
+        map = reloaded;
+    }
+
+
+    /**
+     * Stores the current map
+     * <p>
+     * Synchronized with reloads, so a reload never sees a partial store.
+     *
+     * @throws IOException
+     */
+    @Override
+    public synchronized void store() throws IOException
+    {
+        SerializableMap<K, V> current = map;
+        current.store();
+        loadedDigest = digestOf(current);
+        loadedLength = file.length();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see com.github.technosf.jwavez.hardware.SerializableMap#digest()
+     */
+    @Override
+    public byte[] digest()
+            throws NoSuchAlgorithmException, IOException
+    {
+        return map.digest();
+    }
+
+
+    /**
+     * Reads the timestamp stored in a file in either format
+     *
+     * @param file
+     *            the file
+     * @return the timestamp, or -1 if not known
+     */
+    private static long storedTimestamp(File file)
+    {
+        long timestamp = BinaryMapFormat.storedTimestamp(file);
+        return timestamp < 0 ? SerializableMap.storedTimestamp(file)
+                : timestamp;
+    }
+
+
+    /**
+     * @param map
+     *            a delegate
+     * @return the digest of its file
+     * @throws IOException
+     */
+    private static byte[] digestOf(SerializableMap<?, ?> map)
+            throws IOException
+    {
+        try
+        {
+            return map.digest();
+        }
+        catch (NoSuchAlgorithmException e)
+        {
+            throw new IllegalStateException(e);
+        }
+    }
+
+
+    /**
+     * Bound to its file and loader, so not serializable itself
+     *
+     * @param oos
+     *            the stream
+     * @throws NotSerializableException
+     */
+    private void writeObject(ObjectOutputStream oos)
+            throws NotSerializableException
+    {
+        throw new NotSerializableException(getClass().getName());
+    }
+
+
+    /* ----------------------------------------------------------------
+     * Map - delegated to the current map
+     * ----------------------------------------------------------------
+     */
+
+    @Override
+    public int size()
+    {
+        return map.size();
+    }
+
+
+    @Override
+    public boolean isEmpty()
+    {
+        return map.isEmpty();
+    }
+
+
+    @Override
+    public boolean containsKey(@Nullable Object key)
+    {
+        return map.containsKey(key);
+    }
+
+
+    @Override
+    public boolean containsValue(@Nullable Object value)
+    {
+        return map.containsValue(value);
+    }
+
+
+    @Override
+    public V get(@Nullable Object key)
+    {
+        return map.get(key);
+    }
+
+
+    @Override
+    public V put(K key, V value)
+    {
+        return map.put(key, value);
+    }
+
+
+    @Override
+    public V remove(@Nullable Object key)
+    {
+        return map.remove(key);
+    }
+
+
+    @Override
+    public void putAll(Map<? extends K, ? extends V> m)
+    {
+        map.putAll(m);
+    }
+
+
+    @Override
+    public void clear()
+    {
+        map.clear();
+    }
+
+
+    @Override
+    public Set<K> keySet()
+    {
+        return map.keySet();
+    }
+
+
+    @Override
+    public Collection<V> values()
+    {
+        return map.values();
+    }
+
+
+    @Override
+    public Set<Map.Entry<K, V>> entrySet()
+    {
+        return map.entrySet();
+    }
+
+
+    @Override
+    public boolean equals(@Nullable Object o)
+    {
+        return o == this || map.equals(o);
+    }
+
+
+    @Override
+    public int hashCode()
+    {
+        return map.hashCode();
+    }
+
+
+    @Override
+    public String toString()
+    {
+        return map.toString();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see com.github.technosf.jwavez.hardware.SerializableMap#getChangedKeys()
+     */
+    @Override
+    public Set<K> getChangedKeys()
+    {
+        return map.getChangedKeys();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The listener is carried over to the maps reloaded.
+     *
+     * @see com.github.technosf.jwavez.hardware.SerializableMap#addChangeListener(com.github.technosf.jwavez.hardware.MapChangeListener)
+     */
+    @Override
+    public synchronized void addChangeListener(
+            MapChangeListener<K, V> listener)
+    {
+        map.addChangeListener(listener);
+        listeners.add(listener);
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see com.github.technosf.jwavez.hardware.SerializableMap#removeChangeListener(com.github.technosf.jwavez.hardware.MapChangeListener)
+     */
+    @Override
+    public synchronized void removeChangeListener(
+            MapChangeListener<K, V> listener)
+    {
+        listeners.remove(listener);
+        map.removeChangeListener(listener);
+    }
+
+
+    /* ----------------------------------------------------------------
+     * Getters and Setters
+     * ----------------------------------------------------------------
+     */
+
+    /**
+     * Gets the map currently delegated to
+     *
+     * @return the current map
+     */
+    public SerializableMap<K, V> getMap()
+    {
+        return map;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see com.github.technosf.jwavez.hardware.SerializableMap#isDirty()
+     */
+    @Override
+    public boolean isDirty()
+    {
+        return map.isDirty();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see com.github.technosf.jwavez.hardware.SerializableMap#setDirty(boolean)
+     */
+    @Override
+    public void setDirty(boolean dirty)
+    {
+        map.setDirty(dirty);
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see com.github.technosf.jwavez.hardware.SerializableMap#getFile()
+     */
+    @Override
+    public File getFile()
+    {
+        return file;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see com.github.technosf.jwavez.hardware.SerializableMap#getStoreTimestamp()
+     */
+    @Override
+    public long getStoreTimestamp()
+    {
+        return map.getStoreTimestamp();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see com.github.technosf.jwavez.hardware.SerializableMap#setStoreTimestamp(long)
+     */
+    @Override
+    public void setStoreTimestamp(long timestamp)
+    {
+        map.setStoreTimestamp(timestamp);
+    }
+
+}
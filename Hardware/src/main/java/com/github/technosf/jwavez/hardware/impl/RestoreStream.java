@@ -0,0 +1,257 @@
+/*
+ * Copyright 2016 technosf [https://github.com/technosf]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.github.technosf.jwavez.hardware.impl;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectStreamConstants;
+
+import org.eclipse.jdt.annotation.Nullable;
+
+import com.github.technosf.jwavez.hardware.Compressor;
+import com.github.technosf.jwavez.hardware.SerializableMap;
+
+/**
+ * A map file opened for restore, with the entry count its header holds
+ * <p>
+ * The file is opened once: the compressed envelope, if any, is read, and the
+ * header of the map within is peeked at for the entry count, so a map can be
+ * sized before it restores from the same stream. The count is only a hint,
+ * capped so that a corrupt header cannot size the map beyond what the file
+ * could hold; restoring reads the header again and fails as it should.
+ * <p>
+ * A failure to open the file or read its envelope is kept and rethrown by
+ * {@code getStream()}, so that it is raised as the map restores.
+ *
+ * @author technosf
+ * @since 0.0.1
+ * @version 0.0.1
+ */
+final class RestoreStream implements Closeable
+{
+
+    /**
+     * The fewest bytes an entry is stored in, a null key and value
+     */
+    static final int MIN_ENTRY_BYTES = 2;
+
+    /**
+     * The most entries a compressed file is sized for, as its length does
+     * not bound its entries
+     */
+    static final int MAX_COMPRESSED_HINT = 1 << 20;
+
+    /**
+     * Bytes the header of a Java entry stream is read within
+     */
+    private static final int HEADER_LIMIT = 256;
+
+    /**
+     * The stream of the map, within any envelope, or null if there is none
+     */
+    @Nullable
+    private final InputStream stream;
+
+    @Nullable
+    private final Compressor compressor;
+
+    @Nullable
+    private final IOException failure;
+
+    private final int sizeHint;
+
+
+    private RestoreStream(@Nullable InputStream stream,
+            @Nullable Compressor compressor, @Nullable IOException failure,
+            int sizeHint)
+    {
+        this.stream = stream;
+        this.compressor = compressor;
+        this.failure = failure;
+        this.sizeHint = sizeHint;
+    }
+
+
+    /**
+     * Opens a map file for restore
+     *
+     * @param file
+     *            the file, which may be null, missing or empty
+     * @return the stream, empty if there is no file to restore
+     */
+    @SuppressWarnings("resource")
+    static RestoreStream open(@Nullable File file)
+    {
+        if (file == null || !file.isFile() || file.length() == 0)
+        {
+            return new RestoreStream(null, null, null, -1);
+        }
+
+        InputStream in = null;
+        try
+        {
+            in = new BufferedInputStream(new FileInputStream(file));
+            Compressor c = CompressedFormat.readHeader(in);
+            if (c != null)
+            /*
+             * Compressed, so read the map from within the envelope
+             */
+            {
+                in = new BufferedInputStream(c.decompress(in));
+            }
+
+            long limit = c == null ? file.length() / MIN_ENTRY_BYTES
+                    : MAX_COMPRESSED_HINT;
+            return new RestoreStream(in, c, null,
+                    (int) Math.min(peekSize(in), limit));
+        }
+        catch (IOException e)
+        {
+            close(in);
+            return new RestoreStream(null, null, e, -1);
+        }
+    }
+
+
+    /**
+     * Peeks at the entry count in the header of a map stream
+     *
+     * @param in
+     *            a stream supporting mark
+     * @return the entry count, or -1 if not known
+     * @throws IOException
+     */
+    private static int peekSize(InputStream in) throws IOException
+    {
+        if (BinaryMapFormat.isBinary(in))
+        {
+            in.mark(HEADER_LIMIT);
+            try
+            {
+                return BinaryMapFormat.readHeader(new DataInputStream(in))
+                        .getSize();
+            }
+            catch (IOException e)
+            {
+                return -1;
+            }
+            finally
+            {
+                in.reset();
+            }
+        }
+        else if (SerializableMap
+                .streamType(in) == ObjectStreamConstants.TC_BLOCKDATA)
+        /*
+         * Java serialized entry stream
+         */
+        {
+            in.mark(HEADER_LIMIT);
+            try
+            {
+                ObjectInputStream ois = new ObjectInputStream(in);
+                ois.readLong();
+                return Math.max(-1, ois.readInt());
+            }
+            catch (IOException e)
+            {
+                return -1;
+            }
+            finally
+            {
+                in.reset();
+            }
+        }
+        return -1;
+    }
+
+
+    /**
+     * @return the capped entry count of the map, or -1 if not known
+     */
+    int getSizeHint()
+    {
+        return sizeHint;
+    }
+
+
+    /**
+     * @return the compressor of the file, or null if it is not compressed
+     */
+    @Nullable
+    Compressor getCompressor()
+    {
+        return compressor;
+    }
+
+
+    /**
+     * @return the stream of the map, supporting mark
+     * @throws IOException
+     *             the file could not be opened, or its envelope read
+     */
+    @SuppressWarnings("null")
+    InputStream getStream() throws IOException
+    {
+        if (failure != null)
+        {
+            throw failure;
+        }
+        else if (stream == null)
+        {
+            throw new IOException("No map file to restore");
+        }
+        return stream;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see java.io.Closeable#close()
+     */
+    @Override
+    public void close()
+    {
+        close(stream);
+    }
+
+
+    /**
+     * Closes a stream, ignoring failure as nothing was written to it
+     */
+    private static void close(@Nullable InputStream in)
+    {
+        if (in != null)
+        {
+            try
+            {
+                in.close();
+            }
+            catch (IOException e)
+            {
+                /*
+                 * Only read from, so nothing is lost
+                 */
+            }
+        }
+    }
+
+}
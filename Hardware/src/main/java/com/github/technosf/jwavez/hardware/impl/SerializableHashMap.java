@@ -13,21 +13,38 @@
  */
 package com.github.technosf.jwavez.hardware.impl;
 
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.ObjectOutputStream;
-import java.security.MessageDigest;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.security.NoSuchAlgorithmException;
-import java.util.HashMap;
+import java.util.Map;
 
 import org.eclipse.jdt.annotation.Nullable;
 
+import com.github.technosf.jwavez.hardware.Codec;
+import com.github.technosf.jwavez.hardware.Compressor;
+import com.github.technosf.jwavez.hardware.PersistenceEvent.Operation;
 import com.github.technosf.jwavez.hardware.SerializableMap;
 
 /**
  * A self-serializing {@code HashMap} that maintains state
  * <p>
+ * By default the map is stored as a stream of Java serialized entries, which
+ * restore reads straight into the map, pre-sized from the stored entry count.
+ * Given key and value {@code Codec}s it is stored in the compact
+ * {@code BinaryMapFormat} instead. Either format can be compressed with a
+ * {@code Compressor}. Restore detects the format of the file, so a map given
+ * codecs restores a Java serialized file and rewrites it as binary on the
+ * next store, and a compressed file stays compressed.
+ * <p>
+ * The map mutators track the keys changed since the last store and notify
+ * {@code MapChangeListener}s. Changes made through the key, value and entry
+ * views are not tracked.
  * 
  * @author technosf
  * @since 0.0.1
@@ -38,8 +55,7 @@ import com.github.technosf.jwavez.hardware.SerializableMap;
  *            Value class
  */
 public class SerializableHashMap<K, V>
-        extends HashMap<K, V>
-        implements SerializableMap<K, V>
+        extends TrackedHashMap<K, V>
 {
 
     /**
@@ -48,11 +64,26 @@ public class SerializableHashMap<K, V>
     private static final long serialVersionUID = 201601191634L;
 
     /**
-     * The {@code MessageDisgest} in play. We don't serialize it, but create one
-     * as we need.
+     * The digest of the file, computed as the map is stored. We don't
+     * serialize it, but create one as we need.
+     */
+    @Nullable
+    private transient DigestCache digestCache;
+
+    /**
+     * The key and value codecs, if the map is stored in the binary format
+     */
+    @Nullable
+    private transient Codec<K> keyCodec;
+
+    @Nullable
+    private transient Codec<V> valueCodec;
+
+    /**
+     * The compressor, if the map is stored compressed
      */
     @Nullable
-    private transient MessageDigest md;
+    private transient Compressor compressor;
 
     /**
      * The {@code File} this Map serialize to.
@@ -68,6 +99,11 @@ public class SerializableHashMap<K, V>
      * Has the map changed in memory?
      */
     private boolean dirty;
+
+    /**
+     * The {@code System.nanoTime()} the map last became dirty
+     */
+    private transient long dirtySince;
     //private byte[] digest;
 
 
@@ -82,7 +118,86 @@ public class SerializableHashMap<K, V>
     public SerializableHashMap(@Nullable File file)
             throws ClassNotFoundException, IOException
     {
-        super();
+        this(file, null, null);
+    }
+
+
+    /**
+     * Instantiate a {@code SerializableMap} and it file, stored in the binary
+     * format using the given codecs
+     * 
+     * @param file
+     *            the file to serialize this map to
+     * @param keyCodec
+     *            the key codec, or null for Java serialization
+     * @param valueCodec
+     *            the value codec, or null for Java serialization
+     * @throws ClassNotFoundException
+     * @throws IOException
+     */
+    public SerializableHashMap(@Nullable File file,
+            @Nullable Codec<K> keyCodec, @Nullable Codec<V> valueCodec)
+                    throws ClassNotFoundException, IOException
+    {
+        this(file, keyCodec, valueCodec, RestoreStream.open(file));
+    }
+
+
+    /**
+     * Instantiate a {@code SerializableMap} sized for and restored from its
+     * opened file
+     * 
+     * @param file
+     *            the file to serialize this map to
+     * @param keyCodec
+     *            the key codec, or null for Java serialization
+     * @param valueCodec
+     *            the value codec, or null for Java serialization
+     * @param stored
+     *            the file opened for restore
+     * @throws ClassNotFoundException
+     * @throws IOException
+     */
+    private SerializableHashMap(@Nullable File file,
+            @Nullable Codec<K> keyCodec, @Nullable Codec<V> valueCodec,
+            RestoreStream stored)
+                    throws ClassNotFoundException, IOException
+    {
+        super(initialCapacity(stored.getSizeHint()));
+
+        try (RestoreStream s = stored)
+        {
+            init(file, keyCodec, valueCodec, s);
+        }
+    }
+
+
+    /**
+     * Checks the file and restores the map from it
+     * 
+     * @param file
+     *            the file to serialize this map to
+     * @param keyCodec
+     *            the key codec, or null for Java serialization
+     * @param valueCodec
+     *            the value codec, or null for Java serialization
+     * @param stored
+     *            the file opened for restore
+     * @throws ClassNotFoundException
+     * @throws IOException
+     */
+    private void init(@Nullable File file, @Nullable Codec<K> keyCodec,
+            @Nullable Codec<V> valueCodec, RestoreStream stored)
+                    throws ClassNotFoundException, IOException
+    {
+        if ((keyCodec == null) != (valueCodec == null))
+        {
+            throw new IllegalArgumentException(
+                    "Both or neither codec must be given");
+        }
+
+        this.keyCodec = keyCodec;
+        this.valueCodec = valueCodec;
 
         if (file == null || file.getPath().isEmpty() || file.isDirectory()
                 || !file.canWrite())
@@ -109,49 +224,277 @@ public class SerializableHashMap<K, V>
          * Non-empty file, so attempt restore
          */
         {
-            SerializableMap.restore(this);
+            long start = System.nanoTime();
+            try
+            {
+                restoreFile(stored);
+            }
+            catch (IOException | ClassNotFoundException | RuntimeException e)
+            {
+                PersistenceMetrics.failed(this, Operation.RESTORE, start, e);
+                throw e;
+            }
+            PersistenceMetrics.completed(this, Operation.RESTORE, start,
+                    file.length(), size());
         }
     }
 
 
     /**
+     * Stores the map, digesting the file as it is written
+     * 
      * @throws IOException
      */
     @Override
     public void store() throws IOException
+    {
+        long start = System.nanoTime();
+        long since = isDirty() ? dirtySince : 0;
+        try
+        {
+            storeFile();
+        }
+        catch (IOException | RuntimeException e)
+        {
+            PersistenceMetrics.failed(this, Operation.STORE, start, e);
+            throw e;
+        }
+        PersistenceMetrics.completed(this, Operation.STORE, start,
+                file.length(), size(), since);
+    }
+
+
+    /**
+     * Writes the map to its file
+     *
+     * @throws IOException
+     */
+    private void storeFile() throws IOException
     {
         lastModified = Long.valueOf(System.currentTimeMillis());
+        DigestCache cache = digestCache();
+
+        Codec<K> kc = keyCodec;
+        Codec<V> vc = valueCodec;
 
-        try (FileOutputStream fos =
-                new FileOutputStream(file);
-                ObjectOutputStream oos = new ObjectOutputStream(fos))
+        if (kc != null && vc != null)
+        /*
+         * Binary format
+         */
         {
-            oos.writeObject(this);
+            try (FileOutputStream fos = new FileOutputStream(file);
+                    DataOutputStream dos = new DataOutputStream(
+                            CompressedFormat.compressing(
+                                    new BufferedOutputStream(
+                                            cache.digesting(fos)),
+                                    compressor)))
+            {
+                BinaryMapFormat.write(dos, lastModified, this, kc, vc);
+            }
+        }
+        else
+        /*
+         * Java serialized entry stream
+         */
+        {
+            try (FileOutputStream fos =
+                    new FileOutputStream(file);
+                    OutputStream os = CompressedFormat.compressing(
+                            new BufferedOutputStream(cache.digesting(fos)),
+                            compressor))
+            {
+                SerializableMap.writeEntries(os, lastModified, entrySet());
+            }
         }
 
+        cache.stored(file);
         setDirty(false);
     }
 
 
     /**
      * {@inheritDoc}
+     * <p>
+     * The digest made by the last {@code store()} is returned unless the file
+     * has since changed on disk.
      *
      * @see com.github.technosf.jwavez.hardware.SerializableMap#digest()
      */
-    @SuppressWarnings("null")
     @Override
     public byte[] digest()
             throws NoSuchAlgorithmException, IOException
     {
-        if (md == null)
+        return digestCache().digest(this, file, size());
+    }
+
+
+    /**
+     * Sets the digest function
+     * <p>
+     * A checksum such as {@code CRC32_FUNCTION} is much cheaper than the
+     * default {@code DIGEST_FUNCTION} where the digest is only used to detect
+     * change.
+     * 
+     * @param digestFunction
+     *            the digest function
+     * @throws NoSuchAlgorithmException
+     *             the function is not available
+     */
+    public void setDigestFunction(String digestFunction)
+            throws NoSuchAlgorithmException
+    {
+        digestCache = new DigestCache(digestFunction);
+    }
+
+
+    /**
+     * Sets the compressor the map is stored with
+     * <p>
+     * A map restored from a compressed file keeps the compressor it was
+     * stored with.
+     * 
+     * @param compressor
+     *            the compressor, or null to store uncompressed
+     */
+    public void setCompressor(@Nullable Compressor compressor)
+    {
+        this.compressor = compressor;
+    }
+
+
+    /**
+     * Gets the compressor the map is stored with
+     * 
+     * @return the compressor, or null if stored uncompressed
+     */
+    public @Nullable Compressor getCompressor()
+    {
+        return compressor;
+    }
+
+
+    /**
+     * Gets the digest function
+     * 
+     * @return the digest function
+     */
+    public String getDigestFunction()
+    {
+        return digestCache().getFunction();
+    }
+
+
+    /**
+     * @return the digest cache, created as we need
+     */
+    @SuppressWarnings("null")
+    private DigestCache digestCache()
+    {
+        DigestCache cache = digestCache;
+        if (cache == null)
         /*
-         * Need to generate a new message digest
+         * Transient, so may not exist after deserialization
          */
         {
-            md = MessageDigest.getInstance(DIGEST_FUNCTION);
+            try
+            {
+                cache = new DigestCache(DIGEST_FUNCTION);
+            }
+            catch (NoSuchAlgorithmException e)
+            {
+                throw new IllegalStateException(e);
+            }
+            digestCache = cache;
+        }
+        return cache;
+    }
+
+
+    /**
+     * Restores the map from its file, within the compressed envelope if
+     * there is one
+     *
+     * @param stored
+     *            the file opened for restore
+     * @throws IOException
+     * @throws ClassNotFoundException
+     */
+    private void restoreFile(RestoreStream stored)
+            throws IOException, ClassNotFoundException
+    {
+        InputStream in = stored.getStream();
+        compressor = stored.getCompressor();
+        restore(in);
+    }
+
+
+    /**
+     * Restores the map from a stream in either format
+     * 
+     * @param in
+     *            a stream supporting mark
+     * @throws IOException
+     * @throws ClassNotFoundException
+     */
+    private void restore(InputStream in)
+            throws IOException, ClassNotFoundException
+    {
+        setRestoring(true);
+        try
+        {
+            if (BinaryMapFormat.isBinary(in))
+            {
+                restoreBinary(in);
+            }
+            else
+            {
+                SerializableMap.restore(this, in);
+            }
         }
+        finally
+        {
+            setRestoring(false);
+        }
+    }
 
-        return SerializableMap.generateDigest(md, file);
+
+    /**
+     * Restores the map from a binary format stream
+     * 
+     * @param in
+     *            the stream
+     * @throws IOException
+     *             the stream is corrupt, or the map has no codecs
+     */
+    private void restoreBinary(InputStream in) throws IOException
+    {
+        Codec<K> kc = keyCodec;
+        Codec<V> vc = valueCodec;
+
+        if (kc == null || vc == null)
+        {
+            throw new IOException("Binary map file needs codecs");
+        }
+
+        DataInputStream dis = new DataInputStream(in);
+        BinaryMapFormat.Header header = BinaryMapFormat.readHeader(dis);
+        BinaryMapFormat.readEntries(dis, header.getSize(), this, kc, vc);
+        setStoreTimestamp(header.getTimestamp());
+        setDirty(false);
+    }
+
+
+    /**
+     * Sizes the map for the entries stored in its file, so restoring does not
+     * rehash
+     * 
+     * @param sizeHint
+     *            the capped entry count of the file, or -1 if not known
+     * @return the initial capacity
+     */
+    private static int initialCapacity(int sizeHint)
+    {
+        return sizeHint < 0 ? 16 : (int) (sizeHint / 0.75f) + 1;
     }
 
 
@@ -180,7 +523,18 @@ public class SerializableHashMap<K, V>
     @Override
     public void setDirty(boolean dirty)
     {
+        if (dirty && !this.dirty)
+        {
+            dirtySince = System.nanoTime();
+        }
         this.dirty = dirty;
+        if (!dirty)
+        /*
+         * In step with the file, so nothing has changed
+         */
+        {
+            tracker().clear();
+        }
     }
 
 
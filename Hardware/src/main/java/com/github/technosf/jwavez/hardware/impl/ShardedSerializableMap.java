@@ -0,0 +1,843 @@
+/*
+ * Copyright 2016 technosf [https://github.com/technosf]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.github.technosf.jwavez.hardware.impl;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.NotSerializableException;
+import java.io.ObjectOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+
+import org.eclipse.jdt.annotation.Nullable;
+
+import com.github.technosf.jwavez.hardware.Codec;
+import com.github.technosf.jwavez.hardware.MapChange;
+import com.github.technosf.jwavez.hardware.MapChangeListener;
+import com.github.technosf.jwavez.hardware.SerializableMap;
+
+/**
+ * A {@code SerializableMap} whose entries are hashed across a number of
+ * {@code SerializableHashMap} shards, each with its own file
+ * <p>
+ * {@code getFile()} holds a manifest of the shard count and store timestamp;
+ * shard <em>i</em> is stored in a sibling file suffixed <em>.shard</em>i.
+ * {@code store()} stores only the shards changed since their last store,
+ * and construction restores the shards, each on a task of a fork-join pool.
+ * Unless given a pool, maps share one of daemon threads kept for shard I/O,
+ * so that blocking file I/O does not tie up the common pool.
+ * <p>
+ * The shard count is fixed when the map is first created. Like
+ * {@code HashMap} the map is not thread safe; only its store and restore run
+ * in parallel.
+ *
+ * @author technosf
+ * @since 0.0.1
+ * @version 0.0.1
+ * @param <K>
+ *            Key class
+ * @param <V>
+ *            Value class
+ */
+public class ShardedSerializableMap<K, V>
+        extends AbstractMap<K, V>
+        implements SerializableMap<K, V>
+{
+
+    /**
+     * Version Id
+     */
+    private static final long serialVersionUID = 201601191634L;
+
+    /**
+     * Magic number of the manifest, "JWZS"
+     */
+    public static final int MAGIC = 0x4A575A53;
+
+    /**
+     * Manifest format version
+     * <p>
+     * Version 1 maps picked shards by the low bits of the key hash, and are
+     * rehashed into their shards as they are restored.
+     */
+    public static final byte VERSION = 2;
+
+    /**
+     * Suffix of the shard files, followed by the shard number
+     */
+    public static final String SHARD_SUFFIX = ".shard";
+
+    /**
+     * The pool shared by maps not given one, created on first use
+     */
+    @Nullable
+    private static ForkJoinPool sharedPool;
+
+    /**
+     * The manifest {@code File}
+     */
+    private final File file;
+
+    /**
+     * The pool shards are stored and restored on
+     */
+    private final transient ForkJoinPool pool;
+
+    private final transient List<SerializableHashMap<K, V>> shards;
+
+    /**
+     * The listeners of this map, and the listeners registered on each shard
+     * on their behalf
+     */
+    private final transient Map<MapChangeListener<K, V>,
+            MapChangeListener<K, V>> listeners = new IdentityHashMap<>();
+
+    /**
+     * Keep a time stamp of the last update
+     */
+    private long lastModified = 0l;
+
+
+    /**
+     * Instantiate a {@code ShardedSerializableMap} stored with Java
+     * serialization, restoring on the pool shared for shard I/O
+     *
+     * @param file
+     *            the file to store the manifest to
+     * @param shardCount
+     *            the number of shards
+     * @throws ClassNotFoundException
+     * @throws IOException
+     */
+    public ShardedSerializableMap(@Nullable File file, int shardCount)
+            throws ClassNotFoundException, IOException
+    {
+        this(file, shardCount, null, null, sharedPool());
+    }
+
+
+    /**
+     * Gets the pool shared by maps not given one, creating it on first use
+     * <p>
+     * Its threads are daemons, so the pool never holds up JVM exit.
+     *
+     * @return the shared pool
+     */
+    private static synchronized ForkJoinPool sharedPool()
+    {
+        ForkJoinPool pool = sharedPool;
+        if (pool == null)
+        {
+            pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors(),
+                    p -> {
+                        ForkJoinWorkerThread thread = ForkJoinPool
+                                .defaultForkJoinWorkerThreadFactory
+                                .newThread(p);
+                        thread.setName("SerializableMap shard I/O-"
+                                + thread.getPoolIndex());
+                        thread.setDaemon(true);
+                        return thread;
+                    }, null, false);
+            sharedPool = pool;
+        }
+        return pool;
+    }
+
+
+    /**
+     * Instantiate a {@code ShardedSerializableMap}, restoring its shards
+     *
+     * @param file
+     *            the file to store the manifest to
+     * @param shardCount
+     *            the number of shards
+     * @param keyCodec
+     *            the shard key codec, or null for Java serialization
+     * @param valueCodec
+     *            the shard value codec, or null for Java serialization
+     * @param pool
+     *            the pool to store and restore shards on
+     * @throws ClassNotFoundException
+     * @throws IOException
+     *             the file is unusable, or was created with another shard
+     *             count
+     */
+    public ShardedSerializableMap(@Nullable File file, int shardCount,
+            @Nullable Codec<K> keyCodec, @Nullable Codec<V> valueCodec,
+            ForkJoinPool pool)
+                    throws ClassNotFoundException, IOException
+    {
+        super();
+
+        if (shardCount < 1)
+        {
+            throw new IllegalArgumentException(
+                    "Shard count must be positive: " + shardCount);
+        }
+        else if (file == null || file.getPath().isEmpty()
+                || file.isDirectory() || !file.canWrite())
+        /*
+         * File is not a writable file and is unusable
+         */
+        {
+            throw new IOException("Cannot use file");
+        }
+        else if (!file.exists())
+        /*
+         * File does not exist, so touch it
+         */
+        {
+            file.createNewFile();
+        }
+
+        this.file = file;
+        this.pool = pool;
+
+        int version = VERSION;
+        if (file.length() > 0)
+        /*
+         * Non-empty manifest, so check it
+         */
+        {
+            version = readManifest(shardCount);
+        }
+
+        List<ForkJoinTask<SerializableHashMap<K, V>>> restores =
+                new ArrayList<>(shardCount);
+        for (int i = 0; i < shardCount; i++)
+        {
+            File shardFile = new File(file.getPath() + SHARD_SUFFIX + i);
+            restores.add(pool.submit(() -> {
+                shardFile.createNewFile();
+                return new SerializableHashMap<K, V>(shardFile, keyCodec,
+                        valueCodec);
+            }));
+        }
+
+        shards = join(restores);
+
+        if (version < VERSION)
+        /*
+         * Stored with the old shard function
+         */
+        {
+            rehash();
+        }
+    }
+
+
+    /**
+     * Stores the changed shards in parallel, then the manifest
+     *
+     * @throws IOException
+     */
+    @Override
+    public void store() throws IOException
+    {
+        List<ForkJoinTask<SerializableHashMap<K, V>>> stores =
+                new ArrayList<>();
+        for (SerializableHashMap<K, V> shard : shards)
+        {
+            if (shard.isDirty() || shard.getFile().length() == 0)
+            {
+                stores.add(pool.submit(() -> {
+                    shard.store();
+                    return shard;
+                }));
+            }
+        }
+
+        try
+        {
+            join(stores);
+        }
+        catch (ClassNotFoundException e)
+        /*
+         * Storing loads no classes
+         */
+        {
+            throw new IOException(e);
+        }
+
+        lastModified = System.currentTimeMillis();
+        try (FileOutputStream fos = new FileOutputStream(file);
+                DataOutputStream dos = new DataOutputStream(fos))
+        {
+            dos.writeInt(MAGIC);
+            dos.writeByte(VERSION);
+            dos.writeInt(shards.size());
+            dos.writeLong(lastModified);
+        }
+    }
+
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The digest covers the manifest and the digest of each shard.
+     *
+     * @see com.github.technosf.jwavez.hardware.SerializableMap#digest()
+     */
+    @SuppressWarnings("null")
+    @Override
+    public byte[] digest()
+            throws NoSuchAlgorithmException, IOException
+    {
+        MessageDigest md = SerializableMap.getDigester(DIGEST_FUNCTION);
+        md.update(SerializableMap.generateDigest(
+                SerializableMap.getDigester(DIGEST_FUNCTION), file));
+        for (SerializableHashMap<K, V> shard : shards)
+        {
+            md.update(shard.digest());
+        }
+        return md.digest();
+    }
+
+
+    /**
+     * Gets the number of shards
+     *
+     * @return the shard count
+     */
+    public int getShardCount()
+    {
+        return shards.size();
+    }
+
+
+    /* ----------------------------------------------------------------
+     * Map - shards track their changes and mark themselves dirty
+     * ----------------------------------------------------------------
+     */
+
+    @Override
+    public int size()
+    {
+        int size = 0;
+        for (SerializableHashMap<K, V> shard : shards)
+        {
+            size += shard.size();
+        }
+        return size;
+    }
+
+
+    @Override
+    public boolean containsKey(@Nullable Object key)
+    {
+        return shard(key).containsKey(key);
+    }
+
+
+    @Override
+    public @Nullable V get(@Nullable Object key)
+    {
+        return shard(key).get(key);
+    }
+
+
+    @Override
+    public @Nullable V put(@Nullable K key, @Nullable V value)
+    {
+        return shard(key).put(key, value);
+    }
+
+
+    @Override
+    public @Nullable V remove(@Nullable Object key)
+    {
+        return shard(key).remove(key);
+    }
+
+
+    @Override
+    public void clear()
+    {
+        for (SerializableHashMap<K, V> shard : shards)
+        {
+            shard.clear();
+        }
+    }
+
+
+    @Override
+    public Set<Map.Entry<K, V>> entrySet()
+    {
+        return new AbstractSet<Map.Entry<K, V>>()
+        {
+
+            @Override
+            public int size()
+            {
+                return ShardedSerializableMap.this.size();
+            }
+
+
+            @Override
+            public void clear()
+            {
+                ShardedSerializableMap.this.clear();
+            }
+
+
+            @Override
+            public Iterator<Map.Entry<K, V>> iterator()
+            {
+                return new EntryIterator();
+            }
+        };
+    }
+
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The keys changed in the shards since each was last stored.
+     *
+     * @see com.github.technosf.jwavez.hardware.SerializableMap#getChangedKeys()
+     */
+    @Override
+    public Set<K> getChangedKeys()
+    {
+        Set<K> changed = new HashSet<>();
+        for (SerializableHashMap<K, V> shard : shards)
+        {
+            changed.addAll(shard.getChangedKeys());
+        }
+        return changed;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The listener is registered on each shard, and sees the changes as made
+     * to this map.
+     *
+     * @see com.github.technosf.jwavez.hardware.SerializableMap#addChangeListener(com.github.technosf.jwavez.hardware.MapChangeListener)
+     */
+    @Override
+    public void addChangeListener(MapChangeListener<K, V> listener)
+    {
+        MapChangeListener<K, V> shardListener =
+                change -> listener.changed(new MapChange<>(this,
+                        change.getKey(), change.getOldValue(),
+                        change.getNewValue(), change.isRemoved()));
+
+        synchronized (listeners)
+        {
+            if (listeners.putIfAbsent(listener, shardListener) != null)
+            {
+                return;
+            }
+        }
+
+        for (SerializableHashMap<K, V> shard : shards)
+        {
+            shard.addChangeListener(shardListener);
+        }
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see com.github.technosf.jwavez.hardware.SerializableMap#removeChangeListener(com.github.technosf.jwavez.hardware.MapChangeListener)
+     */
+    @Override
+    public void removeChangeListener(MapChangeListener<K, V> listener)
+    {
+        MapChangeListener<K, V> shardListener;
+
+        synchronized (listeners)
+        {
+            shardListener = listeners.remove(listener);
+        }
+
+        if (shardListener != null)
+        {
+            for (SerializableHashMap<K, V> shard : shards)
+            {
+                shard.removeChangeListener(shardListener);
+            }
+        }
+    }
+
+
+    /* ----------------------------------------------------------------
+     * Getters and Setters
+     * ----------------------------------------------------------------
+     */
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The map is dirty if any shard is.
+     *
+     * @see com.github.technosf.jwavez.hardware.SerializableMap#isDirty()
+     */
+    @Override
+    public boolean isDirty()
+    {
+        for (SerializableHashMap<K, V> shard : shards)
+        {
+            if (shard.isDirty())
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Sets every shard, so marking the map dirty stores all shards.
+     *
+     * @see com.github.technosf.jwavez.hardware.SerializableMap#setDirty(boolean)
+     */
+    @Override
+    public void setDirty(boolean dirty)
+    {
+        for (SerializableHashMap<K, V> shard : shards)
+        {
+            shard.setDirty(dirty);
+        }
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see com.github.technosf.jwavez.hardware.SerializableMap#getFile()
+     */
+    @Override
+    public File getFile()
+    {
+        return file;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see com.github.technosf.jwavez.hardware.SerializableMap#getStoreTimestamp()
+     */
+    @Override
+    public long getStoreTimestamp()
+    {
+        return lastModified;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see com.github.technosf.jwavez.hardware.SerializableMap#setStoreTimestamp(long)
+     */
+    @Override
+    public void setStoreTimestamp(long lastModified)
+    {
+        this.lastModified = lastModified;
+    }
+
+
+    /* ----------------------------------------------------------------
+     * Shards
+     * ----------------------------------------------------------------
+     */
+
+    /**
+     * @param key
+     *            the key
+     * @return the shard holding the key
+     */
+    private SerializableHashMap<K, V> shard(@Nullable Object key)
+    {
+        return shards.get(shardIndex(key, shards.size()));
+    }
+
+
+    /**
+     * Picks the shard of a key
+     * <p>
+     * Each shard is a {@code HashMap} that picks its buckets by the low bits
+     * of the key hash, so the shard is picked by the high bits of a
+     * Fibonacci hash instead. Picking it by the low bits would leave the keys
+     * of a shard sharing them, and the shard using only a fraction of its
+     * buckets.
+     *
+     * @param key
+     *            the key
+     * @param shardCount
+     *            the number of shards
+     * @return the index of the shard
+     */
+    static int shardIndex(@Nullable Object key, int shardCount)
+    {
+        int h = key == null ? 0 : key.hashCode();
+        long mixed = (h * 0x9E3779B9) & 0xFFFFFFFFL;
+        return (int) ((mixed * shardCount) >>> 32);
+    }
+
+
+    /**
+     * Moves the entries restored into the wrong shard to the right one
+     * <p>
+     * The shards changed are stored, with a current manifest, at the next
+     * {@code store()}.
+     */
+    private void rehash()
+    {
+        for (int i = 0; i < shards.size(); i++)
+        {
+            SerializableHashMap<K, V> shard = shards.get(i);
+            List<Map.Entry<K, V>> moved = new ArrayList<>();
+            for (Map.Entry<K, V> entry : shard.entrySet())
+            {
+                if (shardIndex(entry.getKey(), shards.size()) != i)
+                {
+                    moved.add(new AbstractMap.SimpleImmutableEntry<>(entry));
+                }
+            }
+
+            /*
+             * Moved through the shards' own mutators, so both are dirtied
+             */
+            for (Map.Entry<K, V> entry : moved)
+            {
+                shard.remove(entry.getKey());
+                shard(entry.getKey()).put(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+
+    /**
+     * Reads the manifest, checking it matches the shard count
+     *
+     * @param shardCount
+     *            the expected shard count
+     * @return the manifest version
+     * @throws IOException
+     *             not a manifest, or for another shard count
+     */
+    private int readManifest(int shardCount) throws IOException
+    {
+        try (DataInputStream dis =
+                new DataInputStream(new FileInputStream(file)))
+        {
+            if (dis.readInt() != MAGIC)
+            {
+                throw new IOException("Not a sharded map manifest");
+            }
+
+            int version = dis.readUnsignedByte();
+            if (version < 1 || version > VERSION)
+            {
+                throw new IOException(
+                        "Unknown sharded map version: " + version);
+            }
+
+            int stored = dis.readInt();
+            if (stored != shardCount)
+            {
+                throw new IOException("Sharded map has " + stored
+                        + " shards, not " + shardCount);
+            }
+
+            lastModified = dis.readLong();
+            return version;
+        }
+    }
+
+
+    /**
+     * Waits for all the tasks, then rethrows the first failure
+     *
+     * @param tasks
+     *            the tasks
+     * @return the results of the tasks
+     * @throws IOException
+     * @throws ClassNotFoundException
+     */
+    private static <T> List<T> join(List<ForkJoinTask<T>> tasks)
+            throws IOException, ClassNotFoundException
+    {
+        List<T> results = new ArrayList<>(tasks.size());
+        Throwable failure = null;
+
+        for (ForkJoinTask<T> task : tasks)
+        {
+            try
+            {
+                results.add(task.get());
+            }
+            catch (ExecutionException e)
+            {
+                if (failure == null)
+                {
+                    failure = e.getCause();
+                }
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException();
+            }
+        }
+
+        if (failure instanceof IOException)
+        {
+            throw (IOException) failure;
+        }
+        else if (failure instanceof ClassNotFoundException)
+        {
+            throw (ClassNotFoundException) failure;
+        }
+        else if (failure instanceof RuntimeException)
+        {
+            throw (RuntimeException) failure;
+        }
+        else if (failure instanceof Error)
+        {
+            throw (Error) failure;
+        }
+        else if (failure != null)
+        {
+            throw new IOException(failure);
+        }
+
+        return results;
+    }
+
+
+    /**
+     * The shards are serialized to their own files
+     *
+     * @param out
+     *            the stream
+     * @throws IOException
+     */
+    private void writeObject(ObjectOutputStream out) throws IOException
+    {
+        throw new NotSerializableException(getClass().getName());
+    }
+
+
+    /**
+     * Iterates the entries shard by shard
+     */
+    private final class EntryIterator implements Iterator<Map.Entry<K, V>>
+    {
+        private int shard = -1;
+
+        @Nullable
+        private Iterator<Map.Entry<K, V>> current;
+
+        /*
+         * Where the last entry came from, as hasNext() may have moved on
+         */
+        @Nullable
+        private Iterator<Map.Entry<K, V>> last;
+        @Nullable
+        private SerializableHashMap<K, V> lastShard;
+        @Nullable
+        private K lastKey;
+        @Nullable
+        private V lastValue;
+
+
+        @Override
+        public boolean hasNext()
+        {
+            Iterator<Map.Entry<K, V>> iterator = current;
+            while ((iterator == null || !iterator.hasNext())
+                    && shard + 1 < shards.size())
+            {
+                shard++;
+                iterator = shards.get(shard).entrySet().iterator();
+                current = iterator;
+            }
+            return iterator != null && iterator.hasNext();
+        }
+
+
+        @Override
+        public Map.Entry<K, V> next()
+        {
+            if (!hasNext())
+            {
+                throw new NoSuchElementException();
+            }
+
+            final SerializableHashMap<K, V> owner = shards.get(shard);
+            final Map.Entry<K, V> entry = current.next();
+            last = current;
+            lastShard = owner;
+            lastKey = entry.getKey();
+            lastValue = entry.getValue();
+
+            return new AbstractMap.SimpleEntry<K, V>(entry)
+            {
+                private static final long serialVersionUID =
+                        201601191634L;
+
+
+                @Override
+                public V setValue(V value)
+                {
+                    owner.put(getKey(), value);
+                    return super.setValue(value);
+                }
+            };
+        }
+
+
+        @Override
+        public void remove()
+        {
+            Iterator<Map.Entry<K, V>> iterator = last;
+            SerializableHashMap<K, V> owner = lastShard;
+            if (iterator == null || owner == null)
+            {
+                throw new IllegalStateException();
+            }
+            iterator.remove();
+            owner.removed(lastKey, lastValue);
+            last = null;
+        }
+    }
+
+}
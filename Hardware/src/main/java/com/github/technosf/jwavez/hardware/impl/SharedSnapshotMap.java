@@ -0,0 +1,811 @@
+/*
+ * Copyright 2016 technosf [https://github.com/technosf]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.github.technosf.jwavez.hardware.impl;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import org.eclipse.jdt.annotation.Nullable;
+
+import com.github.technosf.jwavez.hardware.Codec;
+import com.github.technosf.jwavez.hardware.SerializableMap;
+
+/**
+ * A read-only map over a memory-mapped snapshot of a {@code SerializableMap}
+ * <p>
+ * One process publishes a snapshot of its map with {@code publish}, and any
+ * number of processes on the host map the snapshot file read-only. Nothing
+ * is deserialized to open a snapshot: lookups probe the index in the file
+ * and decode only the value found, and the operating system shares the
+ * mapped pages between the processes.
+ * <p>
+ * The file holds a header, an open-addressed index of key hashes and record
+ * offsets, and the codec-encoded records. Keys are hashed on their encoded
+ * bytes, so the index is the same in every JVM. Each publish writes a new
+ * file with the next version stamp and moves it over the old one. Readers
+ * keep the snapshot they mapped until {@code refresh()} finds a newer
+ * version, which is then swapped in with a single volatile write.
+ * <p>
+ * Snapshots are limited to 2GB by the mapping.
+ *
+ * @author technosf
+ * @since 0.0.1
+ * @version 0.0.1
+ * @param <K>
+ *            Key class
+ * @param <V>
+ *            Value class
+ */
+public class SharedSnapshotMap<K, V>
+        extends AbstractMap<K, V>
+{
+
+    /**
+     * Magic number, "JWZR"
+     */
+    public static final int MAGIC = 0x4A575A52;
+
+    /**
+     * Format version
+     */
+    public static final int VERSION = 1;
+
+    /**
+     * The suffix of the snapshot file of a {@code SerializableMap} file
+     */
+    public static final String SNAPSHOT_SUFFIX = ".snapshot";
+
+    /**
+     * Header: magic, format version, snapshot version, store timestamp,
+     * size, index capacity
+     */
+    private static final int HEADER = 32;
+    private static final int HEADER_STAMP = 8;
+    private static final int HEADER_TIMESTAMP = 16;
+    private static final int HEADER_SIZE = 24;
+    private static final int HEADER_CAPACITY = 28;
+
+    /**
+     * Index slots are a hash and a record offset, zero when free
+     */
+    private static final int SLOT = 8;
+
+    /**
+     * Record lengths of null keys and values
+     */
+    private static final int NULL = -1;
+
+    /**
+     * The snapshot file
+     */
+    private final File file;
+
+    private final Codec<K> keyCodec;
+    private final Codec<V> valueCodec;
+
+    /**
+     * The snapshot mapped
+     */
+    private volatile Snapshot snapshot;
+
+
+    /**
+     * Maps the snapshot file of a {@code SerializableMap} file
+     *
+     * @param mapFile
+     *            the map file
+     * @param keyCodec
+     *            the key codec the snapshot was published with
+     * @param valueCodec
+     *            the value codec the snapshot was published with
+     * @return the snapshot map
+     * @throws IOException
+     *             there is no snapshot, or it is malformed
+     */
+    public static <K, V> SharedSnapshotMap<K, V> of(File mapFile,
+            Codec<K> keyCodec, Codec<V> valueCodec) throws IOException
+    {
+        return new SharedSnapshotMap<K, V>(snapshotFile(mapFile), keyCodec,
+                valueCodec);
+    }
+
+
+    /**
+     * Maps a snapshot file
+     *
+     * @param file
+     *            the snapshot file
+     * @param keyCodec
+     *            the key codec the snapshot was published with
+     * @param valueCodec
+     *            the value codec the snapshot was published with
+     * @throws IOException
+     *             the snapshot is missing or malformed
+     */
+    public SharedSnapshotMap(File file, Codec<K> keyCodec,
+            Codec<V> valueCodec) throws IOException
+    {
+        this.file = file;
+        this.keyCodec = keyCodec;
+        this.valueCodec = valueCodec;
+        this.snapshot = map(file);
+    }
+
+
+    /**
+     * Maps the snapshot file again if a newer version has been published
+     *
+     * @return true if a newer version was mapped
+     * @throws IOException
+     *             the newer snapshot is malformed; the current one is kept
+     */
+    public synchronized boolean refresh() throws IOException
+    {
+        if (publishedVersion(file) <= snapshot.stamp)
+        {
+            return false;
+        }
+
+        snapshot = map(file);
+        return true;
+    }
+
+
+    /**
+     * @return the version stamp of the snapshot mapped
+     */
+    public long getVersion()
+    {
+        return snapshot.stamp;
+    }
+
+
+    /**
+     * @return the store timestamp of the map the snapshot was taken of
+     */
+    public long getStoreTimestamp()
+    {
+        return snapshot.timestamp;
+    }
+
+
+    /**
+     * @return the snapshot file
+     */
+    public File getFile()
+    {
+        return file;
+    }
+
+
+    /* ----------------------------------------------------------------
+     * Publishing
+     * ----------------------------------------------------------------
+     */
+
+    /**
+     * Publishes a snapshot of a {@code SerializableMap} next to its file
+     *
+     * @param map
+     *            the map
+     * @param keyCodec
+     *            the key codec
+     * @param valueCodec
+     *            the value codec
+     * @return the version stamp of the snapshot
+     * @throws IOException
+     */
+    public static <K, V> long publish(SerializableMap<K, V> map,
+            Codec<K> keyCodec, Codec<V> valueCodec) throws IOException
+    {
+        return publish(map, map.getStoreTimestamp(),
+                snapshotFile(map.getFile()), keyCodec, valueCodec);
+    }
+
+
+    /**
+     * Publishes a snapshot of a map
+     * <p>
+     * The snapshot is written to a new file that is forced to disk and then
+     * moved over the snapshot file, so readers only ever map whole
+     * snapshots. The map must not be modified while it is published.
+     *
+     * @param map
+     *            the map
+     * @param timestamp
+     *            the store timestamp to record
+     * @param file
+     *            the snapshot file
+     * @param keyCodec
+     *            the key codec
+     * @param valueCodec
+     *            the value codec
+     * @return the version stamp of the snapshot
+     * @throws IOException
+     */
+    public static <K, V> long publish(Map<K, V> map, long timestamp,
+            File file, Codec<K> keyCodec, Codec<V> valueCodec)
+                    throws IOException
+    {
+        long stamp = Math.max(0, publishedVersion(file)) + 1;
+        int capacity = capacity(map.size());
+        int[] hashes = new int[capacity];
+        int[] offsets = new int[capacity];
+        long position = HEADER + (long) capacity * SLOT;
+        int size = 0;
+
+        File published = new File(file.getPath() + ".new");
+
+        try (FileChannel fc = FileChannel.open(published.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING))
+        {
+            fc.position(position);
+            OutputStream out = new BufferedOutputStream(
+                    Channels.newOutputStream(fc));
+            DataOutputStream dos = new DataOutputStream(out);
+
+            for (Map.Entry<K, V> entry : map.entrySet())
+            {
+                byte[] key = encode(keyCodec, entry.getKey());
+                byte[] value = encode(valueCodec, entry.getValue());
+
+                if (position > Integer.MAX_VALUE)
+                {
+                    throw new IOException("Snapshot exceeds 2GB: " + file);
+                }
+                place(hashes, offsets, hash(key), (int) position);
+
+                dos.writeInt(key == null ? NULL : key.length);
+                dos.writeInt(value == null ? NULL : value.length);
+                if (key != null)
+                {
+                    dos.write(key);
+                }
+                if (value != null)
+                {
+                    dos.write(value);
+                }
+                position += 8 + length(key) + length(value);
+                size++;
+            }
+            dos.flush();
+
+            if (position > Integer.MAX_VALUE)
+            {
+                throw new IOException("Snapshot exceeds 2GB: " + file);
+            }
+
+            ByteBuffer head = ByteBuffer.allocate(HEADER
+                    + capacity * SLOT);
+            head.putInt(MAGIC).putInt(VERSION).putLong(stamp)
+                    .putLong(timestamp).putInt(size).putInt(capacity);
+            for (int slot = 0; slot < capacity; slot++)
+            {
+                head.putInt(hashes[slot]).putInt(offsets[slot]);
+            }
+            head.flip();
+            while (head.hasRemaining())
+            {
+                fc.write(head, head.position());
+            }
+
+            fc.force(true);
+        }
+
+        Files.move(published.toPath(), file.toPath(),
+                StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+        return stamp;
+    }
+
+
+    /**
+     * @param mapFile
+     *            a {@code SerializableMap} file
+     * @return its snapshot file
+     */
+    public static File snapshotFile(File mapFile)
+    {
+        return new File(mapFile.getPath() + SNAPSHOT_SUFFIX);
+    }
+
+
+    /**
+     * Reads the version stamp of a published snapshot
+     *
+     * @param file
+     *            the snapshot file
+     * @return the version, or -1 if there is no snapshot
+     */
+    public static long publishedVersion(File file)
+    {
+        if (!file.isFile())
+        {
+            return -1;
+        }
+
+        try (FileChannel fc = FileChannel.open(file.toPath(),
+                StandardOpenOption.READ))
+        {
+            ByteBuffer header = ByteBuffer.allocate(HEADER);
+            while (header.hasRemaining() && fc.read(header) >= 0)
+            {
+                continue;
+            }
+            return header.position() == HEADER && header.getInt(0) == MAGIC
+                    ? header.getLong(HEADER_STAMP) : -1;
+        }
+        catch (IOException e)
+        {
+            return -1;
+        }
+    }
+
+
+    /* ----------------------------------------------------------------
+     * Map
+     * ----------------------------------------------------------------
+     */
+
+    @Override
+    public int size()
+    {
+        return snapshot.size;
+    }
+
+
+    @Override
+    public boolean containsKey(@Nullable Object key)
+    {
+        return find(snapshot, key) != 0;
+    }
+
+
+    @Override
+    public @Nullable V get(@Nullable Object key)
+    {
+        Snapshot s = snapshot;
+        int offset = find(s, key);
+        return offset == 0 ? null : s.value(offset);
+    }
+
+
+    @Override
+    public Set<Map.Entry<K, V>> entrySet()
+    {
+        final Snapshot s = snapshot;
+
+        return new AbstractSet<Map.Entry<K, V>>()
+        {
+            @Override
+            public Iterator<Map.Entry<K, V>> iterator()
+            {
+                return s.iterator();
+            }
+
+
+            @Override
+            public int size()
+            {
+                return s.size;
+            }
+        };
+    }
+
+
+    /* ----------------------------------------------------------------
+     * Internals
+     * ----------------------------------------------------------------
+     */
+
+    /**
+     * Maps and checks a snapshot file
+     *
+     * @param file
+     *            the file
+     * @return the snapshot
+     * @throws IOException
+     *             the snapshot is malformed
+     */
+    private Snapshot map(File file) throws IOException
+    {
+        MappedByteBuffer buffer;
+
+        try (FileChannel fc = FileChannel.open(file.toPath(),
+                StandardOpenOption.READ))
+        {
+            long length = fc.size();
+            if (length < HEADER || length > Integer.MAX_VALUE)
+            {
+                throw new IOException("Not a snapshot: " + file);
+            }
+            /*
+             * The mapping outlives the channel
+             */
+            buffer = fc.map(FileChannel.MapMode.READ_ONLY, 0, length);
+        }
+
+        if (buffer.getInt(0) != MAGIC)
+        {
+            throw new IOException("Not a snapshot: " + file);
+        }
+        else if (buffer.getInt(4) != VERSION)
+        {
+            throw new IOException(
+                    "Unknown snapshot version: " + buffer.getInt(4));
+        }
+
+        int capacity = buffer.getInt(HEADER_CAPACITY);
+        int size = buffer.getInt(HEADER_SIZE);
+        if (capacity <= 0 || Integer.bitCount(capacity) != 1 || size < 0
+                || size > capacity
+                || HEADER + (long) capacity * SLOT > buffer.capacity())
+        {
+            throw new IOException("Malformed snapshot: " + file);
+        }
+
+        return new Snapshot(buffer, buffer.getLong(HEADER_STAMP),
+                buffer.getLong(HEADER_TIMESTAMP), size, capacity);
+    }
+
+
+    /**
+     * Finds the record of a key
+     *
+     * @param s
+     *            the snapshot
+     * @param key
+     *            the key looked up
+     * @return the record offset, or 0 if the key is not in the snapshot
+     */
+    @SuppressWarnings("unchecked")
+    private int find(Snapshot s, @Nullable Object key)
+    {
+        byte[] encoded;
+        try
+        {
+            encoded = encode(keyCodec, (K) key);
+        }
+        catch (ClassCastException e)
+        /*
+         * Not a key of this map
+         */
+        {
+            return 0;
+        }
+        return s.find(encoded);
+    }
+
+
+    /**
+     * @param codec
+     *            the codec
+     * @param value
+     *            the value to encode
+     * @return the encoded value, or null for null
+     */
+    private static <T> byte @Nullable [] encode(Codec<T> codec,
+            @Nullable T value)
+    {
+        if (value == null)
+        {
+            return null;
+        }
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try
+        {
+            codec.write(new DataOutputStream(baos), value);
+        }
+        catch (IOException e)
+        {
+            throw new UncheckedIOException(e);
+        }
+        return baos.toByteArray();
+    }
+
+
+    /**
+     * @param codec
+     *            the codec
+     * @param bytes
+     *            the encoded value
+     * @return the decoded value
+     */
+    private static <T> T decode(Codec<T> codec, byte[] bytes)
+    {
+        try
+        {
+            return codec.read(
+                    new DataInputStream(new ByteArrayInputStream(bytes)));
+        }
+        catch (IOException e)
+        {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+
+    /**
+     * @param bytes
+     *            encoded bytes, or null
+     * @return the number of bytes
+     */
+    private static int length(byte @Nullable [] bytes)
+    {
+        return bytes == null ? 0 : bytes.length;
+    }
+
+
+    /**
+     * Hashes an encoded key with FNV-1a, which is stable across JVMs
+     *
+     * @param key
+     *            the encoded key, or null
+     * @return the hash
+     */
+    private static int hash(byte @Nullable [] key)
+    {
+        if (key == null)
+        {
+            return 0;
+        }
+
+        int h = 0x811C9DC5;
+        for (byte b : key)
+        {
+            h = (h ^ (b & 0xFF)) * 0x01000193;
+        }
+        return h;
+    }
+
+
+    /**
+     * @param entries
+     *            the number of entries
+     * @return the index capacity that holds them at half load
+     */
+    private static int capacity(int entries)
+    {
+        return Math.max(16, Integer.highestOneBit(Math.max(1, entries)) * 4);
+    }
+
+
+    /**
+     * Places a record in the first free slot for its hash
+     *
+     * @param hashes
+     *            the index hashes
+     * @param offsets
+     *            the index offsets
+     * @param hash
+     *            the hash of the key
+     * @param position
+     *            the offset of the record
+     */
+    private static void place(int[] hashes, int[] offsets, int hash,
+            int position)
+    {
+        int mask = offsets.length - 1;
+        int slot = hash & mask;
+
+        while (offsets[slot] != 0)
+        {
+            slot = (slot + 1) & mask;
+        }
+
+        hashes[slot] = hash;
+        offsets[slot] = position;
+    }
+
+
+    /**
+     * A mapped snapshot, never changed once mapped
+     */
+    private final class Snapshot
+    {
+        private final ByteBuffer buffer;
+        private final long stamp;
+        private final long timestamp;
+        private final int size;
+        private final int capacity;
+
+
+        Snapshot(ByteBuffer buffer, long stamp, long timestamp, int size,
+                int capacity)
+        {
+            this.buffer = buffer;
+            this.stamp = stamp;
+            this.timestamp = timestamp;
+            this.size = size;
+            this.capacity = capacity;
+        }
+
+
+        /**
+         * Finds the record of an encoded key
+         *
+         * @param key
+         *            the encoded key, or null
+         * @return the record offset, or 0 if the key is not in the snapshot
+         */
+        int find(byte @Nullable [] key)
+        {
+            int hash = hash(key);
+            int mask = capacity - 1;
+
+            for (int slot = hash & mask;; slot = (slot + 1) & mask)
+            {
+                int index = HEADER + slot * SLOT;
+                int offset = buffer.getInt(index + 4);
+
+                if (offset == 0)
+                {
+                    return 0;
+                }
+                else if (buffer.getInt(index) == hash && matches(offset, key))
+                {
+                    return offset;
+                }
+            }
+        }
+
+
+        /**
+         * @param offset
+         *            a record offset
+         * @param key
+         *            the encoded key, or null
+         * @return true if the record is of the key
+         */
+        private boolean matches(int offset, byte @Nullable [] key)
+        {
+            int keyLength = buffer.getInt(offset);
+
+            if (key == null || keyLength == NULL)
+            {
+                return key == null && keyLength == NULL;
+            }
+            else if (keyLength != key.length)
+            {
+                return false;
+            }
+
+            for (int i = 0; i < keyLength; i++)
+            {
+                if (buffer.get(offset + 8 + i) != key[i])
+                {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+
+        /**
+         * @param offset
+         *            a record offset
+         * @return the decoded key
+         */
+        @Nullable
+        K key(int offset)
+        {
+            int keyLength = buffer.getInt(offset);
+            return keyLength == NULL ? null
+                    : decode(keyCodec, bytes(offset + 8, keyLength));
+        }
+
+
+        /**
+         * @param offset
+         *            a record offset
+         * @return the decoded value
+         */
+        @Nullable
+        V value(int offset)
+        {
+            int valueLength = buffer.getInt(offset + 4);
+            return valueLength == NULL ? null
+                    : decode(valueCodec, bytes(
+                            offset + 8 + Math.max(0, buffer.getInt(offset)),
+                            valueLength));
+        }
+
+
+        /**
+         * Copies bytes out of the mapping
+         */
+        private byte[] bytes(int position, int length)
+        {
+            byte[] bytes = new byte[length];
+            ByteBuffer source = buffer.duplicate();
+            source.position(position);
+            source.get(bytes);
+            return bytes;
+        }
+
+
+        /**
+         * @return an iterator over the entries, in index order
+         */
+        Iterator<Map.Entry<K, V>> iterator()
+        {
+            return new Iterator<Map.Entry<K, V>>()
+            {
+                private int slot = advance(0);
+
+
+                @Override
+                public boolean hasNext()
+                {
+                    return slot < capacity;
+                }
+
+
+                @Override
+                public Map.Entry<K, V> next()
+                {
+                    if (slot >= capacity)
+                    {
+                        throw new NoSuchElementException();
+                    }
+
+                    int offset = buffer.getInt(HEADER + slot * SLOT + 4);
+                    slot = advance(slot + 1);
+                    return new AbstractMap.SimpleImmutableEntry<K, V>(
+                            key(offset), value(offset));
+                }
+            };
+        }
+
+
+        /**
+         * @param from
+         *            the slot to search from
+         * @return the next used slot, or the capacity if none
+         */
+        private int advance(int from)
+        {
+            int slot = from;
+            while (slot < capacity
+                    && buffer.getInt(HEADER + slot * SLOT + 4) == 0)
+            {
+                slot++;
+            }
+            return slot;
+        }
+    }
+
+}
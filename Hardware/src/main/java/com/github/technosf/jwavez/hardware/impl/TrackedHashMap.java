@@ -0,0 +1,416 @@
+/*
+ * Copyright 2016 technosf [https://github.com/technosf]
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.github.technosf.jwavez.hardware.impl;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+import org.eclipse.jdt.annotation.Nullable;
+
+import com.github.technosf.jwavez.hardware.MapChangeListener;
+import com.github.technosf.jwavez.hardware.SerializableMap;
+
+/**
+ * A {@code HashMap} whose mutators track the keys they change
+ * <p>
+ * The base of the self-serializing {@code HashMap}s: the mutators record
+ * each changed key in a {@code ChangeTracker}, mark the map dirty and notify
+ * {@code MapChangeListener}s. Changes made while the map is restoring are
+ * not tracked. Changes made through the key, value and entry views are not
+ * tracked.
+ * 
+ * @author technosf
+ * @since 0.0.1
+ * @version 0.0.1
+ * @param <K>
+ *            Key class
+ * @param <V>
+ *            Value class
+ */
+abstract class TrackedHashMap<K, V>
+        extends HashMap<K, V>
+        implements SerializableMap<K, V>
+{
+
+    /**
+     * Version Id
+     */
+    private static final long serialVersionUID = 201601191634L;
+
+    /**
+     * The changed keys and change listeners, created as we need
+     */
+    @Nullable
+    private transient ChangeTracker<K, V> tracker;
+
+    /**
+     * Is the map being restored? Restored entries are not changes.
+     */
+    private transient boolean restoring;
+
+
+    /**
+     * Instantiate an empty map
+     */
+    TrackedHashMap()
+    {
+        super();
+    }
+
+
+    /**
+     * Instantiate an empty map sized for the given entries
+     * 
+     * @param initialCapacity
+     *            the initial capacity
+     */
+    TrackedHashMap(int initialCapacity)
+    {
+        super(initialCapacity);
+    }
+
+
+    /**
+     * Starts or ends a restore, during which changes are not tracked
+     * 
+     * @param restoring
+     *            is the map being restored?
+     */
+    final void setRestoring(boolean restoring)
+    {
+        this.restoring = restoring;
+    }
+
+
+    /**
+     * Called once {@code clear()} has emptied the map, before listeners are
+     * notified of the removed entries
+     */
+    void afterClear()
+    {
+        /*
+         * Nothing to do by default
+         */
+    }
+
+
+    /* ----------------------------------------------------------------
+     * Mutators - track the keys they change
+     * ----------------------------------------------------------------
+     */
+
+    @Override
+    public V put(K key, V value)
+    {
+        int size = size();
+        V old = super.put(key, value);
+        changed(key, size() == size, old, true, value);
+        return old;
+    }
+
+
+    @Override
+    public void putAll(Map<? extends K, ? extends V> m)
+    {
+        for (Map.Entry<? extends K, ? extends V> entry : m.entrySet())
+        {
+            put(entry.getKey(), entry.getValue());
+        }
+    }
+
+
+    @Override
+    public V putIfAbsent(K key, V value)
+    {
+        boolean mapped = containsKey(key);
+        V old = super.putIfAbsent(key, value);
+        changed(key, mapped, old);
+        return old;
+    }
+
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public V remove(Object key)
+    {
+        int size = size();
+        V old = super.remove(key);
+        if (size() != size)
+        {
+            changed((K) key, true, old, false, null);
+        }
+        return old;
+    }
+
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public boolean remove(Object key, Object value)
+    {
+        if (super.remove(key, value))
+        {
+            changed((K) key, true, (V) value, false, null);
+            return true;
+        }
+        return false;
+    }
+
+
+    @Override
+    public boolean replace(K key, V oldValue, V newValue)
+    {
+        if (super.replace(key, oldValue, newValue))
+        {
+            changed(key, true, oldValue, true, newValue);
+            return true;
+        }
+        return false;
+    }
+
+
+    @Override
+    public V replace(K key, V value)
+    {
+        boolean mapped = containsKey(key);
+        V old = super.replace(key, value);
+        changed(key, mapped, old);
+        return old;
+    }
+
+
+    @Override
+    public V computeIfAbsent(K key,
+            Function<? super K, ? extends V> mappingFunction)
+    {
+        boolean mapped = containsKey(key);
+        V old = get(key);
+        V value = super.computeIfAbsent(key, mappingFunction);
+        changed(key, mapped, old);
+        return value;
+    }
+
+
+    @Override
+    public V computeIfPresent(K key,
+            BiFunction<? super K, ? super V, ? extends V> remappingFunction)
+    {
+        boolean mapped = containsKey(key);
+        V old = get(key);
+        V value = super.computeIfPresent(key, remappingFunction);
+        changed(key, mapped, old);
+        return value;
+    }
+
+
+    @Override
+    public V compute(K key,
+            BiFunction<? super K, ? super V, ? extends V> remappingFunction)
+    {
+        boolean mapped = containsKey(key);
+        V old = get(key);
+        V value = super.compute(key, remappingFunction);
+        changed(key, mapped, old);
+        return value;
+    }
+
+
+    @Override
+    public V merge(K key, V value,
+            BiFunction<? super V, ? super V, ? extends V> remappingFunction)
+    {
+        boolean mapped = containsKey(key);
+        V old = get(key);
+        V merged = super.merge(key, value, remappingFunction);
+        changed(key, mapped, old);
+        return merged;
+    }
+
+
+    @Override
+    public void replaceAll(
+            BiFunction<? super K, ? super V, ? extends V> function)
+    {
+        for (Map.Entry<K, V> entry : entrySet())
+        {
+            V old = entry.getValue();
+            V value = function.apply(entry.getKey(), old);
+            entry.setValue(value);
+            changed(entry.getKey(), true, old, true, value);
+        }
+    }
+
+
+    @Override
+    public void clear()
+    {
+        if (restoring || isEmpty())
+        /*
+         * Nothing to report
+         */
+        {
+            super.clear();
+            return;
+        }
+
+        /*
+         * Snapshot the entries so listeners are notified once the map is
+         * cleared, and see it as it now is
+         */
+        List<Map.Entry<K, V>> entries = new ArrayList<>(size());
+        for (Map.Entry<K, V> entry : entrySet())
+        {
+            entries.add(new AbstractMap.SimpleImmutableEntry<>(entry));
+        }
+        super.clear();
+        afterClear();
+        for (Map.Entry<K, V> entry : entries)
+        {
+            changed(entry.getKey(), true, entry.getValue(), false, null);
+        }
+    }
+
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public Object clone()
+    {
+        TrackedHashMap<K, V> clone = (TrackedHashMap<K, V>) super.clone();
+        /*
+         * The clone has changes and listeners of its own
+         */
+        clone.tracker = null;
+        return clone;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see com.github.technosf.jwavez.hardware.SerializableMap#getChangedKeys()
+     */
+    @Override
+    public Set<K> getChangedKeys()
+    {
+        return tracker().getChangedKeys();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see com.github.technosf.jwavez.hardware.SerializableMap#addChangeListener(com.github.technosf.jwavez.hardware.MapChangeListener)
+     */
+    @Override
+    public void addChangeListener(MapChangeListener<K, V> listener)
+    {
+        tracker().addListener(listener);
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see com.github.technosf.jwavez.hardware.SerializableMap#removeChangeListener(com.github.technosf.jwavez.hardware.MapChangeListener)
+     */
+    @Override
+    public void removeChangeListener(MapChangeListener<K, V> listener)
+    {
+        tracker().removeListener(listener);
+    }
+
+
+    /**
+     * Records the mutation of a key, reading its state after the mutation
+     * from the map
+     *
+     * @param key
+     *            the key
+     * @param wasMapped
+     *            was the key mapped before the mutation?
+     * @param oldValue
+     *            the value before the mutation
+     */
+    private void changed(K key, boolean wasMapped, @Nullable V oldValue)
+    {
+        boolean mapped = containsKey(key);
+        changed(key, wasMapped, oldValue, mapped, mapped ? get(key) : null);
+    }
+
+
+    /**
+     * Records the mutation of a key, marking the map dirty if it changed
+     *
+     * @param key
+     *            the key
+     * @param wasMapped
+     *            was the key mapped before the mutation?
+     * @param oldValue
+     *            the value before the mutation
+     * @param isMapped
+     *            is the key mapped after the mutation?
+     * @param newValue
+     *            the value after the mutation
+     */
+    private void changed(K key, boolean wasMapped, @Nullable V oldValue,
+            boolean isMapped, @Nullable V newValue)
+    {
+        if (!restoring
+                && tracker().changed(key, wasMapped, oldValue, isMapped,
+                        newValue))
+        {
+            setDirty(true);
+        }
+    }
+
+
+    /**
+     * Records the removal of a key made through an iterator of the map's
+     * views, for the maps that wrap this one
+     *
+     * @param key
+     *            the key
+     * @param oldValue
+     *            the value removed
+     */
+    final void removed(K key, @Nullable V oldValue)
+    {
+        changed(key, true, oldValue, false, null);
+    }
+
+
+    /**
+     * @return the change tracker, created as we need
+     */
+    @SuppressWarnings("null")
+    final ChangeTracker<K, V> tracker()
+    {
+        ChangeTracker<K, V> t = tracker;
+        if (t == null)
+        /*
+         * Transient, so may not exist after deserialization
+         */
+        {
+            t = new ChangeTracker<>(this);
+            tracker = t;
+        }
+        return t;
+    }
+
+}
@@ -0,0 +1,341 @@
+/*
+ * Copyright 2016 technosf [https://github.com/technosf]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.github.technosf.jwavez.hardware.impl;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+
+import org.eclipse.jdt.annotation.Nullable;
+
+import com.github.technosf.jwavez.hardware.SerializableMap;
+
+/**
+ * Write-behind flusher for {@code SerializableMap}s
+ * <p>
+ * Registered maps are checked every interval on a background thread, and
+ * those that are dirty are stored. Bursts of mutations within one interval
+ * are thereby coalesced into a single {@code store()}, off the thread that
+ * made them.
+ * <p>
+ * Callers that want a busy map stored before the interval is up report their
+ * mutations with {@link #changed(SerializableMap)}; once a map has seen
+ * {@code changeThreshold} changes it is queued for an immediate store.
+ * <p>
+ * Stores are made while holding the map's monitor. Maps that are not
+ * thread-safe must be mutated while synchronized on the map, as with
+ * {@code Collections.synchronizedMap}.
+ *
+ * @author technosf
+ * @since 0.0.1
+ * @version 0.0.1
+ */
+public class WriteBehindFlusher implements AutoCloseable
+{
+
+    /**
+     * The maps being flushed, and the count of changes reported since they
+     * were last stored. Keyed on identity as map equality follows content.
+     */
+    private final Map<SerializableMap<?, ?>, AtomicInteger> maps =
+            new IdentityHashMap<>();
+
+    /**
+     * The flusher thread
+     */
+    private final ScheduledExecutorService executor;
+
+    /**
+     * Number of reported changes that trigger an immediate store
+     */
+    private final int changeThreshold;
+
+    /**
+     * Receives store failures
+     */
+    private volatile BiConsumer<SerializableMap<?, ?>, Exception> errorHandler =
+            (map, e) -> System.err.printf("Cannot store [%1$s]: %2$s\n",
+                    map.getFile(), e.getMessage());
+
+
+    /**
+     * Instantiate a flusher that stores dirty maps every interval
+     *
+     * @param interval
+     *            the interval between checks for dirty maps
+     * @param unit
+     *            the unit of the interval
+     * @param changeThreshold
+     *            number of changes reported through {@code changed} that
+     *            trigger an immediate store, or zero for none
+     */
+    @SuppressWarnings("null")
+    public WriteBehindFlusher(long interval, TimeUnit unit,
+            int changeThreshold)
+    {
+        if (interval <= 0)
+        {
+            throw new IllegalArgumentException("Interval must be positive");
+        }
+
+        this.changeThreshold = changeThreshold;
+        this.executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "SerializableMap write-behind");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        executor.scheduleWithFixedDelay(this::storeDirty, interval, interval,
+                unit);
+    }
+
+
+    /**
+     * Registers a map to be flushed
+     *
+     * @param map
+     *            the map
+     */
+    public void register(SerializableMap<?, ?> map)
+    {
+        synchronized (maps)
+        {
+            if (!maps.containsKey(map))
+            {
+                maps.put(map, new AtomicInteger());
+            }
+        }
+    }
+
+
+    /**
+     * Stops flushing a map
+     * <p>
+     * The map is not stored; call {@code flush()} first if need be.
+     *
+     * @param map
+     *            the map
+     */
+    public void unregister(SerializableMap<?, ?> map)
+    {
+        synchronized (maps)
+        {
+            maps.remove(map);
+        }
+    }
+
+
+    /**
+     * Reports a change to a registered map
+     * <p>
+     * Marks the map dirty. When the threshold of changes is reached the map
+     * is queued for an immediate store.
+     *
+     * @param map
+     *            the changed map
+     */
+    public void changed(SerializableMap<?, ?> map)
+    {
+        AtomicInteger changes;
+
+        map.setDirty(true);
+
+        synchronized (maps)
+        {
+            changes = maps.get(map);
+        }
+
+        if (changes != null && changeThreshold > 0
+                && changes.incrementAndGet() % changeThreshold == 0)
+        /*
+         * Threshold crossed, so store now rather than waiting out the
+         * interval. Changes keep counting up past a failed store, so it is
+         * retried at each further multiple of the threshold.
+         */
+        {
+            executor.execute(() -> store(map, changes));
+        }
+    }
+
+
+    /**
+     * Stores all dirty registered maps, blocking until done
+     * <p>
+     * The stores run on the flusher thread, so they are ordered after any
+     * store already in progress.
+     *
+     * @throws InterruptedException
+     */
+    public void flush() throws InterruptedException
+    {
+        try
+        {
+            executor.submit(this::storeDirty).get();
+        }
+        catch (ExecutionException e)
+        {
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+
+    /**
+     * Flushes the dirty maps and stops the flusher
+     * <p>
+     * If interrupted the flusher is still stopped, the interrupt status is
+     * restored and an {@code IllegalStateException} thrown.
+     */
+    @Override
+    public void close()
+    {
+        if (!executor.isShutdown())
+        {
+            try
+            {
+                flush();
+                executor.shutdown();
+                executor.awaitTermination(Long.MAX_VALUE,
+                        TimeUnit.MILLISECONDS);
+            }
+            catch (InterruptedException e)
+            {
+                executor.shutdownNow();
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException(
+                        "Interrupted while closing the flusher", e);
+            }
+        }
+    }
+
+
+    /**
+     * Sets the handler that receives store failures
+     * <p>
+     * The default prints the failure to {@code System.err}. A map that fails
+     * to store remains dirty and is retried at the next interval. Unchecked
+     * exceptions thrown by a store are passed to the handler too, so that
+     * they do not cancel the flusher's schedule.
+     *
+     * @param errorHandler
+     *            the error handler
+     */
+    public void setErrorHandler(
+            BiConsumer<SerializableMap<?, ?>, Exception> errorHandler)
+    {
+        this.errorHandler = errorHandler;
+    }
+
+
+    /* ----------------------------------------------------------------
+     * Flusher thread
+     * ----------------------------------------------------------------
+     */
+
+    /**
+     * Stores all registered dirty maps
+     */
+    private void storeDirty()
+    {
+        List<Map.Entry<SerializableMap<?, ?>, AtomicInteger>> entries;
+
+        synchronized (maps)
+        {
+            entries = new ArrayList<>(maps.entrySet());
+        }
+
+        for (Map.Entry<SerializableMap<?, ?>, AtomicInteger> entry : entries)
+        {
+            store(entry.getKey(), entry.getValue());
+        }
+    }
+
+
+    /**
+     * Stores a map if it is dirty
+     * <p>
+     * The count of reported changes is reduced by those seen before the store
+     * only once the store succeeds, so a failed store is still retried at the
+     * threshold. Nothing may escape, as an exception thrown from the
+     * scheduled task would cancel all its later runs.
+     *
+     * @param map
+     *            the map
+     * @param changes
+     *            the count of changes reported for the map
+     */
+    private void store(SerializableMap<?, ?> map,
+            @Nullable AtomicInteger changes)
+    {
+        synchronized (map)
+        {
+            if (!map.isDirty())
+            {
+                return;
+            }
+
+            int seen = changes == null ? 0 : changes.get();
+
+            try
+            {
+                map.store();
+            }
+            catch (IOException | RuntimeException e)
+            {
+                report(map, e);
+                return;
+            }
+
+            if (changes != null)
+            {
+                changes.addAndGet(-seen);
+            }
+        }
+    }
+
+
+    /**
+     * Passes a store failure to the error handler
+     * <p>
+     * A handler that itself throws is not allowed to stop the flusher, and
+     * its exception is dropped.
+     *
+     * @param map
+     *            the map that failed to store
+     * @param e
+     *            the failure
+     */
+    private void report(SerializableMap<?, ?> map, Exception e)
+    {
+        try
+        {
+            errorHandler.accept(map, e);
+        }
+        catch (RuntimeException handlerException)
+        /*
+         * The failure has reached the handler, so there is nothing more to
+         * report it to; the map stays dirty and is retried regardless
+         */
+        {
+        }
+    }
+
+}
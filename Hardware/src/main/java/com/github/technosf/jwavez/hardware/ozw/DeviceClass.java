@@ -0,0 +1,152 @@
+/*
+ * Copyright 2016 technosf [https://github.com/technosf]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.github.technosf.jwavez.hardware.ozw;
+
+import org.eclipse.jdt.annotation.Nullable;
+
+import com.github.technosf.jwavez.hardware.beans.base.CommandClass;
+import com.github.technosf.jwavez.hardware.beans.base.CommandClassSet;
+import com.github.technosf.jwavez.hardware.beans.device.GenericBean;
+import com.github.technosf.jwavez.hardware.beans.device.SpecificBean;
+
+/**
+ * The capabilities of a Generic and Specific device class pair
+ * <p>
+ * The mandatory command classes are those of the Generic class with those of
+ * the Specific class, split at {@code MARK} into the supported and the
+ * controlled. The Basic command class maps to the {@code basic} of the
+ * Specific class, or failing that of the Generic class.
+ * 
+ * @author technosf
+ * @since 0.0.1
+ * @version 0.0.1
+ */
+public final class DeviceClass
+{
+    private final int genericId;
+    private final int specificId;
+    private final @Nullable GenericBean generic;
+    private final @Nullable SpecificBean specific;
+    private final CommandClassSet supported;
+    private final CommandClassSet controlled;
+    private final @Nullable CommandClass basicMapping;
+
+
+    /**
+     * Builds the capabilities of a pair from the registry
+     * 
+     * @param registry
+     *            the device classes registry
+     * @param genericId
+     *            the generic class id
+     * @param specificId
+     *            the specific class id
+     */
+    DeviceClass(DeviceClassesRegistry registry, int genericId, int specificId)
+    {
+        this.genericId = genericId;
+        this.specificId = specificId;
+        this.generic = registry.getGeneric(genericId);
+        this.specific = registry.getSpecific(genericId, specificId);
+
+        CommandClassSet supports = CommandClassSet.EMPTY;
+        CommandClassSet controls = CommandClassSet.EMPTY;
+        CommandClass mapping = null;
+        SpecificBean sb = specific;
+        if (sb != null)
+        {
+            supports = sb.getSupportedCommandClasses();
+            controls = sb.getControlledCommandClasses();
+            mapping = sb.getBasic();
+        }
+        GenericBean gb = generic;
+        if (gb != null)
+        {
+            supports = supports.union(gb.getSupportedCommandClasses());
+            controls = controls.union(gb.getControlledCommandClasses());
+            if (mapping == null)
+            {
+                mapping = gb.getBasic();
+            }
+        }
+        this.supported = supports;
+        this.controlled = controls;
+        this.basicMapping = mapping;
+    }
+
+
+    /**
+     * @return the generic class id
+     */
+    public int getGenericId()
+    {
+        return genericId;
+    }
+
+
+    /**
+     * @return the specific class id
+     */
+    public int getSpecificId()
+    {
+        return specificId;
+    }
+
+
+    /**
+     * @return the generic class, or null if it is unknown
+     */
+    public @Nullable GenericBean getGeneric()
+    {
+        return generic;
+    }
+
+
+    /**
+     * @return the specific class, or null if it is unknown
+     */
+    public @Nullable SpecificBean getSpecific()
+    {
+        return specific;
+    }
+
+
+    /**
+     * @return the mandatory supported command classes
+     */
+    public CommandClassSet getSupported()
+    {
+        return supported;
+    }
+
+
+    /**
+     * @return the mandatory controlled command classes
+     */
+    public CommandClassSet getControlled()
+    {
+        return controlled;
+    }
+
+
+    /**
+     * @return the command class the Basic command class maps to, or null if
+     *         there is none
+     */
+    public @Nullable CommandClass getBasicMapping()
+    {
+        return basicMapping;
+    }
+
+}
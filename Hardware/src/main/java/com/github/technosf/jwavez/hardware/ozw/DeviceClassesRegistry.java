@@ -0,0 +1,227 @@
+/*
+ * Copyright 2016 technosf [https://github.com/technosf]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.github.technosf.jwavez.hardware.ozw;
+
+import org.eclipse.jdt.annotation.Nullable;
+
+import com.github.technosf.jwavez.hardware.beans.device.BasicBean;
+import com.github.technosf.jwavez.hardware.beans.device.DeviceTypeBean;
+import com.github.technosf.jwavez.hardware.beans.device.GenericBean;
+import com.github.technosf.jwavez.hardware.beans.device.NodeTypeBean;
+import com.github.technosf.jwavez.hardware.beans.device.RoleBean;
+import com.github.technosf.jwavez.hardware.beans.device.SpecificBean;
+
+/**
+ * Immutable registry of the device classes, looked up by their numeric ids
+ * <p>
+ * Basic, Generic, Role and NodeType classes have one byte ids and are held
+ * in 256 slot arrays. Specific classes are held in a 256 slot array for each
+ * Generic that has them. DeviceType ids are two bytes, so they are held in a
+ * 256 slot array for each high byte in use. A lookup is one or two array
+ * loads from the raw bytes of a frame.
+ * 
+ * @author technosf
+ * @since 0.0.1
+ * @version 0.0.1
+ */
+public final class DeviceClassesRegistry
+{
+    private final @Nullable BasicBean[] basics = new BasicBean[256];
+    private final @Nullable GenericBean[] generics = new GenericBean[256];
+    private final @Nullable SpecificBean[][] specifics =
+            new SpecificBean[256][];
+    private final @Nullable RoleBean[] roles = new RoleBean[256];
+    private final @Nullable NodeTypeBean[] nodeTypes = new NodeTypeBean[256];
+    private final @Nullable DeviceTypeBean[][] deviceTypes =
+            new DeviceTypeBean[256][];
+
+
+    /**
+     * Builds the registry from the beans of a reader
+     * 
+     * @param reader
+     *            the reader
+     * @throws IllegalArgumentException
+     *             if a key is malformed or out of range
+     */
+    DeviceClassesRegistry(DeviceClassesXmlReader reader)
+    {
+        for (BasicBean bb : reader.basicbeans.values())
+        {
+            basics[decode(bb.getKey(), 0xFF)] = bb;
+        }
+        for (GenericBean gb : reader.genericbeans.values())
+        {
+            int generic = decode(gb.getKey(), 0xFF);
+            generics[generic] = gb;
+            for (SpecificBean sb : gb.getElements())
+            {
+                SpecificBean[] slots = specifics[generic];
+                if (slots == null)
+                {
+                    slots = specifics[generic] = new SpecificBean[256];
+                }
+                slots[decode(sb.getKey(), 0xFF)] = sb;
+            }
+        }
+        for (RoleBean rb : reader.rolebeans.values())
+        {
+            roles[decode(rb.getKey(), 0xFF)] = rb;
+        }
+        for (NodeTypeBean nb : reader.nodetypebeans.values())
+        {
+            nodeTypes[decode(nb.getKey(), 0xFF)] = nb;
+        }
+        for (DeviceTypeBean db : reader.devicetypebeans.values())
+        {
+            int id = decode(db.getKey(), 0xFFFF);
+            DeviceTypeBean[] slots = deviceTypes[id >>> 8];
+            if (slots == null)
+            {
+                slots = deviceTypes[id >>> 8] = new DeviceTypeBean[256];
+            }
+            slots[id & 0xFF] = db;
+        }
+    }
+
+
+    /**
+     * Decodes a key, such as {@code 0x01} or {@code 0x0c0a}
+     * 
+     * @param key
+     *            the key
+     * @param max
+     *            the greatest id
+     * @return the id
+     * @throws IllegalArgumentException
+     *             if the key is malformed or out of range
+     */
+    static int decode(String key, int max)
+    {
+        String digits = key.trim();
+        int radix = 10;
+        if (digits.startsWith("0x") || digits.startsWith("0X"))
+        {
+            digits = digits.substring(2);
+            radix = 16;
+        }
+        int id;
+        try
+        {
+            id = Integer.parseInt(digits, radix);
+        }
+        catch (NumberFormatException e)
+        {
+            throw new IllegalArgumentException("Malformed key: " + key, e);
+        }
+        if (id < 0 || id > max)
+        {
+            throw new IllegalArgumentException("Key out of range: " + key);
+        }
+        return id;
+    }
+
+
+    /* ----------------------------------------------------------------
+     * 
+     * Lookups
+     * 
+     * ----------------------------------------------------------------
+     */
+
+    /**
+     * @param basic
+     *            the basic class id, of which the low byte is used
+     * @return the basic class, or null if there is none
+     */
+    public @Nullable BasicBean getBasic(int basic)
+    {
+        return basics[basic & 0xFF];
+    }
+
+
+    /**
+     * @param generic
+     *            the generic class id, of which the low byte is used
+     * @return the generic class, or null if there is none
+     */
+    public @Nullable GenericBean getGeneric(int generic)
+    {
+        return generics[generic & 0xFF];
+    }
+
+
+    /**
+     * @param generic
+     *            the generic class id, of which the low byte is used
+     * @param specific
+     *            the specific class id, of which the low byte is used
+     * @return the specific class of the generic class, or null if there is
+     *         none
+     */
+    public @Nullable SpecificBean getSpecific(int generic, int specific)
+    {
+        SpecificBean[] slots = specifics[generic & 0xFF];
+        return slots == null ? null : slots[specific & 0xFF];
+    }
+
+
+    /**
+     * @param role
+     *            the role type id, of which the low byte is used
+     * @return the role type, or null if there is none
+     */
+    public @Nullable RoleBean getRole(int role)
+    {
+        return roles[role & 0xFF];
+    }
+
+
+    /**
+     * @param nodeType
+     *            the node type id, of which the low byte is used
+     * @return the node type, or null if there is none
+     */
+    public @Nullable NodeTypeBean getNodeType(int nodeType)
+    {
+        return nodeTypes[nodeType & 0xFF];
+    }
+
+
+    /**
+     * @param deviceType
+     *            the two byte device type id, of which the low two bytes are
+     *            used
+     * @return the device type, or null if there is none
+     */
+    public @Nullable DeviceTypeBean getDeviceType(int deviceType)
+    {
+        DeviceTypeBean[] slots = deviceTypes[(deviceType >>> 8) & 0xFF];
+        return slots == null ? null : slots[deviceType & 0xFF];
+    }
+
+
+    /**
+     * @param high
+     *            the high byte of the device type id
+     * @param low
+     *            the low byte of the device type id
+     * @return the device type, or null if there is none
+     */
+    public @Nullable DeviceTypeBean getDeviceType(int high, int low)
+    {
+        return getDeviceType(((high & 0xFF) << 8) | (low & 0xFF));
+    }
+
+}
@@ -1,26 +1,38 @@
 package com.github.technosf.jwavez.hardware.ozw;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 
-import javax.xml.namespace.QName;
-import javax.xml.stream.XMLEventReader;
 import javax.xml.stream.XMLStreamException;
-import javax.xml.stream.events.Attribute;
-import javax.xml.stream.events.EndElement;
-import javax.xml.stream.events.StartElement;
 
-import com.github.technosf.jwavez.hardware.AbstractXmlReader;
+import org.eclipse.jdt.annotation.Nullable;
+
+import com.github.technosf.jwavez.hardware.AbstractStreamXmlReader;
+import com.github.technosf.jwavez.hardware.Codec;
+import com.github.technosf.jwavez.hardware.SerializableMap;
+import com.github.technosf.jwavez.hardware.beans.base.AbstractNominalBean;
 import com.github.technosf.jwavez.hardware.beans.device.BasicBean;
 import com.github.technosf.jwavez.hardware.beans.device.DeviceTypeBean;
 import com.github.technosf.jwavez.hardware.beans.device.GenericBean;
 import com.github.technosf.jwavez.hardware.beans.device.NodeTypeBean;
 import com.github.technosf.jwavez.hardware.beans.device.RoleBean;
 import com.github.technosf.jwavez.hardware.beans.device.SpecificBean;
+import com.github.technosf.jwavez.hardware.impl.Codecs;
 
-public class DeviceClassesXmlReader extends AbstractXmlReader
+public class DeviceClassesXmlReader extends AbstractStreamXmlReader
 {
     Map<String, BasicBean> basicbeans = new HashMap<>();
     Map<String, GenericBean> genericbeans = new HashMap<>();
@@ -30,18 +42,38 @@ public class DeviceClassesXmlReader extends AbstractXmlReader
 
     GenericBean genericbean;
 
+    /**
+     * The beans by numeric id, built once they are all read
+     */
+    private DeviceClassesRegistry registry;
+
     /**
      * 
      */
     public static final String FILE_NAME = "device_classes.xml";
 
+    /**
+     * Suffix of the binary cache of the parsed beans, kept next to the XML
+     */
+    public static final String CACHE_SUFFIX = ".cache";
+
+    /**
+     * Cache file magic number, "JWZD"
+     */
+    private static final int CACHE_MAGIC = 0x4A575A44;
+
+    /**
+     * Cache format version
+     */
+    private static final int CACHE_VERSION = 1;
+
     /*
-     * Attribute Qualified Names 
+     * Attribute Names 
      */
-    private static final QName Q_KEY = new QName("key");
-    private static final QName Q_LABEL = new QName("label");
-    private static final QName Q_COMMAND_CLASSES = new QName("command_classes");
-    private static final QName Q_BASIC = new QName("basic");
+    private static final String A_KEY = "key";
+    private static final String A_LABEL = "label";
+    private static final String A_COMMAND_CLASSES = "command_classes";
+    private static final String A_BASIC = "basic";
 
 
     /**
@@ -55,40 +87,285 @@ public class DeviceClassesXmlReader extends AbstractXmlReader
         URL xml = this.getClass().getResource(filepath);
 
         initialize(xml.openStream());
+        registry = new DeviceClassesRegistry(this);
+    }
+
+
+    /**
+     * Reads the device classes from an XML file
+     * 
+     * @param file
+     *            the device classes XML file
+     * @throws XMLStreamException
+     * @throws IOException
+     */
+    public DeviceClassesXmlReader(File file)
+            throws XMLStreamException, IOException
+    {
+        initialize(file);
+        registry = new DeviceClassesRegistry(this);
+    }
+
+
+    /**
+     * Instantiate a reader to be filled from the cache
+     */
+    private DeviceClassesXmlReader()
+    {
+    }
+
+
+    /**
+     * Gets the registry of the device classes by numeric id
+     * 
+     * @return the registry
+     */
+    public DeviceClassesRegistry getRegistry()
+    {
+        return registry;
+    }
+
+
+    /* ----------------------------------------------------------------
+     * 
+     * Binary cache
+     * 
+     * ----------------------------------------------------------------
+     */
+
+    /**
+     * Reads the device classes from an XML file, through its binary cache
+     * <p>
+     * The cache is keyed by the digest of the XML. While the XML is unchanged
+     * the beans are read from the cache and the XML is not parsed. Otherwise
+     * the XML is parsed and the cache rewritten. The cache is best effort: a
+     * cache that cannot be written is left for the next read to retry.
+     * 
+     * @param file
+     *            the device classes XML file
+     * @return the reader
+     * @throws XMLStreamException
+     * @throws IOException
+     */
+    public static DeviceClassesXmlReader cached(File file)
+            throws XMLStreamException, IOException
+    {
+        byte[] digest = digest(file);
+        File cache = cacheFile(file);
+
+        DeviceClassesXmlReader reader = readCache(cache, digest);
+        if (reader == null)
+        /*
+         * No current cache, so parse and cache the XML
+         */
+        {
+            reader = new DeviceClassesXmlReader(file);
+            reader.writeCache(cache, digest);
+        }
+        return reader;
+    }
+
+
+    /**
+     * Gets the binary cache file of a device classes XML file
+     * 
+     * @param file
+     *            the XML file
+     * @return the cache file
+     */
+    public static File cacheFile(File file)
+    {
+        return new File(file.getPath() + CACHE_SUFFIX);
     }
 
 
+    /**
+     * Digests the XML file
+     * <p>
+     * A cryptographic digest, as a CRC32 collision would serve the beans of
+     * an edited XML from a stale cache.
+     * 
+     * @param file
+     *            the XML file
+     * @return the digest
+     * @throws IOException
+     */
+    private static byte[] digest(File file) throws IOException
+    {
+        try
+        {
+            return SerializableMap.generateDigest(SerializableMap
+                    .getDigester(SerializableMap.DIGEST_FUNCTION), file);
+        }
+        catch (NoSuchAlgorithmException e)
+        {
+            throw new IOException(e);
+        }
+    }
+
+
+    /**
+     * Reads the beans from a cache made from the XML with the given digest
+     * 
+     * @param cache
+     *            the cache file
+     * @param digest
+     *            the digest of the XML
+     * @return the reader, or null if the cache is missing, stale or
+     *         unreadable
+     */
+    private static @Nullable DeviceClassesXmlReader readCache(File cache,
+            byte[] digest)
+    {
+        if (!cache.isFile())
+        {
+            return null;
+        }
+
+        try (DataInputStream dis = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(cache))))
+        {
+            if (dis.readInt() != CACHE_MAGIC
+                    || dis.readInt() != CACHE_VERSION)
+            {
+                return null;
+            }
+
+            byte[] cached = new byte[Codecs.length(dis)];
+            dis.readFully(cached);
+            if (!Arrays.equals(cached, digest))
+            /*
+             * The XML has changed since the cache was written
+             */
+            {
+                return null;
+            }
+
+            DeviceClassesXmlReader reader = new DeviceClassesXmlReader();
+            readBeans(dis, reader.basicbeans, Codecs.BASIC_BEAN);
+            readBeans(dis, reader.genericbeans, Codecs.GENERIC_BEAN);
+            readBeans(dis, reader.rolebeans, Codecs.ROLE_BEAN);
+            readBeans(dis, reader.nodetypebeans, Codecs.NODE_TYPE_BEAN);
+            readBeans(dis, reader.devicetypebeans, Codecs.DEVICE_TYPE_BEAN);
+            reader.registry = new DeviceClassesRegistry(reader);
+            return reader;
+        }
+        catch (IOException | RuntimeException e)
+        /*
+         * Corrupt cache, which is rewritten from the XML
+         */
+        {
+            return null;
+        }
+    }
+
+
+    /**
+     * Writes the beans to the cache, replacing it atomically
+     * 
+     * @param cache
+     *            the cache file
+     * @param digest
+     *            the digest of the XML the beans were parsed from
+     */
+    private void writeCache(File cache, byte[] digest)
+    {
+        File temp = new File(cache.getPath() + ".new");
+        try
+        {
+            try (DataOutputStream dos = new DataOutputStream(
+                    new BufferedOutputStream(new FileOutputStream(temp))))
+            {
+                dos.writeInt(CACHE_MAGIC);
+                dos.writeInt(CACHE_VERSION);
+                Codecs.writeVarLong(dos, digest.length);
+                dos.write(digest);
+                writeBeans(dos, basicbeans, Codecs.BASIC_BEAN);
+                writeBeans(dos, genericbeans, Codecs.GENERIC_BEAN);
+                writeBeans(dos, rolebeans, Codecs.ROLE_BEAN);
+                writeBeans(dos, nodetypebeans, Codecs.NODE_TYPE_BEAN);
+                writeBeans(dos, devicetypebeans, Codecs.DEVICE_TYPE_BEAN);
+            }
+            Files.move(temp.toPath(), cache.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        }
+        catch (IOException e)
+        /*
+         * Unwritable cache, the XML will be parsed again next time
+         */
+        {
+            temp.delete();
+        }
+    }
+
+
+    /**
+     * Writes a map of beans
+     */
+    private static <T extends AbstractNominalBean> void writeBeans(
+            DataOutputStream dos, Map<String, T> beans, Codec<T> codec)
+                    throws IOException
+    {
+        Codecs.writeVarLong(dos, beans.size());
+        for (T bean : beans.values())
+        {
+            codec.write(dos, bean);
+        }
+    }
+
+
+    /**
+     * Reads a map of beans, keyed by their keys
+     */
+    private static <T extends AbstractNominalBean> void readBeans(
+            DataInputStream dis, Map<String, T> beans, Codec<T> codec)
+                    throws IOException
+    {
+        for (int i = Codecs.length(dis); i > 0; i--)
+        {
+            T bean = codec.read(dis);
+            beans.put(bean.getKey(), bean);
+        }
+    }
+
+
+    /* ----------------------------------------------------------------
+     * 
+     * XMLStreamReader callbacks
+     * 
+     * ----------------------------------------------------------------
+     */
+
+
     /**
      * {@inheritDoc}
      *
-     * @see com.github.technosf.jwavez.hardware.AbstractXmlReader#startElement(javax.xml.stream.XMLEventReader,
-     *      javax.xml.stream.events.StartElement)
+     * @see com.github.technosf.jwavez.hardware.AbstractStreamXmlReader#startElement(java.lang.String)
      */
     @Override
-    protected void startElement(XMLEventReader reader,
-            StartElement element)
+    protected void startElement(String name)
     {
-        String name = element.getName().getLocalPart().toString();
         switch (name) {
             case "DeviceClasses":
                 break;
             case "Basic":
-                processBasic(reader, element);
+                processBasic();
                 break;
             case "Generic":
-                genericbean = processGeneric(reader, element);
+                genericbean = processGeneric();
                 break;
             case "Specific":
-                processSpecific(genericbean, reader, element);
+                processSpecific(genericbean);
                 break;
             case "Role":
-                processRole(reader, element);
+                processRole();
                 break;
             case "NodeType":
-                processNodeType(reader, element);
+                processNodeType();
                 break;
             case "DeviceType":
-                processDeviceType(reader, element);
+                processDeviceType();
                 break;
             default:
                 System.err.printf("Unknown element: [%1$s]\n", name);
@@ -99,32 +376,26 @@ public class DeviceClassesXmlReader extends AbstractXmlReader
 
 
     /**
-     * @param reader
-     * @param element
+     * Reads the {@code Basic} element at the cursor into a bean
      */
     @SuppressWarnings("null")
-    private void processBasic(XMLEventReader reader,
-            StartElement element)
+    private void processBasic()
     {
-        Attribute akey = element.getAttributeByName(Q_KEY);
-        Attribute alabel = element.getAttributeByName(Q_LABEL);
-        basicbeans.put(akey.getValue(),
-                new BasicBean(akey.getValue(), alabel.getValue()));
+        String akey = attribute(A_KEY);
+        String alabel = attribute(A_LABEL);
+        basicbeans.put(akey, new BasicBean(akey, alabel));
     }
 
 
     /**
      * {@inheritDoc}
      *
-     * @see com.github.technosf.jwavez.hardware.AbstractXmlReader#endElement(javax.xml.stream.XMLEventReader,
-     *      javax.xml.stream.events.EndElement)
+     * @see com.github.technosf.jwavez.hardware.AbstractStreamXmlReader#endElement(java.lang.String)
      */
     @SuppressWarnings("null")
     @Override
-    protected void endElement(XMLEventReader reader,
-            EndElement element)
+    protected void endElement(String name)
     {
-        String name = element.getName().getLocalPart().toString();
         switch (name) {
             case "DeviceClasses":
                 break;
@@ -149,110 +420,93 @@ public class DeviceClassesXmlReader extends AbstractXmlReader
 
 
     /**
-     * @param reader
-     * @param element
+     * Reads the {@code NodeType} element at the cursor into a bean
+     * 
+     * @return the bean previously held for the key, if any
      */
     @SuppressWarnings("null")
-    private NodeTypeBean processNodeType(XMLEventReader reader,
-            StartElement element)
+    private NodeTypeBean processNodeType()
     {
-        Attribute akey = element.getAttributeByName(Q_KEY);
-        Attribute alabel = element.getAttributeByName(Q_LABEL);
+        String akey = attribute(A_KEY);
+        String alabel = attribute(A_LABEL);
 
-        return nodetypebeans.put(akey.getValue(),
-                new NodeTypeBean(akey.getValue(),
-                        alabel.getValue()));
+        return nodetypebeans.put(akey, new NodeTypeBean(akey, alabel));
     }
 
 
     /**
-     * @param reader
-     * @param element
+     * Reads the {@code DeviceType} element at the cursor into a bean
+     * 
+     * @return the bean previously held for the key, if any
      */
     @SuppressWarnings("null")
-    private DeviceTypeBean processDeviceType(XMLEventReader reader,
-            StartElement element)
+    private DeviceTypeBean processDeviceType()
     {
-        Attribute akey = element.getAttributeByName(Q_KEY);
-        Attribute alabel = element.getAttributeByName(Q_LABEL);
-        Attribute acommand_classes =
-                element.getAttributeByName(Q_COMMAND_CLASSES);
-
-        return devicetypebeans.put(akey.getValue(),
-                new DeviceTypeBean(akey.getValue(),
-                        alabel.getValue(),
-                        acommand_classes == null ? null
-                                : acommand_classes.getValue()));
+        String akey = attribute(A_KEY);
+        String alabel = attribute(A_LABEL);
+        String acommand_classes = attribute(A_COMMAND_CLASSES);
+
+        return devicetypebeans.put(akey,
+                new DeviceTypeBean(akey, alabel, acommand_classes));
     }
 
 
     /**
-     * @param reader
-     * @param element
+     * Reads the {@code Role} element at the cursor into a bean
+     * 
+     * @return the role bean
      */
     @SuppressWarnings("null")
-    private RoleBean processRole(XMLEventReader reader, StartElement element)
+    private RoleBean processRole()
     {
-        Attribute akey = element.getAttributeByName(Q_KEY);
-        Attribute alabel = element.getAttributeByName(Q_LABEL);
-        Attribute acommand_classes =
-                element.getAttributeByName(Q_COMMAND_CLASSES);
-
-        RoleBean rb = new RoleBean(akey.getValue(),
-                alabel.getValue(),
-                acommand_classes == null ? null
-                        : acommand_classes.getValue());
-        rolebeans.put(akey.getValue(), rb);
+        String akey = attribute(A_KEY);
+        String alabel = attribute(A_LABEL);
+        String acommand_classes = attribute(A_COMMAND_CLASSES);
+
+        RoleBean rb = new RoleBean(akey, alabel, acommand_classes);
+        rolebeans.put(akey, rb);
         return rb;
     }
 
 
     /**
-     * @param reader
-     * @param element
+     * Reads the {@code Generic} element at the cursor into a bean
+     * 
+     * @return the generic bean, parent of the specific beans that follow
      */
     @SuppressWarnings("null")
-    private GenericBean processGeneric(XMLEventReader reader,
-            StartElement element)
+    private GenericBean processGeneric()
     {
-        Attribute akey = element.getAttributeByName(Q_KEY);
-        Attribute alabel = element.getAttributeByName(Q_LABEL);
-        Attribute acommand_classes =
-                element.getAttributeByName(Q_COMMAND_CLASSES);
-        Attribute abasic =
-                element.getAttributeByName(Q_BASIC);
-
-        GenericBean gb = new GenericBean(akey.getValue(),
-                alabel.getValue(),
-                acommand_classes == null ? null
-                        : acommand_classes.getValue(),
-                abasic == null ? null : abasic.getValue());
-        genericbeans.put(akey.getValue(), gb);
+        String akey = attribute(A_KEY);
+        String alabel = attribute(A_LABEL);
+        String acommand_classes = attribute(A_COMMAND_CLASSES);
+        String abasic = attribute(A_BASIC);
+
+        GenericBean gb =
+                new GenericBean(akey, alabel, acommand_classes, abasic);
+        genericbeans.put(akey, gb);
         return gb;
     }
 
 
     /**
-     * @param reader
-     * @param element
+     * Reads the {@code Specific} element at the cursor into a bean of its
+     * generic
+     * 
+     * @param genericbean
+     *            the generic bean the element is nested in
+     * @return the specific bean
      */
     @SuppressWarnings("null")
-    private SpecificBean processSpecific(GenericBean genericbean,
-            XMLEventReader reader,
-            StartElement element)
+    private SpecificBean processSpecific(GenericBean genericbean)
     {
-        Attribute akey = element.getAttributeByName(Q_KEY);
-        Attribute alabel = element.getAttributeByName(Q_LABEL);
-        Attribute acommand_classes =
-                element.getAttributeByName(Q_COMMAND_CLASSES);
-        Attribute abasic =
-                element.getAttributeByName(Q_BASIC);
-
-        SpecificBean sb = new SpecificBean(akey.getValue(),
-                alabel.getValue(),
-                acommand_classes == null ? null
-                        : acommand_classes.getValue(),
-                abasic == null ? null : abasic.getValue());
+        String akey = attribute(A_KEY);
+        String alabel = attribute(A_LABEL);
+        String acommand_classes = attribute(A_COMMAND_CLASSES);
+        String abasic = attribute(A_BASIC);
+
+        SpecificBean sb =
+                new SpecificBean(akey, alabel, acommand_classes, abasic);
 
         genericbean.add(sb);
 
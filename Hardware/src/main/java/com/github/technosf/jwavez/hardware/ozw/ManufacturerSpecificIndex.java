@@ -0,0 +1,354 @@
+/*
+ * Copyright 2016 technosf [https://github.com/technosf]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.github.technosf.jwavez.hardware.ozw;
+
+import java.util.Arrays;
+
+import org.eclipse.jdt.annotation.Nullable;
+
+/**
+ * Immutable index of the manufacturers and products of
+ * {@code manufacturer_specific.xml}
+ * <p>
+ * Products are keyed by their manufacturer id, product type and product id,
+ * each 16 bits, packed into the low 48 bits of a {@code long}. Keys and
+ * manufacturer ids are held in open addressed tables of primitives, so a
+ * lookup is a hash and a short probe that allocates nothing.
+ * 
+ * @author technosf
+ * @since 0.0.1
+ * @version 0.0.1
+ */
+public final class ManufacturerSpecificIndex
+{
+
+    /**
+     * Marks an empty slot; packed keys are never negative
+     */
+    private static final long EMPTY = -1L;
+
+    /*
+     * Products
+     */
+    private final long[] productSlots;
+    private final int[] productEntries;
+    private final String[] productNames;
+    private final @Nullable String[] configs;
+    private final int[] productManufacturers;
+
+    /*
+     * Manufacturers
+     */
+    private final long[] manufacturerSlots;
+    private final int[] manufacturerEntries;
+    private final String[] manufacturerNames;
+
+
+    /**
+     * Builds the index over the parsed entries, the first of any duplicate
+     * keys winning
+     * 
+     * @param manufacturerIds
+     *            the manufacturer ids
+     * @param manufacturerNames
+     *            the manufacturer names
+     * @param manufacturerCount
+     *            the number of manufacturers
+     * @param productKeys
+     *            the packed product keys
+     * @param productNames
+     *            the product names
+     * @param configs
+     *            the product config paths, null where there is none
+     * @param productManufacturers
+     *            the manufacturer entry of each product
+     * @param productCount
+     *            the number of products
+     */
+    ManufacturerSpecificIndex(int[] manufacturerIds,
+            String[] manufacturerNames, int manufacturerCount,
+            long[] productKeys, String[] productNames,
+            @Nullable String[] configs, int[] productManufacturers,
+            int productCount)
+    {
+        this.manufacturerNames =
+                Arrays.copyOf(manufacturerNames, manufacturerCount);
+        this.manufacturerSlots = new long[capacity(manufacturerCount)];
+        this.manufacturerEntries = new int[manufacturerSlots.length];
+        Arrays.fill(manufacturerSlots, EMPTY);
+        for (int i = 0; i < manufacturerCount; i++)
+        {
+            insert(manufacturerSlots, manufacturerEntries, manufacturerIds[i],
+                    i);
+        }
+
+        this.productNames = Arrays.copyOf(productNames, productCount);
+        this.configs = Arrays.copyOf(configs, productCount);
+        this.productManufacturers =
+                Arrays.copyOf(productManufacturers, productCount);
+        this.productSlots = new long[capacity(productCount)];
+        this.productEntries = new int[productSlots.length];
+        Arrays.fill(productSlots, EMPTY);
+        for (int i = 0; i < productCount; i++)
+        {
+            insert(productSlots, productEntries, productKeys[i], i);
+        }
+    }
+
+
+    /**
+     * Packs a product key
+     * 
+     * @param manufacturerId
+     *            the 16 bit manufacturer id
+     * @param productType
+     *            the 16 bit product type
+     * @param productId
+     *            the 16 bit product id
+     * @return the 48 bit key
+     */
+    public static long key(int manufacturerId, int productType,
+            int productId)
+    {
+        return ((manufacturerId & 0xFFFFL) << 32)
+                | ((productType & 0xFFFFL) << 16)
+                | (productId & 0xFFFFL);
+    }
+
+
+    /**
+     * @param key
+     *            a packed product key
+     * @return the manufacturer id of the key
+     */
+    public static int manufacturerId(long key)
+    {
+        return (int) (key >>> 32) & 0xFFFF;
+    }
+
+
+    /**
+     * @param key
+     *            a packed product key
+     * @return the product type of the key
+     */
+    public static int productType(long key)
+    {
+        return (int) (key >>> 16) & 0xFFFF;
+    }
+
+
+    /**
+     * @param key
+     *            a packed product key
+     * @return the product id of the key
+     */
+    public static int productId(long key)
+    {
+        return (int) key & 0xFFFF;
+    }
+
+
+    /* ----------------------------------------------------------------
+     * 
+     * Lookups
+     * 
+     * ----------------------------------------------------------------
+     */
+
+    /**
+     * Gets the name of a manufacturer
+     * 
+     * @param manufacturerId
+     *            the manufacturer id
+     * @return the name, or null if the manufacturer is unknown
+     */
+    public @Nullable String getManufacturerName(int manufacturerId)
+    {
+        int entry =
+                find(manufacturerSlots, manufacturerEntries, manufacturerId);
+        return entry < 0 ? null : manufacturerNames[entry];
+    }
+
+
+    /**
+     * Finds a product
+     * <p>
+     * The entry is read with the {@code getEntry} getters, saving repeated
+     * lookups.
+     * 
+     * @param key
+     *            the packed product key
+     * @return the product entry, or -1 if the product is unknown
+     */
+    public int find(long key)
+    {
+        return find(productSlots, productEntries, key);
+    }
+
+
+    /**
+     * Gets the name of a product
+     * 
+     * @param key
+     *            the packed product key
+     * @return the name, or null if the product is unknown
+     */
+    public @Nullable String getProductName(long key)
+    {
+        int entry = find(key);
+        return entry < 0 ? null : productNames[entry];
+    }
+
+
+    /**
+     * Gets the config path of a product
+     * 
+     * @param key
+     *            the packed product key
+     * @return the config path, or null if the product is unknown or has no
+     *         config
+     */
+    public @Nullable String getConfig(long key)
+    {
+        int entry = find(key);
+        return entry < 0 ? null : configs[entry];
+    }
+
+
+    /**
+     * @param entry
+     *            a product entry from {@code find}
+     * @return the product name
+     */
+    public String getEntryProductName(int entry)
+    {
+        return productNames[entry];
+    }
+
+
+    /**
+     * @param entry
+     *            a product entry from {@code find}
+     * @return the config path, or null if the product has none
+     */
+    public @Nullable String getEntryConfig(int entry)
+    {
+        return configs[entry];
+    }
+
+
+    /**
+     * @param entry
+     *            a product entry from {@code find}
+     * @return the manufacturer name
+     */
+    public String getEntryManufacturerName(int entry)
+    {
+        return manufacturerNames[productManufacturers[entry]];
+    }
+
+
+    /**
+     * @return the number of products, including duplicates
+     */
+    public int productCount()
+    {
+        return productNames.length;
+    }
+
+
+    /**
+     * @return the number of manufacturers
+     */
+    public int manufacturerCount()
+    {
+        return manufacturerNames.length;
+    }
+
+
+    /* ----------------------------------------------------------------
+     * 
+     * Open addressed tables
+     * 
+     * ----------------------------------------------------------------
+     */
+
+    /**
+     * Gets a power of two table capacity of at most half load
+     */
+    private static int capacity(int count)
+    {
+        return Integer.highestOneBit(Math.max(count, 2) * 2 - 1) << 1;
+    }
+
+
+    /**
+     * Spreads the key bits over the table index
+     */
+    private static int slot(long key, int mask)
+    {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+
+
+    /**
+     * Inserts an entry, unless its key is already present
+     */
+    private static void insert(long[] slots, int[] entries, long key,
+            int entry)
+    {
+        int mask = slots.length - 1;
+        for (int i = slot(key, mask);; i = (i + 1) & mask)
+        {
+            if (slots[i] == EMPTY)
+            {
+                slots[i] = key;
+                entries[i] = entry;
+                return;
+            }
+            if (slots[i] == key)
+            {
+                return;
+            }
+        }
+    }
+
+
+    /**
+     * Finds the entry of a key
+     */
+    private static int find(long[] slots, int[] entries, long key)
+    {
+        if (key < 0)
+        {
+            return -1;
+        }
+        int mask = slots.length - 1;
+        for (int i = slot(key, mask);; i = (i + 1) & mask)
+        {
+            long k = slots[i];
+            if (k == key)
+            {
+                return entries[i];
+            }
+            if (k == EMPTY)
+            {
+                return -1;
+            }
+        }
+    }
+
+}
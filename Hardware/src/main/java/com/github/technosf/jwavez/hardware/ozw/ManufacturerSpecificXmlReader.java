@@ -0,0 +1,248 @@
+/*
+ * Copyright 2016 technosf [https://github.com/technosf]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.github.technosf.jwavez.hardware.ozw;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+import javax.xml.stream.XMLStreamException;
+
+import org.eclipse.jdt.annotation.Nullable;
+
+import com.github.technosf.jwavez.hardware.AbstractStreamXmlReader;
+
+/**
+ * Reads {@code manufacturer_specific.xml} into a
+ * {@code ManufacturerSpecificIndex}
+ * <p>
+ * Entries are gathered into growing primitive arrays as the file is read and
+ * the index built over them at its end.
+ * 
+ * @author technosf
+ * @since 0.0.1
+ * @version 0.0.1
+ */
+public class ManufacturerSpecificXmlReader extends AbstractStreamXmlReader
+{
+
+    /**
+     * 
+     */
+    public static final String FILE_NAME = "manufacturer_specific.xml";
+
+    /*
+     * Attribute Names 
+     */
+    private static final String A_ID = "id";
+    private static final String A_NAME = "name";
+    private static final String A_TYPE = "type";
+    private static final String A_CONFIG = "config";
+
+    /*
+     * Parse state
+     */
+    private int[] manufacturerIds = new int[256];
+    private String[] manufacturerNames = new String[256];
+    private int manufacturerCount;
+    private long[] productKeys = new long[1024];
+    private String[] productNames = new String[1024];
+    private @Nullable String[] configs = new String[1024];
+    private int[] productManufacturers = new int[1024];
+    private int productCount;
+
+    private final ManufacturerSpecificIndex index;
+
+
+    /**
+     * Reads a {@code manufacturer_specific.xml} resource
+     * 
+     * @param filepath
+     *            the resource path
+     * @throws XMLStreamException
+     * @throws IOException
+     */
+    public ManufacturerSpecificXmlReader(String filepath)
+            throws XMLStreamException, IOException
+    {
+        try (InputStream is = getClass().getResourceAsStream(filepath))
+        {
+            if (is == null)
+            {
+                throw new IOException("File not found.");
+            }
+            initialize(is);
+        }
+        index = build();
+    }
+
+
+    /**
+     * Reads a {@code manufacturer_specific.xml} file
+     * 
+     * @param file
+     *            the file
+     * @throws XMLStreamException
+     * @throws IOException
+     */
+    public ManufacturerSpecificXmlReader(File file)
+            throws XMLStreamException, IOException
+    {
+        initialize(file);
+        index = build();
+    }
+
+
+    /**
+     * @return the index of the manufacturers and products read
+     */
+    public ManufacturerSpecificIndex getIndex()
+    {
+        return index;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see com.github.technosf.jwavez.hardware.AbstractStreamXmlReader#startElement(java.lang.String)
+     */
+    @Override
+    protected void startElement(String name)
+    {
+        switch (name) {
+            case "Manufacturer":
+                processManufacturer();
+                break;
+            case "Product":
+                processProduct();
+                break;
+            default:
+                break;
+        }
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see com.github.technosf.jwavez.hardware.AbstractStreamXmlReader#endElement(java.lang.String)
+     */
+    @Override
+    protected void endElement(String name)
+    {
+    }
+
+
+    /**
+     * 
+     */
+    private void processManufacturer()
+    {
+        if (manufacturerCount == manufacturerIds.length)
+        {
+            manufacturerIds = Arrays.copyOf(manufacturerIds,
+                    manufacturerCount * 2);
+            manufacturerNames = Arrays.copyOf(manufacturerNames,
+                    manufacturerCount * 2);
+        }
+        manufacturerIds[manufacturerCount] = hex(attribute(A_ID));
+        manufacturerNames[manufacturerCount] = nonNull(attribute(A_NAME));
+        manufacturerCount++;
+    }
+
+
+    /**
+     * Adds a product of the current manufacturer
+     */
+    private void processProduct()
+    {
+        if (manufacturerCount == 0)
+        {
+            return;
+        }
+        if (productCount == productKeys.length)
+        {
+            int capacity = productCount * 2;
+            productKeys = Arrays.copyOf(productKeys, capacity);
+            productNames = Arrays.copyOf(productNames, capacity);
+            configs = Arrays.copyOf(configs, capacity);
+            productManufacturers =
+                    Arrays.copyOf(productManufacturers, capacity);
+        }
+        int manufacturer = manufacturerCount - 1;
+        productKeys[productCount] = ManufacturerSpecificIndex.key(
+                manufacturerIds[manufacturer], hex(attribute(A_TYPE)),
+                hex(attribute(A_ID)));
+        productNames[productCount] = nonNull(attribute(A_NAME));
+        configs[productCount] = attribute(A_CONFIG);
+        productManufacturers[productCount] = manufacturer;
+        productCount++;
+    }
+
+
+    /**
+     * Builds the index and drops the parse state
+     */
+    @SuppressWarnings("null")
+    private ManufacturerSpecificIndex build()
+    {
+        ManufacturerSpecificIndex built = new ManufacturerSpecificIndex(
+                manufacturerIds, manufacturerNames, manufacturerCount,
+                productKeys, productNames, configs, productManufacturers,
+                productCount);
+        manufacturerIds = new int[0];
+        manufacturerNames = new String[0];
+        productKeys = new long[0];
+        productNames = new String[0];
+        configs = new String[0];
+        productManufacturers = new int[0];
+        return built;
+    }
+
+
+    /**
+     * Parses a 16 bit hex id, such as {@code 0086} or {@code 1D03}
+     * 
+     * @param attribute
+     *            the id attribute
+     * @return the id
+     * @throws IllegalArgumentException
+     *             if the id is missing or malformed
+     */
+    static int hex(@Nullable String attribute)
+    {
+        if (attribute == null)
+        {
+            throw new IllegalArgumentException("Missing id");
+        }
+        int value = Integer.parseInt(attribute.trim(), 16);
+        if (value < 0 || value > 0xFFFF)
+        {
+            throw new IllegalArgumentException("Id out of range: " + attribute);
+        }
+        return value;
+    }
+
+
+    /**
+     * @return the attribute, or the empty string if absent
+     */
+    private static String nonNull(@Nullable String attribute)
+    {
+        return attribute == null ? "" : attribute;
+    }
+
+}
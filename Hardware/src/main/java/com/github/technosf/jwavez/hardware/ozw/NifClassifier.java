@@ -0,0 +1,318 @@
+/*
+ * Copyright 2016 technosf [https://github.com/technosf]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.github.technosf.jwavez.hardware.ozw;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.github.technosf.jwavez.hardware.beans.base.CommandClassSet;
+
+/**
+ * Classifies nodes by their node information frames
+ * <p>
+ * A frame, as from the node info of an application update, is the basic,
+ * generic and specific class ids followed by the command classes the node
+ * supports, then a {@code MARK} and those it controls. Extended command
+ * classes, of two bytes from {@code 0xF1}, are skipped.
+ * <p>
+ * The capabilities of each generic and specific class pair are built once
+ * and kept. The capabilities of each frame are memoized in a direct mapped
+ * table keyed by the frame content, so classifying a frame seen before, as
+ * on the re-interview of each node after a restart, is a hash and a compare
+ * that allocates nothing. The classifier is thread safe.
+ * 
+ * @author technosf
+ * @since 0.0.1
+ * @version 0.0.1
+ */
+public final class NifClassifier
+{
+
+    /**
+     * The default number of frames memoized
+     */
+    public static final int DEFAULT_CAPACITY = 256;
+
+    /**
+     * The MARK command class id
+     */
+    private static final int MARK = 0xEF;
+
+    /**
+     * The first two byte extended command class id
+     */
+    private static final int EXTENDED = 0xF1;
+
+    private final DeviceClassesRegistry registry;
+
+    /**
+     * Device class capabilities by generic then specific id
+     */
+    private final AtomicReferenceArray<AtomicReferenceArray<DeviceClass>>
+            deviceClasses = new AtomicReferenceArray<>(256);
+
+    /**
+     * Memoized frames
+     */
+    private final AtomicReferenceArray<Memo> frames;
+    private final int mask;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * A frame and its capabilities
+     */
+    private static final class Memo
+    {
+        final byte[] frame;
+        final int hash;
+        final NodeCapabilities capabilities;
+
+
+        Memo(byte[] frame, int hash, NodeCapabilities capabilities)
+        {
+            this.frame = frame;
+            this.hash = hash;
+            this.capabilities = capabilities;
+        }
+
+
+        boolean matches(byte[] other, int offset, int length, int otherHash)
+        {
+            if (hash != otherHash || frame.length != length)
+            {
+                return false;
+            }
+            for (int i = 0; i < length; i++)
+            {
+                if (frame[i] != other[offset + i])
+                {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+
+    /**
+     * Instantiate a classifier memoizing {@code DEFAULT_CAPACITY} frames
+     * 
+     * @param registry
+     *            the device classes registry
+     */
+    public NifClassifier(DeviceClassesRegistry registry)
+    {
+        this(registry, DEFAULT_CAPACITY);
+    }
+
+
+    /**
+     * Instantiate a classifier
+     * 
+     * @param registry
+     *            the device classes registry
+     * @param capacity
+     *            the number of frames to memoize, rounded up to a power of two
+     */
+    public NifClassifier(DeviceClassesRegistry registry, int capacity)
+    {
+        if (capacity < 1 || capacity > 1 << 30)
+        {
+            throw new IllegalArgumentException("Capacity out of range");
+        }
+        this.registry = registry;
+        int slots = Integer.highestOneBit(capacity * 2 - 1);
+        this.frames = new AtomicReferenceArray<>(slots);
+        this.mask = slots - 1;
+    }
+
+
+    /**
+     * Classifies a node information frame
+     * 
+     * @param frame
+     *            the frame
+     * @return the capabilities of the node
+     * @throws IllegalArgumentException
+     *             if the frame is shorter than its three class ids
+     */
+    public NodeCapabilities classify(byte[] frame)
+    {
+        return classify(frame, 0, frame.length);
+    }
+
+
+    /**
+     * Classifies a node information frame within a larger buffer
+     * 
+     * @param buffer
+     *            the buffer
+     * @param offset
+     *            the offset of the basic class id of the frame
+     * @param length
+     *            the length of the frame
+     * @return the capabilities of the node
+     * @throws IllegalArgumentException
+     *             if the frame is shorter than its three class ids
+     */
+    public NodeCapabilities classify(byte[] buffer, int offset, int length)
+    {
+        if (length < 3)
+        {
+            throw new IllegalArgumentException("Frame too short");
+        }
+        if (offset < 0 || offset + length > buffer.length)
+        {
+            throw new IndexOutOfBoundsException();
+        }
+
+        int hash = hash(buffer, offset, length);
+        int slot = hash & mask;
+        Memo memo = frames.get(slot);
+        if (memo != null && memo.matches(buffer, offset, length, hash))
+        {
+            hits.increment();
+            return memo.capabilities;
+        }
+
+        misses.increment();
+        NodeCapabilities capabilities = build(buffer, offset, length);
+        frames.set(slot,
+                new Memo(Arrays.copyOfRange(buffer, offset, offset + length),
+                        hash, capabilities));
+        return capabilities;
+    }
+
+
+    /**
+     * Gets the capabilities of a generic and specific class pair
+     * 
+     * @param generic
+     *            the generic class id, of which the low byte is used
+     * @param specific
+     *            the specific class id, of which the low byte is used
+     * @return the capabilities
+     */
+    public DeviceClass getDeviceClass(int generic, int specific)
+    {
+        int g = generic & 0xFF;
+        int s = specific & 0xFF;
+
+        AtomicReferenceArray<DeviceClass> specifics = deviceClasses.get(g);
+        if (specifics == null)
+        {
+            deviceClasses.compareAndSet(g, null,
+                    new AtomicReferenceArray<>(256));
+            specifics = deviceClasses.get(g);
+        }
+
+        DeviceClass deviceClass = specifics.get(s);
+        if (deviceClass == null)
+        {
+            specifics.compareAndSet(s, null,
+                    new DeviceClass(registry, g, s));
+            deviceClass = specifics.get(s);
+        }
+        return deviceClass;
+    }
+
+
+    /**
+     * Builds the capabilities of a frame
+     */
+    private NodeCapabilities build(byte[] buffer, int offset, int length)
+    {
+        int basic = buffer[offset] & 0xFF;
+        DeviceClass deviceClass = getDeviceClass(buffer[offset + 1],
+                buffer[offset + 2]);
+
+        int[] supported = new int[length];
+        int supportedCount = 0;
+        int[] controlled = new int[length];
+        int controlledCount = 0;
+        boolean marked = false;
+        for (int i = offset + 3; i < offset + length; i++)
+        {
+            int id = buffer[i] & 0xFF;
+            if (id == MARK)
+            {
+                marked = true;
+            }
+            else if (id >= EXTENDED)
+            /*
+             * Two byte command class, out of the range of the set
+             */
+            {
+                i++;
+            }
+            else if (marked)
+            {
+                controlled[controlledCount++] = id;
+            }
+            else
+            {
+                supported[supportedCount++] = id;
+            }
+        }
+
+        return new NodeCapabilities(basic, registry.getBasic(basic),
+                deviceClass,
+                CommandClassSet.of(Arrays.copyOf(supported, supportedCount)),
+                CommandClassSet
+                        .of(Arrays.copyOf(controlled, controlledCount)));
+    }
+
+
+    /**
+     * Hashes the frame content
+     */
+    private static int hash(byte[] buffer, int offset, int length)
+    {
+        int h = length;
+        for (int i = offset; i < offset + length; i++)
+        {
+            h = 31 * h + buffer[i];
+        }
+        return h ^ (h >>> 16);
+    }
+
+
+    /* ----------------------------------------------------------------
+     * 
+     * Getters and Setters
+     * 
+     * ----------------------------------------------------------------
+     */
+
+    /**
+     * @return the number of frames answered from the memo
+     */
+    public long getHitCount()
+    {
+        return hits.sum();
+    }
+
+
+    /**
+     * @return the number of frames classified afresh
+     */
+    public long getMissCount()
+    {
+        return misses.sum();
+    }
+
+}
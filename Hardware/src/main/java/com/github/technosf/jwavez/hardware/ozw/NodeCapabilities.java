@@ -0,0 +1,143 @@
+/*
+ * Copyright 2016 technosf [https://github.com/technosf]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.github.technosf.jwavez.hardware.ozw;
+
+import org.eclipse.jdt.annotation.Nullable;
+
+import com.github.technosf.jwavez.hardware.beans.base.CommandClass;
+import com.github.technosf.jwavez.hardware.beans.base.CommandClassSet;
+import com.github.technosf.jwavez.hardware.beans.device.BasicBean;
+
+/**
+ * The capabilities of a node, from its node information frame
+ * <p>
+ * The effective command classes are the mandatory ones of its device class
+ * with those the frame lists.
+ * 
+ * @author technosf
+ * @since 0.0.1
+ * @version 0.0.1
+ */
+public final class NodeCapabilities
+{
+    private final int basicId;
+    private final @Nullable BasicBean basic;
+    private final DeviceClass deviceClass;
+    private final CommandClassSet listedSupported;
+    private final CommandClassSet listedControlled;
+    private final CommandClassSet supported;
+    private final CommandClassSet controlled;
+
+
+    /**
+     * @param basicId
+     *            the basic class id
+     * @param basic
+     *            the basic class, or null if it is unknown
+     * @param deviceClass
+     *            the generic and specific class capabilities
+     * @param listedSupported
+     *            the supported command classes listed by the frame
+     * @param listedControlled
+     *            the controlled command classes listed by the frame
+     */
+    NodeCapabilities(int basicId, @Nullable BasicBean basic,
+            DeviceClass deviceClass, CommandClassSet listedSupported,
+            CommandClassSet listedControlled)
+    {
+        this.basicId = basicId;
+        this.basic = basic;
+        this.deviceClass = deviceClass;
+        this.listedSupported = listedSupported;
+        this.listedControlled = listedControlled;
+        this.supported = deviceClass.getSupported().union(listedSupported);
+        this.controlled =
+                deviceClass.getControlled().union(listedControlled);
+    }
+
+
+    /**
+     * @return the basic class id
+     */
+    public int getBasicId()
+    {
+        return basicId;
+    }
+
+
+    /**
+     * @return the basic class, or null if it is unknown
+     */
+    public @Nullable BasicBean getBasic()
+    {
+        return basic;
+    }
+
+
+    /**
+     * @return the generic and specific class capabilities
+     */
+    public DeviceClass getDeviceClass()
+    {
+        return deviceClass;
+    }
+
+
+    /**
+     * @return the supported command classes listed by the frame
+     */
+    public CommandClassSet getListedSupported()
+    {
+        return listedSupported;
+    }
+
+
+    /**
+     * @return the controlled command classes listed by the frame
+     */
+    public CommandClassSet getListedControlled()
+    {
+        return listedControlled;
+    }
+
+
+    /**
+     * @return the effective supported command classes
+     */
+    public CommandClassSet getSupported()
+    {
+        return supported;
+    }
+
+
+    /**
+     * @return the effective controlled command classes
+     */
+    public CommandClassSet getControlled()
+    {
+        return controlled;
+    }
+
+
+    /**
+     * @param commandClass
+     *            a command class
+     * @return true if the node supports the command class
+     */
+    public boolean supports(CommandClass commandClass)
+    {
+        return supported.contains(commandClass);
+    }
+
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright 2016 technosf [https://github.com/technosf]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.github.technosf.jwavez.hardware.ozw;
+
+import java.util.Collections;
+import java.util.Map;
+
+import org.eclipse.jdt.annotation.Nullable;
+
+import com.github.technosf.jwavez.hardware.beans.product.ProductBean;
+
+/**
+ * The OpenZWave config, as loaded from a config directory tree by
+ * {@code OzwConfigLoader}
+ * 
+ * @author technosf
+ * @since 0.0.1
+ * @version 0.0.1
+ */
+public final class OzwConfig
+{
+    private final @Nullable DeviceClassesXmlReader deviceClasses;
+    private final @Nullable ManufacturerSpecificIndex manufacturerSpecific;
+    private final Map<String, ProductBean> products;
+    private final Map<String, Exception> failures;
+
+
+    /**
+     * @param deviceClasses
+     *            the device classes, or null if there were none
+     * @param manufacturerSpecific
+     *            the manufacturer and product index, or null if there was
+     *            none
+     * @param products
+     *            the products by config path
+     * @param failures
+     *            the failures of the product configs that could not be
+     *            loaded, by config path
+     */
+    @SuppressWarnings("null")
+    OzwConfig(@Nullable DeviceClassesXmlReader deviceClasses,
+            @Nullable ManufacturerSpecificIndex manufacturerSpecific,
+            Map<String, ProductBean> products, Map<String, Exception> failures)
+    {
+        this.deviceClasses = deviceClasses;
+        this.manufacturerSpecific = manufacturerSpecific;
+        this.products = Collections.unmodifiableMap(products);
+        this.failures = Collections.unmodifiableMap(failures);
+    }
+
+
+    /**
+     * @return the device classes, or null if the config has no
+     *         {@code device_classes.xml}
+     */
+    public @Nullable DeviceClassesXmlReader getDeviceClasses()
+    {
+        return deviceClasses;
+    }
+
+
+    /**
+     * @return the manufacturer and product index, or null if the config has
+     *         no {@code manufacturer_specific.xml}
+     */
+    public @Nullable ManufacturerSpecificIndex getManufacturerSpecific()
+    {
+        return manufacturerSpecific;
+    }
+
+
+    /**
+     * Gets the product config of a manufacturer product
+     * 
+     * @param manufacturerId
+     *            the manufacturer id
+     * @param productType
+     *            the product type
+     * @param productId
+     *            the product id
+     * @return the product, or null if the product is unknown or has no config
+     */
+    public @Nullable ProductBean getProduct(int manufacturerId,
+            int productType, int productId)
+    {
+        ManufacturerSpecificIndex index = manufacturerSpecific;
+        if (index == null)
+        {
+            return null;
+        }
+        String config = index.getConfig(ManufacturerSpecificIndex
+                .key(manufacturerId, productType, productId));
+        return config == null ? null : products.get(config);
+    }
+
+
+    /**
+     * Gets a product by its config path
+     * 
+     * @param config
+     *            the config path, such as {@code aeotec/sd6.xml}
+     * @return the product, or null if there is no such product
+     */
+    public @Nullable ProductBean getProduct(String config)
+    {
+        return products.get(config);
+    }
+
+
+    /**
+     * @return the products by config path
+     */
+    public Map<String, ProductBean> getProducts()
+    {
+        return products;
+    }
+
+
+    /**
+     * Gets the product configs that could not be loaded, and why
+     * <p>
+     * Always empty for a config loaded failing fast, as the first failure
+     * then aborts the load.
+     * 
+     * @return the failures by config path, in path order
+     */
+    public Map<String, Exception> getFailures()
+    {
+        return failures;
+    }
+
+}
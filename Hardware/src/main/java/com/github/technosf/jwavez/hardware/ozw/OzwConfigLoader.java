@@ -0,0 +1,446 @@
+/*
+ * Copyright 2016 technosf [https://github.com/technosf]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.github.technosf.jwavez.hardware.ozw;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import javax.xml.stream.XMLStreamException;
+
+import org.eclipse.jdt.annotation.Nullable;
+
+import com.github.technosf.jwavez.hardware.beans.product.ProductBean;
+
+/**
+ * Loads an OpenZWave config directory tree in parallel
+ * <p>
+ * The product config files are those in the vendor directories below the
+ * config directory, such as {@code aeotec/sd6.xml}. They are split between
+ * the tasks of a fork-join pool, each file parsed by its own
+ * {@code ProductXmlReader} in the task that reads it, and the products
+ * merged as the tasks join. The {@code device_classes.xml}, through its
+ * binary cache, and the {@code manufacturer_specific.xml} index are read
+ * alongside them.
+ * <p>
+ * A product config that cannot be parsed is recorded in the config's
+ * failures and the rest are loaded, unless the load is asked to fail fast,
+ * when the first failure aborts it. A failure to read the device classes or
+ * the manufacturer index always aborts the load.
+ * <p>
+ * Parsing blocks on file I/O, so by default each load runs on a pool of its
+ * own rather than on the common pool shared with the rest of the JVM.
+ * 
+ * @author technosf
+ * @since 0.0.1
+ * @version 0.0.1
+ */
+public final class OzwConfigLoader
+{
+
+    /**
+     * The number of files below which a task parses its files itself rather
+     * than splitting them
+     */
+    static final int THRESHOLD = 8;
+
+
+    private OzwConfigLoader()
+    {
+    }
+
+
+    /**
+     * Loads a config directory on a pool of its own, recording the product
+     * configs that cannot be parsed
+     * 
+     * @param directory
+     *            the config directory
+     * @return the config
+     * @throws XMLStreamException
+     * @throws IOException
+     */
+    public static OzwConfig load(File directory)
+            throws XMLStreamException, IOException
+    {
+        ForkJoinPool pool = new ForkJoinPool();
+        try
+        {
+            return load(directory, pool, false);
+        }
+        finally
+        {
+            pool.shutdown();
+        }
+    }
+
+
+    /**
+     * Loads a config directory on the given pool, recording the product
+     * configs that cannot be parsed
+     * 
+     * @param directory
+     *            the config directory
+     * @param pool
+     *            the pool to parse on
+     * @return the config
+     * @throws XMLStreamException
+     * @throws IOException
+     */
+    public static OzwConfig load(File directory, ForkJoinPool pool)
+            throws XMLStreamException, IOException
+    {
+        return load(directory, pool, false);
+    }
+
+
+    /**
+     * Loads a config directory on the given pool
+     * 
+     * @param directory
+     *            the config directory
+     * @param pool
+     *            the pool to parse on
+     * @param failFast
+     *            abort the load at the first product config that cannot be
+     *            parsed, rather than recording it
+     * @return the config
+     * @throws XMLStreamException
+     * @throws IOException
+     */
+    public static OzwConfig load(File directory, ForkJoinPool pool,
+            boolean failFast) throws XMLStreamException, IOException
+    {
+        if (!directory.isDirectory())
+        {
+            throw new IOException("Cannot use directory");
+        }
+
+        try
+        {
+            return pool.invoke(new ConfigTask(directory,
+                    failFast ? null : new ConcurrentHashMap<>()));
+        }
+        catch (LoadException e)
+        {
+            throw unwrap(e);
+        }
+    }
+
+
+    /**
+     * Finds the product config files, the XML files in the directories below
+     * the config directory
+     * 
+     * @param root
+     *            the config directory
+     * @return the files, in path order
+     * @throws IOException
+     */
+    @SuppressWarnings("null")
+    static List<Path> productFiles(Path root) throws IOException
+    {
+        try (Stream<Path> paths = Files.walk(root))
+        {
+            return paths
+                    .filter(p -> p.getNameCount() > root.getNameCount() + 1)
+                    .filter(p -> p.toString().endsWith(".xml"))
+                    .filter(Files::isRegularFile)
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+
+
+    /**
+     * Rethrows the checked exception carried out of a task
+     */
+    private static IOException unwrap(LoadException e)
+            throws XMLStreamException
+    {
+        Throwable cause = e.getCause();
+        if (cause instanceof LoadException)
+        /*
+         * Rethrown by the pool as a new exception around the original
+         */
+        {
+            cause = cause.getCause();
+        }
+        if (cause instanceof XMLStreamException)
+        {
+            throw (XMLStreamException) cause;
+        }
+        if (cause instanceof IOException)
+        {
+            return (IOException) cause;
+        }
+        return new IOException(cause);
+    }
+
+    /**
+     * Carries a checked exception out of a task
+     */
+    @SuppressWarnings("serial")
+    private static final class LoadException extends RuntimeException
+    {
+        LoadException(Exception cause)
+        {
+            super(cause);
+        }
+    }
+
+    /**
+     * Loads the config, reading the device classes alongside the products
+     */
+    @SuppressWarnings("serial")
+    private static final class ConfigTask extends RecursiveTask<OzwConfig>
+    {
+        private final File directory;
+        private final @Nullable Map<String, Exception> failures;
+
+
+        ConfigTask(File directory, @Nullable Map<String, Exception> failures)
+        {
+            this.directory = directory;
+            this.failures = failures;
+        }
+
+
+        @SuppressWarnings("null")
+        @Override
+        protected OzwConfig compute()
+        {
+            File classesFile = new File(directory,
+                    DeviceClassesXmlReader.FILE_NAME);
+            ClassesTask classes = null;
+            if (classesFile.isFile())
+            {
+                classes = new ClassesTask(classesFile);
+                classes.fork();
+            }
+
+            File manufacturerFile = new File(directory,
+                    ManufacturerSpecificXmlReader.FILE_NAME);
+            ManufacturerTask manufacturers = null;
+            if (manufacturerFile.isFile())
+            {
+                manufacturers = new ManufacturerTask(manufacturerFile);
+                manufacturers.fork();
+            }
+
+            Path root = directory.toPath();
+            List<Path> files;
+            try
+            {
+                files = productFiles(root);
+            }
+            catch (IOException e)
+            {
+                throw new LoadException(e);
+            }
+
+            Map<String, ProductBean> products = new ProductsTask(root, files,
+                    0, files.size(), failures).compute();
+            return new OzwConfig(classes == null ? null : classes.join(),
+                    manufacturers == null ? null : manufacturers.join(),
+                    products, failures == null ? new TreeMap<>()
+                            : new TreeMap<>(failures));
+        }
+    }
+
+    /**
+     * Reads the device classes, through their binary cache
+     */
+    @SuppressWarnings("serial")
+    private static final class ClassesTask
+            extends RecursiveTask<DeviceClassesXmlReader>
+    {
+        private final File file;
+
+
+        ClassesTask(File file)
+        {
+            this.file = file;
+        }
+
+
+        @Override
+        protected DeviceClassesXmlReader compute()
+        {
+            try
+            {
+                return DeviceClassesXmlReader.cached(file);
+            }
+            catch (XMLStreamException | IOException e)
+            {
+                throw new LoadException(e);
+            }
+        }
+    }
+
+    /**
+     * Reads the manufacturer and product index
+     */
+    @SuppressWarnings("serial")
+    private static final class ManufacturerTask
+            extends RecursiveTask<ManufacturerSpecificIndex>
+    {
+        private final File file;
+
+
+        ManufacturerTask(File file)
+        {
+            this.file = file;
+        }
+
+
+        @Override
+        protected ManufacturerSpecificIndex compute()
+        {
+            try
+            {
+                return new ManufacturerSpecificXmlReader(file).getIndex();
+            }
+            catch (XMLStreamException | IOException e)
+            {
+                throw new LoadException(e);
+            }
+        }
+    }
+
+    /**
+     * Parses a range of the product files, splitting it while it is large
+     */
+    @SuppressWarnings("serial")
+    private static final class ProductsTask
+            extends RecursiveTask<Map<String, ProductBean>>
+    {
+        private final Path root;
+        private final List<Path> files;
+        private final int from;
+        private final int to;
+
+        /**
+         * Receives the failures, or null to fail fast
+         */
+        private final @Nullable Map<String, Exception> failures;
+
+
+        ProductsTask(Path root, List<Path> files, int from, int to,
+                @Nullable Map<String, Exception> failures)
+        {
+            this.root = root;
+            this.files = files;
+            this.from = from;
+            this.to = to;
+            this.failures = failures;
+        }
+
+
+        @Override
+        protected Map<String, ProductBean> compute()
+        {
+            if (to - from <= THRESHOLD)
+            {
+                return parse();
+            }
+
+            int mid = (from + to) >>> 1;
+            ProductsTask left =
+                    new ProductsTask(root, files, from, mid, failures);
+            left.fork();
+            Map<String, ProductBean> products =
+                    new ProductsTask(root, files, mid, to, failures).compute();
+            products.putAll(left.join());
+            return products;
+        }
+
+
+        /**
+         * Parses the files of the range, each with its own reader
+         */
+        @SuppressWarnings("null")
+        private Map<String, ProductBean> parse()
+        {
+            Map<String, ProductBean> products = new HashMap<>();
+            for (Path file : files.subList(from, to))
+            {
+                String config = config(root, file);
+                try
+                {
+                    products.put(config,
+                            new ProductXmlReader(file.toFile(), config)
+                                    .getProduct());
+                }
+                catch (XMLStreamException e)
+                {
+                    fail(config, new XMLStreamException(
+                            config + ": " + e.getMessage(), e));
+                }
+                catch (IOException | RuntimeException e)
+                {
+                    fail(config, e);
+                }
+            }
+            return products;
+        }
+
+
+        /**
+         * Records a product config that cannot be parsed, or aborts the load
+         * when failing fast
+         */
+        private void fail(String config, Exception e)
+        {
+            Map<String, Exception> failed = failures;
+            if (failed == null && e instanceof RuntimeException)
+            {
+                throw (RuntimeException) e;
+            }
+            else if (failed == null)
+            {
+                throw new LoadException(e);
+            }
+            failed.put(config, e);
+        }
+    }
+
+
+    /**
+     * Gets the config path of a file, with {@code /} separators as in
+     * {@code manufacturer_specific.xml}
+     */
+    @SuppressWarnings("null")
+    static String config(Path root, Path file)
+    {
+        List<String> names = new ArrayList<>();
+        for (Path name : root.relativize(file))
+        {
+            names.add(name.toString());
+        }
+        return String.join("/", names);
+    }
+
+}
@@ -0,0 +1,413 @@
+/*
+ * Copyright 2016 technosf [https://github.com/technosf]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.github.technosf.jwavez.hardware.ozw;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.xml.stream.XMLStreamException;
+
+import org.eclipse.jdt.annotation.Nullable;
+
+import com.github.technosf.jwavez.hardware.beans.product.ProductBean;
+
+/**
+ * A bounded, least recently used cache of product configs, loaded from the
+ * config directory the first time a product is asked for
+ * <p>
+ * Products are found through the {@code manufacturer_specific.xml} index and
+ * cached by config path, so the products sharing a config file share one
+ * entry. The cache is bounded by a number of entries, and optionally by the
+ * total size of the config files loaded, as a proxy for their heap. Hits,
+ * misses and evictions are counted.
+ * <p>
+ * Configs are parsed outside of the cache lock, so a slow load does not
+ * hold up hits on other products. Concurrent misses on the same config share
+ * a single load: the first thread parses the file while the others wait for
+ * its result, and are counted as hits.
+ * 
+ * @author technosf
+ * @since 0.0.1
+ * @version 0.0.1
+ */
+public final class ProductCache
+{
+
+    /**
+     * No limit on the size of the config files cached
+     */
+    public static final long UNLIMITED = Long.MAX_VALUE;
+
+    private final File directory;
+    private final ManufacturerSpecificIndex index;
+    private final int maxEntries;
+    private final long maxBytes;
+
+    /**
+     * The cached products, in access order
+     */
+    private final LinkedHashMap<String, Entry> products =
+            new LinkedHashMap<>(16, 0.75f, true);
+
+    /**
+     * The configs being loaded, guarded by the {@code products} lock
+     */
+    private final Map<String, FutureTask<Entry>> loading = new HashMap<>();
+
+    private long bytes;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * A cached product and the size of its config file
+     */
+    private static final class Entry
+    {
+        final ProductBean product;
+        final long bytes;
+
+
+        Entry(ProductBean product, long bytes)
+        {
+            this.product = product;
+            this.bytes = bytes;
+        }
+    }
+
+
+    /**
+     * Instantiate a cache bounded by a number of entries
+     * 
+     * @param directory
+     *            the config directory
+     * @param index
+     *            the manufacturer and product index
+     * @param maxEntries
+     *            the most products to cache
+     */
+    public ProductCache(File directory, ManufacturerSpecificIndex index,
+            int maxEntries)
+    {
+        this(directory, index, maxEntries, UNLIMITED);
+    }
+
+
+    /**
+     * Instantiate a cache bounded by a number of entries and by the size of
+     * the config files cached
+     * 
+     * @param directory
+     *            the config directory
+     * @param index
+     *            the manufacturer and product index
+     * @param maxEntries
+     *            the most products to cache
+     * @param maxBytes
+     *            the most bytes of config file to cache, or
+     *            {@code UNLIMITED}
+     */
+    public ProductCache(File directory, ManufacturerSpecificIndex index,
+            int maxEntries, long maxBytes)
+    {
+        if (maxEntries < 1 || maxBytes < 1)
+        {
+            throw new IllegalArgumentException("Limits must be positive");
+        }
+        this.directory = directory;
+        this.index = index;
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxBytes;
+    }
+
+
+    /**
+     * Gets a product, loading it if it is not cached
+     * 
+     * @param manufacturerId
+     *            the manufacturer id
+     * @param productType
+     *            the product type
+     * @param productId
+     *            the product id
+     * @return the product, or null if the product is unknown or has no config
+     * @throws XMLStreamException
+     * @throws IOException
+     */
+    public @Nullable ProductBean get(int manufacturerId, int productType,
+            int productId) throws XMLStreamException, IOException
+    {
+        return get(ManufacturerSpecificIndex.key(manufacturerId, productType,
+                productId));
+    }
+
+
+    /**
+     * Gets a product, loading it if it is not cached
+     * 
+     * @param key
+     *            the packed product key
+     * @return the product, or null if the product is unknown or has no config
+     * @throws XMLStreamException
+     * @throws IOException
+     */
+    public @Nullable ProductBean get(long key)
+            throws XMLStreamException, IOException
+    {
+        String config = index.getConfig(key);
+        if (config == null)
+        {
+            return null;
+        }
+
+        FutureTask<Entry> load;
+        boolean loader = false;
+
+        synchronized (products)
+        {
+            Entry entry = products.get(config);
+            if (entry != null)
+            {
+                hits.increment();
+                return entry.product;
+            }
+
+            load = loading.get(config);
+            if (load == null)
+            /*
+             * First miss on this config, so this thread loads it
+             */
+            {
+                load = new FutureTask<>(() -> load(config));
+                loading.put(config, load);
+                loader = true;
+            }
+        }
+
+        if (!loader)
+        /*
+         * Already being loaded by another thread, so share its result
+         */
+        {
+            hits.increment();
+            return await(load).product;
+        }
+
+        misses.increment();
+        load.run();
+
+        Entry loaded = null;
+        try
+        {
+            loaded = await(load);
+        }
+        finally
+        /*
+         * Publish the product, or let the next get retry a failed load
+         */
+        {
+            synchronized (products)
+            {
+                loading.remove(config);
+                if (loaded != null)
+                {
+                    products.put(config, loaded);
+                    bytes += loaded.bytes;
+                    evict();
+                }
+            }
+        }
+        return loaded.product;
+    }
+
+
+    /**
+     * Parses a product config
+     * 
+     * @param config
+     *            the config path, relative to the config directory
+     * @return the product and the size of its config file
+     * @throws XMLStreamException
+     * @throws IOException
+     */
+    private Entry load(String config) throws XMLStreamException, IOException
+    {
+        File file = new File(directory, config);
+        ProductBean product = new ProductXmlReader(file, config).getProduct();
+        return new Entry(product, file.length());
+    }
+
+
+    /**
+     * Waits for a config load, rethrowing its failure
+     * 
+     * @param load
+     *            the load
+     * @return the loaded product
+     * @throws XMLStreamException
+     * @throws IOException
+     */
+    @SuppressWarnings("null")
+    private static Entry await(FutureTask<Entry> load)
+            throws XMLStreamException, IOException
+    {
+        try
+        {
+            return load.get();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw (InterruptedIOException) new InterruptedIOException(
+                    "Interrupted waiting for a config load").initCause(e);
+        }
+        catch (ExecutionException e)
+        {
+            Throwable cause = e.getCause();
+            if (cause instanceof XMLStreamException)
+            {
+                throw (XMLStreamException) cause;
+            }
+            else if (cause instanceof IOException)
+            {
+                throw (IOException) cause;
+            }
+            else if (cause instanceof RuntimeException)
+            {
+                throw (RuntimeException) cause;
+            }
+            else if (cause instanceof Error)
+            {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+    }
+
+
+    /**
+     * Evicts the least recently used products while over the limits, always
+     * keeping the most recent
+     */
+    private void evict()
+    {
+        Iterator<Map.Entry<String, Entry>> it = products.entrySet().iterator();
+        while ((products.size() > maxEntries || bytes > maxBytes)
+                && products.size() > 1)
+        {
+            bytes -= it.next().getValue().bytes;
+            it.remove();
+            evictions.increment();
+        }
+    }
+
+
+    /**
+     * Drops all cached products, keeping the counts
+     */
+    public void clear()
+    {
+        synchronized (products)
+        {
+            products.clear();
+            bytes = 0;
+        }
+    }
+
+
+    /* ----------------------------------------------------------------
+     * 
+     * Getters and Setters
+     * 
+     * ----------------------------------------------------------------
+     */
+
+    /**
+     * @return the number of products cached
+     */
+    public int size()
+    {
+        synchronized (products)
+        {
+            return products.size();
+        }
+    }
+
+
+    /**
+     * @return the size of the config files of the products cached
+     */
+    public long getBytes()
+    {
+        synchronized (products)
+        {
+            return bytes;
+        }
+    }
+
+
+    /**
+     * @return the number of gets answered from the cache
+     */
+    public long getHitCount()
+    {
+        return hits.sum();
+    }
+
+
+    /**
+     * @return the number of gets that loaded a config
+     */
+    public long getMissCount()
+    {
+        return misses.sum();
+    }
+
+
+    /**
+     * @return the number of products evicted
+     */
+    public long getEvictionCount()
+    {
+        return evictions.sum();
+    }
+
+
+    /**
+     * @return the most products cached
+     */
+    public int getMaxEntries()
+    {
+        return maxEntries;
+    }
+
+
+    /**
+     * @return the most bytes of config file cached
+     */
+    public long getMaxBytes()
+    {
+        return maxBytes;
+    }
+
+}
@@ -0,0 +1,251 @@
+/*
+ * Copyright 2016 technosf [https://github.com/technosf]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.github.technosf.jwavez.hardware.ozw;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+
+import javax.xml.stream.XMLStreamException;
+
+import org.eclipse.jdt.annotation.Nullable;
+
+import com.github.technosf.jwavez.hardware.AbstractStreamXmlReader;
+import com.github.technosf.jwavez.hardware.beans.product.GroupBean;
+import com.github.technosf.jwavez.hardware.beans.product.ProductBean;
+import com.github.technosf.jwavez.hardware.beans.product.ValueBean;
+
+/**
+ * Reads a product config file, such as {@code aeotec/sd6.xml}, into a
+ * {@code ProductBean}
+ * <p>
+ * Readers are single use and hold their parse state, so each is confined to
+ * the thread that creates it.
+ * 
+ * @author technosf
+ * @since 0.0.1
+ * @version 0.0.1
+ */
+public class ProductXmlReader extends AbstractStreamXmlReader
+{
+    private final ProductBean product;
+
+    /*
+     * Parse state
+     */
+    private int commandClass = -1;
+    private @Nullable ValueBean value;
+    private @Nullable StringBuilder help;
+
+    /*
+     * Attribute Names 
+     */
+    private static final String A_ID = "id";
+    private static final String A_INDEX = "index";
+    private static final String A_TYPE = "type";
+    private static final String A_GENRE = "genre";
+    private static final String A_LABEL = "label";
+    private static final String A_UNITS = "units";
+    private static final String A_MIN = "min";
+    private static final String A_MAX = "max";
+    private static final String A_SIZE = "size";
+    private static final String A_VALUE = "value";
+    private static final String A_MAX_ASSOCIATIONS = "max_associations";
+
+
+    /**
+     * Reads a product config file
+     * 
+     * @param file
+     *            the config file
+     * @param config
+     *            the config path of the file, relative to the config
+     *            directory
+     * @throws XMLStreamException
+     * @throws IOException
+     */
+    public ProductXmlReader(File file, String config)
+            throws XMLStreamException, IOException
+    {
+        product = new ProductBean(config);
+        initialize(file);
+    }
+
+
+    /**
+     * Reads a product config from a stream, which is not closed
+     * 
+     * @param inputStream
+     *            the config XML
+     * @param config
+     *            the config path, relative to the config directory
+     * @throws XMLStreamException
+     */
+    public ProductXmlReader(InputStream inputStream, String config)
+            throws XMLStreamException
+    {
+        product = new ProductBean(config);
+        initialize(inputStream);
+    }
+
+
+    /**
+     * @return the product read
+     */
+    public ProductBean getProduct()
+    {
+        return product;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Elements other than command class values and association groups are
+     * ignored.
+     *
+     * @see com.github.technosf.jwavez.hardware.AbstractStreamXmlReader#startElement(java.lang.String)
+     */
+    @SuppressWarnings("null")
+    @Override
+    protected void startElement(String name)
+    {
+        switch (name) {
+            case "CommandClass":
+                commandClass = parseInt(attribute(A_ID), -1);
+                break;
+            case "Value":
+                ValueBean vb = new ValueBean(commandClass,
+                        parseInt(attribute(A_INDEX), -1),
+                        nonNull(attribute(A_TYPE)),
+                        nonNull(attribute(A_LABEL)),
+                        attribute(A_GENRE), attribute(A_UNITS),
+                        attribute(A_MIN), attribute(A_MAX),
+                        attribute(A_SIZE), attribute(A_VALUE));
+                product.add(vb);
+                value = vb;
+                break;
+            case "Help":
+                if (value != null)
+                {
+                    help = new StringBuilder();
+                }
+                break;
+            case "Item":
+                ValueBean current = value;
+                if (current != null)
+                {
+                    current.addItem(nonNull(attribute(A_VALUE)),
+                            nonNull(attribute(A_LABEL)));
+                }
+                break;
+            case "Group":
+                product.add(new GroupBean(parseInt(attribute(A_INDEX), -1),
+                        nonNull(attribute(A_LABEL)),
+                        parseInt(attribute(A_MAX_ASSOCIATIONS), 0)));
+                break;
+            default:
+                break;
+        }
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see com.github.technosf.jwavez.hardware.AbstractStreamXmlReader#endElement(java.lang.String)
+     */
+    @Override
+    protected void endElement(String name)
+    {
+        switch (name) {
+            case "CommandClass":
+                commandClass = -1;
+                break;
+            case "Value":
+                value = null;
+                break;
+            case "Help":
+                ValueBean current = value;
+                StringBuilder text = help;
+                if (current != null && text != null)
+                {
+                    current.setHelp(text.toString().trim());
+                }
+                help = null;
+                break;
+            default:
+                break;
+        }
+    }
+
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Collects the help text of the current value.
+     *
+     * @see com.github.technosf.jwavez.hardware.AbstractStreamXmlReader#characters()
+     */
+    @Override
+    protected void characters()
+    {
+        StringBuilder text = help;
+        if (text != null)
+        {
+            text.append(text());
+        }
+    }
+
+
+    /**
+     * Parses a decimal, or {@code 0x} prefixed hex, attribute
+     * 
+     * @param attribute
+     *            the attribute value
+     * @param absent
+     *            the value if the attribute is absent or malformed
+     * @return the value
+     */
+    static int parseInt(@Nullable String attribute, int absent)
+    {
+        if (attribute == null)
+        {
+            return absent;
+        }
+        try
+        {
+            String trimmed = attribute.trim();
+            if (trimmed.startsWith("0x") || trimmed.startsWith("0X"))
+            {
+                return Integer.parseInt(trimmed.substring(2), 16);
+            }
+            return Integer.parseInt(trimmed);
+        }
+        catch (NumberFormatException e)
+        {
+            return absent;
+        }
+    }
+
+
+    /**
+     * @return the attribute, or the empty string if absent
+     */
+    private static String nonNull(@Nullable String attribute)
+    {
+        return attribute == null ? "" : attribute;
+    }
+
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright 2016 technosf [https://github.com/technosf]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.github.technosf.jwavez.hardware;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.xml.stream.XMLStreamException;
+
+import org.testng.annotations.Test;
+
+/**
+ * @author technosf
+ * @since 0.0.1
+ * @version 0.0.1
+ */
+@SuppressWarnings("null")
+public class AbstractStreamXmlReaderTest
+{
+
+    private static final String XML = "<Root><Item key=\"0x01\" label=\"One\"/>"
+            + "<Item key=\"0x02\">Two</Item><Other/></Root>";
+
+    /**
+     * Records the callbacks of the reader
+     */
+    private static class Recorder extends AbstractStreamXmlReader
+    {
+        final List<String> starts = new ArrayList<>();
+        final List<String> ends = new ArrayList<>();
+        final List<String> keys = new ArrayList<>();
+        final List<String> labels = new ArrayList<>();
+        final StringBuilder text = new StringBuilder();
+        int attributes;
+
+
+        Recorder(String xml) throws XMLStreamException
+        {
+            initialize(new ByteArrayInputStream(
+                    xml.getBytes(StandardCharsets.UTF_8)));
+        }
+
+
+        @Override
+        protected void startElement(String name)
+        {
+            starts.add(name);
+            if ("Item".equals(name))
+            {
+                keys.add(attribute("key"));
+                labels.add(attribute("label"));
+                for (int i = 0; i < attributeCount(); i++)
+                {
+                    assertEquals(attributeName(i), i == 0 ? "key" : "label");
+                    attributes++;
+                }
+            }
+        }
+
+
+        @Override
+        protected void endElement(String name)
+        {
+            ends.add(name);
+        }
+
+
+        @Override
+        protected void characters()
+        {
+            text.append(text());
+        }
+    }
+
+
+    @Test
+    public void read() throws XMLStreamException
+    {
+        Recorder recorder = new Recorder(XML);
+
+        assertEquals(recorder.starts.size(), 4);
+        assertEquals(recorder.ends.size(), 4);
+        assertEquals(recorder.starts.get(1), "Item");
+        assertEquals(recorder.starts.get(3), "Other");
+        assertEquals(recorder.ends.get(3), "Root");
+        assertEquals(recorder.keys.get(0), "0x01");
+        assertEquals(recorder.keys.get(1), "0x02");
+        assertEquals(recorder.labels.get(0), "One");
+        assertNull(recorder.labels.get(1));
+        assertEquals(recorder.attributes, 3);
+        assertEquals(recorder.text.toString(), "Two");
+    }
+
+
+    @Test(expectedExceptions = IllegalStateException.class)
+    public void outsideCallback() throws XMLStreamException
+    {
+        Recorder recorder = new Recorder("<Root/>");
+        assertTrue(recorder.starts.contains("Root"));
+        recorder.attribute("key");
+    }
+
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright 2016 technosf [https://github.com/technosf]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.github.technosf.jwavez.hardware.beans.base;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.testng.annotations.Test;
+
+/**
+ * @author technosf
+ * @since 0.0.1
+ * @version 0.0.1
+ */
+@SuppressWarnings("null")
+public class CommandClassSetTest
+{
+
+    @Test
+    public void commandClass()
+    {
+        assertSame(CommandClass.byId(0x25), CommandClass.SWITCH_BINARY);
+        assertSame(CommandClass.byId(0xEF), CommandClass.MARK);
+        assertNull(CommandClass.byId(0x83));
+        assertSame(CommandClass.parse("0x94"), CommandClass.SIMPLE_AV_CONTROL);
+        assertSame(CommandClass.parse("32"), CommandClass.BASIC);
+        for (CommandClass cc : CommandClass.values())
+        {
+            assertSame(CommandClass.byId(cc.getId()), cc);
+        }
+    }
+
+
+    @Test
+    public void parse()
+    {
+        CommandClassSet set = CommandClassSet.parse("0x2d,0x72, 0x85 ,0xEF");
+        assertEquals(set.size(), 4);
+        assertTrue(set.contains(0x2d));
+        assertTrue(set.contains(CommandClass.MANUFACTURER_SPECIFIC));
+        assertTrue(set.contains(CommandClass.ASSOCIATION));
+        assertTrue(set.contains(CommandClass.MARK));
+        assertFalse(set.contains(CommandClass.BASIC));
+        assertFalse(set.contains(256));
+        assertEquals(set.toString(), "0x2d,0x72,0x85,0xef");
+        assertEquals(CommandClassSet.parse(set.toString()), set);
+
+        assertSame(CommandClassSet.parse(null), CommandClassSet.EMPTY);
+        assertSame(CommandClassSet.parse(" "), CommandClassSet.EMPTY);
+        assertEquals(CommandClassSet.parse("0x00,63,64,0xff"),
+                CommandClassSet.of(0, 63, 64, 255));
+
+        assertEquals(CommandClassSet.parseSupported("0x2d,0x72,0xef,0x2b"),
+                CommandClassSet.of(0x2d, 0x72));
+        assertEquals(CommandClassSet.parseControlled("0x2d,0x72,0xef,0x2b"),
+                CommandClassSet.of(0x2b));
+        assertSame(CommandClassSet.parseControlled("0x2d"),
+                CommandClassSet.EMPTY);
+    }
+
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void malformed()
+    {
+        CommandClassSet.parse("0x20,0xzz");
+    }
+
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void outOfRange()
+    {
+        CommandClassSet.parse("0x100");
+    }
+
+
+    @Test
+    public void operations()
+    {
+        CommandClassSet a = CommandClassSet.of(0x20, 0x25, 0x86, 0xEF);
+        CommandClassSet b = CommandClassSet.of(CommandClass.BASIC,
+                CommandClass.SWITCH_MULTILEVEL, CommandClass.NON_INTEROPERABLE);
+
+        assertEquals(a.union(b),
+                CommandClassSet.of(0x20, 0x25, 0x26, 0x86, 0xEF, 0xF0));
+        assertEquals(a.intersection(b), CommandClassSet.of(0x20));
+        assertEquals(a.difference(b), CommandClassSet.of(0x25, 0x86, 0xEF));
+        assertTrue(a.intersects(b));
+        assertFalse(a.containsAll(b));
+        assertTrue(a.union(b).containsAll(b));
+        assertSame(a.union(CommandClassSet.EMPTY), a);
+        assertSame(a.with(0x20), a);
+        assertEquals(a.with(0x26).size(), 5);
+        assertTrue(CommandClassSet.of(0x25).intersection(b).isEmpty());
+
+        List<Integer> ids = new ArrayList<>();
+        a.forEach(ids::add);
+        assertEquals(ids.toString(), "[32, 37, 134, 239]");
+        assertEquals(a.nextId(0x26), 0x86);
+        assertEquals(a.nextId(0xF0), -1);
+    }
+
+}
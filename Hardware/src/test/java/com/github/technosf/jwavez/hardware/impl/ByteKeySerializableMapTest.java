@@ -0,0 +1,138 @@
+/*
+ * Copyright 2016 technosf [https://github.com/technosf]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.github.technosf.jwavez.hardware.impl;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.testng.annotations.Test;
+
+import com.github.technosf.jwavez.hardware.SerializableMap;
+
+/**
+ * @author technosf
+ * @since 0.0.1
+ * @version 0.0.1
+ */
+@SuppressWarnings("null")
+public class ByteKeySerializableMapTest
+{
+
+    /**
+     * Test the primitive and {@code Map} accessors agree, and the map stores
+     * and restores
+     */
+    @Test(dependsOnGroups = { "static" })
+    public void store() throws IOException, ClassNotFoundException,
+            NoSuchAlgorithmException
+    {
+        File file = File.createTempFile("ByteKeySerializableMapTest-store",
+                ".tmp");
+        ByteKeySerializableMap<String> classUnderTest =
+                new ByteKeySerializableMap<String>(file);
+        Map<Byte, String> expected = new HashMap<>();
+
+        assertNull(classUnderTest.put(1, "Controller"));
+        assertNull(classUnderTest.put((byte) 0xFF, "Broadcast"));
+        classUnderTest.put(Byte.valueOf((byte) 7), null);
+        assertTrue(classUnderTest.isDirty());
+
+        assertEquals(classUnderTest.get(255), "Broadcast");
+        assertEquals(classUnderTest.get(Byte.valueOf((byte) -1)),
+                "Broadcast");
+        assertTrue(classUnderTest.containsKey(7));
+        assertFalse(classUnderTest.containsKey(8));
+        assertEquals(classUnderTest.size(), 3);
+
+        expected.put((byte) 1, "Controller");
+        expected.put((byte) 0xFF, "Broadcast");
+        expected.put((byte) 7, null);
+        assertEquals(classUnderTest, expected);
+
+        classUnderTest.store();
+        assertFalse(classUnderTest.isDirty());
+        assertEquals(classUnderTest.digest(),
+                SerializableMap.generateDigest(
+                        SerializableMap.getDigester(
+                                SerializableMap.DIGEST_FUNCTION),
+                        file));
+
+        ByteKeySerializableMap<String> classUnderTestCopy =
+                new ByteKeySerializableMap<String>(file);
+        assertEquals(classUnderTestCopy, expected);
+        assertFalse(classUnderTestCopy.isDirty());
+
+        assertEquals(classUnderTestCopy.remove(1), "Controller");
+        assertNull(classUnderTestCopy.remove(1));
+        assertEquals(classUnderTestCopy.size(), 2);
+    }
+
+
+    /**
+     * The map survives Java serialization, and tracks changes once
+     * deserialized
+     */
+    @SuppressWarnings("unchecked")
+    @Test(dependsOnGroups = { "static" })
+    public void serialization() throws IOException, ClassNotFoundException
+    {
+        ByteKeySerializableMap<String> classUnderTest =
+                new ByteKeySerializableMap<>(File.createTempFile(
+                        "ByteKeySerializableMapTest-serialization", ".tmp"));
+        classUnderTest.put(1, "Controller");
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try (ObjectOutputStream oos = new ObjectOutputStream(baos))
+        {
+            oos.writeObject(classUnderTest);
+        }
+
+        ByteKeySerializableMap<String> classUnderTestCopy;
+        try (ObjectInputStream ois = new ObjectInputStream(
+                new ByteArrayInputStream(baos.toByteArray())))
+        {
+            classUnderTestCopy =
+                    (ByteKeySerializableMap<String>) ois.readObject();
+        }
+        assertEquals(classUnderTestCopy, classUnderTest);
+
+        classUnderTestCopy.put(4, "x");
+        assertTrue(classUnderTestCopy.isDirty());
+        assertEquals(classUnderTestCopy.getChangedKeys(),
+                Collections.singleton((byte) 4));
+    }
+
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void range() throws IOException, ClassNotFoundException
+    {
+        new ByteKeySerializableMap<String>(
+                File.createTempFile("ByteKeySerializableMapTest-range",
+                        ".tmp")).put(256, "Out of range");
+    }
+
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright 2016 technosf [https://github.com/technosf]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.github.technosf.jwavez.hardware.impl;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import com.github.technosf.jwavez.hardware.MapChange;
+import com.github.technosf.jwavez.hardware.SerializableMap;
+
+/**
+ * Tests each {@code SerializableMap} tracks its changed keys and notifies
+ * its listeners alike
+ *
+ * @author technosf
+ * @since 0.0.1
+ * @version 0.0.1
+ */
+@SuppressWarnings("null")
+public class ChangeTrackingTest
+{
+
+    @DataProvider(name = "maps")
+    public Object[][] maps() throws IOException, ClassNotFoundException
+    {
+        return new Object[][] {
+                { new SerializableHashMap<String, String>(file()), "a", "b",
+                        "c" },
+                { new JournaledHashMap<String, String>(file()), "a", "b",
+                        "c" },
+                { new GenerationalHashMap<String, String>(file()), "a", "b",
+                        "c" },
+                { new ConcurrentSerializableMap<String, String>(file()), "a",
+                        "b", "c" },
+                { new ShardedSerializableMap<String, String>(file(), 4), "a",
+                        "b", "c" },
+                { new MappedSerializableMap<String, String>(file(),
+                        Codecs.STRING, Codecs.STRING), "a", "b", "c" },
+                { new IndexedSerializableMap<String, String>(file(),
+                        Codecs.STRING, Codecs.STRING), "a", "b", "c" },
+                { new ByteKeySerializableMap<String>(file()), (byte) 1,
+                        (byte) 2, (byte) 3 },
+        };
+    }
+
+
+    /**
+     * Test changed keys are tracked from the last store, and listeners see
+     * each change, and a clear once the map is cleared
+     */
+    @Test(dependsOnGroups = { "static" }, dataProvider = "maps")
+    public <K> void changes(SerializableMap<K, String> classUnderTest, K a,
+            K b, K c) throws IOException
+    {
+        List<MapChange<K, String>> changes = new ArrayList<>();
+        List<Boolean> emptyWhenNotified = new ArrayList<>();
+        classUnderTest.addChangeListener(change -> {
+            changes.add(change);
+            emptyWhenNotified.add(change.getMap().isEmpty());
+        });
+
+        classUnderTest.put(a, "One");
+        classUnderTest.put(b, "Two");
+        assertTrue(classUnderTest.isDirty());
+        assertEquals(classUnderTest.getChangedKeys(),
+                new HashSet<>(Arrays.asList(a, b)));
+        assertEquals(changes.size(), 2);
+        assertNull(changes.get(0).getOldValue());
+        assertEquals(changes.get(0).getNewValue(), "One");
+        assertTrue(changes.get(0).getMap() == classUnderTest);
+
+        classUnderTest.store();
+        assertFalse(classUnderTest.isDirty());
+        assertEquals(classUnderTest.getChangedKeys(), Collections.emptySet());
+
+        changes.clear();
+        classUnderTest.put(a, "One");
+        classUnderTest.remove(c);
+        assertTrue(changes.isEmpty());
+        assertEquals(classUnderTest.getChangedKeys(), Collections.emptySet());
+
+        classUnderTest.put(a, "Uno");
+        classUnderTest.remove(b);
+        assertEquals(classUnderTest.getChangedKeys(),
+                new HashSet<>(Arrays.asList(a, b)));
+        assertEquals(changes.size(), 2);
+        assertEquals(changes.get(0).getOldValue(), "One");
+        assertEquals(changes.get(0).getNewValue(), "Uno");
+        assertTrue(changes.get(1).isRemoved());
+        assertEquals(changes.get(1).getOldValue(), "Two");
+
+        classUnderTest.store();
+        changes.clear();
+        emptyWhenNotified.clear();
+        classUnderTest.clear();
+        assertTrue(classUnderTest.isDirty());
+        assertEquals(changes.size(), 1);
+        assertTrue(changes.get(0).isRemoved());
+        assertEquals(changes.get(0).getKey(), a);
+        assertEquals(emptyWhenNotified, Arrays.asList(true));
+        assertEquals(classUnderTest.getChangedKeys(),
+                new HashSet<>(Arrays.asList(a)));
+
+        classUnderTest.store();
+        assertEquals(classUnderTest.getChangedKeys(), Collections.emptySet());
+
+        if (classUnderTest instanceof Closeable)
+        {
+            ((Closeable) classUnderTest).close();
+        }
+    }
+
+
+    /**
+     * @return a new, empty temporary file
+     */
+    private static File file() throws IOException
+    {
+        File file = File.createTempFile("ChangeTrackingTest", ".tmp");
+        file.deleteOnExit();
+        return file;
+    }
+
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright 2016 technosf [https://github.com/technosf]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.github.technosf.jwavez.hardware.impl;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import com.github.technosf.jwavez.hardware.Codec;
+import com.github.technosf.jwavez.hardware.beans.base.CommandClassSet;
+import com.github.technosf.jwavez.hardware.beans.device.GenericBean;
+import com.github.technosf.jwavez.hardware.beans.device.RoleBean;
+import com.github.technosf.jwavez.hardware.beans.device.SpecificBean;
+
+/**
+ * @author technosf
+ * @since 0.0.1
+ * @version 0.0.1
+ */
+@SuppressWarnings("null")
+public class CodecsTest
+{
+
+    /**
+     * Codec, value
+     */
+    @DataProvider(name = "values")
+    public Object[][] values()
+    {
+        return new Object[][] {
+                { Codecs.BOOLEAN, true },
+                { Codecs.BYTE, (byte) -7 },
+                { Codecs.SHORT, (short) 1234 },
+                { Codecs.CHARACTER, 'z' },
+                { Codecs.INTEGER, 0 },
+                { Codecs.INTEGER, -1 },
+                { Codecs.INTEGER, Integer.MIN_VALUE },
+                { Codecs.INTEGER, Integer.MAX_VALUE },
+                { Codecs.LONG, Long.MIN_VALUE },
+                { Codecs.LONG, 300L },
+                { Codecs.FLOAT, 1.5f },
+                { Codecs.DOUBLE, -2.25d },
+                { Codecs.STRING, "" },
+                { Codecs.STRING, "Z-Wave é中" },
+                { Codecs.serializable(), "Serialized" }
+        };
+    }
+
+
+    @Test(dataProvider = "values")
+    public void roundTrip(Codec<Object> codec, Object value)
+            throws IOException
+    {
+        assertEquals(copy(codec, value), value);
+    }
+
+
+    @Test
+    public void smallIntegersAreCompact() throws IOException
+    {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        Codecs.INTEGER.write(new DataOutputStream(baos), -63);
+        assertEquals(baos.size(), 1);
+    }
+
+
+    @Test
+    public void bytes() throws IOException
+    {
+        byte[] value = new byte[] { 1, 2, 3, -128 };
+        assertEquals(copy(Codecs.BYTES, value), value);
+    }
+
+
+    @Test
+    public void beans() throws IOException
+    {
+        RoleBean role = copy(Codecs.ROLE_BEAN,
+                new RoleBean("0x03", "Portable Reporting Controller",
+                        "0x5a,0x84"));
+        assertEquals(role.getKey(), "0x03");
+        assertEquals(role.getLabel(), "Portable Reporting Controller");
+        assertEquals(role.getCommandClassesAttribute(), "0x5a,0x84");
+
+        GenericBean generic = new GenericBean("0x01", "Remote Controller",
+                "0xef,0x20", null);
+        generic.add(new SpecificBean("0x01", "Portable Remote Controller",
+                null, null));
+        SpecificBean scene = new SpecificBean("0x02",
+                "Portable Scene Controller", "0x2d,0x72,0x85,0xef,0x2b", null);
+        generic.add(scene);
+        assertEquals(scene.getSupportedCommandClasses(),
+                CommandClassSet.of(0x2d, 0x72, 0x85));
+        assertEquals(scene.getControlledCommandClasses(),
+                CommandClassSet.of(0x2b));
+        assertEquals(scene.getCommandClasses(),
+                CommandClassSet.of(0x2d, 0x72, 0x85, 0x2b));
+
+        GenericBean restored = copy(Codecs.GENERIC_BEAN, generic);
+        assertEquals(restored.getKey(), generic.getKey());
+        assertEquals(restored.getLabel(), generic.getLabel());
+        assertEquals(restored.getCommandClassesAttribute(), "0xef,0x20");
+        assertEquals(restored.getSupportedCommandClasses(),
+                CommandClassSet.EMPTY);
+        assertEquals(restored.getControlledCommandClasses(),
+                CommandClassSet.of(0x20));
+        assertNull(restored.getBasicAttribute());
+        assertEquals(restored.getElements().size(), 2);
+    }
+
+
+    /**
+     * Write and read back a value
+     */
+    private static <T> T copy(Codec<T> codec, T value) throws IOException
+    {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        codec.write(new DataOutputStream(baos), value);
+        return codec.read(new DataInputStream(
+                new ByteArrayInputStream(baos.toByteArray())));
+    }
+
+}
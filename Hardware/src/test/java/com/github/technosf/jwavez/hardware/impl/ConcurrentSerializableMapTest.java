@@ -0,0 +1,159 @@
+/*
+ * Copyright 2016 technosf [https://github.com/technosf]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.github.technosf.jwavez.hardware.impl;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.testng.annotations.Test;
+
+import com.github.technosf.jwavez.hardware.SerializableMapAbstractTest;
+
+/**
+ * @author technosf
+ * @since 0.0.1
+ * @version 0.0.1
+ */
+public class ConcurrentSerializableMapTest extends SerializableMapAbstractTest
+{
+
+    /**
+     * Store and restore, tracking the dirty state
+     */
+    @Test(dependsOnGroups = { "static" })
+    public void store() throws IOException, ClassNotFoundException
+    {
+        File file =
+                File.createTempFile("ConcurrentSerializableMapTest-1", ".tmp");
+        ConcurrentSerializableMap<String, String> classUnderTest =
+                new ConcurrentSerializableMap<>(file);
+        assertFalse(classUnderTest.isDirty());
+
+        classUnderTest.put("1-1", "One");
+        classUnderTest.put("1-2", "Two");
+        assertTrue(classUnderTest.isDirty());
+
+        classUnderTest.store();
+        assertFalse(classUnderTest.isDirty());
+
+        classUnderTest.remove("1-3");
+        classUnderTest.replace("1-3", "Three");
+        classUnderTest.putIfAbsent("1-1", "Uno");
+        assertFalse(classUnderTest.isDirty());
+
+        ConcurrentSerializableMap<String, String> classUnderTestCopy =
+                new ConcurrentSerializableMap<>(file);
+        assertEquals(classUnderTestCopy, classUnderTest);
+        assertEquals(classUnderTestCopy.getStoreTimestamp(),
+                classUnderTest.getStoreTimestamp());
+        assertFalse(classUnderTestCopy.isDirty());
+    }
+
+
+    /**
+     * Writers carry on while the map is stored, and every store is readable
+     */
+    @Test(dependsOnGroups = { "static" })
+    public void concurrentStore() throws Exception
+    {
+        File file =
+                File.createTempFile("ConcurrentSerializableMapTest-2", ".tmp");
+        ConcurrentSerializableMap<Integer, Integer> classUnderTest =
+                new ConcurrentSerializableMap<>(file);
+
+        ExecutorService writers = Executors.newFixedThreadPool(4);
+        Future<?>[] futures = new Future<?>[4];
+        for (int t = 0; t < futures.length; t++)
+        {
+            int offset = t * 10000;
+            futures[t] = writers.submit(() -> {
+                for (int i = 0; i < 10000; i++)
+                {
+                    classUnderTest.put(offset + i, i);
+                }
+            });
+        }
+
+        for (int i = 0; i < 10; i++)
+        {
+            classUnderTest.store();
+            new ConcurrentSerializableMap<Integer, Integer>(file);
+        }
+
+        for (Future<?> future : futures)
+        {
+            future.get();
+        }
+        writers.shutdown();
+        writers.awaitTermination(1, TimeUnit.MINUTES);
+
+        classUnderTest.store();
+        assertFalse(classUnderTest.isDirty());
+        assertEquals(new ConcurrentSerializableMap<Integer, Integer>(file),
+                classUnderTest);
+        assertEquals(classUnderTest.size(), 40000);
+    }
+
+
+    /**
+     * The map survives Java serialization, and stores once deserialized
+     */
+    @SuppressWarnings("unchecked")
+    @Test(dependsOnGroups = { "static" })
+    public void serialization() throws IOException, ClassNotFoundException
+    {
+        File file =
+                File.createTempFile("ConcurrentSerializableMapTest-3", ".tmp");
+        ConcurrentSerializableMap<String, String> classUnderTest =
+                new ConcurrentSerializableMap<>(file);
+        classUnderTest.put("1-1", "One");
+        classUnderTest.put("1-2", "Two");
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try (ObjectOutputStream oos = new ObjectOutputStream(baos))
+        {
+            oos.writeObject(classUnderTest);
+        }
+
+        ConcurrentSerializableMap<String, String> classUnderTestCopy;
+        try (ObjectInputStream ois = new ObjectInputStream(
+                new ByteArrayInputStream(baos.toByteArray())))
+        {
+            classUnderTestCopy =
+                    (ConcurrentSerializableMap<String, String>) ois
+                            .readObject();
+        }
+        assertEquals(classUnderTestCopy, classUnderTest);
+
+        classUnderTestCopy.put("1-3", "Three");
+        assertTrue(classUnderTestCopy.isDirty());
+        classUnderTestCopy.store();
+        assertFalse(classUnderTestCopy.isDirty());
+        assertEquals(new ConcurrentSerializableMap<String, String>(file),
+                classUnderTestCopy);
+    }
+
+}
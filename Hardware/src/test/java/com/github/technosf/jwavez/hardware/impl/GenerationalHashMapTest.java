@@ -0,0 +1,136 @@
+/*
+ * Copyright 2016 technosf [https://github.com/technosf]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.github.technosf.jwavez.hardware.impl;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import org.testng.annotations.Test;
+
+import com.github.technosf.jwavez.hardware.impl.GenerationalHashMap.SyncPolicy;
+
+/**
+ * @author technosf
+ * @since 0.0.1
+ * @version 0.0.1
+ */
+public class GenerationalHashMapTest
+{
+
+    /**
+     * Test generations rotate, and a torn current generation falls back to
+     * the one before
+     */
+    @Test(dependsOnGroups = { "static" })
+    public void tornGeneration() throws IOException, ClassNotFoundException
+    {
+        File file = File.createTempFile("GenerationalHashMapTest-torn",
+                ".tmp");
+        GenerationalHashMap<String, String> classUnderTest =
+                new GenerationalHashMap<String, String>(file, 3,
+                        SyncPolicy.GROUP, 60000);
+
+        for (int i = 1; i <= 4; i++)
+        {
+            classUnderTest.put("Store", Integer.toString(i));
+            classUnderTest.store();
+        }
+        assertTrue(classUnderTest.generation(2).exists());
+        assertFalse(classUnderTest.generation(3).exists());
+
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw"))
+        /*
+         * Tear the current generation
+         */
+        {
+            raf.setLength(file.length() - 3);
+        }
+
+        GenerationalHashMap<String, String> classUnderTestCopy =
+                new GenerationalHashMap<String, String>(file, 3,
+                        SyncPolicy.GROUP, 60000);
+        assertEquals(classUnderTestCopy.get("Store"), "3");
+
+        try (RandomAccessFile raf =
+                new RandomAccessFile(classUnderTest.generation(1), "rw"))
+        /*
+         * Corrupt an entry of the generation before, leaving its length
+         */
+        {
+            long middle = raf.length() / 2;
+            raf.seek(middle);
+            int b = raf.read();
+            raf.seek(middle);
+            raf.write(b ^ 0xFF);
+        }
+
+        classUnderTestCopy = new GenerationalHashMap<String, String>(file, 3,
+                SyncPolicy.GROUP, 60000);
+        assertEquals(classUnderTestCopy.get("Store"), "2");
+    }
+
+
+    /**
+     * Test rollback drops the current generation
+     */
+    @Test(dependsOnGroups = { "static" })
+    public void rollback() throws IOException, ClassNotFoundException
+    {
+        File file = File.createTempFile("GenerationalHashMapTest-rollback",
+                ".tmp");
+        GenerationalHashMap<String, String> classUnderTest =
+                new GenerationalHashMap<String, String>(file);
+
+        assertFalse(classUnderTest.rollback());
+
+        classUnderTest.put("1-1", "One");
+        classUnderTest.store();
+        long timestamp = classUnderTest.getStoreTimestamp();
+        classUnderTest.put("1-2", "Two");
+        classUnderTest.store();
+
+        assertTrue(classUnderTest.rollback());
+        assertEquals(classUnderTest.size(), 1);
+        assertEquals(classUnderTest.getStoreTimestamp(), timestamp);
+
+        assertEquals(new GenerationalHashMap<String, String>(file),
+                classUnderTest);
+    }
+
+
+    /**
+     * Other files are not valid generations
+     */
+    @Test(dependsOnGroups = { "static" },
+            expectedExceptions = IOException.class)
+    public void wrongFile() throws IOException, ClassNotFoundException
+    {
+        File file = File.createTempFile("GenerationalHashMapTest-wrong",
+                ".tmp");
+        Files.write(file.toPath(),
+                Arrays.asList("The first line", "The second line"),
+                Charset.forName("UTF-8"));
+
+        new GenerationalHashMap<String, String>(file);
+    }
+
+}
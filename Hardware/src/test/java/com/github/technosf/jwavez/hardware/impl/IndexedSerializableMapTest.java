@@ -0,0 +1,121 @@
+/*
+ * Copyright 2016 technosf [https://github.com/technosf]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.github.technosf.jwavez.hardware.impl;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.testng.annotations.Test;
+
+import com.github.technosf.jwavez.hardware.SerializableMap;
+
+/**
+ * @author technosf
+ * @since 0.0.1
+ * @version 0.0.1
+ */
+@SuppressWarnings("null")
+public class IndexedSerializableMapTest
+{
+
+    /**
+     * Test values are only decoded when read, and values never read survive
+     * a store
+     */
+    @Test(dependsOnGroups = { "static" })
+    public void lazy()
+            throws IOException, NoSuchAlgorithmException
+    {
+        File file = File.createTempFile("IndexedSerializableMapTest-lazy",
+                ".tmp");
+        Map<String, String> expected = new HashMap<>();
+        for (int i = 0; i < 100; i++)
+        {
+            expected.put("Key " + i, "Value " + i);
+        }
+        expected.put("Null", null);
+        expected.put(null, "Null key");
+
+        try (IndexedSerializableMap<String, String> classUnderTest = open(file))
+        {
+            classUnderTest.putAll(expected);
+            classUnderTest.store();
+            assertEquals(classUnderTest.digest(),
+                    SerializableMap.generateDigest(
+                            SerializableMap.getDigester(
+                                    SerializableMap.DIGEST_FUNCTION),
+                            file));
+        }
+
+        try (IndexedSerializableMap<String, String> classUnderTest = open(file))
+        {
+            assertEquals(classUnderTest.size(), expected.size());
+            assertTrue(classUnderTest.containsKey("Key 7"));
+            assertFalse(classUnderTest.isLoaded("Key 7"));
+
+            assertEquals(classUnderTest.get("Key 7"), "Value 7");
+            assertTrue(classUnderTest.isLoaded("Key 7"));
+            assertFalse(classUnderTest.isLoaded("Key 8"));
+
+            classUnderTest.put("Key 8", "Changed");
+            classUnderTest.remove("Key 9");
+            expected.put("Key 8", "Changed");
+            expected.remove("Key 9");
+            classUnderTest.store();
+            assertFalse(classUnderTest.isLoaded("Key 10"));
+            assertEquals(classUnderTest.get("Key 10"), "Value 10");
+        }
+
+        try (IndexedSerializableMap<String, String> classUnderTest = open(file))
+        {
+            assertEquals(classUnderTest, expected);
+        }
+    }
+
+
+    /**
+     * Other files are not indexed maps
+     */
+    @Test(dependsOnGroups = { "static" },
+            expectedExceptions = IOException.class)
+    public void wrongFile() throws IOException
+    {
+        File file = File.createTempFile("IndexedSerializableMapTest-wrong",
+                ".tmp");
+        Files.write(file.toPath(),
+                Arrays.asList("The first line", "The second line"),
+                Charset.forName("UTF-8"));
+
+        open(file).close();
+    }
+
+
+    private static IndexedSerializableMap<String, String> open(File file)
+            throws IOException
+    {
+        return new IndexedSerializableMap<String, String>(file, Codecs.STRING,
+                Codecs.STRING);
+    }
+
+}
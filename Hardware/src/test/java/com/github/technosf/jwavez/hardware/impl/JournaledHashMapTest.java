@@ -0,0 +1,162 @@
+/*
+ * Copyright 2016 technosf [https://github.com/technosf]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.github.technosf.jwavez.hardware.impl;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+
+import org.testng.annotations.Test;
+
+import com.github.technosf.jwavez.hardware.SerializableMapAbstractTest;
+
+/**
+ * @author technosf
+ * @since 0.0.1
+ * @version 0.0.1
+ */
+public class JournaledHashMapTest extends SerializableMapAbstractTest
+{
+
+    /**
+     * Changes are journaled, and replayed over the snapshot on restore
+     */
+    @Test(dependsOnGroups = { "static" })
+    public void journal() throws IOException, ClassNotFoundException
+    {
+        File file = File.createTempFile("JournaledHashMapTest-1", ".tmp");
+        JournaledHashMap<String, String> classUnderTest =
+                new JournaledHashMap<>(file);
+
+        classUnderTest.put("1-1", "One");
+        classUnderTest.put("1-2", "Two");
+        assertTrue(classUnderTest.isDirty());
+        classUnderTest.store();
+        assertFalse(classUnderTest.isDirty());
+        long snapshot = file.length();
+        assertTrue(snapshot > 0, "Snapshot was not written");
+        assertEquals(classUnderTest.getJournal().length(), 0);
+
+        classUnderTest.put("1-3", "Three");
+        classUnderTest.remove("1-1");
+        classUnderTest.store();
+        assertEquals(file.length(), snapshot, "Snapshot was rewritten");
+        assertTrue(classUnderTest.getJournal().length() > 0,
+                "Journal was not written");
+
+        JournaledHashMap<String, String> classUnderTestCopy =
+                new JournaledHashMap<>(file);
+        assertEquals(classUnderTestCopy, classUnderTest);
+        assertEquals(classUnderTestCopy.getStoreTimestamp(),
+                classUnderTest.getStoreTimestamp());
+        assertFalse(classUnderTestCopy.isDirty());
+    }
+
+
+    /**
+     * A journal that outgrows the threshold is compacted into the snapshot
+     */
+    @Test(dependsOnGroups = { "static" })
+    public void compaction() throws IOException, ClassNotFoundException
+    {
+        File file = File.createTempFile("JournaledHashMapTest-2", ".tmp");
+        JournaledHashMap<String, Integer> classUnderTest =
+                new JournaledHashMap<>(file, 1);
+
+        classUnderTest.put("seed", 0);
+        classUnderTest.store();
+
+        for (int i = 0; i < 50; i++)
+        {
+            classUnderTest.put("key" + i, i);
+            classUnderTest.store();
+            assertTrue(classUnderTest.getJournal().length() <= Math
+                    .max(1, file.length()), "Journal was not compacted");
+        }
+
+        assertFalse(new File(file.getPath()
+                + JournaledHashMap.COMPACT_SUFFIX).exists(),
+                "Compacted snapshot was not moved into place");
+        assertEquals(new JournaledHashMap<String, Integer>(file),
+                classUnderTest);
+    }
+
+
+    /**
+     * A torn frame at the tail of the journal is discarded on restore
+     */
+    @Test(dependsOnGroups = { "static" })
+    public void tornJournal() throws IOException, ClassNotFoundException
+    {
+        File file = File.createTempFile("JournaledHashMapTest-3", ".tmp");
+        JournaledHashMap<String, String> classUnderTest =
+                new JournaledHashMap<>(file);
+
+        classUnderTest.put("1-1", "One");
+        classUnderTest.store();
+        classUnderTest.put("1-2", "Two");
+        classUnderTest.store();
+
+        try (FileOutputStream fos =
+                new FileOutputStream(classUnderTest.getJournal(), true))
+        {
+            fos.write(new byte[] { 0, 0, 1, 0, 42, 42 });
+        }
+
+        JournaledHashMap<String, String> classUnderTestCopy =
+                new JournaledHashMap<>(file);
+        assertEquals(classUnderTestCopy, classUnderTest);
+
+        classUnderTestCopy.put("1-3", "Three");
+        classUnderTestCopy.store();
+        assertEquals(new JournaledHashMap<String, String>(file),
+                classUnderTestCopy);
+    }
+
+
+    /**
+     * A snapshot serialized as a whole map, as by earlier versions, restores
+     */
+    @Test(dependsOnGroups = { "static" })
+    public void wholeMapSnapshot() throws IOException, ClassNotFoundException
+    {
+        File file = File.createTempFile("JournaledHashMapTest-4", ".tmp");
+        JournaledHashMap<String, String> classUnderTest =
+                new JournaledHashMap<>(file);
+        classUnderTest.put("1-1", "One");
+        classUnderTest.put("1-2", "Two");
+
+        try (ObjectOutputStream oos =
+                new ObjectOutputStream(new FileOutputStream(file)))
+        {
+            oos.writeObject(classUnderTest);
+        }
+
+        JournaledHashMap<String, String> classUnderTestCopy =
+                new JournaledHashMap<>(file);
+        assertEquals(classUnderTestCopy, classUnderTest);
+        assertFalse(classUnderTestCopy.isDirty());
+
+        classUnderTestCopy.put("1-3", "Three");
+        classUnderTestCopy.compact();
+        assertEquals(new JournaledHashMap<String, String>(file),
+                classUnderTestCopy);
+    }
+
+}
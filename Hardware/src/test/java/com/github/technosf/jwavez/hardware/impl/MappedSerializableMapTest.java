@@ -0,0 +1,214 @@
+/*
+ * Copyright 2016 technosf [https://github.com/technosf]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.github.technosf.jwavez.hardware.impl;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+
+import org.testng.annotations.Test;
+
+/**
+ * @author technosf
+ * @since 0.0.1
+ * @version 0.0.1
+ */
+@SuppressWarnings("null")
+public class MappedSerializableMapTest
+{
+
+    /**
+     * Test stored entries restore, and unstored changes do not
+     */
+    @Test(dependsOnGroups = { "static" })
+    public void store() throws IOException
+    {
+        File file = File.createTempFile("MappedSerializableMapTest-store",
+                ".tmp");
+        Map<String, Integer> expected = new HashMap<>();
+
+        try (MappedSerializableMap<String, Integer> classUnderTest =
+                open(file))
+        {
+            classUnderTest.put("1-1", 1);
+            classUnderTest.put("1-2", 2);
+            classUnderTest.put("1-3", null);
+            classUnderTest.put(null, -1);
+            assertEquals(classUnderTest.put("1-2", 22), Integer.valueOf(2));
+            assertEquals(classUnderTest.remove("1-1"), Integer.valueOf(1));
+            assertNull(classUnderTest.remove("1-1"));
+            assertTrue(classUnderTest.isDirty());
+
+            expected.put("1-2", 22);
+            expected.put("1-3", null);
+            expected.put(null, -1);
+            assertEquals(classUnderTest, expected);
+
+            classUnderTest.store();
+            assertFalse(classUnderTest.isDirty());
+
+            classUnderTest.put("1-4", 4);
+            classUnderTest.remove("1-2");
+        }
+
+        try (MappedSerializableMap<String, Integer> classUnderTestCopy =
+                open(file))
+        {
+            assertEquals(classUnderTestCopy, expected);
+            assertTrue(classUnderTestCopy.containsKey("1-3"));
+            assertFalse(classUnderTestCopy.containsKey("1-4"));
+
+            Iterator<Map.Entry<String, Integer>> entries =
+                    classUnderTestCopy.entrySet().iterator();
+            while (entries.hasNext())
+            {
+                if (entries.next().getKey() == null)
+                {
+                    entries.remove();
+                }
+            }
+            classUnderTestCopy.clear();
+            classUnderTestCopy.put("2-1", 21);
+            classUnderTestCopy.store();
+        }
+
+        try (MappedSerializableMap<String, Integer> classUnderTestCopy =
+                open(file))
+        {
+            assertEquals(classUnderTestCopy.size(), 1);
+            assertEquals(classUnderTestCopy.get("2-1"), Integer.valueOf(21));
+        }
+    }
+
+
+    /**
+     * Test clear tracks the keys it removes, decodes values only for
+     * listeners, and leaves an empty map untouched
+     */
+    @Test(dependsOnGroups = { "static" })
+    public void clear() throws IOException
+    {
+        File file = File.createTempFile("MappedSerializableMapTest-clear",
+                ".tmp");
+
+        try (MappedSerializableMap<String, Integer> classUnderTest =
+                open(file))
+        {
+            classUnderTest.put("1-1", 1);
+            classUnderTest.put("1-2", 2);
+            classUnderTest.store();
+
+            classUnderTest.clear();
+            assertTrue(classUnderTest.isEmpty());
+            assertTrue(classUnderTest.isDirty());
+            assertEquals(classUnderTest.getChangedKeys(),
+                    new HashSet<>(Arrays.asList("1-1", "1-2")));
+            classUnderTest.store();
+
+            long length = file.length();
+            classUnderTest.clear();
+            assertFalse(classUnderTest.isDirty());
+            assertEquals(file.length(), length);
+
+            Map<String, Integer> removed = new HashMap<>();
+            classUnderTest.addChangeListener(
+                    change -> removed.put(change.getKey(),
+                            change.getOldValue()));
+            classUnderTest.put("2-1", 21);
+            classUnderTest.clear();
+            assertEquals(removed.get("2-1"), Integer.valueOf(21));
+        }
+    }
+
+
+    /**
+     * Test the mapping grows, and superseded records are compacted away
+     */
+    @Test(dependsOnGroups = { "static" })
+    public void compaction() throws IOException
+    {
+        File file = File.createTempFile(
+                "MappedSerializableMapTest-compaction", ".tmp");
+        Map<Integer, String> expected = new HashMap<>();
+
+        try (MappedSerializableMap<Integer, String> classUnderTest =
+                new MappedSerializableMap<Integer, String>(file,
+                        Codecs.INTEGER, Codecs.STRING))
+        {
+            for (int round = 0; round < 20; round++)
+            {
+                for (int i = 0; i < 1000; i++)
+                {
+                    String value = "Value " + i + " of round " + round;
+                    classUnderTest.put(i, value);
+                    expected.put(i, value);
+                }
+            }
+            assertEquals(classUnderTest, expected);
+
+            long length = file.length();
+            classUnderTest.store();
+            assertTrue(file.length() < length);
+            assertEquals(classUnderTest, expected);
+
+            classUnderTest.put(1000, "After compaction");
+            expected.put(1000, "After compaction");
+            classUnderTest.store();
+        }
+
+        try (MappedSerializableMap<Integer, String> classUnderTestCopy =
+                new MappedSerializableMap<Integer, String>(file,
+                        Codecs.INTEGER, Codecs.STRING))
+        {
+            assertEquals(classUnderTestCopy, expected);
+        }
+    }
+
+
+    /**
+     * Other files are not mapped maps
+     */
+    @Test(dependsOnGroups = { "static" },
+            expectedExceptions = IOException.class)
+    public void wrongFile() throws IOException
+    {
+        File file = File.createTempFile("MappedSerializableMapTest-wrong",
+                ".tmp");
+        Files.write(file.toPath(),
+                Arrays.asList("The first line", "The second line"),
+                Charset.forName("UTF-8"));
+
+        open(file).close();
+    }
+
+
+    private static MappedSerializableMap<String, Integer> open(File file)
+            throws IOException
+    {
+        return new MappedSerializableMap<String, Integer>(file, Codecs.STRING,
+                Codecs.INTEGER);
+    }
+
+}
@@ -0,0 +1,169 @@
+/*
+ * Copyright 2016 technosf [https://github.com/technosf]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.github.technosf.jwavez.hardware.impl;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+
+import org.testng.annotations.Test;
+
+import com.github.technosf.jwavez.hardware.PersistenceEvent;
+import com.github.technosf.jwavez.hardware.PersistenceEvent.Operation;
+import com.github.technosf.jwavez.hardware.PersistenceListener;
+
+/**
+ * @author technosf
+ * @since 0.0.1
+ * @version 0.0.1
+ */
+@SuppressWarnings("null")
+public class PersistenceMetricsTest
+{
+
+    /**
+     * Test stores, restores and digests reach the listeners and the MBean
+     */
+    @Test(dependsOnGroups = { "static" })
+    public void metrics() throws IOException, ClassNotFoundException,
+            NoSuchAlgorithmException, JMException
+    {
+        File file = File.createTempFile("PersistenceMetricsTest", ".tmp");
+        PersistenceMetrics metrics = PersistenceMetrics.getInstance();
+        List<PersistenceEvent> events = new ArrayList<>();
+        PersistenceListener listener = event -> {
+            if (file.equals(event.getMap().getFile()))
+            {
+                events.add(event);
+            }
+        };
+
+        ObjectName name = metrics.registerMBean();
+        metrics.addListener(listener);
+        try
+        {
+            long stores = metrics.getStore().getCount();
+
+            SerializableHashMap<String, String> classUnderTest =
+                    new SerializableHashMap<String, String>(file);
+            classUnderTest.put("1-1", "One");
+            classUnderTest.put("1-2", "Two");
+            classUnderTest.store();
+            new SerializableHashMap<String, String>(file).digest();
+
+            assertEquals(events.size(), 3);
+
+            PersistenceEvent store = events.get(0);
+            assertEquals(store.getOperation(), Operation.STORE);
+            assertEquals(store.getBytes(), file.length());
+            assertEquals(store.getEntries(), 2);
+            assertTrue(store.getDirtyNanos() >= 0);
+            assertFalse(store.isFailed());
+
+            assertEquals(events.get(1).getOperation(), Operation.RESTORE);
+            assertEquals(events.get(1).getEntries(), 2);
+            assertEquals(events.get(2).getOperation(), Operation.DIGEST);
+            assertEquals(events.get(2).getBytes(), file.length());
+            assertEquals(events.get(2).getEntries(), 2);
+
+            assertTrue(metrics.getStore().getCount() > stores);
+            CompositeData attribute = (CompositeData) ManagementFactory
+                    .getPlatformMBeanServer().getAttribute(name, "Store");
+            assertTrue((Long) attribute.get("count") > stores);
+        }
+        finally
+        {
+            metrics.removeListener(listener);
+            metrics.unregisterMBean();
+        }
+    }
+
+
+    /**
+     * Test a listener that throws neither fails the store nor keeps the event
+     * from the other listeners
+     */
+    @Test(dependsOnGroups = { "static" })
+    public void throwingListener() throws IOException, ClassNotFoundException
+    {
+        File file = File.createTempFile("PersistenceMetricsTest-listener",
+                ".tmp");
+        PersistenceMetrics metrics = PersistenceMetrics.getInstance();
+        List<PersistenceEvent> events = new ArrayList<>();
+        PersistenceListener throwing = event -> {
+            throw new IllegalStateException("Listener failed");
+        };
+        PersistenceListener listener = event -> {
+            if (file.equals(event.getMap().getFile()))
+            {
+                events.add(event);
+            }
+        };
+
+        metrics.addListener(throwing);
+        metrics.addListener(listener);
+        try
+        {
+            SerializableHashMap<String, String> classUnderTest =
+                    new SerializableHashMap<String, String>(file);
+            classUnderTest.put("1-1", "One");
+            classUnderTest.store();
+
+            assertFalse(classUnderTest.isDirty());
+            assertEquals(events.size(), 1);
+            assertEquals(events.get(0).getOperation(), Operation.STORE);
+        }
+        finally
+        {
+            metrics.removeListener(throwing);
+            metrics.removeListener(listener);
+        }
+    }
+
+
+    /**
+     * Test the histogram buckets durations by powers of two
+     */
+    @Test(dependsOnGroups = { "static" })
+    public void histogram()
+    {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 0; i < 99; i++)
+        {
+            histogram.record(1000);
+        }
+        histogram.record(5000000);
+
+        LatencyStats stats = histogram.snapshot();
+        assertEquals(stats.getCount(), 100);
+        assertEquals(stats.getMaxMillis(), 5.0);
+        assertEquals(stats.getMedianMillis(), 1024 / 1e6);
+        assertEquals(stats.getPercentile99Millis(), 1024 / 1e6);
+
+        histogram.reset();
+        assertEquals(histogram.snapshot().getCount(), 0);
+    }
+
+}
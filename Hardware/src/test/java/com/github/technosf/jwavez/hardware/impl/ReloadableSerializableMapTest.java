@@ -0,0 +1,141 @@
+/*
+ * Copyright 2016 technosf [https://github.com/technosf]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.github.technosf.jwavez.hardware.impl;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.testng.annotations.Test;
+
+/**
+ * @author technosf
+ * @since 0.0.1
+ * @version 0.0.1
+ */
+@SuppressWarnings("null")
+public class ReloadableSerializableMapTest
+{
+
+    /**
+     * Test external changes are reloaded, and touches and own stores are not
+     */
+    @Test(dependsOnGroups = { "static" })
+    public void reloadIfChanged() throws IOException, ClassNotFoundException
+    {
+        File file = File.createTempFile("ReloadableSerializableMapTest",
+                ".tmp");
+        ReloadableSerializableMap<String, String> classUnderTest =
+                new ReloadableSerializableMap<String, String>(file,
+                        SerializableHashMap::new);
+        classUnderTest.put("1-1", "One");
+        classUnderTest.store();
+        assertFalse(classUnderTest.reloadIfChanged());
+
+        SerializableHashMap<String, String> provisioning =
+                new SerializableHashMap<String, String>(file);
+        provisioning.put("1-2", "Two");
+        provisioning.store();
+
+        assertTrue(classUnderTest.reloadIfChanged());
+        assertEquals(classUnderTest, provisioning);
+        assertFalse(classUnderTest.reloadIfChanged());
+
+        assertTrue(file.setLastModified(file.lastModified() + 2000));
+        assertFalse(classUnderTest.reloadIfChanged());
+    }
+
+
+    /**
+     * Test the watcher reloads a map as its file is rewritten
+     */
+    @Test(dependsOnGroups = { "static" })
+    public void watch()
+            throws IOException, ClassNotFoundException, InterruptedException
+    {
+        File file = File.createTempFile("ReloadableSerializableMapTest-watch",
+                ".tmp");
+        ReloadableSerializableMap<String, String> classUnderTest =
+                new ReloadableSerializableMap<String, String>(file,
+                        SerializableHashMap::new);
+
+        try (MapFileWatcher watcher = new MapFileWatcher(10))
+        {
+            watcher.watch(classUnderTest);
+
+            SerializableHashMap<String, String> provisioning =
+                    new SerializableHashMap<String, String>(file);
+            provisioning.put("1-1", "One");
+            provisioning.store();
+
+            for (int i = 0; i < 200 && classUnderTest.isEmpty(); i++)
+            {
+                Thread.sleep(50);
+            }
+            assertEquals(classUnderTest.get("1-1"), "One");
+        }
+    }
+
+
+    /**
+     * Test an error handler that throws does not stop the watcher
+     */
+    @Test(dependsOnGroups = { "static" })
+    public void throwingErrorHandler()
+            throws IOException, ClassNotFoundException, InterruptedException
+    {
+        File file = File.createTempFile(
+                "ReloadableSerializableMapTest-handler", ".tmp");
+        ReloadableSerializableMap<String, String> classUnderTest =
+                new ReloadableSerializableMap<String, String>(file,
+                        SerializableHashMap::new);
+        SerializableHashMap<String, String> provisioning =
+                new SerializableHashMap<String, String>(file);
+        AtomicInteger handled = new AtomicInteger();
+
+        try (MapFileWatcher watcher = new MapFileWatcher(10))
+        {
+            watcher.setErrorHandler((m, e) -> {
+                handled.incrementAndGet();
+                throw new IllegalStateException("Handler failed");
+            });
+            watcher.watch(classUnderTest);
+
+            try (FileOutputStream fos = new FileOutputStream(file))
+            {
+                fos.write("Not a map".getBytes(StandardCharsets.UTF_8));
+            }
+            for (int i = 0; i < 200 && handled.get() == 0; i++)
+            {
+                Thread.sleep(50);
+            }
+            assertTrue(handled.get() > 0, "Reload did not fail");
+
+            provisioning.put("1-1", "One");
+            provisioning.store();
+            for (int i = 0; i < 200 && classUnderTest.isEmpty(); i++)
+            {
+                Thread.sleep(50);
+            }
+            assertEquals(classUnderTest.get("1-1"), "One");
+        }
+    }
+
+}
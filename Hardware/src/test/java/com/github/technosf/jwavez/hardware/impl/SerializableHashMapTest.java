@@ -15,19 +15,33 @@ package com.github.technosf.jwavez.hardware.impl;
 
 import static org.testng.Assert.assertEquals;
 import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotEquals;
 import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
 
+import java.io.DataInput;
+import java.io.DataOutput;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.ObjectOutputStream;
 import java.nio.charset.Charset;
 import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 
 import org.testng.annotations.DataProvider;
 import org.testng.annotations.Test;
 
+import com.github.technosf.jwavez.hardware.Codec;
+import com.github.technosf.jwavez.hardware.MapChange;
+import com.github.technosf.jwavez.hardware.SerializableMap;
 import com.github.technosf.jwavez.hardware.SerializableMapAbstractTest;
 
 /**
@@ -141,4 +155,352 @@ public class SerializableHashMapTest extends SerializableMapAbstractTest
         assertEquals(classUnderTestCopy, classUnderTest);
 
     }
+
+
+    /**
+     * Test the <em>digest</em> function is cached from the store, and follows
+     * changes made to the file on disk
+     */
+    @Test(dependsOnGroups = { "static" }, dataProvider = "digestFunctions")
+    public void digest(String digestFunction)
+            throws IOException, ClassNotFoundException,
+            NoSuchAlgorithmException
+    {
+        File file = File.createTempFile("SerializableHashMapTest-digest",
+                ".tmp");
+        SerializableHashMap<String, String> classUnderTest =
+                new SerializableHashMap<String, String>(file);
+        classUnderTest.setDigestFunction(digestFunction);
+        assertEquals(classUnderTest.getDigestFunction(), digestFunction);
+
+        classUnderTest.put("1-1", "One");
+        classUnderTest.store();
+
+        MessageDigest md = SerializableMap.getDigester(digestFunction);
+        byte[] stored = classUnderTest.digest();
+        assertEquals(stored, SerializableMap.generateDigest(md, file));
+        assertEquals(classUnderTest.digest(), stored);
+
+        Files.write(file.toPath(), Arrays.asList("Changed on disk"),
+                Charset.forName("UTF-8"));
+        byte[] changed = classUnderTest.digest();
+        assertNotEquals(changed, stored);
+        assertEquals(changed, SerializableMap.generateDigest(md, file));
+    }
+
+
+    /**
+     * Test a store that fails partway does not leave its partial digest to
+     * taint the next <em>digest</em>
+     */
+    @Test(dependsOnGroups = { "static" }, dataProvider = "digestFunctions")
+    public void digestAfterFailedStore(String digestFunction)
+            throws IOException, ClassNotFoundException,
+            NoSuchAlgorithmException
+    {
+        File file = File.createTempFile(
+                "SerializableHashMapTest-digestAfterFailedStore", ".tmp");
+        int[] writes = { 0 };
+        Codec<String> failing = new Codec<String>()
+        {
+            @Override
+            public void write(DataOutput out, String value)
+                    throws IOException
+            {
+                if (++writes[0] > 1000)
+                {
+                    throw new IOException("Failed partway");
+                }
+                Codecs.STRING.write(out, value);
+            }
+
+
+            @Override
+            public String read(DataInput in) throws IOException
+            {
+                return Codecs.STRING.read(in);
+            }
+        };
+
+        SerializableHashMap<String, String> classUnderTest =
+                new SerializableHashMap<String, String>(file, Codecs.STRING,
+                        failing);
+        classUnderTest.setDigestFunction(digestFunction);
+        for (int i = 0; i < 2000; i++)
+        {
+            classUnderTest.put("key-" + i, "a value long enough to flush " + i);
+        }
+
+        try
+        {
+            classUnderTest.store();
+            fail("Store did not fail");
+        }
+        catch (IOException e)
+        {
+            assertEquals(e.getMessage(), "Failed partway");
+        }
+
+        MessageDigest md = SerializableMap.getDigester(digestFunction);
+        assertEquals(classUnderTest.digest(),
+                SerializableMap.generateDigest(md, file));
+    }
+
+
+    @DataProvider(name = "digestFunctions")
+    public Object[][] digestFunctions()
+    {
+        return new Object[][] {
+                { SerializableMap.DIGEST_FUNCTION },
+                { SerializableMap.CRC32_FUNCTION }
+        };
+    }
+
+
+    /**
+     * Test the binary format round trips, and that a Java serialized file is
+     * migrated to it
+     */
+    @Test(dependsOnGroups = { "static" })
+    public void binary() throws IOException, ClassNotFoundException
+    {
+        File file = File.createTempFile("SerializableHashMapTest-binary",
+                ".tmp");
+        SerializableHashMap<String, Integer> classUnderTest =
+                new SerializableHashMap<String, Integer>(file);
+        classUnderTest.put("1-1", 1);
+        classUnderTest.put("1-2", null);
+        classUnderTest.put(null, -2);
+        classUnderTest.store();
+        assertFalse(BinaryMapFormat.isBinary(file));
+
+        SerializableHashMap<String, Integer> classUnderTestCopy =
+                new SerializableHashMap<String, Integer>(file, Codecs.STRING,
+                        Codecs.INTEGER);
+        assertEquals(classUnderTestCopy, classUnderTest);
+
+        classUnderTestCopy.store();
+        assertTrue(BinaryMapFormat.isBinary(file));
+
+        SerializableHashMap<String, Integer> classUnderTestBinary =
+                new SerializableHashMap<String, Integer>(file, Codecs.STRING,
+                        Codecs.INTEGER);
+        assertEquals(classUnderTestBinary, classUnderTest);
+        assertEquals(classUnderTestBinary.getStoreTimestamp(),
+                classUnderTestCopy.getStoreTimestamp());
+    }
+
+
+    /**
+     * A binary file cannot be restored without codecs
+     */
+    @Test(dependsOnGroups = { "static" },
+            expectedExceptions = IOException.class)
+    public void binaryWithoutCodecs()
+            throws IOException, ClassNotFoundException
+    {
+        File file = File.createTempFile("SerializableHashMapTest-binary",
+                ".tmp");
+        SerializableHashMap<String, String> classUnderTest =
+                new SerializableHashMap<String, String>(file, Codecs.STRING,
+                        Codecs.STRING);
+        classUnderTest.put("1-1", "One");
+        classUnderTest.store();
+
+        new SerializableHashMap<String, String>(file);
+    }
+
+
+    /**
+     * Test a file holding the whole map, as stored by earlier versions, still
+     * restores, and is rewritten as an entry stream
+     */
+    @Test(dependsOnGroups = { "static" })
+    public void legacy() throws IOException, ClassNotFoundException
+    {
+        File file = File.createTempFile("SerializableHashMapTest-legacy",
+                ".tmp");
+        SerializableHashMap<String, String> map =
+                new SerializableHashMap<String, String>(file);
+        map.put("1-1", "One");
+        map.put("1-2", "Two");
+        try (ObjectOutputStream oos =
+                new ObjectOutputStream(new FileOutputStream(file)))
+        {
+            oos.writeObject(map);
+        }
+        assertEquals(SerializableMap.storedSize(file), -1);
+
+        SerializableHashMap<String, String> classUnderTest =
+                new SerializableHashMap<String, String>(file);
+        assertEquals(classUnderTest, map);
+        assertFalse(classUnderTest.isDirty());
+        assertEquals(classUnderTest.getStoreTimestamp(),
+                map.getStoreTimestamp());
+
+        classUnderTest.store();
+        assertEquals(SerializableMap.storedSize(file), 2);
+        assertEquals(new SerializableHashMap<String, String>(file), map);
+    }
+
+
+    /**
+     * A corrupt entry count sizes the map no larger than the file could
+     * hold, and fails the restore with an {@code IOException}
+     */
+    @Test(dependsOnGroups = { "static" })
+    public void corruptSize() throws IOException, ClassNotFoundException
+    {
+        File file = File.createTempFile("SerializableHashMapTest-size",
+                ".tmp");
+        try (ObjectOutputStream oos =
+                new ObjectOutputStream(new FileOutputStream(file)))
+        {
+            oos.writeLong(0);
+            oos.writeInt(Integer.MAX_VALUE);
+        }
+
+        try (RestoreStream stored = RestoreStream.open(file))
+        {
+            assertEquals(stored.getSizeHint(),
+                    file.length() / RestoreStream.MIN_ENTRY_BYTES);
+        }
+
+        try
+        {
+            new SerializableHashMap<String, String>(file);
+            fail("Corrupt map restored");
+        }
+        catch (IOException e)
+        {
+            /*
+             * Expected
+             */
+        }
+
+        try
+        {
+            new ConcurrentSerializableMap<String, String>(file);
+            fail("Corrupt map restored");
+        }
+        catch (IOException e)
+        {
+            /*
+             * Expected
+             */
+        }
+    }
+
+
+    /**
+     * Test a compressed map is smaller, restores with its compressor, and
+     * digests its stored bytes
+     */
+    @Test(dependsOnGroups = { "static" })
+    public void compressed() throws IOException, ClassNotFoundException,
+            NoSuchAlgorithmException
+    {
+        File plain = File.createTempFile("SerializableHashMapTest-plain",
+                ".tmp");
+        File file = File.createTempFile("SerializableHashMapTest-compressed",
+                ".tmp");
+        SerializableHashMap<String, String> classUnderTest =
+                new SerializableHashMap<String, String>(plain);
+        for (int i = 0; i < 100; i++)
+        {
+            classUnderTest.put("Node " + i, "Binary Switch, Multilevel Sensor");
+        }
+        classUnderTest.store();
+
+        SerializableHashMap<String, String> compressed =
+                new SerializableHashMap<String, String>(file, Codecs.STRING,
+                        Codecs.STRING);
+        compressed.putAll(classUnderTest);
+        compressed.setCompressor(Compressors.DEFLATE);
+        compressed.store();
+
+        assertTrue(CompressedFormat.isCompressed(file));
+        assertTrue(file.length() < plain.length() / 2);
+        assertEquals(compressed.digest(), SerializableMap.generateDigest(
+                SerializableMap.getDigester(SerializableMap.DIGEST_FUNCTION),
+                file));
+
+        SerializableHashMap<String, String> restored =
+                new SerializableHashMap<String, String>(file, Codecs.STRING,
+                        Codecs.STRING);
+        assertEquals(restored, classUnderTest);
+        assertEquals(restored.getCompressor().getId(),
+                Compressors.DEFLATE_ID);
+
+        SerializableHashMap<String, String> javaSerialized =
+                new SerializableHashMap<String, String>(plain);
+        javaSerialized.setCompressor(Compressors.deflate(9));
+        javaSerialized.store();
+        assertTrue(CompressedFormat.isCompressed(plain));
+        assertEquals(new SerializableHashMap<String, String>(plain),
+                classUnderTest);
+    }
+
+
+    /**
+     * Test changed keys are tracked from the last store, and listeners see
+     * each change with its old and new values
+     */
+    @Test(dependsOnGroups = { "static" })
+    public void changes() throws IOException, ClassNotFoundException
+    {
+        File file = File.createTempFile("SerializableHashMapTest-changes",
+                ".tmp");
+        SerializableHashMap<String, String> classUnderTest =
+                new SerializableHashMap<String, String>(file);
+        classUnderTest.put("1-1", "One");
+        classUnderTest.put("1-2", "Two");
+        classUnderTest.store();
+
+        SerializableHashMap<String, String> restored =
+                new SerializableHashMap<String, String>(file);
+        assertFalse(restored.isDirty());
+        assertTrue(restored.getChangedKeys().isEmpty());
+
+        List<MapChange<String, String>> changes = new ArrayList<>();
+        restored.addChangeListener(changes::add);
+
+        SerializableMap.putWithCheck(restored, "1-1", "One");
+        assertFalse(restored.isDirty());
+        assertTrue(changes.isEmpty());
+
+        SerializableMap.putWithCheck(restored, "1-1", "Uno");
+        restored.remove("1-2");
+        restored.remove("1-3");
+        restored.computeIfAbsent("1-3", k -> "Three");
+        assertTrue(restored.isDirty());
+        assertEquals(restored.getChangedKeys(),
+                new HashSet<>(Arrays.asList("1-1", "1-2", "1-3")));
+
+        assertEquals(changes.size(), 3);
+        assertEquals(changes.get(0).getOldValue(), "One");
+        assertEquals(changes.get(0).getNewValue(), "Uno");
+        assertTrue(changes.get(1).isRemoved());
+        assertEquals(changes.get(1).getOldValue(), "Two");
+        assertEquals(changes.get(2).getOldValue(), null);
+        assertEquals(changes.get(2).getNewValue(), "Three");
+
+        restored.store();
+        assertFalse(restored.isDirty());
+        assertTrue(restored.getChangedKeys().isEmpty());
+
+        /*
+         * Listeners are notified of a clear once the map is cleared
+         */
+        changes.clear();
+        List<Boolean> emptyWhenNotified = new ArrayList<>();
+        restored.addChangeListener(
+                change -> emptyWhenNotified.add(change.getMap().isEmpty()));
+        restored.clear();
+        assertEquals(changes.size(), 2);
+        assertTrue(changes.get(0).isRemoved());
+        assertEquals(emptyWhenNotified, Arrays.asList(true, true));
+        assertEquals(restored.getChangedKeys(),
+                new HashSet<>(Arrays.asList("1-1", "1-3")));
+    }
 }
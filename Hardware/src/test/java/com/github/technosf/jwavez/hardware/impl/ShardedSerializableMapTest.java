@@ -0,0 +1,195 @@
+/*
+ * Copyright 2016 technosf [https://github.com/technosf]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.github.technosf.jwavez.hardware.impl;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+import org.testng.annotations.Test;
+
+/**
+ * @author technosf
+ * @since 0.0.1
+ * @version 0.0.1
+ */
+@SuppressWarnings("null")
+public class ShardedSerializableMapTest
+{
+
+    /**
+     * Test the shards store and restore, and only changed shards are stored
+     */
+    @Test(dependsOnGroups = { "static" })
+    public void store() throws IOException, ClassNotFoundException
+    {
+        File file = File.createTempFile("ShardedSerializableMapTest-store",
+                ".tmp");
+        Map<String, String> expected = new HashMap<>();
+        for (int i = 0; i < 200; i++)
+        {
+            expected.put("Key " + i, "Value " + i);
+        }
+        expected.put(null, "Null key");
+
+        ShardedSerializableMap<String, String> classUnderTest =
+                new ShardedSerializableMap<String, String>(file, 4);
+        classUnderTest.putAll(expected);
+        assertTrue(classUnderTest.isDirty());
+        classUnderTest.store();
+        assertFalse(classUnderTest.isDirty());
+
+        for (File shard : shards(file, 4))
+        {
+            assertTrue(shard.length() > 0);
+            assertTrue(shard.setLastModified(0));
+        }
+
+        ShardedSerializableMap<String, String> classUnderTestCopy =
+                new ShardedSerializableMap<String, String>(file, 4);
+        assertEquals(classUnderTestCopy, expected);
+        assertEquals(classUnderTestCopy.getStoreTimestamp(),
+                classUnderTest.getStoreTimestamp());
+
+        Iterator<Map.Entry<String, String>> entries =
+                classUnderTestCopy.entrySet().iterator();
+        entries.next();
+        entries.remove();
+        classUnderTestCopy.store();
+        assertEquals(classUnderTestCopy.size(), expected.size() - 1);
+
+        int stored = 0;
+        for (File shard : shards(file, 4))
+        {
+            if (shard.lastModified() != 0)
+            {
+                stored++;
+            }
+        }
+        assertEquals(stored, 1, "Only the changed shard is stored");
+
+        assertEquals(new ShardedSerializableMap<String, String>(file, 4),
+                classUnderTestCopy);
+    }
+
+
+    /**
+     * The shard count is fixed once stored
+     */
+    @Test(dependsOnGroups = { "static" },
+            expectedExceptions = IOException.class)
+    public void shardCount() throws IOException, ClassNotFoundException
+    {
+        File file = File.createTempFile("ShardedSerializableMapTest-count",
+                ".tmp");
+        ShardedSerializableMap<String, String> classUnderTest =
+                new ShardedSerializableMap<String, String>(file, 4);
+        classUnderTest.put("1-1", "One");
+        classUnderTest.store();
+
+        new ShardedSerializableMap<String, String>(file, 8);
+    }
+
+
+    /**
+     * The keys of a shard do not share the low hash bits its buckets are
+     * picked by
+     */
+    @Test(dependsOnGroups = { "static" })
+    public void spread()
+    {
+        Set<Integer> buckets = new HashSet<>();
+        for (int key = 0; key < 1024; key++)
+        {
+            if (ShardedSerializableMap.shardIndex(key, 4) == 0)
+            {
+                int h = Integer.valueOf(key).hashCode();
+                buckets.add((h ^ (h >>> 16)) & 63);
+            }
+        }
+        assertEquals(buckets.size(), 64);
+    }
+
+
+    /**
+     * A map stored with the version 1 shard function is rehashed as it is
+     * restored
+     */
+    @Test(dependsOnGroups = { "static" })
+    public void rehash() throws IOException, ClassNotFoundException
+    {
+        File file = File.createTempFile("ShardedSerializableMapTest-rehash",
+                ".tmp");
+        Map<String, String> expected = new HashMap<>();
+        for (int i = 0; i < 100; i++)
+        {
+            expected.put("Key " + i, "Value " + i);
+        }
+
+        /*
+         * Every entry in the first shard, under a version 1 manifest
+         */
+        File[] shards = shards(file, 4);
+        assertTrue(shards[0].createNewFile());
+        SerializableHashMap<String, String> first =
+                new SerializableHashMap<>(shards[0]);
+        first.putAll(expected);
+        first.store();
+        try (DataOutputStream dos =
+                new DataOutputStream(new FileOutputStream(file)))
+        {
+            dos.writeInt(ShardedSerializableMap.MAGIC);
+            dos.writeByte(1);
+            dos.writeInt(4);
+            dos.writeLong(first.getStoreTimestamp());
+        }
+
+        ShardedSerializableMap<String, String> classUnderTest =
+                new ShardedSerializableMap<String, String>(file, 4);
+        for (Map.Entry<String, String> entry : expected.entrySet())
+        {
+            assertEquals(classUnderTest.get(entry.getKey()),
+                    entry.getValue());
+        }
+        assertEquals(classUnderTest.size(), expected.size());
+        assertTrue(classUnderTest.isDirty());
+
+        classUnderTest.store();
+        assertEquals(new ShardedSerializableMap<String, String>(file, 4),
+                expected);
+    }
+
+
+    private static File[] shards(File file, int shardCount)
+    {
+        File[] shards = new File[shardCount];
+        for (int i = 0; i < shardCount; i++)
+        {
+            shards[i] = new File(
+                    file.getPath() + ShardedSerializableMap.SHARD_SUFFIX + i);
+        }
+        return shards;
+    }
+
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright 2016 technosf [https://github.com/technosf]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.github.technosf.jwavez.hardware.impl;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+
+import org.testng.annotations.Test;
+
+/**
+ * @author technosf
+ * @since 0.0.1
+ * @version 0.0.1
+ */
+@SuppressWarnings("null")
+public class SharedSnapshotMapTest
+{
+
+    /**
+     * Test a published snapshot reads back as the map, and readers pick up
+     * newer versions on refresh
+     */
+    @Test(dependsOnGroups = { "static" })
+    public void publish() throws IOException, ClassNotFoundException
+    {
+        File file = File.createTempFile("SharedSnapshotMapTest", ".tmp");
+        SerializableHashMap<String, String> map =
+                new SerializableHashMap<String, String>(file);
+        for (int i = 0; i < 100; i++)
+        {
+            map.put("Node " + i, "Binary Switch " + i);
+        }
+        map.put("Null", null);
+        map.store();
+
+        assertEquals(SharedSnapshotMap.publish(map, Codecs.STRING,
+                Codecs.STRING), 1);
+
+        SharedSnapshotMap<String, String> classUnderTest =
+                SharedSnapshotMap.of(file, Codecs.STRING, Codecs.STRING);
+        assertEquals(classUnderTest.getVersion(), 1);
+        assertEquals(classUnderTest.getStoreTimestamp(),
+                map.getStoreTimestamp());
+        assertEquals(classUnderTest, map);
+        assertEquals(classUnderTest.get("Node 42"), "Binary Switch 42");
+        assertTrue(classUnderTest.containsKey("Null"));
+        assertNull(classUnderTest.get("Node 100"));
+        assertFalse(classUnderTest.containsKey(42));
+        assertFalse(classUnderTest.refresh());
+
+        map.put("Node 100", "Binary Switch 100");
+        assertEquals(SharedSnapshotMap.publish(map, Codecs.STRING,
+                Codecs.STRING), 2);
+        assertNull(classUnderTest.get("Node 100"));
+
+        assertTrue(classUnderTest.refresh());
+        assertEquals(classUnderTest.getVersion(), 2);
+        assertEquals(classUnderTest.get("Node 100"), "Binary Switch 100");
+        assertEquals(classUnderTest.size(), 102);
+    }
+
+
+    /**
+     * Snapshots are read-only
+     */
+    @Test(dependsOnGroups = { "static" },
+            expectedExceptions = UnsupportedOperationException.class)
+    public void readOnly() throws IOException
+    {
+        File file = File.createTempFile("SharedSnapshotMapTest-readOnly",
+                ".tmp");
+        SharedSnapshotMap.publish(new HashMap<String, String>(), 0,
+                file, Codecs.STRING, Codecs.STRING);
+
+        new SharedSnapshotMap<String, String>(file, Codecs.STRING,
+                Codecs.STRING).put("Node 1", "Binary Switch");
+    }
+
+}
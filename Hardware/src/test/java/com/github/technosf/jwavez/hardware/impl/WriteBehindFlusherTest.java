@@ -0,0 +1,289 @@
+/*
+ * Copyright 2016 technosf [https://github.com/technosf]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.github.technosf.jwavez.hardware.impl;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.testng.annotations.Test;
+
+/**
+ * @author technosf
+ * @since 0.0.1
+ * @version 0.0.1
+ */
+@SuppressWarnings("null")
+public class WriteBehindFlusherTest
+{
+
+    /**
+     * Map that counts its stores, and fails those it is told to
+     */
+    private static class CountingMap extends SerializableHashMap<String, String>
+    {
+        private static final long serialVersionUID = 1L;
+
+        final AtomicInteger stores = new AtomicInteger();
+
+        final List<Exception> failures = new CopyOnWriteArrayList<>();
+
+
+        CountingMap(File file) throws ClassNotFoundException, IOException
+        {
+            super(file);
+        }
+
+
+        @Override
+        public void store() throws IOException
+        {
+            if (!failures.isEmpty())
+            {
+                Exception e = failures.remove(0);
+                if (e instanceof IOException)
+                {
+                    throw (IOException) e;
+                }
+                throw (RuntimeException) e;
+            }
+            super.store();
+            stores.incrementAndGet();
+        }
+    }
+
+
+    /**
+     * @return a new, empty counting map
+     */
+    private static CountingMap map() throws ClassNotFoundException, IOException
+    {
+        return new CountingMap(
+                File.createTempFile("WriteBehindFlusherTest", ".tmp"));
+    }
+
+
+    /**
+     * Waits up to five seconds for a count to reach a value
+     */
+    private static void await(AtomicInteger count, int value)
+            throws InterruptedException
+    {
+        for (int i = 0; i < 500 && count.get() < value; i++)
+        {
+            Thread.sleep(10);
+        }
+    }
+
+
+    /**
+     * Test a burst of changes is coalesced into one store
+     */
+    @Test(dependsOnGroups = { "static" })
+    public void coalesce()
+            throws ClassNotFoundException, IOException, InterruptedException
+    {
+        CountingMap map = map();
+
+        try (WriteBehindFlusher classUnderTest =
+                new WriteBehindFlusher(1, TimeUnit.HOURS, 0))
+        {
+            classUnderTest.register(map);
+
+            for (int i = 0; i < 100; i++)
+            {
+                synchronized (map)
+                {
+                    map.put("key-" + i, "value-" + i);
+                }
+                classUnderTest.changed(map);
+            }
+            assertEquals(map.stores.get(), 0);
+
+            classUnderTest.flush();
+            assertEquals(map.stores.get(), 1);
+            assertFalse(map.isDirty());
+
+            classUnderTest.flush();
+            assertEquals(map.stores.get(), 1);
+        }
+    }
+
+
+    /**
+     * Test reaching the change threshold stores without waiting the interval
+     */
+    @Test(dependsOnGroups = { "static" })
+    public void threshold()
+            throws ClassNotFoundException, IOException, InterruptedException
+    {
+        CountingMap map = map();
+
+        try (WriteBehindFlusher classUnderTest =
+                new WriteBehindFlusher(1, TimeUnit.HOURS, 5))
+        {
+            classUnderTest.register(map);
+
+            for (int i = 0; i < 4; i++)
+            {
+                synchronized (map)
+                {
+                    map.put("key-" + i, "value-" + i);
+                }
+                classUnderTest.changed(map);
+            }
+            Thread.sleep(50);
+            assertEquals(map.stores.get(), 0);
+
+            synchronized (map)
+            {
+                map.put("key-4", "value-4");
+            }
+            classUnderTest.changed(map);
+            await(map.stores, 1);
+            assertEquals(map.stores.get(), 1);
+        }
+    }
+
+
+    /**
+     * Test flush blocks until the map is on disk
+     */
+    @Test(dependsOnGroups = { "static" })
+    public void flush()
+            throws ClassNotFoundException, IOException, InterruptedException
+    {
+        CountingMap map = map();
+
+        try (WriteBehindFlusher classUnderTest =
+                new WriteBehindFlusher(1, TimeUnit.HOURS, 0))
+        {
+            classUnderTest.register(map);
+            synchronized (map)
+            {
+                map.put("1-1", "One");
+            }
+            classUnderTest.changed(map);
+
+            classUnderTest.flush();
+            assertEquals(new SerializableHashMap<String, String>(map.getFile()),
+                    map);
+        }
+    }
+
+
+    /**
+     * Test store failures reach the error handler and leave the map dirty
+     */
+    @Test(dependsOnGroups = { "static" })
+    public void errorHandler()
+            throws ClassNotFoundException, IOException, InterruptedException
+    {
+        CountingMap map = map();
+        List<Exception> handled = new CopyOnWriteArrayList<>();
+        IOException failure = new IOException("Disk full");
+
+        try (WriteBehindFlusher classUnderTest =
+                new WriteBehindFlusher(1, TimeUnit.HOURS, 0))
+        {
+            classUnderTest.setErrorHandler((m, e) -> handled.add(e));
+            classUnderTest.register(map);
+            map.failures.add(failure);
+            classUnderTest.changed(map);
+
+            classUnderTest.flush();
+            assertEquals(handled.size(), 1);
+            assertSame(handled.get(0), failure);
+            assertTrue(map.isDirty());
+            assertEquals(map.stores.get(), 0);
+
+            classUnderTest.flush();
+            assertEquals(map.stores.get(), 1);
+            assertFalse(map.isDirty());
+        }
+    }
+
+
+    /**
+     * Test an unchecked exception from a store does not stop later runs
+     */
+    @Test(dependsOnGroups = { "static" })
+    public void uncheckedException()
+            throws ClassNotFoundException, IOException, InterruptedException
+    {
+        CountingMap map = map();
+        List<Exception> handled = new CopyOnWriteArrayList<>();
+        RuntimeException failure = new IllegalStateException("Broken codec");
+
+        try (WriteBehindFlusher classUnderTest =
+                new WriteBehindFlusher(10, TimeUnit.MILLISECONDS, 0))
+        {
+            classUnderTest.setErrorHandler((m, e) -> handled.add(e));
+            map.failures.add(failure);
+            map.failures.add(failure);
+            classUnderTest.register(map);
+            classUnderTest.changed(map);
+
+            await(map.stores, 1);
+            assertEquals(map.stores.get(), 1);
+            assertEquals(handled.size(), 2);
+            assertSame(handled.get(0), failure);
+        }
+    }
+
+
+    /**
+     * Test an error handler that throws neither escapes flush() nor stops
+     * later stores
+     */
+    @Test(dependsOnGroups = { "static" })
+    public void throwingErrorHandler()
+            throws ClassNotFoundException, IOException, InterruptedException
+    {
+        CountingMap map = map();
+        AtomicInteger handled = new AtomicInteger();
+        IOException failure = new IOException("Disk full");
+
+        try (WriteBehindFlusher classUnderTest =
+                new WriteBehindFlusher(1, TimeUnit.HOURS, 0))
+        {
+            classUnderTest.setErrorHandler((m, e) -> {
+                handled.incrementAndGet();
+                throw new IllegalStateException("Handler failed");
+            });
+            classUnderTest.register(map);
+            map.failures.add(failure);
+            map.failures.add(new IllegalStateException("Broken codec"));
+            classUnderTest.changed(map);
+
+            classUnderTest.flush();
+            classUnderTest.flush();
+            assertEquals(handled.get(), 2);
+            assertTrue(map.isDirty());
+
+            classUnderTest.flush();
+            assertEquals(map.stores.get(), 1);
+            assertFalse(map.isDirty());
+        }
+    }
+
+}
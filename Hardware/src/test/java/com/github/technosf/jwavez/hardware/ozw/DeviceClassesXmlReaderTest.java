@@ -1,8 +1,15 @@
 package com.github.technosf.jwavez.hardware.ozw;
 
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
 
+import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 
 import javax.xml.stream.XMLStreamException;
 
@@ -23,4 +30,134 @@ public class DeviceClassesXmlReaderTest
         assertEquals(classUnderTest.basicbeans.size(), 4);
     }
 
+
+    @Test
+    public void registry() throws XMLStreamException, IOException
+    {
+        DeviceClassesRegistry registry = new DeviceClassesXmlReader(
+                "/ozw/device_classes.xml").getRegistry();
+
+        assertEquals(registry.getBasic(0x02).getLabel(), "Static Controller");
+        assertNull(registry.getBasic(0x05));
+        assertEquals(registry.getGeneric(0x10).getLabel(), "Binary Switch");
+        assertEquals(registry.getSpecific(0x10, 0x03).getLabel(),
+                "Binary Scene Switch");
+        assertNull(registry.getSpecific(0x10, 0x02));
+        assertNull(registry.getSpecific(0x0e, 0x01));
+        assertEquals(registry.getRole(0x06).getLabel(),
+                "Reporting Sleeping Slave");
+        assertEquals(registry.getNodeType(0x01).getLabel(),
+                "Z-Wave+ IP router");
+        assertEquals(registry.getDeviceType(0x0c0a).getLabel(),
+                "Emergency Alarm Sensor");
+        assertEquals(registry.getDeviceType(0x0c, 0x0a),
+                registry.getDeviceType(0x0c0a));
+        assertNull(registry.getDeviceType(0xfe00));
+
+        /*
+         * Bytes straight from a frame
+         */
+        byte generic = 0x10;
+        byte specific = 0x01;
+        assertEquals(registry.getSpecific(generic, specific).getLabel(),
+                "Binary Power Switch");
+    }
+
+
+
+    @Test
+    public void cached() throws XMLStreamException, IOException
+    {
+        File xml = File.createTempFile("device_classes", ".xml");
+        File cache = DeviceClassesXmlReader.cacheFile(xml);
+        xml.deleteOnExit();
+        cache.deleteOnExit();
+        write(xml, "<Basic key=\"0x01\" label=\"Controller\"/>"
+                + "<Generic key=\"0x02\" label=\"Static Controller\">"
+                + "<Specific key=\"0x01\" label=\"PC Controller\"/>"
+                + "</Generic>"
+                + "<Role key=\"0x00\" label=\"Central Static Controller\"/>"
+                + "<NodeType key=\"0x00\" label=\"Z-Wave+ node\"/>"
+                + "<DeviceType key=\"0x0100\" label=\"Central Controller\"/>");
+
+        DeviceClassesXmlReader parsed = DeviceClassesXmlReader.cached(xml);
+        assertTrue(cache.isFile());
+        long written = cache.lastModified();
+
+        DeviceClassesXmlReader restored = DeviceClassesXmlReader.cached(xml);
+        assertEquals(cache.lastModified(), written);
+        assertEquals(restored.getRegistry().getSpecific(0x02, 0x01)
+                .getLabel(), "PC Controller");
+        assertEquals(restored.basicbeans.keySet(), parsed.basicbeans.keySet());
+        assertEquals(restored.basicbeans.get("0x01").getLabel(), "Controller");
+        assertEquals(restored.genericbeans.get("0x02").getElements().size(),
+                1);
+        assertEquals(restored.rolebeans.size(), 1);
+        assertEquals(restored.nodetypebeans.size(), 1);
+        assertEquals(restored.devicetypebeans.get("0x0100").getLabel(),
+                "Central Controller");
+
+        /*
+         * A changed XML is parsed again
+         */
+        write(xml, "<Basic key=\"0x01\" label=\"Controller\"/>"
+                + "<Basic key=\"0x02\" label=\"Static Controller\"/>");
+        assertEquals(DeviceClassesXmlReader.cached(xml).basicbeans.size(), 2);
+        assertEquals(DeviceClassesXmlReader.cached(xml).genericbeans.size(),
+                0);
+    }
+
+
+    /**
+     * Test the full XML, the input of the device classes benchmark, caches
+     * and restores with every command class intact
+     */
+    @Test
+    public void cachedDeviceClasses() throws XMLStreamException, IOException
+    {
+        File xml = File.createTempFile("device_classes", ".xml");
+        File cache = DeviceClassesXmlReader.cacheFile(xml);
+        xml.deleteOnExit();
+        cache.deleteOnExit();
+        try (InputStream is = getClass()
+                .getResourceAsStream("/ozw/device_classes.xml"))
+        {
+            Files.copy(is, xml.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+
+        DeviceClassesXmlReader parsed = DeviceClassesXmlReader.cached(xml);
+        assertTrue(cache.isFile());
+        DeviceClassesXmlReader restored = DeviceClassesXmlReader.cached(xml);
+
+        assertEquals(restored.basicbeans.keySet(), parsed.basicbeans.keySet());
+        assertEquals(restored.genericbeans.keySet(),
+                parsed.genericbeans.keySet());
+        assertEquals(restored.rolebeans.keySet(), parsed.rolebeans.keySet());
+        assertEquals(restored.nodetypebeans.keySet(),
+                parsed.nodetypebeans.keySet());
+        assertEquals(restored.devicetypebeans.keySet(),
+                parsed.devicetypebeans.keySet());
+        for (String key : parsed.genericbeans.keySet())
+        {
+            assertEquals(
+                    restored.genericbeans.get(key).getCommandClasses(),
+                    parsed.genericbeans.get(key).getCommandClasses(), key);
+        }
+        for (String key : parsed.devicetypebeans.keySet())
+        {
+            assertEquals(
+                    restored.devicetypebeans.get(key).getCommandClasses(),
+                    parsed.devicetypebeans.get(key).getCommandClasses(), key);
+        }
+    }
+
+
+    private static void write(File file, String classes) throws IOException
+    {
+        try (PrintWriter pw = new PrintWriter(file, "UTF-8"))
+        {
+            pw.print("<DeviceClasses>" + classes + "</DeviceClasses>");
+        }
+    }
+
 }
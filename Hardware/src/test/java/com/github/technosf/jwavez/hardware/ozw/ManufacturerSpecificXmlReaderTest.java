@@ -0,0 +1,77 @@
+/*
+ * Copyright 2016 technosf [https://github.com/technosf]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.github.technosf.jwavez.hardware.ozw;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.io.IOException;
+
+import javax.xml.stream.XMLStreamException;
+
+import org.testng.annotations.Test;
+
+/**
+ * @author technosf
+ * @since 0.0.1
+ * @version 0.0.1
+ */
+@SuppressWarnings("null")
+public class ManufacturerSpecificXmlReaderTest
+{
+
+    @Test
+    public void index() throws XMLStreamException, IOException
+    {
+        ManufacturerSpecificIndex index = new ManufacturerSpecificXmlReader(
+                "/ozw/manufacturer_specific.xml").getIndex();
+
+        assertEquals(index.manufacturerCount(), 161);
+        assertEquals(index.productCount(), 476);
+
+        assertEquals(index.getManufacturerName(0x0040), "2B Electronics");
+        assertEquals(index.getManufacturerName(0x0086), "Aeotec");
+        assertNull(index.getManufacturerName(0xFFFE));
+
+        long sd6 = ManufacturerSpecificIndex.key(0x0086, 0x1D03, 0x0063);
+        assertEquals(index.getProductName(sd6), "Smart Dimmer 6");
+        assertEquals(index.getConfig(sd6), "aeotec/sd6.xml");
+
+        int entry = index.find(sd6);
+        assertTrue(entry >= 0);
+        assertEquals(index.getEntryManufacturerName(entry), "Aeotec");
+        assertEquals(index.getEntryProductName(entry), "Smart Dimmer 6");
+
+        long serial = ManufacturerSpecificIndex.key(0x0001, 0x4349, 0x3130);
+        assertEquals(index.getProductName(serial), "ZCS101 Serial Interface");
+        assertNull(index.getConfig(serial));
+
+        assertEquals(index.find(
+                ManufacturerSpecificIndex.key(0x0086, 0x1D03, 0x0064)), -1);
+        assertEquals(index.find(-1L), -1);
+    }
+
+
+    @Test
+    public void key()
+    {
+        long key = ManufacturerSpecificIndex.key(0xFFFF, 0x1D03, 0x8000);
+        assertTrue(key > 0 && key < 1L << 48);
+        assertEquals(ManufacturerSpecificIndex.manufacturerId(key), 0xFFFF);
+        assertEquals(ManufacturerSpecificIndex.productType(key), 0x1D03);
+        assertEquals(ManufacturerSpecificIndex.productId(key), 0x8000);
+    }
+
+}
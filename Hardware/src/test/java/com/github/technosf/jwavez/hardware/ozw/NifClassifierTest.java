@@ -0,0 +1,140 @@
+/*
+ * Copyright 2016 technosf [https://github.com/technosf]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.github.technosf.jwavez.hardware.ozw;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+import java.io.IOException;
+
+import javax.xml.stream.XMLStreamException;
+
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import com.github.technosf.jwavez.hardware.beans.base.CommandClass;
+import com.github.technosf.jwavez.hardware.beans.base.CommandClassSet;
+
+/**
+ * @author technosf
+ * @since 0.0.1
+ * @version 0.0.1
+ */
+@SuppressWarnings("null")
+public class NifClassifierTest
+{
+
+    /**
+     * A routing slave binary power switch, supporting version and
+     * manufacturer specific and controlling basic
+     */
+    private static final byte[] SWITCH = { 0x04, 0x10, 0x01, 0x25,
+            (byte) 0x86, 0x72, (byte) 0xEF, 0x20 };
+
+    private DeviceClassesRegistry registry;
+
+
+    @BeforeClass
+    public void setup() throws XMLStreamException, IOException
+    {
+        registry = new DeviceClassesXmlReader("/ozw/device_classes.xml")
+                .getRegistry();
+    }
+
+
+    @Test
+    public void classify()
+    {
+        NifClassifier classifier = new NifClassifier(registry);
+        NodeCapabilities node = classifier.classify(SWITCH);
+
+        assertEquals(node.getBasic().getLabel(), "Routing Slave");
+        DeviceClass deviceClass = node.getDeviceClass();
+        assertEquals(deviceClass.getGeneric().getLabel(), "Binary Switch");
+        assertEquals(deviceClass.getSpecific().getLabel(),
+                "Binary Power Switch");
+        assertSame(deviceClass.getBasicMapping(), CommandClass.SWITCH_BINARY);
+        assertEquals(deviceClass.getSupported(),
+                CommandClassSet.of(0x20, 0x25, 0x27));
+
+        assertEquals(node.getListedSupported(),
+                CommandClassSet.of(0x25, 0x72, 0x86));
+        assertEquals(node.getListedControlled(), CommandClassSet.of(0x20));
+        assertEquals(node.getSupported(),
+                CommandClassSet.of(0x20, 0x25, 0x27, 0x72, 0x86));
+        assertTrue(node.supports(CommandClass.VERSION));
+        assertTrue(node.getControlled().contains(CommandClass.BASIC));
+    }
+
+
+    @Test
+    public void memoized()
+    {
+        NifClassifier classifier = new NifClassifier(registry, 4);
+        NodeCapabilities first = classifier.classify(SWITCH);
+
+        byte[] buffer = new byte[SWITCH.length + 2];
+        System.arraycopy(SWITCH, 0, buffer, 2, SWITCH.length);
+        assertSame(classifier.classify(buffer, 2, SWITCH.length), first);
+        assertEquals(classifier.getHitCount(), 1);
+        assertEquals(classifier.getMissCount(), 1);
+
+        /*
+         * The same device class with another frame shares its capabilities
+         */
+        NodeCapabilities other =
+                classifier.classify(new byte[] { 0x04, 0x10, 0x01 });
+        assertSame(other.getDeviceClass(), first.getDeviceClass());
+        assertEquals(other.getSupported(),
+                first.getDeviceClass().getSupported());
+        assertSame(classifier.getDeviceClass(0x10, 0x01),
+                first.getDeviceClass());
+    }
+
+
+    @Test
+    public void mark()
+    {
+        NifClassifier classifier = new NifClassifier(registry);
+
+        /*
+         * The remote controller generic class controls basic, its scene
+         * controller specific class also supports and controls
+         */
+        DeviceClass scene = classifier.getDeviceClass(0x01, 0x02);
+        assertEquals(scene.getSupported(),
+                CommandClassSet.of(0x2d, 0x72, 0x85));
+        assertEquals(scene.getControlled(), CommandClassSet.of(0x20, 0x2b));
+        assertNull(scene.getBasicMapping());
+
+        /*
+         * Extended command classes are skipped, unknown classes kept empty
+         */
+        NodeCapabilities node = classifier.classify(new byte[] { 0x09,
+                (byte) 0xFE, 0x07, (byte) 0xF1, 0x00, 0x25 });
+        assertNull(node.getBasic());
+        assertNull(node.getDeviceClass().getGeneric());
+        assertEquals(node.getSupported(), CommandClassSet.of(0x25));
+    }
+
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void tooShort()
+    {
+        new NifClassifier(registry).classify(new byte[] { 0x04, 0x10 });
+    }
+
+}
@@ -0,0 +1,182 @@
+/*
+ * Copyright 2016 technosf [https://github.com/technosf]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.github.technosf.jwavez.hardware.ozw;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Comparator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Stream;
+
+import javax.xml.stream.XMLStreamException;
+
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import com.github.technosf.jwavez.hardware.beans.product.ProductBean;
+import com.github.technosf.jwavez.hardware.beans.product.ValueBean;
+
+/**
+ * @author technosf
+ * @since 0.0.1
+ * @version 0.0.1
+ */
+@SuppressWarnings("null")
+public class OzwConfigLoaderTest
+{
+
+    private static final int VENDORS = 10;
+
+    private Path directory;
+
+    private final ForkJoinPool pool = new ForkJoinPool(4);
+
+
+    /**
+     * Builds a config tree of the aeotec products copied under several
+     * vendors, enough to split between tasks
+     */
+    @BeforeClass
+    public void setup() throws IOException
+    {
+        directory = Files.createTempDirectory("ozw");
+        copy("/ozw/manufacturer_specific.xml",
+                directory.resolve("manufacturer_specific.xml"));
+        for (int i = 0; i < VENDORS; i++)
+        {
+            Path vendor =
+                    Files.createDirectory(directory.resolve("vendor" + i));
+            copy("/ozw/aeotec/sd6.xml", vendor.resolve("sd6.xml"));
+            copy("/ozw/aeotec/ss6.xml", vendor.resolve("ss6.xml"));
+        }
+    }
+
+
+    @AfterClass
+    public void tearDown() throws IOException
+    {
+        pool.shutdown();
+        try (Stream<Path> paths = Files.walk(directory))
+        {
+            paths.sorted(Comparator.reverseOrder()).map(Path::toFile)
+                    .forEach(File::delete);
+        }
+    }
+
+
+    @Test
+    public void load() throws XMLStreamException, IOException
+    {
+        OzwConfig config = OzwConfigLoader.load(directory.toFile(), pool);
+
+        assertNull(config.getDeviceClasses());
+        assertEquals(config.getManufacturerSpecific().productCount(), 476);
+        assertEquals(config.getProducts().size(), 2 * VENDORS);
+        assertTrue(config.getFailures().isEmpty());
+        assertNull(config.getProduct("manufacturer_specific.xml"));
+
+        ProductBean sd6 = config.getProduct("vendor3/sd6.xml");
+        assertNotNull(sd6);
+        assertEquals(sd6.getConfig(), "vendor3/sd6.xml");
+        assertEquals(sd6.getGroups().size(), 2);
+        assertEquals(sd6.getGroups().get(0).getLabel(), "LifeLine");
+        assertEquals(sd6.getGroups().get(0).getMaxAssociations(), 5);
+
+        ValueBean overload = sd6.getValues(112).get(0);
+        assertEquals(overload.getIndex(), 3);
+        assertEquals(overload.getType(), "list");
+        assertEquals(overload.getLabel(), "Current Overload Protection");
+        assertEquals(overload.getItems().size(), 2);
+        assertEquals(overload.getItems().get("1"),
+                "Active Overload Protection");
+        assertTrue(overload.getHelp().startsWith("Load will be closed"));
+
+        /*
+         * The aeotec products resolved through the manufacturer index
+         */
+        Path aeotec = Files.createDirectory(directory.resolve("aeotec"));
+        try
+        {
+            copy("/ozw/aeotec/sd6.xml", aeotec.resolve("sd6.xml"));
+            config = OzwConfigLoader.load(directory.toFile(), pool);
+            assertEquals(config.getProduct(0x0086, 0x0103, 0x0063)
+                    .getConfig(), "aeotec/sd6.xml");
+            assertNull(config.getProduct(0x0086, 0x0003, 0x0060));
+        }
+        finally
+        {
+            Files.delete(aeotec.resolve("sd6.xml"));
+            Files.delete(aeotec);
+        }
+    }
+
+
+    /**
+     * A malformed product is recorded and the rest loaded, unless failing
+     * fast
+     */
+    @Test
+    public void malformed() throws IOException, XMLStreamException
+    {
+        Path broken = directory.resolve("broken");
+        Files.createDirectory(broken);
+        Files.write(broken.resolve("bad.xml"), "<Product>".getBytes());
+        try
+        {
+            OzwConfig config = OzwConfigLoader.load(directory.toFile());
+            assertEquals(config.getProducts().size(), 2 * VENDORS);
+            assertEquals(config.getFailures().keySet().iterator().next(),
+                    "broken/bad.xml");
+            assertTrue(config.getFailures()
+                    .get("broken/bad.xml") instanceof XMLStreamException);
+
+            try
+            {
+                OzwConfigLoader.load(directory.toFile(), pool, true);
+                fail("Malformed product loaded");
+            }
+            catch (XMLStreamException e)
+            {
+                assertTrue(e.getMessage().contains("broken/bad.xml"));
+            }
+        }
+        finally
+        {
+            Files.delete(broken.resolve("bad.xml"));
+            Files.delete(broken);
+        }
+    }
+
+
+    private static void copy(String resource, Path target) throws IOException
+    {
+        try (InputStream is =
+                OzwConfigLoaderTest.class.getResourceAsStream(resource))
+        {
+            Files.copy(is, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+}
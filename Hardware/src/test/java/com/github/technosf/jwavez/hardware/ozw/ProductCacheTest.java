@@ -0,0 +1,172 @@
+/*
+ * Copyright 2016 technosf [https://github.com/technosf]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.github.technosf.jwavez.hardware.ozw;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.xml.stream.XMLStreamException;
+
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import com.github.technosf.jwavez.hardware.beans.product.ProductBean;
+
+/**
+ * @author technosf
+ * @since 0.0.1
+ * @version 0.0.1
+ */
+@SuppressWarnings("null")
+public class ProductCacheTest
+{
+
+    private Path directory;
+
+    private ManufacturerSpecificIndex index;
+
+
+    @BeforeClass
+    public void setup() throws IOException, XMLStreamException
+    {
+        directory = Files.createTempDirectory("ozw");
+        Path aeotec = Files.createDirectory(directory.resolve("aeotec"));
+        copy("/ozw/aeotec/sd6.xml", aeotec.resolve("sd6.xml"));
+        copy("/ozw/aeotec/ss6.xml", aeotec.resolve("ss6.xml"));
+        index = new ManufacturerSpecificXmlReader(
+                "/ozw/manufacturer_specific.xml").getIndex();
+    }
+
+
+    @AfterClass
+    public void tearDown() throws IOException
+    {
+        Files.delete(directory.resolve("aeotec/sd6.xml"));
+        Files.delete(directory.resolve("aeotec/ss6.xml"));
+        Files.delete(directory.resolve("aeotec"));
+        Files.delete(directory);
+    }
+
+
+    @Test
+    public void entries() throws XMLStreamException, IOException
+    {
+        ProductCache cache = new ProductCache(directory.toFile(), index, 1);
+
+        ProductBean sd6 = cache.get(0x0086, 0x0003, 0x0063);
+        assertEquals(sd6.getConfig(), "aeotec/sd6.xml");
+        assertSame(cache.get(0x0086, 0x0103, 0x0063), sd6);
+        assertEquals(cache.getMissCount(), 1);
+        assertEquals(cache.getHitCount(), 1);
+
+        assertEquals(cache.get(0x0086, 0x0003, 0x0060).getConfig(),
+                "aeotec/ss6.xml");
+        assertEquals(cache.size(), 1);
+        assertEquals(cache.getEvictionCount(), 1);
+
+        cache.get(0x0086, 0x0003, 0x0063);
+        assertEquals(cache.getMissCount(), 3);
+
+        /*
+         * Products without a config are not loaded or counted
+         */
+        assertNull(cache.get(0x0001, 0x4349, 0x3130));
+        assertNull(cache.get(0xFFFE, 0, 0));
+        assertEquals(cache.getMissCount() + cache.getHitCount(), 4);
+    }
+
+
+    /**
+     * Concurrent misses on one config share a single load
+     */
+    @Test
+    public void concurrent() throws InterruptedException, ExecutionException
+    {
+        int threads = 8;
+        ProductCache cache = new ProductCache(directory.toFile(), index, 1);
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<ProductBean>> gets = new ArrayList<>();
+
+        try
+        {
+            for (int i = 0; i < threads; i++)
+            {
+                gets.add(executor.submit(() -> {
+                    start.await();
+                    return cache.get(0x0086, 0x0003, 0x0063);
+                }));
+            }
+            start.countDown();
+
+            ProductBean sd6 = gets.get(0).get();
+            for (Future<ProductBean> get : gets)
+            {
+                assertSame(get.get(), sd6);
+            }
+        }
+        finally
+        {
+            executor.shutdown();
+        }
+
+        assertEquals(cache.getMissCount(), 1);
+        assertEquals(cache.getHitCount(), threads - 1);
+    }
+
+
+    @Test
+    public void bytes() throws XMLStreamException, IOException
+    {
+        long sd6 = new File(directory.toFile(), "aeotec/sd6.xml").length();
+        ProductCache cache =
+                new ProductCache(directory.toFile(), index, 10, sd6);
+
+        cache.get(0x0086, 0x0003, 0x0063);
+        assertEquals(cache.getBytes(), sd6);
+        cache.get(0x0086, 0x0003, 0x0060);
+        assertEquals(cache.size(), 1);
+        assertEquals(cache.getEvictionCount(), 1);
+
+        cache.clear();
+        assertEquals(cache.size(), 0);
+        assertEquals(cache.getBytes(), 0);
+    }
+
+
+    private static void copy(String resource, Path target) throws IOException
+    {
+        try (InputStream is =
+                ProductCacheTest.class.getResourceAsStream(resource))
+        {
+            Files.copy(is, target);
+        }
+    }
+
+}